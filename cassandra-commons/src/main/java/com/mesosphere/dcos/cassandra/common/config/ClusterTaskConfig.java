@@ -27,16 +27,21 @@ import java.io.IOException;
 /**
  * Configuration object for Cassandra ClusterTasks (e.g. Cleanup, Repair,
  * Backup, Restore). It aggregates the memory, cpu, and disk allocated for
- * these tasks.
+ * these tasks, the bandwidth budget shared by the backup uploads of all
+ * nodes, and the retention of backups in their external location.
  */
 public class ClusterTaskConfig {
     /**
-     * The default config is 1 CPU, 256 Mb mem, and 0 disk.
+     * The default config is 1 CPU, 256 Mb mem, 0 disk, unlimited backup
+     * bandwidth, and no backup retention.
      */
     public static final ClusterTaskConfig DEFAULT =
             ClusterTaskConfig.create(
                     1,
                     256,
+                    0,
+                    0,
+                    0,
                     0);
 
     /**
@@ -48,6 +53,9 @@ public class ClusterTaskConfig {
         private double cpus;
         private int memoryMb;
         private int diskMb;
+        private int backupBandwidthLimitMb;
+        private int backupKeepDaily;
+        private int backupKeepWeekly;
 
         /**
          * Creates a new Builder set with its properties set ot the properties
@@ -58,6 +66,9 @@ public class ClusterTaskConfig {
             this.cpus = config.cpus;
             this.memoryMb = config.memoryMb;
             this.diskMb = config.diskMb;
+            this.backupBandwidthLimitMb = config.backupBandwidthLimitMb;
+            this.backupKeepDaily = config.backupKeepDaily;
+            this.backupKeepWeekly = config.backupKeepWeekly;
         }
 
         private Builder() {
@@ -118,6 +129,69 @@ public class ClusterTaskConfig {
             return this;
         }
 
+        /**
+         * Gets the cluster wide backup bandwidth.
+         * @return The total bandwidth backup uploads may use across the
+         * cluster in MB/s, or 0 if it is unlimited.
+         */
+        public int getBackupBandwidthLimitMb() {
+            return backupBandwidthLimitMb;
+        }
+
+        /**
+         * Sets the cluster wide backup bandwidth.
+         * @param backupBandwidthLimitMb The total bandwidth backup uploads
+         *                               may use across the cluster in MB/s,
+         *                               or 0 if it is unlimited.
+         * @return The Builder instance.
+         */
+        public Builder setBackupBandwidthLimitMb(int backupBandwidthLimitMb) {
+            this.backupBandwidthLimitMb = backupBandwidthLimitMb;
+            return this;
+        }
+
+        /**
+         * Gets the number of daily backups retained.
+         * @return The number of most recent days for which the latest backup
+         * is kept, or 0 if backups are not retained daily.
+         */
+        public int getBackupKeepDaily() {
+            return backupKeepDaily;
+        }
+
+        /**
+         * Sets the number of daily backups retained.
+         * @param backupKeepDaily The number of most recent days for which the
+         *                        latest backup is kept, or 0 if backups are
+         *                        not retained daily.
+         * @return The Builder instance.
+         */
+        public Builder setBackupKeepDaily(int backupKeepDaily) {
+            this.backupKeepDaily = backupKeepDaily;
+            return this;
+        }
+
+        /**
+         * Gets the number of weekly backups retained.
+         * @return The number of most recent weeks for which the latest backup
+         * is kept, or 0 if backups are not retained weekly.
+         */
+        public int getBackupKeepWeekly() {
+            return backupKeepWeekly;
+        }
+
+        /**
+         * Sets the number of weekly backups retained.
+         * @param backupKeepWeekly The number of most recent weeks for which
+         *                         the latest backup is kept, or 0 if backups
+         *                         are not retained weekly.
+         * @return The Builder instance.
+         */
+        public Builder setBackupKeepWeekly(int backupKeepWeekly) {
+            this.backupKeepWeekly = backupKeepWeekly;
+            return this;
+        }
+
         /**
          * Gets a ClusterTaskConfig constructed from the properties of the
          * Builder.
@@ -129,7 +203,10 @@ public class ClusterTaskConfig {
             return create(
                     cpus,
                     memoryMb,
-                    diskMb);
+                    diskMb,
+                    backupBandwidthLimitMb,
+                    backupKeepDaily,
+                    backupKeepWeekly);
         }
     }
 
@@ -180,6 +257,14 @@ public class ClusterTaskConfig {
      * @param cpus The cpu shares allocated to cluster task.
      * @param memoryMb The memory allocated to the cluster task in Mb.
      * @param diskMb The disk allocated to the cluster task in Mb.
+     * @param backupBandwidthLimitMb The total bandwidth backup uploads may
+     *                               use across the cluster in MB/s, or 0 if
+     *                               it is unlimited.
+     * @param backupKeepDaily The number of most recent days for which the
+     *                        latest backup is kept.
+     * @param backupKeepWeekly The number of most recent weeks for which the
+     *                         latest backup is kept. If both are 0, every
+     *                         backup is kept.
      * @return A ClusterTaskConfig with its properties set to the corresponding
      * parameters.
      */
@@ -187,12 +272,56 @@ public class ClusterTaskConfig {
     public static ClusterTaskConfig create(
             @JsonProperty("cpus") double cpus,
             @JsonProperty("memory_mb") int memoryMb,
-            @JsonProperty("disk_mb") int diskMb) {
+            @JsonProperty("disk_mb") int diskMb,
+            @JsonProperty("backup_bandwidth_limit_mb")
+            int backupBandwidthLimitMb,
+            @JsonProperty("backup_keep_daily") int backupKeepDaily,
+            @JsonProperty("backup_keep_weekly") int backupKeepWeekly) {
 
         return new ClusterTaskConfig(
                 cpus,
                 memoryMb,
-                diskMb);
+                diskMb,
+                backupBandwidthLimitMb,
+                backupKeepDaily,
+                backupKeepWeekly);
+    }
+
+    /**
+     * Factory method gets a new ClusterTaskConfig that keeps every backup.
+     * @param cpus The cpu shares allocated to cluster task.
+     * @param memoryMb The memory allocated to the cluster task in Mb.
+     * @param diskMb The disk allocated to the cluster task in Mb.
+     * @param backupBandwidthLimitMb The total bandwidth backup uploads may
+     *                               use across the cluster in MB/s, or 0 if
+     *                               it is unlimited.
+     * @return A ClusterTaskConfig with its properties set to the corresponding
+     * parameters.
+     */
+    public static ClusterTaskConfig create(
+            double cpus,
+            int memoryMb,
+            int diskMb,
+            int backupBandwidthLimitMb) {
+
+        return create(cpus, memoryMb, diskMb, backupBandwidthLimitMb, 0, 0);
+    }
+
+    /**
+     * Factory method gets a new ClusterTaskConfig with unlimited backup
+     * bandwidth.
+     * @param cpus The cpu shares allocated to cluster task.
+     * @param memoryMb The memory allocated to the cluster task in Mb.
+     * @param diskMb The disk allocated to the cluster task in Mb.
+     * @return A ClusterTaskConfig with its properties set to the corresponding
+     * parameters.
+     */
+    public static ClusterTaskConfig create(
+            double cpus,
+            int memoryMb,
+            int diskMb) {
+
+        return create(cpus, memoryMb, diskMb, 0);
     }
 
     @JsonProperty("cpus")
@@ -204,20 +333,42 @@ public class ClusterTaskConfig {
     @JsonProperty("disk_mb")
     private final int diskMb;
 
+    @JsonProperty("backup_bandwidth_limit_mb")
+    private final int backupBandwidthLimitMb;
+
+    @JsonProperty("backup_keep_daily")
+    private final int backupKeepDaily;
+
+    @JsonProperty("backup_keep_weekly")
+    private final int backupKeepWeekly;
+
     /**
      * Constructs a ClusterTaskConfig.
      * @param cpus The cpu shares allocated to cluster task.
      * @param memoryMb The memory allocated to the cluster task in Mb.
      * @param diskMb The disk allocated to the cluster task in Mb.
+     * @param backupBandwidthLimitMb The total bandwidth backup uploads may
+     *                               use across the cluster in MB/s, or 0 if
+     *                               it is unlimited.
+     * @param backupKeepDaily The number of most recent days for which the
+     *                        latest backup is kept.
+     * @param backupKeepWeekly The number of most recent weeks for which the
+     *                         latest backup is kept.
      */
     public ClusterTaskConfig(
             final double cpus,
             final int memoryMb,
-            final int diskMb
+            final int diskMb,
+            final int backupBandwidthLimitMb,
+            final int backupKeepDaily,
+            final int backupKeepWeekly
     ) {
         this.cpus = cpus;
         this.memoryMb = memoryMb;
         this.diskMb = diskMb;
+        this.backupBandwidthLimitMb = backupBandwidthLimitMb;
+        this.backupKeepDaily = backupKeepDaily;
+        this.backupKeepWeekly = backupKeepWeekly;
     }
 
     /**
@@ -245,6 +396,35 @@ public class ClusterTaskConfig {
         return memoryMb;
     }
 
+    /**
+     * Gets the bandwidth shared by the backup uploads of all nodes.
+     * @return The total bandwidth backup uploads may use across the cluster
+     * in MB/s, or 0 if it is unlimited.
+     */
+    public int getBackupBandwidthLimitMb() {
+        return backupBandwidthLimitMb;
+    }
+
+    /**
+     * Gets the number of daily backups retained.
+     * @return The number of most recent days for which each node keeps its
+     * latest backup in the external location, or 0 if backups are not
+     * retained daily.
+     */
+    public int getBackupKeepDaily() {
+        return backupKeepDaily;
+    }
+
+    /**
+     * Gets the number of weekly backups retained.
+     * @return The number of most recent weeks for which each node keeps its
+     * latest backup in the external location, or 0 if backups are not
+     * retained weekly. If both are 0, every backup is kept.
+     */
+    public int getBackupKeepWeekly() {
+        return backupKeepWeekly;
+    }
+
     /**
      * Gets a mutable Builder instance.
      * @return A mutable Builder instance whose properties are set to the
@@ -263,7 +443,10 @@ public class ClusterTaskConfig {
 
         if (Double.compare(that.cpus, cpus) != 0) return false;
         if (memoryMb != that.memoryMb) return false;
-        return diskMb == that.diskMb;
+        if (diskMb != that.diskMb) return false;
+        if (backupBandwidthLimitMb != that.backupBandwidthLimitMb) return false;
+        if (backupKeepDaily != that.backupKeepDaily) return false;
+        return backupKeepWeekly == that.backupKeepWeekly;
 
     }
 
@@ -275,6 +458,9 @@ public class ClusterTaskConfig {
         result = (int) (temp ^ (temp >>> 32));
         result = 31 * result + memoryMb;
         result = 31 * result + diskMb;
+        result = 31 * result + backupBandwidthLimitMb;
+        result = 31 * result + backupKeepDaily;
+        result = 31 * result + backupKeepWeekly;
         return result;
     }
 
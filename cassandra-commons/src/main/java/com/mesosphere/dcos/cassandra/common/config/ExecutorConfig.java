@@ -62,7 +62,12 @@ public class ExecutorConfig {
             URI cassandraLocation,
             String cassandraUlimitMemlock,
             String cassandraUlimitNofile,
-            String cassandraUlimitNproc) {
+            String cassandraUlimitNproc,
+            String backupReadMode,
+            String backupEncryptionKey,
+            String backupPreviousEncryptionKeys,
+            int clusterJobMaxRunning,
+            String clusterJobLimits) {
 
         return new ExecutorConfig(
                 command,
@@ -77,7 +82,12 @@ public class ExecutorConfig {
                 cassandraLocation,
                 cassandraUlimitMemlock,
                 cassandraUlimitNofile,
-                cassandraUlimitNproc);
+                cassandraUlimitNproc,
+                backupReadMode,
+                backupEncryptionKey,
+                backupPreviousEncryptionKeys,
+                clusterJobMaxRunning,
+                clusterJobLimits);
     }
 
     @JsonCreator
@@ -94,7 +104,12 @@ public class ExecutorConfig {
             @JsonProperty("cassandra_location") String cassandraLocation,
             @JsonProperty("cassandra_ulimit_memlock") String cassandraUlimitMemlock,
             @JsonProperty("cassandra_ulimit_nofile") String cassandraUlimitNofile,
-            @JsonProperty("cassandra_ulimit_nproc") String cassandraUlimitNproc)
+            @JsonProperty("cassandra_ulimit_nproc") String cassandraUlimitNproc,
+            @JsonProperty("backup_read_mode") String backupReadMode,
+            @JsonProperty("backup_encryption_key") String backupEncryptionKey,
+            @JsonProperty("backup_previous_encryption_keys") String backupPreviousEncryptionKeys,
+            @JsonProperty("cluster_job_max_running") int clusterJobMaxRunning,
+            @JsonProperty("cluster_job_limits") String clusterJobLimits)
             throws URISyntaxException, UnsupportedEncodingException {
 
         ExecutorConfig config = create(
@@ -110,7 +125,12 @@ public class ExecutorConfig {
                 URI.create(cassandraLocation),
                 cassandraUlimitMemlock,
                 cassandraUlimitNofile,
-                cassandraUlimitNproc);
+                cassandraUlimitNproc,
+                backupReadMode,
+                backupEncryptionKey,
+                backupPreviousEncryptionKeys,
+                clusterJobMaxRunning,
+                clusterJobLimits);
 
         return config;
     }
@@ -138,6 +158,18 @@ public class ExecutorConfig {
     @JsonProperty("cassandra_ulimit_nproc")
     private final String cassandraUlimitNproc;
 
+    @JsonProperty("backup_read_mode")
+    private final String backupReadMode;
+    @JsonProperty("backup_encryption_key")
+    private final String backupEncryptionKey;
+    @JsonProperty("backup_previous_encryption_keys")
+    private final String backupPreviousEncryptionKeys;
+
+    @JsonProperty("cluster_job_max_running")
+    private final int clusterJobMaxRunning;
+    @JsonProperty("cluster_job_limits")
+    private final String clusterJobLimits;
+
     @JsonProperty("java_home")
     private final String javaHome;
 
@@ -154,7 +186,12 @@ public class ExecutorConfig {
             URI cassandraLocation,
             String cassandraUlimitMemlock,
             String cassandraUlimitNofile,
-            String cassandraUlimitNproc) {
+            String cassandraUlimitNproc,
+            String backupReadMode,
+            String backupEncryptionKey,
+            String backupPreviousEncryptionKeys,
+            int clusterJobMaxRunning,
+            String clusterJobLimits) {
 
         this.command = command;
         this.arguments = arguments;
@@ -169,6 +206,11 @@ public class ExecutorConfig {
         this.cassandraUlimitMemlock = cassandraUlimitMemlock;
         this.cassandraUlimitNofile = cassandraUlimitNofile;
         this.cassandraUlimitNproc = cassandraUlimitNproc;
+        this.backupReadMode = backupReadMode;
+        this.backupEncryptionKey = backupEncryptionKey;
+        this.backupPreviousEncryptionKeys = backupPreviousEncryptionKeys;
+        this.clusterJobMaxRunning = clusterJobMaxRunning;
+        this.clusterJobLimits = clusterJobLimits;
     }
 
 
@@ -227,6 +269,90 @@ public class ExecutorConfig {
         return cassandraUlimitNproc;
     }
 
+    /**
+     * Gets the way the executor reads files for a backup.
+     *
+     * @return The backup read mode of the executor, channel or mapped, or
+     * null if the executor uses its default.
+     */
+    @JsonProperty("backup_read_mode")
+    public String getBackupReadMode() {
+        return backupReadMode;
+    }
+
+    /**
+     * Gets the key the executor encrypts backups with.
+     *
+     * @return The base64 encoded AES key of the executor, or null or empty
+     * if backups are not encrypted.
+     */
+    @JsonProperty("backup_encryption_key")
+    public String getBackupEncryptionKey() {
+        return backupEncryptionKey;
+    }
+
+    /**
+     * Gets the keys of older backups.
+     *
+     * @return The comma separated, base64 encoded AES keys that the
+     * executor may decrypt backups with, or null or empty if there are
+     * none.
+     */
+    @JsonProperty("backup_previous_encryption_keys")
+    public String getBackupPreviousEncryptionKeys() {
+        return backupPreviousEncryptionKeys;
+    }
+
+    /**
+     * Gets the maximum number of cluster jobs the executor runs at once.
+     *
+     * @return The maximum number of running cluster jobs, or 0 if the
+     * executor uses its default.
+     */
+    @JsonProperty("cluster_job_max_running")
+    public int getClusterJobMaxRunning() {
+        return clusterJobMaxRunning;
+    }
+
+    /**
+     * Gets the per type limits of the executor's cluster jobs.
+     *
+     * @return The comma separated TYPE=limit pairs, e.g. REPAIR=1, or null
+     * or empty if the executor uses its defaults.
+     */
+    @JsonProperty("cluster_job_limits")
+    public String getClusterJobLimits() {
+        return clusterJobLimits;
+    }
+
+    /**
+     * Gets a copy of the config without the backup encryption keys, which
+     * is safe to return from the API and to log.
+     *
+     * @return A copy of the config with empty backup encryption keys.
+     */
+    public ExecutorConfig redacted() {
+        return new ExecutorConfig(
+                command,
+                arguments,
+                cpus,
+                memoryMb,
+                heapMb,
+                apiPort,
+                javaHome,
+                jreLocation,
+                executorLocation,
+                cassandraLocation,
+                cassandraUlimitMemlock,
+                cassandraUlimitNofile,
+                cassandraUlimitNproc,
+                backupReadMode,
+                "",
+                "",
+                clusterJobMaxRunning,
+                clusterJobLimits);
+    }
+
     @JsonProperty("jre_location")
     public String getJreLocationString() {
         return jreLocation.toString();
@@ -268,7 +394,15 @@ public class ExecutorConfig {
                         that.getExecutorLocation()) &&
                 Objects.equals(getCassandraLocation(),
                         that.getCassandraLocation()) &&
-                Objects.equals(getJavaHome(), that.getJavaHome());
+                Objects.equals(getJavaHome(), that.getJavaHome()) &&
+                Objects.equals(getBackupReadMode(), that.getBackupReadMode()) &&
+                Objects.equals(getBackupEncryptionKey(),
+                        that.getBackupEncryptionKey()) &&
+                Objects.equals(getBackupPreviousEncryptionKeys(),
+                        that.getBackupPreviousEncryptionKeys()) &&
+                getClusterJobMaxRunning() == that.getClusterJobMaxRunning() &&
+                Objects.equals(getClusterJobLimits(),
+                        that.getClusterJobLimits());
     }
 
     @Override
@@ -277,11 +411,13 @@ public class ExecutorConfig {
                 getMemoryMb(),
                 getHeapMb(), getApiPort(),
                 getJreLocation(), getExecutorLocation(), getCassandraLocation(),
-                getJavaHome());
+                getJavaHome(), getBackupReadMode(), getBackupEncryptionKey(),
+                getBackupPreviousEncryptionKeys(), getClusterJobMaxRunning(),
+                getClusterJobLimits());
     }
 
     @Override
     public String toString() {
-        return JsonUtils.toJsonString(this);
+        return JsonUtils.toJsonString(redacted());
     }
 }
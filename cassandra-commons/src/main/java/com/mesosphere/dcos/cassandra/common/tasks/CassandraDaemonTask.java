@@ -16,6 +16,7 @@
 package com.mesosphere.dcos.cassandra.common.tasks;
 
 import com.mesosphere.dcos.cassandra.common.config.CassandraConfig;
+import com.mesosphere.dcos.cassandra.common.config.ExecutorConfig;
 import com.mesosphere.dcos.cassandra.common.util.TaskUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.mesos.Protos;
@@ -195,10 +196,24 @@ public class CassandraDaemonTask extends CassandraTask {
     }
 
     public CassandraDaemonTask updateConfig(CassandraConfig config, UUID targetConfigName) {
+        return updateConfig(config, getExecutor(), targetConfigName);
+    }
+
+    public CassandraDaemonTask updateConfig(CassandraConfig config,
+                                            ExecutorConfig executorConfig,
+                                            UUID targetConfigName) {
+        return updateConfig(config,
+            getExecutor().updateEnvironment(executorConfig),
+            targetConfigName);
+    }
+
+    private CassandraDaemonTask updateConfig(CassandraConfig config,
+                                             CassandraTaskExecutor executor,
+                                             UUID targetConfigName) {
         LOGGER.info("Updating config for task: {} to config: {}", getTaskInfo().getName(), targetConfigName.toString());
         final Protos.Label label = LabelBuilder.createLabel("config_target", targetConfigName.toString());
         return new CassandraDaemonTask(getBuilder()
-            .setExecutor(getExecutor().withNewId().getExecutorInfo())
+            .setExecutor(executor.withNewId().getExecutorInfo())
             .setTaskId(createId(getName()))
             .setData(getData().withNewConfig(config).getBytes())
             .clearResources()
@@ -5,6 +5,7 @@ import com.google.protobuf.InvalidProtocolBufferException;
 import com.mesosphere.dcos.cassandra.common.CassandraProtos;
 import com.mesosphere.dcos.cassandra.common.config.CassandraConfig;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupContext;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupRestoreContext;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreContext;
 import com.mesosphere.dcos.cassandra.common.tasks.cleanup.CleanupContext;
 import com.mesosphere.dcos.cassandra.common.tasks.repair.RepairContext;
@@ -86,12 +87,7 @@ public class CassandraData {
         return new CassandraData(
             CassandraTask.TYPE.BACKUP_SNAPSHOT,
             hostname,
-            context.getNodeId(),
-            context.getName(),
-            context.getExternalLocation(),
-            context.getLocalLocation(),
-            context.getAccountId(),
-            context.getSecretKey());
+            context);
     }
 
     public static final CassandraData createBackupSnapshotStatusData() {
@@ -104,12 +100,7 @@ public class CassandraData {
         return new CassandraData(
             CassandraTask.TYPE.BACKUP_UPLOAD,
             hostname,
-            context.getNodeId(),
-            context.getName(),
-            context.getExternalLocation(),
-            context.getLocalLocation(),
-            context.getAccountId(),
-            context.getSecretKey());
+            context);
     }
 
     public static final CassandraData createBackupUploadStatusData() {
@@ -123,12 +114,7 @@ public class CassandraData {
         return new CassandraData(
             CassandraTask.TYPE.SNAPSHOT_DOWNLOAD,
             hostname,
-            context.getNodeId(),
-            context.getName(),
-            context.getExternalLocation(),
-            context.getLocalLocation(),
-            context.getAccountId(),
-            context.getSecretKey());
+            context);
     }
 
     public static final CassandraData createSnapshotDownloadStatusData() {
@@ -141,18 +127,26 @@ public class CassandraData {
         return new CassandraData(
             CassandraTask.TYPE.SNAPSHOT_RESTORE,
             hostname,
-            context.getNodeId(),
-            context.getName(),
-            context.getExternalLocation(),
-            context.getLocalLocation(),
-            context.getAccountId(),
-            context.getSecretKey());
+            context);
     }
 
     public static final CassandraData createRestoreSnapshotStatusData() {
         return new CassandraData(CassandraTask.TYPE.SNAPSHOT_RESTORE);
     }
 
+    public static final CassandraData createBackupVerifyData(
+        final String hostname,
+        final RestoreContext context) {
+        return new CassandraData(
+            CassandraTask.TYPE.BACKUP_VERIFY,
+            hostname,
+            context);
+    }
+
+    public static final CassandraData createBackupVerifyStatusData() {
+        return new CassandraData(CassandraTask.TYPE.BACKUP_VERIFY);
+    }
+
 
     private final CassandraProtos.CassandraData data;
 
@@ -215,25 +209,57 @@ public class CassandraData {
 
     private CassandraData(final CassandraTask.TYPE type,
                           final String hostname,
-                          final String nodeId,
-                          final String name,
-                          final String externalLocation,
-                          final String localLocation,
-                          final String accountId,
-                          final String secretKey) {
+                          final BackupContext context) {
+
+        final CassandraProtos.CassandraData.Builder builder =
+            backupRestoreBuilder(type, hostname, context)
+                .setIncremental(context.isIncremental())
+                .setArchiveCommitLog(context.isArchiveCommitLog())
+                .setShipIncremental(context.isShipIncremental())
+                .setKeepDaily(context.getKeepDaily())
+                .setKeepWeekly(context.getKeepWeekly())
+                .setBackgroundBandwidthLimitMb(
+                    context.getBackgroundBandwidthLimitMb());
+        if (context.getCompression() != null) {
+            builder.setCompression(context.getCompression());
+        }
+        if (context.getCluster() != null) {
+            builder.setCluster(context.getCluster());
+        }
+        data = builder.build();
+    }
 
-        data = CassandraProtos.CassandraData.newBuilder()
-            .setType(type.ordinal())
-            .setHostname(hostname)
-            .setNode(nodeId)
-            .setBackupName(name)
-            .setExternalLocation(externalLocation)
-            .setLocalLocation(localLocation)
-            .setAccoundId(accountId)
-            .setSecretKey(secretKey)
-            .setState(Protos.TaskState.TASK_STAGING.ordinal())
+    private CassandraData(final CassandraTask.TYPE type,
+                          final String hostname,
+                          final RestoreContext context) {
+
+        data = backupRestoreBuilder(type, hostname, context)
+            .setSameTopology(context.isSameTopology())
+            .setLoaderConcurrency(context.getLoaderConcurrency())
+            .setDiskLimitMb(context.getDiskLimitMb())
+            .setPointInTimeMs(context.getPointInTimeMs())
+            .setIncludeIncremental(context.isIncludeIncremental())
             .build();
+    }
 
+    private static CassandraProtos.CassandraData.Builder backupRestoreBuilder(
+        final CassandraTask.TYPE type,
+        final String hostname,
+        final BackupRestoreContext context) {
+
+        return CassandraProtos.CassandraData.newBuilder()
+            .setType(type.ordinal())
+            .setHostname(hostname)
+            .setNode(context.getNodeId())
+            .setBackupName(context.getName())
+            .setExternalLocation(context.getExternalLocation())
+            .setLocalLocation(context.getLocalLocation())
+            .setAccoundId(context.getAccountId())
+            .setSecretKey(context.getSecretKey())
+            .setBandwidthLimitMb(context.getBandwidthLimitMb())
+            .addAllKeySpaces(context.getKeySpaces())
+            .addAllColumnFamilies(context.getColumnFamilies())
+            .setState(Protos.TaskState.TASK_STAGING.ordinal());
     }
 
     private CassandraData() {
@@ -344,7 +370,18 @@ public class CassandraData {
             data.getExternalLocation(),
             data.getLocalLocation(),
             data.getAccoundId(),
-            data.getSecretKey()
+            data.getSecretKey(),
+            data.getIncremental(),
+            data.hasCompression() ? data.getCompression() : null,
+            data.getBandwidthLimitMb(),
+            data.getArchiveCommitLog(),
+            data.getShipIncremental(),
+            data.getKeySpacesList(),
+            data.getColumnFamiliesList(),
+            data.getKeepDaily(),
+            data.getKeepWeekly(),
+            data.hasCluster() ? data.getCluster() : null,
+            data.getBackgroundBandwidthLimitMb()
         );
     }
 
@@ -355,7 +392,15 @@ public class CassandraData {
             data.getExternalLocation(),
             data.getLocalLocation(),
             data.getAccoundId(),
-            data.getSecretKey()
+            data.getSecretKey(),
+            data.getBandwidthLimitMb(),
+            data.getSameTopology(),
+            data.getLoaderConcurrency(),
+            data.getDiskLimitMb(),
+            data.getPointInTimeMs(),
+            data.getIncludeIncremental(),
+            data.getKeySpacesList(),
+            data.getColumnFamiliesList()
         );
     }
 
@@ -24,6 +24,7 @@ import com.mesosphere.dcos.cassandra.common.serialization.SerializationException
 import com.mesosphere.dcos.cassandra.common.serialization.Serializer;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupSnapshotTask;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupUploadTask;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupVerifyTask;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.DownloadSnapshotTask;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreSnapshotTask;
 import com.mesosphere.dcos.cassandra.common.tasks.cleanup.CleanupTask;
@@ -112,7 +113,11 @@ public abstract class CassandraTask {
         /**
          * Place holder for pre-reserving resources for Cluster Tasks
          */
-        TEMPLATE
+        TEMPLATE,
+        /**
+         * Task that verifies that the backup of a node can be restored.
+         */
+        BACKUP_VERIFY
     }
 
     /**
@@ -142,6 +147,8 @@ public abstract class CassandraTask {
                 return RepairTask.parse(info);
             case TEMPLATE:
                 return CassandraTemplateTask.parse(info);
+            case BACKUP_VERIFY:
+                return BackupVerifyTask.parse(info);
             default:
                 throw new IOException("Failed to parse task from TaskInfo " +
                     "type information is invalid");
@@ -405,6 +412,6 @@ public abstract class CassandraTask {
 
     @Override
     public String toString() {
-        return TextFormat.shortDebugString(info);
+        return TextFormat.shortDebugString(CassandraTaskExecutor.redact(info));
     }
 }
@@ -16,6 +16,7 @@
 package com.mesosphere.dcos.cassandra.common.tasks;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.google.protobuf.TextFormat;
 import com.mesosphere.dcos.cassandra.common.config.ExecutorConfig;
@@ -38,6 +39,36 @@ import static com.mesosphere.dcos.cassandra.common.util.TaskUtils.*;
  */
 public class CassandraTaskExecutor {
 
+    public static final String BACKUP_READ_MODE = "BACKUP_READ_MODE";
+    public static final String BACKUP_ENCRYPTION_KEY =
+        "BACKUP_ENCRYPTION_KEY";
+    public static final String BACKUP_PREVIOUS_ENCRYPTION_KEYS =
+        "BACKUP_PREVIOUS_ENCRYPTION_KEYS";
+    public static final String CLUSTER_JOB_MAX_RUNNING =
+        "CLUSTER_JOB_MAX_RUNNING";
+    public static final String CLUSTER_JOB_LIMITS = "CLUSTER_JOB_LIMITS";
+
+    /**
+     * The environment variables that hold secrets. Their values are
+     * redacted when an executor is logged.
+     */
+    private static final Set<String> SECRET_ENVIRONMENT = ImmutableSet.of(
+        BACKUP_ENCRYPTION_KEY,
+        BACKUP_PREVIOUS_ENCRYPTION_KEYS);
+
+    /**
+     * The environment variables that configure backups and cluster jobs.
+     * They are replaced when the configuration of an executor is updated.
+     */
+    private static final Set<String> CONFIG_ENVIRONMENT = ImmutableSet.of(
+        BACKUP_READ_MODE,
+        BACKUP_ENCRYPTION_KEY,
+        BACKUP_PREVIOUS_ENCRYPTION_KEYS,
+        CLUSTER_JOB_MAX_RUNNING,
+        CLUSTER_JOB_LIMITS);
+
+    private static final String REDACTED = "******";
+
     /**
      * Creates a new CassandraTaskExecutor.
      *
@@ -66,7 +97,12 @@ public class CassandraTaskExecutor {
             config.getJavaHome(),
             config.getCassandraUlimitMemlock(),
             config.getCassandraUlimitNofile(),
-            config.getCassandraUlimitNproc());
+            config.getCassandraUlimitNproc(),
+            config.getBackupReadMode(),
+            config.getBackupEncryptionKey(),
+            config.getBackupPreviousEncryptionKeys(),
+            config.getClusterJobMaxRunning(),
+            config.getClusterJobLimits());
     }
 
     /**
@@ -80,6 +116,42 @@ public class CassandraTaskExecutor {
         return new CassandraTaskExecutor(info);
     }
 
+    /**
+     * Redacts the secrets in the environment of an executor.
+     *
+     * @param info The ExecutorInfo of an executor.
+     * @return A copy of info in which the values of the secret environment
+     * variables are redacted, which is safe to log.
+     */
+    public static Protos.ExecutorInfo redact(final Protos.ExecutorInfo info) {
+        if (!info.getCommand().hasEnvironment()) {
+            return info;
+        }
+        final Protos.ExecutorInfo.Builder builder = info.toBuilder();
+        final Protos.Environment.Builder environment =
+            builder.getCommandBuilder().getEnvironmentBuilder();
+        for (Protos.Environment.Variable.Builder variable :
+            environment.getVariablesBuilderList()) {
+            if (SECRET_ENVIRONMENT.contains(variable.getName())) {
+                variable.setValue(REDACTED);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Redacts the secrets in the environment of the executor of a task.
+     *
+     * @param info The TaskInfo of a task.
+     * @return A copy of info in which the values of the secret environment
+     * variables of its executor are redacted, which is safe to log.
+     */
+    public static Protos.TaskInfo redact(final Protos.TaskInfo info) {
+        return info.hasExecutor() ?
+            info.toBuilder().setExecutor(redact(info.getExecutor())).build() :
+            info;
+    }
+
 
     private Protos.ExecutorInfo info;
 
@@ -97,6 +169,18 @@ public class CassandraTaskExecutor {
      * @param uris        The URI's for the executor's resources.
      * @param javaHome    The location of the local java installation for the
      *                    executor.
+     * @param backupReadMode The way the executor reads files for a backup,
+     *                       or null for its default.
+     * @param backupEncryptionKey The key the executor encrypts backups
+     *                            with, or null if they are not encrypted.
+     * @param backupPreviousEncryptionKeys The comma separated keys of
+     *                                     older backups, or null.
+     * @param clusterJobMaxRunning The maximum number of cluster jobs the
+     *                             executor runs at once, or 0 for its
+     *                             default.
+     * @param clusterJobLimits The comma separated TYPE=limit pairs of the
+     *                         executor's cluster jobs, or null for its
+     *                         defaults.
      */
     private CassandraTaskExecutor(
         String frameworkId,
@@ -113,7 +197,24 @@ public class CassandraTaskExecutor {
         String javaHome,
         String cassandraUlimitMemlock,
         String cassandraUlimitNofile,
-        String cassandraUlimitNProc) {
+        String cassandraUlimitNProc,
+        String backupReadMode,
+        String backupEncryptionKey,
+        String backupPreviousEncryptionKeys,
+        int clusterJobMaxRunning,
+        String clusterJobLimits) {
+
+        final ImmutableMap.Builder<String, String> environment =
+            ImmutableMap.<String, String>builder()
+                .put("JAVA_HOME", javaHome)
+                .put("JAVA_OPTS", "-Xmx" + heapMb + "M")
+                .put("EXECUTOR_API_PORT", Integer.toString(apiPort))
+                .put("CASSANDRA_ULIMIT_MEMLOCK", cassandraUlimitMemlock)
+                .put("CASSANDRA_ULIMIT_NOFILE", cassandraUlimitNofile)
+                .put("CASSANDRA_ULIMIT_NPROC", cassandraUlimitNProc);
+        environment.putAll(createConfigEnvironment(backupReadMode,
+            backupEncryptionKey, backupPreviousEncryptionKeys,
+            clusterJobMaxRunning, clusterJobLimits));
 
         this.info = Protos.ExecutorInfo.newBuilder()
             .setFrameworkId(Protos.FrameworkID.newBuilder()
@@ -123,14 +224,7 @@ public class CassandraTaskExecutor {
             .setCommand(createCommandInfo(command,
                 arguments,
                 uris,
-                ImmutableMap.<String, String>builder()
-                    .put("JAVA_HOME", javaHome)
-                    .put("JAVA_OPTS", "-Xmx" + heapMb + "M")
-                    .put("EXECUTOR_API_PORT", Integer.toString(apiPort))
-                    .put("CASSANDRA_ULIMIT_MEMLOCK", cassandraUlimitMemlock)
-                    .put("CASSANDRA_ULIMIT_NOFILE", cassandraUlimitNofile)
-                    .put("CASSANDRA_ULIMIT_NPROC", cassandraUlimitNProc)
-                    .build()))
+                environment.build()))
             .addAllResources(
                 Arrays.asList(
                     createCpus(cpus, role, principal),
@@ -139,6 +233,34 @@ public class CassandraTaskExecutor {
             .build();
     }
 
+    private static Map<String, String> createConfigEnvironment(
+        final String backupReadMode,
+        final String backupEncryptionKey,
+        final String backupPreviousEncryptionKeys,
+        final int clusterJobMaxRunning,
+        final String clusterJobLimits) {
+        final Map<String, String> environment = new HashMap<>();
+        putIfPresent(environment, BACKUP_READ_MODE, backupReadMode);
+        putIfPresent(environment, BACKUP_ENCRYPTION_KEY, backupEncryptionKey);
+        putIfPresent(environment, BACKUP_PREVIOUS_ENCRYPTION_KEYS,
+            backupPreviousEncryptionKeys);
+        if (clusterJobMaxRunning > 0) {
+            environment.put(CLUSTER_JOB_MAX_RUNNING,
+                Integer.toString(clusterJobMaxRunning));
+        }
+        putIfPresent(environment, CLUSTER_JOB_LIMITS, clusterJobLimits);
+        return environment;
+    }
+
+    private static void putIfPresent(
+        final Map<String, String> environment,
+        final String name,
+        final String value) {
+        if (value != null && !value.isEmpty()) {
+            environment.put(name, value);
+        }
+    }
+
     CassandraTaskExecutor(final Protos.ExecutorInfo info) {
         this.info = info;
     }
@@ -219,6 +341,16 @@ public class CassandraTaskExecutor {
         return getValue("JAVA_HOME", info.getCommand().getEnvironment());
     }
 
+    /**
+     * Gets the backup read mode.
+     *
+     * @return The way the executor reads files for a backup, or an empty
+     * string if it uses its default.
+     */
+    public String getBackupReadMode() {
+        return getValue(BACKUP_READ_MODE, info.getCommand().getEnvironment());
+    }
+
     /**
      * Gets the executors memory allocation.
      *
@@ -257,6 +389,31 @@ public class CassandraTaskExecutor {
                 getHeapMb() == config.getHeapMb();
     }
 
+    /**
+     * Updates the backup and cluster job settings of the executor.
+     *
+     * @param config The ExecutorConfig that holds the settings.
+     * @return A copy of the executor whose environment holds the backup
+     * read mode, the encryption keys and the cluster job limits of config.
+     */
+    public CassandraTaskExecutor updateEnvironment(
+        final ExecutorConfig config) {
+        final Map<String, String> environment =
+            toMap(info.getCommand().getEnvironment());
+        environment.keySet().removeAll(CONFIG_ENVIRONMENT);
+        environment.putAll(createConfigEnvironment(
+            config.getBackupReadMode(),
+            config.getBackupEncryptionKey(),
+            config.getBackupPreviousEncryptionKeys(),
+            config.getClusterJobMaxRunning(),
+            config.getClusterJobLimits()));
+        return parse(
+            Protos.ExecutorInfo.newBuilder(info)
+                .setCommand(Protos.CommandInfo.newBuilder(info.getCommand())
+                    .setEnvironment(createEnvironment(environment)))
+                .build());
+    }
+
     public CassandraTaskExecutor update(final ExecutorConfig config) {
         return new CassandraTaskExecutor(
             Protos.ExecutorInfo.newBuilder(info)
@@ -281,6 +438,6 @@ public class CassandraTaskExecutor {
 
     @Override
     public String toString() {
-        return TextFormat.shortDebugString(this.info);
+        return TextFormat.shortDebugString(redact(this.info));
     }
 }
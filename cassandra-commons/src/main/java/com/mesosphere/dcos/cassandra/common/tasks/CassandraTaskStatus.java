@@ -18,6 +18,7 @@ package com.mesosphere.dcos.cassandra.common.tasks;
 import com.google.protobuf.TextFormat;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupSnapshotStatus;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupUploadStatus;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupVerifyStatus;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.DownloadSnapshotStatus;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreSnapshotStatus;
 import com.mesosphere.dcos.cassandra.common.tasks.cleanup.CleanupStatus;
@@ -109,6 +110,8 @@ public abstract class CassandraTaskStatus {
                 return CleanupStatus.create(status);
             case REPAIR:
                 return RepairStatus.create(status);
+            case BACKUP_VERIFY:
+                return BackupVerifyStatus.create(status);
             default:
                 throw new IOException("Failed to parse task from TaskInfo " +
                     "type information is invalid");
@@ -25,6 +25,8 @@ import com.mesosphere.dcos.cassandra.common.tasks.ClusterTaskContext;
 import com.mesosphere.dcos.cassandra.common.util.JsonUtils;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -64,6 +66,144 @@ public class BackupContext implements ClusterTaskContext, BackupRestoreContext {
             }
         };
 
+    /**
+     * Builder allows for fluent construction of a new BackupContext from
+     * an existing one.
+     */
+    public static class Builder {
+        private String nodeId;
+        private String name;
+        private String externalLocation;
+        private String localLocation;
+        private String accountId;
+        private String secretKey;
+        private boolean incremental;
+        private String compression;
+        private int bandwidthLimitMb;
+        private boolean archiveCommitLog;
+        private boolean shipIncremental;
+        private List<String> keySpaces;
+        private List<String> columnFamilies;
+        private int keepDaily;
+        private int keepWeekly;
+        private String cluster;
+        private int backgroundBandwidthLimitMb;
+
+        private Builder(final BackupContext context) {
+            this.nodeId = context.nodeId;
+            this.name = context.name;
+            this.externalLocation = context.externalLocation;
+            this.localLocation = context.localLocation;
+            this.accountId = context.accountId;
+            this.secretKey = context.secretKey;
+            this.incremental = context.incremental;
+            this.compression = context.compression;
+            this.bandwidthLimitMb = context.bandwidthLimitMb;
+            this.archiveCommitLog = context.archiveCommitLog;
+            this.shipIncremental = context.shipIncremental;
+            this.keySpaces = context.keySpaces;
+            this.columnFamilies = context.columnFamilies;
+            this.keepDaily = context.keepDaily;
+            this.keepWeekly = context.keepWeekly;
+            this.cluster = context.cluster;
+            this.backgroundBandwidthLimitMb =
+                context.backgroundBandwidthLimitMb;
+        }
+
+        public Builder setNodeId(final String nodeId) {
+            this.nodeId = nodeId;
+            return this;
+        }
+
+        public Builder setLocalLocation(final String localLocation) {
+            this.localLocation = localLocation;
+            return this;
+        }
+
+        public Builder setIncremental(final boolean incremental) {
+            this.incremental = incremental;
+            return this;
+        }
+
+        public Builder setCompression(final String compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        public Builder setBandwidthLimitMb(final int bandwidthLimitMb) {
+            this.bandwidthLimitMb = bandwidthLimitMb;
+            return this;
+        }
+
+        public Builder setArchiveCommitLog(final boolean archiveCommitLog) {
+            this.archiveCommitLog = archiveCommitLog;
+            return this;
+        }
+
+        public Builder setShipIncremental(final boolean shipIncremental) {
+            this.shipIncremental = shipIncremental;
+            return this;
+        }
+
+        public Builder setKeySpaces(final List<String> keySpaces) {
+            this.keySpaces = keySpaces;
+            return this;
+        }
+
+        public Builder setColumnFamilies(final List<String> columnFamilies) {
+            this.columnFamilies = columnFamilies;
+            return this;
+        }
+
+        public Builder setKeepDaily(final int keepDaily) {
+            this.keepDaily = keepDaily;
+            return this;
+        }
+
+        public Builder setKeepWeekly(final int keepWeekly) {
+            this.keepWeekly = keepWeekly;
+            return this;
+        }
+
+        public Builder setCluster(final String cluster) {
+            this.cluster = cluster;
+            return this;
+        }
+
+        public Builder setBackgroundBandwidthLimitMb(
+            final int backgroundBandwidthLimitMb) {
+            this.backgroundBandwidthLimitMb = backgroundBandwidthLimitMb;
+            return this;
+        }
+
+        /**
+         * Creates a BackupContext from the properties of the Builder.
+         *
+         * @return A BackupContext whose properties are set to those of the
+         * Builder.
+         */
+        public BackupContext build() {
+            return new BackupContext(
+                nodeId,
+                name,
+                externalLocation,
+                localLocation,
+                accountId,
+                secretKey,
+                incremental,
+                compression,
+                bandwidthLimitMb,
+                archiveCommitLog,
+                shipIncremental,
+                keySpaces,
+                columnFamilies,
+                keepDaily,
+                keepWeekly,
+                cluster,
+                backgroundBandwidthLimitMb);
+        }
+    }
+
     @JsonCreator
     public static BackupContext create(
         @JsonProperty("node_id")
@@ -77,6 +217,59 @@ public class BackupContext implements ClusterTaskContext, BackupRestoreContext {
         @JsonProperty("account_id")
         final String accountId,
         @JsonProperty("secret_key")
+        final String secretKey,
+        @JsonProperty("incremental")
+        final boolean incremental,
+        @JsonProperty("compression")
+        final String compression,
+        @JsonProperty("bandwidth_limit_mb")
+        final int bandwidthLimitMb,
+        @JsonProperty("archive_commit_log")
+        final boolean archiveCommitLog,
+        @JsonProperty("ship_incremental")
+        final boolean shipIncremental,
+        @JsonProperty("key_spaces")
+        final List<String> keySpaces,
+        @JsonProperty("column_families")
+        final List<String> columnFamilies,
+        @JsonProperty("keep_daily")
+        final int keepDaily,
+        @JsonProperty("keep_weekly")
+        final int keepWeekly,
+        @JsonProperty("cluster")
+        final String cluster,
+        @JsonProperty("background_bandwidth_limit_mb")
+        final int backgroundBandwidthLimitMb) {
+        return new BackupContext(
+            nodeId,
+            name,
+            externalLocation,
+            localLocation,
+            accountId,
+            secretKey,
+            incremental,
+            compression,
+            bandwidthLimitMb,
+            archiveCommitLog,
+            shipIncremental,
+            keySpaces,
+            columnFamilies,
+            keepDaily,
+            keepWeekly,
+            cluster,
+            backgroundBandwidthLimitMb);
+    }
+
+    /**
+     * Creates a BackupContext for a full backup of all key spaces with the
+     * default options. The options are set with mutable().
+     */
+    public static BackupContext create(
+        final String nodeId,
+        final String name,
+        final String externalLocation,
+        final String localLocation,
+        final String accountId,
         final String secretKey) {
         return new BackupContext(
             nodeId,
@@ -84,7 +277,18 @@ public class BackupContext implements ClusterTaskContext, BackupRestoreContext {
             externalLocation,
             localLocation,
             accountId,
-            secretKey);
+            secretKey,
+            false,
+            null,
+            0,
+            false,
+            false,
+            Collections.emptyList(),
+            Collections.emptyList(),
+            0,
+            0,
+            null,
+            0);
     }
 
     @JsonProperty("node_id")
@@ -99,20 +303,68 @@ public class BackupContext implements ClusterTaskContext, BackupRestoreContext {
     private final String accountId;
     @JsonProperty("secret_key")
     private final String secretKey;
+    @JsonProperty("incremental")
+    private final boolean incremental;
+    @JsonProperty("compression")
+    private final String compression;
+    @JsonProperty("bandwidth_limit_mb")
+    private final int bandwidthLimitMb;
+    @JsonProperty("archive_commit_log")
+    private final boolean archiveCommitLog;
+    @JsonProperty("ship_incremental")
+    private final boolean shipIncremental;
+    @JsonProperty("key_spaces")
+    private final List<String> keySpaces;
+    @JsonProperty("column_families")
+    private final List<String> columnFamilies;
+    @JsonProperty("keep_daily")
+    private final int keepDaily;
+    @JsonProperty("keep_weekly")
+    private final int keepWeekly;
+    @JsonProperty("cluster")
+    private final String cluster;
+    @JsonProperty("background_bandwidth_limit_mb")
+    private final int backgroundBandwidthLimitMb;
 
 
-    public BackupContext(final String nodeId,
-                         final String name,
-                         final String externalLocation,
-                         final String localLocation,
-                         final String accountId,
-                         final String secretKey) {
+    private BackupContext(final String nodeId,
+                          final String name,
+                          final String externalLocation,
+                          final String localLocation,
+                          final String accountId,
+                          final String secretKey,
+                          final boolean incremental,
+                          final String compression,
+                          final int bandwidthLimitMb,
+                          final boolean archiveCommitLog,
+                          final boolean shipIncremental,
+                          final List<String> keySpaces,
+                          final List<String> columnFamilies,
+                          final int keepDaily,
+                          final int keepWeekly,
+                          final String cluster,
+                          final int backgroundBandwidthLimitMb) {
         this.nodeId = nodeId;
         this.name = name;
         this.externalLocation = externalLocation;
         this.localLocation = localLocation;
         this.accountId = accountId;
         this.secretKey = secretKey;
+        this.incremental = incremental;
+        this.compression = compression;
+        this.bandwidthLimitMb = bandwidthLimitMb;
+        this.archiveCommitLog = archiveCommitLog;
+        this.shipIncremental = shipIncremental;
+        this.keySpaces = (keySpaces == null) ?
+            Collections.emptyList() :
+            keySpaces;
+        this.columnFamilies = (columnFamilies == null) ?
+            Collections.emptyList() :
+            columnFamilies;
+        this.keepDaily = keepDaily;
+        this.keepWeekly = keepWeekly;
+        this.cluster = cluster;
+        this.backgroundBandwidthLimitMb = backgroundBandwidthLimitMb;
     }
 
 
@@ -177,26 +429,181 @@ public class BackupContext implements ClusterTaskContext, BackupRestoreContext {
         return nodeId;
     }
 
+    /**
+     * Gets the incremental mode of the backup.
+     *
+     * @return True if SSTable components that are unchanged since a previous
+     * backup of the node are referenced rather than uploaded again.
+     */
+    @JsonProperty("incremental")
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Gets the compression of the backup.
+     *
+     * @return The codec used to compress the backup's files, e.g. "lz4",
+     * "zstd:6" or "adaptive:lz4", or null for the executor's default.
+     */
+    @JsonProperty("compression")
+    public String getCompression() {
+        return compression;
+    }
+
+    /**
+     * Gets the bandwidth limit of the backup.
+     *
+     * @return The maximum rate at which each node uploads the backup in
+     * MB/s, or 0 if the rate is not limited.
+     */
+    @JsonProperty("bandwidth_limit_mb")
+    public int getBandwidthLimitMb() {
+        return bandwidthLimitMb;
+    }
+
+    /**
+     * Gets the commitlog archiving mode of the backup.
+     *
+     * @return True if each node archives its closed commitlog segments to
+     * the backup's external location after the backup, so the backup can be
+     * restored to a point in time.
+     */
+    @JsonProperty("archive_commit_log")
+    public boolean isArchiveCommitLog() {
+        return archiveCommitLog;
+    }
+
+    /**
+     * Gets the incremental shipping mode of the backup.
+     *
+     * @return True if each node ships the SSTables Cassandra links into the
+     * incremental backups directories of its tables after the backup. The
+     * shipped SSTables are recorded separately from the backup, and are
+     * only restored when a restore asks for them.
+     */
+    @JsonProperty("ship_incremental")
+    public boolean isShipIncremental() {
+        return shipIncremental;
+    }
+
+    /**
+     * Gets the key spaces of the backup.
+     *
+     * @return The key spaces that will be backed up. If empty, all
+     * non-system key spaces are backed up.
+     */
+    @JsonProperty("key_spaces")
+    public List<String> getKeySpaces() {
+        return keySpaces;
+    }
+
+    /**
+     * Gets the column families of the backup.
+     *
+     * @return The column families of the selected key spaces that will be
+     * backed up. If empty, all column families are backed up.
+     */
+    @JsonProperty("column_families")
+    public List<String> getColumnFamilies() {
+        return columnFamilies;
+    }
+
+    /**
+     * Gets the number of daily backups retained.
+     *
+     * @return The number of most recent days for which each node keeps its
+     * latest backup in the external location when the backup is uploaded.
+     * Backups that neither this nor the weekly retention keep are deleted.
+     * If both are 0, every backup is kept.
+     */
+    @JsonProperty("keep_daily")
+    public int getKeepDaily() {
+        return keepDaily;
+    }
+
+    /**
+     * Gets the number of weekly backups retained.
+     *
+     * @return The number of most recent weeks for which each node keeps its
+     * latest backup in the external location when the backup is uploaded.
+     */
+    @JsonProperty("keep_weekly")
+    public int getKeepWeekly() {
+        return keepWeekly;
+    }
+
+    /**
+     * Gets the cluster that takes the backup.
+     *
+     * @return The name of the service that takes the backup. It is recorded
+     * in the manifests of the backup, and a node only deletes expired
+     * backups whose manifest records the same name.
+     */
+    @JsonProperty("cluster")
+    public String getCluster() {
+        return cluster;
+    }
+
+    /**
+     * Gets the bandwidth limit of the background uploads.
+     *
+     * @return The bandwidth limit in MB/s of each upload that continues
+     * after the backup, i.e. incremental backup shipping and commitlog
+     * archiving, or 0 if they are limited like the backup itself.
+     */
+    @JsonProperty("background_bandwidth_limit_mb")
+    public int getBackgroundBandwidthLimitMb() {
+        return backgroundBandwidthLimitMb;
+    }
+
+    /**
+     * Gets a mutable Builder instance.
+     *
+     * @return A Builder whose properties are set to those of the context.
+     */
+    @JsonIgnore
+    public Builder mutable() {
+        return new Builder(this);
+    }
+
+    @JsonIgnore
+    public BackupContext withRetention(final int keepDaily,
+                                       final int keepWeekly) {
+        return mutable().setKeepDaily(keepDaily).setKeepWeekly(keepWeekly)
+            .build();
+    }
+
+    @JsonIgnore
+    public BackupContext withCluster(final String cluster) {
+        return mutable().setCluster(cluster).build();
+    }
+
+    @JsonIgnore
+    public BackupContext withBandwidthLimitMb(final int bandwidthLimitMb) {
+        return mutable().setBandwidthLimitMb(bandwidthLimitMb).build();
+    }
+
+    /**
+     * Gets the context of the background uploads of the backup.
+     *
+     * @return The context with its bandwidth limit set to the background
+     * bandwidth limit, if there is one.
+     */
+    @JsonIgnore
+    public BackupContext forBackground() {
+        return (backgroundBandwidthLimitMb > 0) ?
+            withBandwidthLimitMb(backgroundBandwidthLimitMb) : this;
+    }
+
     @JsonIgnore
     public BackupContext forNode(final String nodeId){
-        return create(
-            nodeId,
-            name,
-            externalLocation,
-            localLocation,
-            accountId,
-            secretKey);
+        return mutable().setNodeId(nodeId).build();
     }
 
     @JsonIgnore
     public BackupContext withLocalLocation(final String localLocation){
-        return create(
-            nodeId,
-            name,
-            externalLocation,
-            localLocation,
-            accountId,
-            secretKey);
+        return mutable().setLocalLocation(localLocation).build();
     }
 
   @Override
@@ -216,12 +623,26 @@ public class BackupContext implements ClusterTaskContext, BackupRestoreContext {
       Objects.equals(getLocalLocation(),
         that.getLocalLocation()) &&
       Objects.equals(getAccountId(), that.getAccountId()) &&
-      Objects.equals(getSecretKey(), that.getSecretKey());
+      Objects.equals(getSecretKey(), that.getSecretKey()) &&
+      isIncremental() == that.isIncremental() &&
+      Objects.equals(getCompression(), that.getCompression()) &&
+      getBandwidthLimitMb() == that.getBandwidthLimitMb() &&
+      isArchiveCommitLog() == that.isArchiveCommitLog() &&
+      isShipIncremental() == that.isShipIncremental() &&
+      Objects.equals(getKeySpaces(), that.getKeySpaces()) &&
+      Objects.equals(getColumnFamilies(), that.getColumnFamilies()) &&
+      getKeepDaily() == that.getKeepDaily() &&
+      getKeepWeekly() == that.getKeepWeekly() &&
+      Objects.equals(getCluster(), that.getCluster()) &&
+      getBackgroundBandwidthLimitMb() == that.getBackgroundBandwidthLimitMb();
   }
 
   @Override
   public int hashCode() {
     return Objects.hash(getNodeId(), getName(), getExternalLocation(),
-      getLocalLocation(), getAccountId(), getSecretKey());
+      getLocalLocation(), getAccountId(), getSecretKey(), isIncremental(),
+      getCompression(), getBandwidthLimitMb(), isArchiveCommitLog(),
+      isShipIncremental(), getKeySpaces(), getColumnFamilies(), getKeepDaily(), getKeepWeekly(),
+      getCluster(), getBackgroundBandwidthLimitMb());
   }
 }
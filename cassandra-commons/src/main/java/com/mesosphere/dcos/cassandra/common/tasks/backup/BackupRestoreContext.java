@@ -1,5 +1,7 @@
 package com.mesosphere.dcos.cassandra.common.tasks.backup;
 
+import java.util.List;
+
 /**
  * Created by gabriel on 7/15/16.
  */
@@ -10,4 +12,7 @@ public interface BackupRestoreContext {
     String getSecretKey();
     String getNodeId();
     String getName();
+    int getBandwidthLimitMb();
+    List<String> getKeySpaces();
+    List<String> getColumnFamilies();
 }
@@ -25,6 +25,8 @@ import com.mesosphere.dcos.cassandra.common.tasks.ClusterTaskContext;
 import com.mesosphere.dcos.cassandra.common.util.JsonUtils;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -46,7 +48,23 @@ public class RestoreContext implements ClusterTaskContext, BackupRestoreContext
         @JsonProperty("account_id")
         final String accountId,
         @JsonProperty("secret_key")
-        final String secretKey) {
+        final String secretKey,
+        @JsonProperty("bandwidth_limit_mb")
+        final int bandwidthLimitMb,
+        @JsonProperty("same_topology")
+        final boolean sameTopology,
+        @JsonProperty("loader_concurrency")
+        final int loaderConcurrency,
+        @JsonProperty("disk_limit_mb")
+        final int diskLimitMb,
+        @JsonProperty("point_in_time_ms")
+        final long pointInTimeMs,
+        @JsonProperty("include_incremental")
+        final boolean includeIncremental,
+        @JsonProperty("key_spaces")
+        final List<String> keySpaces,
+        @JsonProperty("column_families")
+        final List<String> columnFamilies) {
 
         return new RestoreContext(
             nodeId,
@@ -54,7 +72,155 @@ public class RestoreContext implements ClusterTaskContext, BackupRestoreContext
             externalLocation,
             localLocation,
             accountId,
-            secretKey);
+            secretKey,
+            bandwidthLimitMb,
+            sameTopology,
+            loaderConcurrency,
+            diskLimitMb,
+            pointInTimeMs,
+            includeIncremental,
+            keySpaces,
+            columnFamilies);
+    }
+
+    public static final RestoreContext create(
+        final String nodeId,
+        final String name,
+        final String externalLocation,
+        final String localLocation,
+        final String accountId,
+        final String secretKey,
+        final int bandwidthLimitMb,
+        final boolean sameTopology,
+        final int loaderConcurrency,
+        final int diskLimitMb,
+        final long pointInTimeMs) {
+
+        return create(
+            nodeId,
+            name,
+            externalLocation,
+            localLocation,
+            accountId,
+            secretKey,
+            bandwidthLimitMb,
+            sameTopology,
+            loaderConcurrency,
+            diskLimitMb,
+            pointInTimeMs,
+            false,
+            Collections.emptyList(),
+            Collections.emptyList());
+    }
+
+    public static final RestoreContext create(
+        final String nodeId,
+        final String name,
+        final String externalLocation,
+        final String localLocation,
+        final String accountId,
+        final String secretKey,
+        final int bandwidthLimitMb,
+        final boolean sameTopology,
+        final int loaderConcurrency,
+        final int diskLimitMb) {
+
+        return create(
+            nodeId,
+            name,
+            externalLocation,
+            localLocation,
+            accountId,
+            secretKey,
+            bandwidthLimitMb,
+            sameTopology,
+            loaderConcurrency,
+            diskLimitMb,
+            0);
+    }
+
+    public static final RestoreContext create(
+        final String nodeId,
+        final String name,
+        final String externalLocation,
+        final String localLocation,
+        final String accountId,
+        final String secretKey,
+        final int bandwidthLimitMb,
+        final boolean sameTopology,
+        final int loaderConcurrency) {
+
+        return create(
+            nodeId,
+            name,
+            externalLocation,
+            localLocation,
+            accountId,
+            secretKey,
+            bandwidthLimitMb,
+            sameTopology,
+            loaderConcurrency,
+            0);
+    }
+
+    public static final RestoreContext create(
+        final String nodeId,
+        final String name,
+        final String externalLocation,
+        final String localLocation,
+        final String accountId,
+        final String secretKey,
+        final int bandwidthLimitMb,
+        final boolean sameTopology) {
+
+        return create(
+            nodeId,
+            name,
+            externalLocation,
+            localLocation,
+            accountId,
+            secretKey,
+            bandwidthLimitMb,
+            sameTopology,
+            0);
+    }
+
+    public static final RestoreContext create(
+        final String nodeId,
+        final String name,
+        final String externalLocation,
+        final String localLocation,
+        final String accountId,
+        final String secretKey,
+        final int bandwidthLimitMb) {
+
+        return create(
+            nodeId,
+            name,
+            externalLocation,
+            localLocation,
+            accountId,
+            secretKey,
+            bandwidthLimitMb,
+            false);
+    }
+
+    public static final RestoreContext create(
+        final String nodeId,
+        final String name,
+        final String externalLocation,
+        final String localLocation,
+        final String accountId,
+        final String secretKey) {
+
+        return create(
+            nodeId,
+            name,
+            externalLocation,
+            localLocation,
+            accountId,
+            secretKey,
+            0);
     }
 
     @JsonProperty("node_id")
@@ -69,6 +235,22 @@ public class RestoreContext implements ClusterTaskContext, BackupRestoreContext
     private final String accountId;  // s3AccessKey or AccountName (prinicipal for service)
     @JsonProperty("secret_key")
     private final String secretKey;
+    @JsonProperty("bandwidth_limit_mb")
+    private final int bandwidthLimitMb;
+    @JsonProperty("same_topology")
+    private final boolean sameTopology;
+    @JsonProperty("loader_concurrency")
+    private final int loaderConcurrency;
+    @JsonProperty("disk_limit_mb")
+    private final int diskLimitMb;
+    @JsonProperty("point_in_time_ms")
+    private final long pointInTimeMs;
+    @JsonProperty("include_incremental")
+    private final boolean includeIncremental;
+    @JsonProperty("key_spaces")
+    private final List<String> keySpaces;
+    @JsonProperty("column_families")
+    private final List<String> columnFamilies;
 
     public RestoreContext(final String nodeId,
                           final String name,
@@ -76,12 +258,70 @@ public class RestoreContext implements ClusterTaskContext, BackupRestoreContext
                           final String localLocation,
                           final String accountId,
                           final String secretKey) {
+        this(nodeId, name, externalLocation, localLocation, accountId,
+            secretKey, 0);
+    }
+
+    public RestoreContext(final String nodeId,
+                          final String name,
+                          final String externalLocation,
+                          final String localLocation,
+                          final String accountId,
+                          final String secretKey,
+                          final int bandwidthLimitMb) {
+        this(nodeId, name, externalLocation, localLocation, accountId,
+            secretKey, bandwidthLimitMb, false, 0, 0, 0);
+    }
+
+    public RestoreContext(final String nodeId,
+                          final String name,
+                          final String externalLocation,
+                          final String localLocation,
+                          final String accountId,
+                          final String secretKey,
+                          final int bandwidthLimitMb,
+                          final boolean sameTopology,
+                          final int loaderConcurrency,
+                          final int diskLimitMb,
+                          final long pointInTimeMs) {
+        this(nodeId, name, externalLocation, localLocation, accountId,
+            secretKey, bandwidthLimitMb, sameTopology, loaderConcurrency,
+            diskLimitMb, pointInTimeMs, false, Collections.emptyList(),
+            Collections.emptyList());
+    }
+
+    public RestoreContext(final String nodeId,
+                          final String name,
+                          final String externalLocation,
+                          final String localLocation,
+                          final String accountId,
+                          final String secretKey,
+                          final int bandwidthLimitMb,
+                          final boolean sameTopology,
+                          final int loaderConcurrency,
+                          final int diskLimitMb,
+                          final long pointInTimeMs,
+                          final boolean includeIncremental,
+                          final List<String> keySpaces,
+                          final List<String> columnFamilies) {
         this.nodeId = nodeId;
         this.externalLocation = externalLocation;
         this.name = name;
         this.localLocation = localLocation;
         this.accountId = accountId;
         this.secretKey = secretKey;
+        this.bandwidthLimitMb = bandwidthLimitMb;
+        this.sameTopology = sameTopology;
+        this.loaderConcurrency = loaderConcurrency;
+        this.diskLimitMb = diskLimitMb;
+        this.pointInTimeMs = pointInTimeMs;
+        this.includeIncremental = includeIncremental;
+        this.keySpaces = (keySpaces == null) ?
+            Collections.emptyList() :
+            keySpaces;
+        this.columnFamilies = (columnFamilies == null) ?
+            Collections.emptyList() :
+            columnFamilies;
     }
 
     /**
@@ -146,6 +386,110 @@ public class RestoreContext implements ClusterTaskContext, BackupRestoreContext
         return nodeId;
     }
 
+    /**
+     * Gets the bandwidth limit of the restore.
+     *
+     * @return The maximum rate at which each node downloads the backup in
+     * MB/s, or 0 if the rate is not limited.
+     */
+    @JsonProperty("bandwidth_limit_mb")
+    public int getBandwidthLimitMb() {
+        return bandwidthLimitMb;
+    }
+
+    /**
+     * Gets the restore mode.
+     *
+     * @return True if the ring has the same topology and tokens as the
+     * backed up ring, so each node restores its backup by moving the
+     * SSTables into its data directories and refreshing the tables, false
+     * if the SSTables are streamed to the ring with sstableloader.
+     */
+    @JsonProperty("same_topology")
+    public boolean isSameTopology() {
+        return sameTopology;
+    }
+
+    /**
+     * Gets the loader concurrency of the restore.
+     *
+     * @return The maximum number of sstableloader processes each node runs
+     * in parallel, or 0 to use the executor's default.
+     */
+    @JsonProperty("loader_concurrency")
+    public int getLoaderConcurrency() {
+        return loaderConcurrency;
+    }
+
+    /**
+     * Gets the disk limit of the restore.
+     *
+     * @return The maximum disk space in MB that each node uses for
+     * downloaded files that have not been loaded yet, or 0 to download the
+     * whole backup before loading it. When it is set, SSTables are loaded
+     * as soon as they are downloaded and then deleted, so the download and
+     * load of a node overlap.
+     */
+    @JsonProperty("disk_limit_mb")
+    public int getDiskLimitMb() {
+        return diskLimitMb;
+    }
+
+    /**
+     * Gets the point in time of the restore.
+     *
+     * @return The time in milliseconds since the epoch up to which the
+     * archived commitlog of each node is replayed after the backup is
+     * restored, or 0 to restore the backup only.
+     */
+    @JsonProperty("point_in_time_ms")
+    public long getPointInTimeMs() {
+        return pointInTimeMs;
+    }
+
+    /**
+     * Gets the incremental mode of the restore.
+     *
+     * @return True if the SSTables that were shipped to the backup after
+     * its snapshot are restored with it, false to restore the snapshot only.
+     */
+    @JsonProperty("include_incremental")
+    public boolean isIncludeIncremental() {
+        return includeIncremental;
+    }
+
+    /**
+     * Gets the key spaces of the restore.
+     *
+     * @return The key spaces that will be restored from the backup. If
+     * empty, all key spaces in the backup are restored.
+     */
+    @JsonProperty("key_spaces")
+    public List<String> getKeySpaces() {
+        return keySpaces;
+    }
+
+    /**
+     * Gets the column families of the restore.
+     *
+     * @return The column families of the selected key spaces that will be
+     * restored. If empty, all column families are restored.
+     */
+    @JsonProperty("column_families")
+    public List<String> getColumnFamilies() {
+        return columnFamilies;
+    }
+
+    /**
+     * Tests if the restore is pipelined.
+     *
+     * @return True if SSTables are loaded while the backup is downloaded.
+     */
+    @JsonIgnore
+    public boolean isPipelined() {
+        return diskLimitMb > 0;
+    }
+
     @Override
     public String toString() {
         return JsonUtils.toJsonString(this);
@@ -163,13 +507,26 @@ public class RestoreContext implements ClusterTaskContext, BackupRestoreContext
                 Objects.equals(getLocalLocation(),
                         that.getLocalLocation()) &&
                 Objects.equals(getAccountId(), that.getAccountId()) &&
-                Objects.equals(getSecretKey(), that.getSecretKey());
+                Objects.equals(getSecretKey(), that.getSecretKey()) &&
+                getBandwidthLimitMb() == that.getBandwidthLimitMb() &&
+                isSameTopology() == that.isSameTopology() &&
+                getLoaderConcurrency() == that.getLoaderConcurrency() &&
+                getDiskLimitMb() == that.getDiskLimitMb() &&
+                getPointInTimeMs() == that.getPointInTimeMs() &&
+                isIncludeIncremental() == that.isIncludeIncremental() &&
+                Objects.equals(getKeySpaces(), that.getKeySpaces()) &&
+                Objects.equals(getColumnFamilies(),
+                        that.getColumnFamilies());
     }
 
     @Override
     public int hashCode() {
         return Objects.hash(getNodeId(), getName(), getExternalLocation(),
-                getLocalLocation(), getAccountId(), getSecretKey());
+                getLocalLocation(), getAccountId(), getSecretKey(),
+                getBandwidthLimitMb(), isSameTopology(),
+                getLoaderConcurrency(), getDiskLimitMb(),
+                getPointInTimeMs(), isIncludeIncremental(), getKeySpaces(),
+                getColumnFamilies());
     }
 
     @JsonIgnore
@@ -180,7 +537,15 @@ public class RestoreContext implements ClusterTaskContext, BackupRestoreContext
             externalLocation,
             localLocation,
             accountId,
-            secretKey);
+            secretKey,
+            bandwidthLimitMb,
+            sameTopology,
+            loaderConcurrency,
+            diskLimitMb,
+            pointInTimeMs,
+            includeIncremental,
+            keySpaces,
+            columnFamilies);
     }
 
     @JsonIgnore
@@ -191,7 +556,15 @@ public class RestoreContext implements ClusterTaskContext, BackupRestoreContext
             externalLocation,
             localLocation,
             accountId,
-            secretKey);
+            secretKey,
+            bandwidthLimitMb,
+            sameTopology,
+            loaderConcurrency,
+            diskLimitMb,
+            pointInTimeMs,
+            includeIncremental,
+            keySpaces,
+            columnFamilies);
     }
 
     /**
@@ -1,6 +1,7 @@
 package com.mesosphere.dcos.cassandra.common.tasks;
 
 import com.mesosphere.dcos.cassandra.common.config.*;
+import com.mesosphere.dcos.cassandra.common.util.TaskUtils;
 import org.apache.mesos.Protos;
 import org.apache.mesos.offer.VolumeRequirement;
 import org.junit.Assert;
@@ -11,6 +12,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -39,7 +41,12 @@ public class CassandraDaemonTaskTest {
                 new URI("http://cassandra-location"),
                 "ulimit-mem-lock",
                 "ulimit-no-file",
-                "ulimit-nproc");
+                "ulimit-nproc",
+                "mapped",
+                "",
+                "",
+                4,
+                "");
 
         testTaskExecutor = CassandraTaskExecutor.create(
                 "test-framework-id",
@@ -154,6 +161,48 @@ public class CassandraDaemonTaskTest {
         Assert.assertEquals(originalTaskInfoDisk, updatedTaskInfoDisk, 0.0);
     }
 
+    @Test
+    public void testUpdateExecutorConfig() throws URISyntaxException {
+        CassandraDaemonTask daemonTask = CassandraDaemonTask.create(
+          TEST_DAEMON_NAME,
+          TEST_CONFIG_NAME,
+                testTaskExecutor,
+                CassandraConfig.DEFAULT);
+
+        ExecutorConfig updatedExecutorConfig = ExecutorConfig.create(
+                "test-cmd",
+                Arrays.asList("arg0"),
+                1.0,
+                256,
+                500,
+                1000,
+                "java-home",
+                new URI("http://jre-location"),
+                new URI("http://executor-location"),
+                new URI("http://cassandra-location"),
+                "ulimit-mem-lock",
+                "ulimit-no-file",
+                "ulimit-nproc",
+                "channel",
+                "test-key",
+                "",
+                2,
+                "REPAIR=1");
+
+        CassandraDaemonTask updatedTask = daemonTask.updateConfig(
+                CassandraConfig.DEFAULT, updatedExecutorConfig, TEST_CONFIG_ID);
+        Map<String, String> environment = TaskUtils.toMap(updatedTask
+                .getExecutor().getExecutorInfo().getCommand().getEnvironment());
+        Assert.assertEquals("channel", updatedTask.getExecutor().getBackupReadMode());
+        Assert.assertEquals("test-key",
+                environment.get(CassandraTaskExecutor.BACKUP_ENCRYPTION_KEY));
+        Assert.assertEquals("2",
+                environment.get(CassandraTaskExecutor.CLUSTER_JOB_MAX_RUNNING));
+        Assert.assertEquals("REPAIR=1",
+                environment.get(CassandraTaskExecutor.CLUSTER_JOB_LIMITS));
+        Assert.assertEquals("java-home", updatedTask.getExecutor().getJavaHome());
+    }
+
     private Protos.TaskInfo normalizeCassandraTaskInfo(CassandraDaemonTask daemonTask) {
         Protos.TaskInfo daemonTaskInfo = daemonTask.getTaskInfo();
         Protos.ExecutorInfo expectedExecutorInfo = Protos.ExecutorInfo.newBuilder(daemonTaskInfo.getExecutor())
@@ -0,0 +1,189 @@
+package com.mesosphere.dcos.cassandra.common.tasks;
+
+import com.mesosphere.dcos.cassandra.common.config.ExecutorConfig;
+import com.mesosphere.dcos.cassandra.common.util.TaskUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * This class tests the CassandraTaskExecutor class.
+ */
+public class CassandraTaskExecutorTest {
+
+    private static final String KEY =
+            "MDEyMzQ1Njc4OWFiY2RlZjAxMjM0NTY3ODlhYmNkZWY=";
+    private static final String PREVIOUS_KEYS =
+            "ZmVkY2JhOTg3NjU0MzIxMA==,MDEyMzQ1Njc4OWFiY2RlZg==";
+
+    private static ExecutorConfig config(String backupReadMode)
+            throws URISyntaxException {
+        return config(backupReadMode, null, null);
+    }
+
+    private static ExecutorConfig config(String backupReadMode,
+                                         String backupEncryptionKey,
+                                         String backupPreviousEncryptionKeys)
+            throws URISyntaxException {
+        return config(backupReadMode, backupEncryptionKey,
+                backupPreviousEncryptionKeys, 0, null);
+    }
+
+    private static ExecutorConfig config(String backupReadMode,
+                                         String backupEncryptionKey,
+                                         String backupPreviousEncryptionKeys,
+                                         int clusterJobMaxRunning,
+                                         String clusterJobLimits)
+            throws URISyntaxException {
+        return ExecutorConfig.create(
+                "test-cmd",
+                Arrays.asList("arg0"),
+                1.0,
+                256,
+                500,
+                1000,
+                "java-home",
+                new URI("http://jre-location"),
+                new URI("http://executor-location"),
+                new URI("http://cassandra-location"),
+                "ulimit-mem-lock",
+                "ulimit-no-file",
+                "ulimit-nproc",
+                backupReadMode,
+                backupEncryptionKey,
+                backupPreviousEncryptionKeys,
+                clusterJobMaxRunning,
+                clusterJobLimits);
+    }
+
+    private static Map<String, String> environment(ExecutorConfig config) {
+        return TaskUtils.toMap(CassandraTaskExecutor.create(
+                "test-framework-id",
+                "test-executor",
+                "test-role",
+                "test-principal",
+                config).getExecutorInfo().getCommand().getEnvironment());
+    }
+
+    @Test
+    public void testBackupReadModeReachesExecutor() throws Exception {
+        final CassandraTaskExecutor executor = CassandraTaskExecutor.create(
+                "test-framework-id",
+                "test-executor",
+                "test-role",
+                "test-principal",
+                config("mapped"));
+        Assert.assertEquals("mapped", executor.getBackupReadMode());
+        Assert.assertEquals("mapped", environment(config("mapped"))
+                .get(CassandraTaskExecutor.BACKUP_READ_MODE));
+    }
+
+    @Test
+    public void testUnsetBackupReadModeIsNotInEnvironment() throws Exception {
+        Assert.assertFalse(environment(config(null))
+                .containsKey(CassandraTaskExecutor.BACKUP_READ_MODE));
+        Assert.assertFalse(environment(config(""))
+                .containsKey(CassandraTaskExecutor.BACKUP_READ_MODE));
+    }
+
+    @Test
+    public void testBackupReadModeIsSerialized() throws Exception {
+        final ExecutorConfig config = config("mapped");
+        final ExecutorConfig parsed = ExecutorConfig.JSON_SERIALIZER
+                .deserialize(ExecutorConfig.JSON_SERIALIZER.serialize(config));
+        Assert.assertEquals("mapped", parsed.getBackupReadMode());
+        Assert.assertEquals(config, parsed);
+    }
+
+    @Test
+    public void testBackupEncryptionKeysReachExecutor() throws Exception {
+        final Map<String, String> environment =
+                environment(config("channel", KEY, PREVIOUS_KEYS));
+        Assert.assertEquals(KEY,
+                environment.get(CassandraTaskExecutor.BACKUP_ENCRYPTION_KEY));
+        Assert.assertEquals(PREVIOUS_KEYS, environment.get(
+                CassandraTaskExecutor.BACKUP_PREVIOUS_ENCRYPTION_KEYS));
+    }
+
+    @Test
+    public void testUnsetBackupEncryptionKeysAreNotInEnvironment()
+            throws Exception {
+        final Map<String, String> environment =
+                environment(config("channel", "", ""));
+        Assert.assertFalse(environment.containsKey(
+                CassandraTaskExecutor.BACKUP_ENCRYPTION_KEY));
+        Assert.assertFalse(environment.containsKey(
+                CassandraTaskExecutor.BACKUP_PREVIOUS_ENCRYPTION_KEYS));
+    }
+
+    @Test
+    public void testBackupEncryptionKeysAreRedacted() throws Exception {
+        final ExecutorConfig config = config("channel", KEY, PREVIOUS_KEYS);
+        final CassandraTaskExecutor executor = CassandraTaskExecutor.create(
+                "test-framework-id",
+                "test-executor",
+                "test-role",
+                "test-principal",
+                config);
+        Assert.assertFalse(executor.toString().contains(KEY));
+        Assert.assertFalse(config.toString().contains(KEY));
+        Assert.assertEquals("", config.redacted().getBackupEncryptionKey());
+        Assert.assertEquals("",
+                config.redacted().getBackupPreviousEncryptionKeys());
+        Assert.assertEquals("channel", config.redacted().getBackupReadMode());
+
+        // The persisted config keeps the keys.
+        final ExecutorConfig parsed = ExecutorConfig.JSON_SERIALIZER
+                .deserialize(ExecutorConfig.JSON_SERIALIZER.serialize(config));
+        Assert.assertEquals(config, parsed);
+        Assert.assertEquals(KEY, parsed.getBackupEncryptionKey());
+    }
+
+    @Test
+    public void testUpdateEnvironment() throws Exception {
+        final CassandraTaskExecutor executor = CassandraTaskExecutor.create(
+                "test-framework-id",
+                "test-executor",
+                "test-role",
+                "test-principal",
+                config("mapped", KEY, PREVIOUS_KEYS, 4, "REPAIR=1"));
+
+        final Map<String, String> environment = TaskUtils.toMap(executor
+                .updateEnvironment(config("channel", KEY, "", 2, ""))
+                .getExecutorInfo().getCommand().getEnvironment());
+        Assert.assertEquals("channel",
+                environment.get(CassandraTaskExecutor.BACKUP_READ_MODE));
+        Assert.assertEquals(KEY,
+                environment.get(CassandraTaskExecutor.BACKUP_ENCRYPTION_KEY));
+        Assert.assertFalse(environment.containsKey(
+                CassandraTaskExecutor.BACKUP_PREVIOUS_ENCRYPTION_KEYS));
+        Assert.assertEquals("2",
+                environment.get(CassandraTaskExecutor.CLUSTER_JOB_MAX_RUNNING));
+        Assert.assertFalse(environment.containsKey(
+                CassandraTaskExecutor.CLUSTER_JOB_LIMITS));
+        Assert.assertEquals("java-home", environment.get("JAVA_HOME"));
+    }
+
+    @Test
+    public void testClusterJobEnvironment() throws Exception {
+        final Map<String, String> environment = environment(
+                config("channel", null, null, 6, "REPAIR=1,BACKUP_UPLOAD=3"));
+        Assert.assertEquals("6",
+                environment.get(CassandraTaskExecutor.CLUSTER_JOB_MAX_RUNNING));
+        Assert.assertEquals("REPAIR=1,BACKUP_UPLOAD=3",
+                environment.get(CassandraTaskExecutor.CLUSTER_JOB_LIMITS));
+    }
+
+    @Test
+    public void testClusterJobEnvironmentDefaults() throws Exception {
+        final Map<String, String> environment = environment(config("channel"));
+        Assert.assertFalse(environment.containsKey(
+                CassandraTaskExecutor.CLUSTER_JOB_MAX_RUNNING));
+        Assert.assertFalse(environment.containsKey(
+                CassandraTaskExecutor.CLUSTER_JOB_LIMITS));
+    }
+}
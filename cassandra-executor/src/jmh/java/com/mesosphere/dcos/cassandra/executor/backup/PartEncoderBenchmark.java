@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.mesosphere.dcos.cassandra.executor.compress.CompressionDriver;
+import com.mesosphere.dcos.cassandra.executor.compress.CompressionDrivers;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xerial.snappy.SnappyOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the single core throughput of encoding a snapshot file for
+ * upload, in MB/s. Each invocation encodes a FILE_SIZE_MB file that is half
+ * random and half repetitive, which is roughly the mix of an SSTable data
+ * file and its index and summary components. The legacy benchmark measures
+ * the SnappyOutputStream path used before PartEncoder, including the MD5
+ * digest of the compressed stream, for comparison. The encode benchmark
+ * runs once per codec, e.g. -jmhArgs="-p codec=lz4", with and without
+ * AES-GCM encryption of the frames.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PartEncoderBenchmark {
+
+    private static final int FILE_SIZE_MB = 64;
+    private static final int PART_SIZE = S3StorageDriver.DEFAULT_PART_SIZE_UPLOAD;
+
+    @Param({"none", "snappy", "lz4", "zstd:1", "zstd:3"})
+    public String codec;
+
+    @Param({"false", "true"})
+    public boolean encrypted;
+
+    private File file;
+    private CompressionDriver driver;
+    private PartEncoder encoder;
+    private ByteBuffer chunk;
+    private ByteBuffer part;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final byte[] bytes = new byte[FILE_SIZE_MB * 1024 * 1024];
+        final Random random = new Random(0);
+        random.nextBytes(bytes);
+        final byte[] row = "key:0000000000|column:value|timestamp:1466000000"
+            .getBytes("UTF-8");
+        for (int i = bytes.length / 2; i < bytes.length; i++) {
+            bytes[i] = row[i % row.length];
+        }
+        file = File.createTempFile("part-encoder", ".db");
+        Files.write(file.toPath(), bytes);
+        driver = CompressionDrivers.create(codec);
+        encoder = new PartEncoder(PART_SIZE, PartEncoder.DEFAULT_CHUNK_SIZE,
+            encrypted ? new BackupCipher(new byte[32]) : null);
+        chunk = ByteBuffer.allocateDirect(encoder.getChunkSize());
+        part = ByteBuffer.allocateDirect(PartEncoder.partBufferSize(
+            PART_SIZE, encoder.getChunkSize()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE_SIZE_MB)
+    public PartIndex encode(final Blackhole blackhole) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.READ)) {
+            return encoder.encode(channel, chunk, driver,
+                new PartEncoder.PartHandler() {
+                    @Override
+                    public ByteBuffer acquire() {
+                        part.clear();
+                        return part;
+                    }
+
+                    @Override
+                    public void release(ByteBuffer buffer) {
+                    }
+
+                    @Override
+                    public void accept(int partNumber,
+                                       ByteBuffer buffer,
+                                       byte[] md5) {
+                        blackhole.consume(md5);
+                    }
+                });
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE_SIZE_MB)
+    public long legacy() throws IOException {
+        try (InputStream in = new BufferedInputStream(
+            new FileInputStream(file), 64 * 1024);
+             OutputStream out = new SnappyOutputStream(
+                 new DigestOutputStream(new NullOutputStream(),
+                     PartEncoder.md5()))) {
+            return IOUtils.copyLarge(in, out);
+        }
+    }
+}
@@ -549,6 +549,19 @@ public class CassandraDaemonProcess {
         probe.takeSnapshot(name, null, keySpace);
     }
 
+    /**
+     * Takes a snapshot of the indicated table with the given name.
+     *
+     * @param name     The name of the snapshot.
+     * @param keySpace The name of the key space.
+     * @param table    The name of the table.
+     * @throws IOException If an error occurs taking the snapshot.
+     */
+    public void takeSnapShot(String name, String keySpace, String table)
+        throws IOException {
+        probe.takeSnapshot(name, table, keySpace);
+    }
+
     /**
      * Performs anti-entropy repair on the indicated keySpace.
      *
@@ -581,6 +594,17 @@ public class CassandraDaemonProcess {
         probe.clearSnapshot(name, keySpaces);
     }
 
+    /**
+     * Loads the SSTables that were placed in the data directory of a table
+     * since it was last loaded, as nodetool refresh does.
+     *
+     * @param keySpace The key space of the table.
+     * @param table    The name of the table.
+     */
+    public void loadNewSSTables(String keySpace, String table) {
+        probe.loadNewSSTables(keySpace, table);
+    }
+
     /**
      * Decommissions the node. Leaving the node as a ring member that is not
      * responsible for a token range and that is ready to be removed.
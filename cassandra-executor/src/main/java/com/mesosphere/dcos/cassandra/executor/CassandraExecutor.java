@@ -17,13 +17,18 @@ package com.mesosphere.dcos.cassandra.executor;
 
 import com.google.inject.Inject;
 import com.mesosphere.dcos.cassandra.common.tasks.CassandraDaemonTask;
+import com.mesosphere.dcos.cassandra.common.tasks.CassandraMode;
 import com.mesosphere.dcos.cassandra.common.tasks.CassandraTask;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupSnapshotTask;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupUploadTask;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupVerifyTask;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.DownloadSnapshotTask;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreSnapshotTask;
 import com.mesosphere.dcos.cassandra.common.tasks.cleanup.CleanupTask;
 import com.mesosphere.dcos.cassandra.common.tasks.repair.RepairTask;
+import com.mesosphere.dcos.cassandra.executor.backup.CommitLogArchiver;
+import com.mesosphere.dcos.cassandra.executor.backup.IncrementalBackupShipper;
+import com.mesosphere.dcos.cassandra.executor.backup.SnapshotJanitor;
 import com.mesosphere.dcos.cassandra.executor.backup.StorageDriverFactory;
 import com.mesosphere.dcos.cassandra.executor.tasks.*;
 import org.apache.mesos.Executor;
@@ -36,6 +41,7 @@ import java.io.IOException;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * CassandraExecutor implements the Executor for the framework. It is
@@ -51,7 +57,10 @@ public class CassandraExecutor implements Executor {
     private volatile CassandraDaemonProcess cassandra;
     private String nodeId = null;
     private final ScheduledExecutorService executor;
-    private final ExecutorService clusterJobExecutorService;
+    private final ClusterJobQueue clusterJobs;
+    private final CommitLogArchiver commitLogArchiver;
+    private final IncrementalBackupShipper incrementalBackupShipper;
+    private final SnapshotJanitor snapshotJanitor;
 
     private String getNodeId(String executorName) {
         int end = executorName.indexOf("_");
@@ -75,6 +84,11 @@ public class CassandraExecutor implements Executor {
                     "status = {}",
                 daemonStatus);
         } else {
+            // Segments staged by a point in time restore are replayed
+            // when the daemon starts.
+            commitLogArchiver.writeProperties(CassandraPaths.create(
+                ((CassandraDaemonTask) task).getConfig().getVersion())
+                .commitLogArchiving());
             cassandra = CassandraDaemonProcess.create(
                 (CassandraDaemonTask) task,
                 executor,
@@ -108,55 +122,78 @@ public class CassandraExecutor implements Executor {
             return;
         }
 
+        final CassandraDaemonProcess daemon = cassandra;
         switch (cassandraTask.getType()) {
             case BACKUP_SNAPSHOT:
-                clusterJobExecutorService.submit(new BackupSnapshot(
-                    driver,
-                    cassandra,
-                    (BackupSnapshotTask) cassandraTask));
+                clusterJobs.submit(cassandraTask, driver, jobDriver ->
+                    new BackupSnapshot(
+                        jobDriver,
+                        daemon,
+                        (BackupSnapshotTask) cassandraTask,
+                        snapshotJanitor));
                 break;
 
             case BACKUP_UPLOAD:
-              clusterJobExecutorService.submit(new UploadSnapshot(
-                driver,
-                cassandra,
-                (BackupUploadTask) cassandraTask,
-                StorageDriverFactory.createStorageDriver((BackupUploadTask) cassandraTask)));
+              clusterJobs.submit(cassandraTask, driver, jobDriver ->
+                new UploadSnapshot(
+                  jobDriver,
+                  daemon,
+                  (BackupUploadTask) cassandraTask,
+                  StorageDriverFactory.createStorageDriver((BackupUploadTask) cassandraTask),
+                  commitLogArchiver,
+                  incrementalBackupShipper,
+                  snapshotJanitor));
 
                 break;
 
             case SNAPSHOT_DOWNLOAD:
-              clusterJobExecutorService.submit(new DownloadSnapshot(
-                driver,
-                (DownloadSnapshotTask) cassandraTask,
-                nodeId,
-                StorageDriverFactory.createStorageDriver((DownloadSnapshotTask) cassandraTask)));
+              clusterJobs.submit(cassandraTask, driver, jobDriver ->
+                new DownloadSnapshot(
+                  jobDriver,
+                  daemon,
+                  (DownloadSnapshotTask) cassandraTask,
+                  nodeId,
+                  daemon.getTask().getConfig().getVersion(),
+                  StorageDriverFactory.createStorageDriver((DownloadSnapshotTask) cassandraTask)));
               break;
 
             case SNAPSHOT_RESTORE:
 
-                clusterJobExecutorService.submit(new RestoreSnapshot(
-                    driver,
-                    (RestoreSnapshotTask) cassandraTask,
-                    nodeId,
-                    cassandra.getTask().getConfig().getVersion()));
+                clusterJobs.submit(cassandraTask, driver, jobDriver ->
+                    new RestoreSnapshot(
+                        jobDriver,
+                        daemon,
+                        (RestoreSnapshotTask) cassandraTask,
+                        nodeId,
+                        daemon.getTask().getConfig().getVersion()));
+
+                break;
+
+            case BACKUP_VERIFY:
+                clusterJobs.submit(cassandraTask, driver, jobDriver ->
+                    new VerifyBackup(
+                        jobDriver,
+                        (BackupVerifyTask) cassandraTask,
+                        StorageDriverFactory.createStorageDriver(
+                            (BackupVerifyTask) cassandraTask)));
 
                 break;
 
             case CLEANUP:
-                clusterJobExecutorService.submit(
+                clusterJobs.submit(cassandraTask, driver, jobDriver ->
                     new Cleanup(
-                        driver,
-                        cassandra,
+                        jobDriver,
+                        daemon,
                         (CleanupTask) cassandraTask));
 
                 break;
 
             case REPAIR:
-                clusterJobExecutorService.submit(new Repair(
-                    driver,
-                    cassandra,
-                    (RepairTask) cassandraTask));
+                clusterJobs.submit(cassandraTask, driver, jobDriver ->
+                    new Repair(
+                        jobDriver,
+                        daemon,
+                        (RepairTask) cassandraTask));
 
                 break;
 
@@ -184,13 +221,43 @@ public class CassandraExecutor implements Executor {
      *                                  CassandraDaemonProcess for its watchdog and monitoring
      *                                  tasks.
      * @param clusterJobExecutorService The ExecutorService used by the
-     *                                  Executor to run ClusterTasks.
+     *                                  Executor to run ClusterTasks. The
+     *                                  number of ClusterTasks that run at
+     *                                  once is bounded by a ClusterJobQueue.
      */
     @Inject
     public CassandraExecutor(final ScheduledExecutorService executor,
                              final ExecutorService clusterJobExecutorService) {
         this.executor = executor;
-        this.clusterJobExecutorService = clusterJobExecutorService;
+        this.clusterJobs = ClusterJobQueue.fromEnvironment(
+            clusterJobExecutorService);
+        this.commitLogArchiver = new CommitLogArchiver(
+            CommitLogArchiver.defaultArchiveDirectory(),
+            CommitLogArchiver.defaultRestoreDirectory(),
+            CommitLogArchiver.DEFAULT_MAX_PENDING_BYTES,
+            () -> cassandra != null && cassandra.isOpen() &&
+                cassandra.getMode() == CassandraMode.NORMAL);
+        executor.scheduleWithFixedDelay(commitLogArchiver,
+            CommitLogArchiver.DEFAULT_INTERVAL_MS,
+            CommitLogArchiver.DEFAULT_INTERVAL_MS,
+            TimeUnit.MILLISECONDS);
+        this.incrementalBackupShipper = new IncrementalBackupShipper(
+            IncrementalBackupShipper.defaultDirectory(),
+            IncrementalBackupShipper.DEFAULT_BATCH_FILES,
+            IncrementalBackupShipper.DEFAULT_BATCH_BYTES,
+            IncrementalBackupShipper.DEFAULT_QUIET_MS);
+        executor.submit(incrementalBackupShipper);
+        this.snapshotJanitor = new SnapshotJanitor(
+            SnapshotJanitor.defaultDirectory(),
+            SnapshotJanitor.DEFAULT_GRACE_MS,
+            SnapshotJanitor.DEFAULT_MAX_AGE_MS,
+            () -> cassandra != null && cassandra.isOpen() &&
+                cassandra.getMode() == CassandraMode.NORMAL,
+            name -> cassandra.clearSnapShot(name));
+        executor.scheduleWithFixedDelay(snapshotJanitor,
+            SnapshotJanitor.DEFAULT_INTERVAL_MS,
+            SnapshotJanitor.DEFAULT_INTERVAL_MS,
+            TimeUnit.MILLISECONDS);
     }
 
 
@@ -248,15 +315,14 @@ public class CassandraExecutor implements Executor {
 
     @Override
     public void killTask(ExecutorDriver driver, Protos.TaskID taskId) {
-        if (cassandra != null && cassandra.isOpen()) {
-            if (taskId.equals(cassandra.getTask().getId())) {
-                LOGGER.info("Killing CassandraDaemon");
-                cassandra.kill();
-            } else {
-                LOGGER.info("Unknown TaskId = ${}", taskId);
-            }
+        if (cassandra != null && cassandra.isOpen() &&
+            taskId.getValue().equals(cassandra.getTask().getId())) {
+            LOGGER.info("Killing CassandraDaemon");
+            cassandra.kill();
+        } else if (clusterJobs.cancel(taskId)) {
+            LOGGER.info("Cancelled cluster task = {}", taskId.getValue());
         } else {
-            LOGGER.error("CassandraDaemon is not running");
+            LOGGER.info("Unknown TaskId = {}", taskId.getValue());
         }
     }
 
@@ -280,6 +346,22 @@ public class CassandraExecutor implements Executor {
         LOGGER.error("Error {}", message);
     }
 
+    public CommitLogArchiver getCommitLogArchiver() {
+        return commitLogArchiver;
+    }
+
+    public IncrementalBackupShipper getIncrementalBackupShipper() {
+        return incrementalBackupShipper;
+    }
+
+    public SnapshotJanitor getSnapshotJanitor() {
+        return snapshotJanitor;
+    }
+
+    public ClusterJobQueue getClusterJobs() {
+        return clusterJobs;
+    }
+
     public Optional<CassandraDaemonProcess> getCassandraDaemon() {
         return (cassandra != null && cassandra.isOpen()) ?
             Optional.of(cassandra) : Optional.empty();
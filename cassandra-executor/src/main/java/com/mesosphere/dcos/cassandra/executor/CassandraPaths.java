@@ -17,6 +17,7 @@ package com.mesosphere.dcos.cassandra.executor;
 
 import com.mesosphere.dcos.cassandra.common.config.CassandraApplicationConfig;
 import com.mesosphere.dcos.cassandra.common.config.Location;
+import com.mesosphere.dcos.cassandra.executor.backup.CommitLogArchiver;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -103,6 +104,15 @@ public class CassandraPaths {
         return conf().resolve(Location.DEFAULT_FILE);
     }
 
+    /**
+     * Gets the Cassandra commitlog archiving file.
+     *
+     * @return The commitlog_archiving.properties file.
+     */
+    public Path commitLogArchiving() {
+        return conf().resolve(CommitLogArchiver.PROPERTIES_FILE);
+    }
+
     /**
      * Gets the Cassandra run command.
      *
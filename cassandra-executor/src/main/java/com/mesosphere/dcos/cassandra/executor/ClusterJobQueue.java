@@ -0,0 +1,508 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.mesosphere.dcos.cassandra.common.tasks.CassandraTask;
+import com.mesosphere.dcos.cassandra.common.tasks.CassandraTaskExecutor;
+import org.apache.mesos.ExecutorDriver;
+import org.apache.mesos.Protos;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * ClusterJobQueue runs the cluster tasks of a node, e.g. backups, repairs
+ * and cleanups, with bounded concurrency. At most maxRunning jobs run at
+ * once, and each task type may have a lower limit, so a node runs one repair
+ * and two uploads at a time by default. Queued jobs start in priority order:
+ * snapshots and restores, which an operator is waiting on, run before
+ * uploads, downloads and verifies, which run before repairs and cleanups.
+ * Jobs of the same priority start in the order they were submitted.
+ * Backup snapshots only flush and link SSTables, and the scheduler starts
+ * them on all nodes together, so they are not counted against maxRunning
+ * and never wait for other jobs to finish.
+ * <p>
+ * A job is cancelled cooperatively. A queued job is removed, and the thread
+ * of a running job is interrupted. Jobs check for the interrupt between
+ * units of work, and TASK_KILLED is sent once the job returns. Status
+ * updates the job sends after it was cancelled are dropped.
+ * <p>
+ * Limits are set with CLUSTER_JOB_LIMITS, a comma separated list of
+ * TYPE=limit pairs, and CLUSTER_JOB_MAX_RUNNING. The scheduler sets both
+ * from the cluster_job_limits and cluster_job_max_running options of its
+ * ExecutorConfig.
+ */
+public class ClusterJobQueue {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        ClusterJobQueue.class);
+
+    public static final String LIMITS_ENV =
+        CassandraTaskExecutor.CLUSTER_JOB_LIMITS;
+    public static final String MAX_RUNNING_ENV =
+        CassandraTaskExecutor.CLUSTER_JOB_MAX_RUNNING;
+    public static final int DEFAULT_MAX_RUNNING = 4;
+
+    /**
+     * JobStatus describes a queued or running job for the executor API.
+     */
+    public static class JobStatus {
+        @JsonProperty("name")
+        private final String name;
+        @JsonProperty("type")
+        private final CassandraTask.TYPE type;
+        @JsonProperty("running")
+        private final boolean running;
+        @JsonProperty("priority")
+        private final int priority;
+        @JsonProperty("wait_ms")
+        private final long waitMs;
+        @JsonProperty("run_ms")
+        private final long runMs;
+
+        public JobStatus(final String name,
+                         final CassandraTask.TYPE type,
+                         final boolean running,
+                         final int priority,
+                         final long waitMs,
+                         final long runMs) {
+            this.name = name;
+            this.type = type;
+            this.running = running;
+            this.priority = priority;
+            this.waitMs = waitMs;
+            this.runMs = runMs;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public CassandraTask.TYPE getType() {
+            return type;
+        }
+
+        public boolean isRunning() {
+            return running;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public long getWaitMs() {
+            return waitMs;
+        }
+
+        public long getRunMs() {
+            return runMs;
+        }
+    }
+
+    private final class Job implements Comparable<Job> {
+        private final CassandraTask task;
+        private final ExecutorDriver driver;
+        private final Runnable runnable;
+        private final int priority;
+        private final long sequence;
+        private final long queuedNanos = System.nanoTime();
+        private volatile long startNanos = -1;
+        private volatile boolean cancelled = false;
+        private Thread thread = null;
+
+        private Job(final CassandraTask task,
+                    final ExecutorDriver driver,
+                    final Function<ExecutorDriver, Runnable> factory,
+                    final long sequence) {
+            this.task = task;
+            this.driver = driver;
+            this.priority = priority(task.getType());
+            this.sequence = sequence;
+            this.runnable = factory.apply(new JobDriver(this));
+        }
+
+        private JobStatus getStatus(final long now) {
+            final boolean running = startNanos >= 0;
+            return new JobStatus(task.getName(), task.getType(), running,
+                priority,
+                TimeUnit.NANOSECONDS.toMillis(
+                    (running ? startNanos : now) - queuedNanos),
+                running ? TimeUnit.NANOSECONDS.toMillis(now - startNanos) :
+                    0);
+        }
+
+        @Override
+        public int compareTo(final Job other) {
+            return (priority != other.priority) ?
+                Integer.compare(priority, other.priority) :
+                Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * JobDriver is the ExecutorDriver given to a job. It drops the status
+     * updates of the job once the job is cancelled, so the job can not
+     * report a state after TASK_KILLED.
+     */
+    private static final class JobDriver implements ExecutorDriver {
+        private final Job job;
+
+        private JobDriver(final Job job) {
+            this.job = job;
+        }
+
+        @Override
+        public Protos.Status start() {
+            return job.driver.start();
+        }
+
+        @Override
+        public Protos.Status stop() {
+            return job.driver.stop();
+        }
+
+        @Override
+        public Protos.Status abort() {
+            return job.driver.abort();
+        }
+
+        @Override
+        public Protos.Status join() {
+            return job.driver.join();
+        }
+
+        @Override
+        public Protos.Status run() {
+            return job.driver.run();
+        }
+
+        @Override
+        public Protos.Status sendStatusUpdate(final Protos.TaskStatus status) {
+            if (job.cancelled) {
+                LOGGER.info("Dropping status update of cancelled job: " +
+                    "task = {}, state = {}", job.task.getName(),
+                    status.getState());
+                return Protos.Status.DRIVER_RUNNING;
+            }
+            return job.driver.sendStatusUpdate(status);
+        }
+
+        @Override
+        public Protos.Status sendFrameworkMessage(final byte[] data) {
+            return job.driver.sendFrameworkMessage(data);
+        }
+    }
+
+    /**
+     * Gets the priority of a task type.
+     *
+     * @param type The type of the task.
+     * @return The priority of the type. Jobs with a lower value start first.
+     */
+    public static int priority(final CassandraTask.TYPE type) {
+        switch (type) {
+            case BACKUP_SNAPSHOT:
+            case SNAPSHOT_RESTORE:
+                return 0;
+            case BACKUP_UPLOAD:
+            case SNAPSHOT_DOWNLOAD:
+            case BACKUP_VERIFY:
+                return 1;
+            default:
+                return 2;
+        }
+    }
+
+    /**
+     * Gets the default limits of the task types. Types without a limit are
+     * only bound by the maximum number of running jobs.
+     *
+     * @return A map of task type to the maximum number of jobs of the type
+     * that may run at once.
+     */
+    public static Map<CassandraTask.TYPE, Integer> defaultLimits() {
+        final Map<CassandraTask.TYPE, Integer> limits =
+            new EnumMap<>(CassandraTask.TYPE.class);
+        limits.put(CassandraTask.TYPE.REPAIR, 1);
+        limits.put(CassandraTask.TYPE.CLEANUP, 1);
+        limits.put(CassandraTask.TYPE.BACKUP_UPLOAD, 2);
+        limits.put(CassandraTask.TYPE.SNAPSHOT_DOWNLOAD, 2);
+        limits.put(CassandraTask.TYPE.BACKUP_VERIFY, 1);
+        return limits;
+    }
+
+    /**
+     * Parses type limits.
+     *
+     * @param value A comma separated list of TYPE=limit pairs, e.g.
+     *              REPAIR=1,BACKUP_UPLOAD=2.
+     * @return The default limits, overridden by the parsed limits.
+     * @throws IllegalArgumentException If value is malformed.
+     */
+    public static Map<CassandraTask.TYPE, Integer> parseLimits(
+        final String value) {
+        final Map<CassandraTask.TYPE, Integer> limits = defaultLimits();
+        for (String pair : value.split(",")) {
+            if (pair.trim().isEmpty()) {
+                continue;
+            }
+            final String[] parts = pair.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException(String.format(
+                    "Malformed cluster job limit: %s", pair));
+            }
+            final int limit = Integer.parseInt(parts[1].trim());
+            if (limit < 1) {
+                throw new IllegalArgumentException(String.format(
+                    "Cluster job limit must be positive: %s", pair));
+            }
+            limits.put(CassandraTask.TYPE.valueOf(
+                parts[0].trim().toUpperCase()), limit);
+        }
+        return limits;
+    }
+
+    /**
+     * Creates a ClusterJobQueue with the limits set in the environment of
+     * the executor.
+     *
+     * @param executor The ExecutorService that runs the jobs.
+     * @return A ClusterJobQueue with the limits of CLUSTER_JOB_LIMITS and
+     * CLUSTER_JOB_MAX_RUNNING, or the defaults if they are not set.
+     */
+    public static ClusterJobQueue fromEnvironment(
+        final ExecutorService executor) {
+        final String limits = System.getenv(LIMITS_ENV);
+        final String maxRunning = System.getenv(MAX_RUNNING_ENV);
+        return new ClusterJobQueue(executor,
+            (maxRunning == null || maxRunning.isEmpty()) ?
+                DEFAULT_MAX_RUNNING : Integer.parseInt(maxRunning),
+            (limits == null) ? defaultLimits() : parseLimits(limits));
+    }
+
+    private final ExecutorService executor;
+    private final int maxRunning;
+    private final Map<CassandraTask.TYPE, Integer> limits;
+    private final TreeSet<Job> queued = new TreeSet<>();
+    private final Map<String, Job> running = new HashMap<>();
+    private final Map<CassandraTask.TYPE, Integer> runningByType =
+        new EnumMap<>(CassandraTask.TYPE.class);
+    private final Timer waitTimer = new Timer();
+    private final Timer runTimer = new Timer();
+    private long sequence = 0;
+    private long cancelledJobs = 0;
+
+    /**
+     * Constructs a new ClusterJobQueue.
+     *
+     * @param executor   The ExecutorService that runs the jobs. It must be
+     *                   able to run maxRunning jobs at once.
+     * @param maxRunning The maximum number of jobs that run at once.
+     * @param limits     The maximum number of jobs of each type that run at
+     *                   once.
+     */
+    public ClusterJobQueue(final ExecutorService executor,
+                           final int maxRunning,
+                           final Map<CassandraTask.TYPE, Integer> limits) {
+        if (maxRunning < 1) {
+            throw new IllegalArgumentException(String.format(
+                "Maximum running cluster jobs must be positive: %d",
+                maxRunning));
+        }
+        this.executor = executor;
+        this.maxRunning = maxRunning;
+        this.limits = new EnumMap<>(CassandraTask.TYPE.class);
+        this.limits.putAll(limits);
+    }
+
+    /**
+     * Queues a job for a cluster task.
+     *
+     * @param task    The task the job executes.
+     * @param driver  The ExecutorDriver used to send status updates.
+     * @param factory Creates the job given the driver it must use for
+     *                status updates.
+     */
+    public synchronized void submit(
+        final CassandraTask task,
+        final ExecutorDriver driver,
+        final Function<ExecutorDriver, Runnable> factory) {
+        final Job job = new Job(task, driver, factory, sequence++);
+        queued.add(job);
+        LOGGER.info("Queued cluster job: task = {}, type = {}, " +
+                "priority = {}, queued = {}, running = {}",
+            task.getName(), task.getType(), job.priority, queued.size(),
+            running.size());
+        dispatch();
+    }
+
+    /**
+     * Cancels the job of a task.
+     *
+     * @param taskId The id of the task.
+     * @return True if the task has a queued or running job. A queued job
+     * is killed immediately, and a running job once it returns.
+     */
+    public synchronized boolean cancel(final Protos.TaskID taskId) {
+        final Job runningJob = running.get(taskId.getValue());
+        if (runningJob != null) {
+            LOGGER.info("Cancelling running cluster job: task = {}",
+                runningJob.task.getName());
+            runningJob.cancelled = true;
+            if (runningJob.thread != null) {
+                runningJob.thread.interrupt();
+            }
+            return true;
+        }
+        for (Job job : queued) {
+            if (job.task.getId().equals(taskId.getValue())) {
+                LOGGER.info("Cancelling queued cluster job: task = {}",
+                    job.task.getName());
+                queued.remove(job);
+                cancelledJobs++;
+                sendKilled(job);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized int getQueued() {
+        return queued.size();
+    }
+
+    public synchronized int getRunning() {
+        return running.size();
+    }
+
+    public synchronized long getCancelled() {
+        return cancelledJobs;
+    }
+
+    /**
+     * Gets the jobs in the queue.
+     *
+     * @return The running jobs, followed by the queued jobs in the order
+     * they will start.
+     */
+    public synchronized List<JobStatus> getJobs() {
+        final long now = System.nanoTime();
+        final List<JobStatus> jobs = new ArrayList<>(
+            running.size() + queued.size());
+        final List<Job> runningJobs = new ArrayList<>(running.values());
+        Collections.sort(runningJobs);
+        runningJobs.forEach(job -> jobs.add(job.getStatus(now)));
+        queued.forEach(job -> jobs.add(job.getStatus(now)));
+        return jobs;
+    }
+
+    private void dispatch() {
+        for (Job job : new ArrayList<>(queued)) {
+            final CassandraTask.TYPE type = job.task.getType();
+            if (type != CassandraTask.TYPE.BACKUP_SNAPSHOT &&
+                running.size() - runningByType.getOrDefault(
+                    CassandraTask.TYPE.BACKUP_SNAPSHOT, 0) >= maxRunning) {
+                continue;
+            }
+            final int count = runningByType.getOrDefault(type, 0);
+            if (count >= limits.getOrDefault(type, maxRunning)) {
+                continue;
+            }
+            queued.remove(job);
+            running.put(job.task.getId(), job);
+            runningByType.put(type, count + 1);
+            job.startNanos = System.nanoTime();
+            waitTimer.update(job.startNanos - job.queuedNanos,
+                TimeUnit.NANOSECONDS);
+            executor.submit(() -> run(job));
+        }
+    }
+
+    private void run(final Job job) {
+        synchronized (this) {
+            job.thread = Thread.currentThread();
+        }
+        try {
+            if (!job.cancelled) {
+                LOGGER.info("Starting cluster job: task = {}",
+                    job.task.getName());
+                job.runnable.run();
+            }
+        } catch (Throwable t) {
+            LOGGER.error(String.format("Cluster job failed: task = %s",
+                job.task.getName()), t);
+        } finally {
+            finish(job);
+            // Clears an interrupt from a cancellation, so it does not reach
+            // the next job that runs on this thread.
+            Thread.interrupted();
+        }
+    }
+
+    private synchronized void finish(final Job job) {
+        job.thread = null;
+        running.remove(job.task.getId());
+        runningByType.computeIfPresent(job.task.getType(),
+            (type, count) -> (count > 1) ? count - 1 : null);
+        runTimer.update(System.nanoTime() - job.startNanos,
+            TimeUnit.NANOSECONDS);
+        if (job.cancelled) {
+            cancelledJobs++;
+            sendKilled(job);
+        }
+        LOGGER.info("Finished cluster job: task = {}, cancelled = {}, " +
+                "run ms = {}", job.task.getName(), job.cancelled,
+            TimeUnit.NANOSECONDS.toMillis(
+                System.nanoTime() - job.startNanos));
+        dispatch();
+    }
+
+    private void sendKilled(final Job job) {
+        job.driver.sendStatusUpdate(job.task.createStatus(
+            Protos.TaskState.TASK_KILLED,
+            Optional.of("Cluster task was cancelled")).getTaskStatus());
+    }
+
+    /**
+     * Registers the metrics of the queue.
+     *
+     * @param registry The registry the metrics are registered with.
+     */
+    public void register(final MetricRegistry registry) {
+        registry.register("cluster_jobs.queued",
+            (Gauge<Integer>) this::getQueued);
+        registry.register("cluster_jobs.running",
+            (Gauge<Integer>) this::getRunning);
+        registry.register("cluster_jobs.cancelled",
+            (Gauge<Long>) this::getCancelled);
+        registry.register("cluster_jobs.wait_time", waitTimer);
+        registry.register("cluster_jobs.run_time", runTimer);
+    }
+}
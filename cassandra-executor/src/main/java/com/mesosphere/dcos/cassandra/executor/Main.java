@@ -21,12 +21,14 @@ import com.mesosphere.dcos.cassandra.executor.checks.DaemonMode;
 import com.mesosphere.dcos.cassandra.executor.checks.DaemonRunning;
 import com.mesosphere.dcos.cassandra.executor.config.CassandraExecutorConfiguration;
 import com.mesosphere.dcos.cassandra.executor.resources.CassandraDaemonController;
+import com.mesosphere.dcos.cassandra.executor.resources.ClusterJobController;
 import io.dropwizard.Application;
 import io.dropwizard.configuration.EnvironmentVariableLookup;
 import io.dropwizard.configuration.SubstitutingSourceProvider;
 import io.dropwizard.java8.Java8Bundle;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import org.apache.mesos.Executor;
 import org.apache.commons.lang3.text.StrSubstitutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -79,5 +81,14 @@ public class Main extends Application<CassandraExecutorConfiguration> {
                 injector.getInstance(CassandraDaemonController.class));
         environment.lifecycle().manage(
                 injector.getInstance(ExecutorDriverDispatcher.class));
+        final CassandraExecutor executor =
+                (CassandraExecutor) injector.getInstance(Executor.class);
+        executor.getCommitLogArchiver().register(environment.metrics());
+        executor.getIncrementalBackupShipper().register(
+                environment.metrics());
+        executor.getSnapshotJanitor().register(environment.metrics());
+        executor.getClusterJobs().register(environment.metrics());
+        environment.jersey().register(
+                injector.getInstance(ClusterJobController.class));
     }
 }
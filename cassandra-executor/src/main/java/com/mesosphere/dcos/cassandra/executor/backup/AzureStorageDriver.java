@@ -4,40 +4,64 @@ import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupContext;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreContext;
 import com.mesosphere.dcos.cassandra.executor.backup.azure.PageBlobInputStream;
 import com.mesosphere.dcos.cassandra.executor.backup.azure.PageBlobOutputStream;
+import com.mesosphere.dcos.cassandra.executor.compress.CompressionDriver;
+import com.mesosphere.dcos.cassandra.executor.compress.CompressionDrivers;
+import com.mesosphere.dcos.cassandra.executor.compress.CompressionPolicy;
+import com.mesosphere.dcos.cassandra.executor.compress.NoCompressionDriver;
+import com.mesosphere.dcos.cassandra.executor.compress.SnappyCompressionDriver;
 import com.microsoft.azure.storage.CloudStorageAccount;
 import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.BlobListingDetails;
+import com.microsoft.azure.storage.blob.CloudBlob;
 import com.microsoft.azure.storage.blob.CloudBlobClient;
 import com.microsoft.azure.storage.blob.CloudBlobContainer;
+import com.microsoft.azure.storage.blob.CloudBlockBlob;
 import com.microsoft.azure.storage.blob.CloudPageBlob;
 import com.microsoft.azure.storage.blob.ListBlobItem;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xerial.snappy.SnappyInputStream;
-import org.xerial.snappy.SnappyOutputStream;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.InvalidKeyException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static com.mesosphere.dcos.cassandra.executor.backup.azure.PageBlobOutputStream.ORIGINAL_SIZE_KEY;
 
 /**
  * Implements a BackupStorageDriver that provides upload and download
- * functionality to an Azure Storage using Page Blobs.
- * Page Blobs allow for 1TB file sizes.
+ * functionality to an Azure Storage using Block Blobs.
+ * Files are encoded into parts by the UploadEngine, and the parts are staged
+ * as blocks concurrently from pooled buffers, then committed as a block list.
+ * Restores read the blocks of each blob in parallel with the DownloadEngine.
+ * <p>
+ * Page Blobs are still read, so backups taken before Block Blobs were used
+ * can be restored, and are written when the external location has the
+ * blob_type=page parameter, e.g. azure://container?blob_type=page.
  * Page Blobs require a Storage Account (but NOT a blob storage account)
  */
 public class AzureStorageDriver implements BackupStorageDriver {
@@ -46,6 +70,14 @@ public class AzureStorageDriver implements BackupStorageDriver {
 
   private static final int DEFAULT_PART_SIZE_UPLOAD = 4 * 1024 * 1024; // Chunk size set to 4MB
   private static final int DEFAULT_PART_SIZE_DOWNLOAD = 4 * 1024 * 1024; // Chunk size set to 4MB
+  private static final int DEFAULT_BLOCK_PART_SIZE = 8 * 1024 * 1024; // Part size set to 8MB
+  private static final int DEFAULT_CONCURRENT_FILES = 4;
+  private static final int DEFAULT_CONCURRENT_BLOCKS = 4;
+  private static final int DEFAULT_CONCURRENT_DOWNLOAD_BLOCKS = 8;
+  // Compressed size / original size of typical SSTable components.
+  private static final double ESTIMATED_COMPRESSION_RATIO = 0.6;
+  public static final String CODEC_KEY = "codec";
+  public static final String PAGE_BLOB_PARAMETER = "blob_type=page";
 
   private StorageUtil storageUtil = new StorageUtil();
 
@@ -62,6 +94,13 @@ public class AzureStorageDriver implements BackupStorageDriver {
     final String containerName = StringUtils.lowerCase(getContainerName(ctx.getExternalLocation()));
     // https://<account_name>.blob.core.windows.net/<container_name>
     final CloudBlobContainer container = getCloudBlobContainer(accountName, accountKey, containerName);
+    if (ctx.isIncremental()) {
+      logger.warn("Incremental backups are not supported for Azure, uploading all files: {}", backupName);
+    }
+    final CompressionPolicy compression = CompressionPolicy.parse(ctx.getCompression());
+    logger.info("Compression: {}", compression);
+    final BandwidthThrottle throttle = BandwidthThrottle.ofMegabytes(ctx.getBandwidthLimitMb());
+    logger.info("Bandwidth: {}", throttle);
 
     final File dataDirectory = new File(localLocation);
     if (container == null || !dataDirectory.isDirectory()) {
@@ -70,6 +109,38 @@ public class AzureStorageDriver implements BackupStorageDriver {
       return;
     }
 
+    final List<UploadEngine.FileUpload> uploads = listUploads(ctx, dataDirectory, key, backupName);
+    final TransferStats stats;
+    if (isPageBlob(ctx.getExternalLocation())) {
+      if (BackupCipher.fromEnvironment() != null) {
+        logger.warn("Page blob backups are not encrypted, use block blobs to encrypt backups: {}",
+          ctx.getExternalLocation());
+      }
+      stats = uploadPageBlobs(container, uploads, compression, throttle, nodeId);
+    } else {
+      final UploadEngine engine = UploadEngine.builder(new BlockBlobPartWriter(container))
+          .setConcurrentFiles(DEFAULT_CONCURRENT_FILES)
+          .setConcurrentParts(DEFAULT_CONCURRENT_BLOCKS)
+          .setPartSize(DEFAULT_BLOCK_PART_SIZE)
+          .setChunkSize(PartEncoder.DEFAULT_CHUNK_SIZE)
+          .setCompression(compression)
+          .setThrottle(throttle)
+          .build();
+      stats = engine.upload(nodeId, uploads);
+    }
+    if (stats.getFailedFiles() > 0) {
+      throw new IOException(String.format("Failed to upload %d files for backup: %s",
+        stats.getFailedFiles(), backupName));
+    }
+
+    logger.info("Done uploading snapshots for backup: {} | {}", backupName, stats);
+  }
+
+  private List<UploadEngine.FileUpload> listUploads(BackupContext ctx, File dataDirectory, String key,
+    String backupName)
+    throws IOException {
+    final List<UploadEngine.FileUpload> uploads = new ArrayList<>();
+
     // Ex: data/<keyspace>/<cf>/snapshots/</snapshot-dir>/<files>
     for (File keyspaceDir : dataDirectory.listFiles()) {
       if (keyspaceDir.isFile()) {
@@ -81,7 +152,7 @@ public class AzureStorageDriver implements BackupStorageDriver {
       for (File cfDir : keyspaceDir.listFiles()) {
         logger.info("Entering column family: {}", cfDir.getName());
         File snapshotDir = new File(cfDir, "snapshots");
-        if (!storageUtil.isValidBackupDir(keyspaceDir, cfDir, snapshotDir)) {
+        if (!storageUtil.isValidBackupDir(ctx, keyspaceDir, cfDir, snapshotDir)) {
           logger.info("Skipping directory: {}", snapshotDir.getAbsolutePath());
           continue;
         }
@@ -96,8 +167,8 @@ public class AzureStorageDriver implements BackupStorageDriver {
         if (snapshotDirectory.isPresent()) {
           logger.info("Going to upload directory: {}", snapshotDirectory.get().getAbsolutePath());
 
-          uploadDirectory(snapshotDirectory.get().getAbsolutePath(), container, containerName, key,
-            keyspaceDir.getName(), cfDir.getName());
+          uploads.addAll(listDirectory(snapshotDirectory.get().getAbsolutePath(), key,
+            keyspaceDir.getName(), cfDir.getName()));
 
         } else {
           logger.warn(
@@ -106,50 +177,75 @@ public class AzureStorageDriver implements BackupStorageDriver {
         }
       }
     }
-
-    logger.info("Done uploading snapshots for backup: {}", backupName);
+    return uploads;
   }
 
-  private void uploadDirectory(String localLocation,
-    CloudBlobContainer azureContainer,
-    String containerName,
+  private List<UploadEngine.FileUpload> listDirectory(String localLocation,
     String key,
     String keyspaceName,
     String cfName) throws IOException {
 
     logger.info(
-      "uploadDirectory() localLocation: {}, containerName: {}, key: {}, keyspaceName: {}, cfName: {}",
-      localLocation, containerName, key, keyspaceName, cfName);
+      "listDirectory() localLocation: {}, key: {}, keyspaceName: {}, cfName: {}",
+      localLocation, key, keyspaceName, cfName);
 
-    Files.walk(FileSystems.getDefault().getPath(localLocation)).forEach(filePath -> {
-        File file = filePath.toFile();
-        if (file.isFile()) {
+    final List<UploadEngine.FileUpload> uploads = new ArrayList<>();
+    try (Stream<Path> paths = Files.walk(FileSystems.getDefault().getPath(localLocation))) {
+      paths.map(Path::toFile).filter(File::isFile).forEach(file -> {
           String fileKey = key + "/" + keyspaceName + "/" + cfName + "/" + file.getName();
-          uploadFile(azureContainer, fileKey, file);
+          uploads.add(new UploadEngine.FileUpload(file, fileKey));
         }
+      );
+    }
+    return uploads;
+  }
+
+  private TransferStats uploadPageBlobs(CloudBlobContainer container,
+    List<UploadEngine.FileUpload> uploads,
+    CompressionPolicy compression,
+    BandwidthThrottle throttle,
+    String nodeId) throws IOException {
+
+    final TransferStats stats = new TransferStats(nodeId);
+    final Closeable progress = stats.report(logger, TransferStats.DEFAULT_REPORT_INTERVAL_MS);
+    try {
+      for (UploadEngine.FileUpload upload : uploads) {
+        uploadFile(container, upload.getKey(), upload.getFile(), compression.select(upload.getFile()),
+          throttle, stats);
       }
-    );
+    } finally {
+      progress.close();
+      stats.stop();
+    }
+    return stats;
   }
 
-  private void uploadFile(CloudBlobContainer container, String fileKey, File sourceFile) {
+  private void uploadFile(CloudBlobContainer container, String fileKey, File sourceFile,
+    CompressionDriver codec, BandwidthThrottle throttle, TransferStats stats) {
 
     PageBlobOutputStream pageBlobOutputStream = null;
-    SnappyOutputStream compress = null;
+    OutputStream compress = null;
     BufferedOutputStream bufferedOutputStream = null;
-    try (BufferedInputStream inputStream = new BufferedInputStream(new FileInputStream(sourceFile))) {
+    try (FileChannel channel = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ);
+         InputStream inputStream = Channels.newInputStream(channel)) {
 
-      logger.info("Initiating upload for file: {} | key: {}",
-        sourceFile.getAbsolutePath(), fileKey);
+      logger.info("Initiating upload for file: {} | key: {} | codec: {}",
+        sourceFile.getAbsolutePath(), fileKey, codec.getName());
 
       final CloudPageBlob blob = container.getPageBlobReference(fileKey);
-      pageBlobOutputStream = new PageBlobOutputStream(blob);
-      bufferedOutputStream = new BufferedOutputStream(pageBlobOutputStream);
+      blob.getMetadata().put(CODEC_KEY, codec.getName());
+      pageBlobOutputStream = new PageBlobOutputStream(blob, estimateBlobSize(sourceFile, codec));
+      bufferedOutputStream = new BufferedOutputStream(throttle.wrap(pageBlobOutputStream, stats));
 
-      compress = new SnappyOutputStream(bufferedOutputStream, DEFAULT_PART_SIZE_UPLOAD);
+      compress = codec.compress(bufferedOutputStream);
       IOUtils.copy(inputStream, compress, DEFAULT_PART_SIZE_UPLOAD);
+      stats.addFile(sourceFile.length());
+      // The file was read once for the backup, so its pages are not kept in the page cache.
+      ChunkReader.skipCache(channel, 0, channel.size());
 
     } catch (StorageException | URISyntaxException | IOException e) {
       logger.error("Unable to store blob", e);
+      stats.addFailedFile();
     } finally {
       IOUtils.closeQuietly(compress);  // super important that the compress close is called first in order to flush
       IOUtils.closeQuietly(bufferedOutputStream);
@@ -159,6 +255,11 @@ public class AzureStorageDriver implements BackupStorageDriver {
 
   @Override
   public void download(RestoreContext ctx) throws IOException {
+    download(ctx, DownloadListener.NONE);
+  }
+
+  @Override
+  public void download(RestoreContext ctx, DownloadListener listener) throws IOException {
 
     final String accountName = ctx.getAccountId();
     final String accountKey = ctx.getSecretKey();
@@ -177,15 +278,200 @@ public class AzureStorageDriver implements BackupStorageDriver {
     }
     String keyPrefix = String.format("%s/%s", backupName, nodeId);
 
-    final Map<String, Long> snapshotFileKeys = getSnapshotFileKeys(container, keyPrefix);
-    logger.info("Snapshot files for this node: {}", snapshotFileKeys);
+    final List<DownloadEngine.FileDownload> blockBlobs = new ArrayList<>();
+    final Map<CloudPageBlob, Long> pageBlobs = new HashMap<>();
+    listSnapshotBlobs(ctx, container, keyPrefix, localLocation, blockBlobs, pageBlobs);
+    logger.info("Snapshot files for this node: block blobs = {}, page blobs = {}", blockBlobs.size(),
+      pageBlobs.size());
+
+    final BandwidthThrottle throttle = BandwidthThrottle.ofMegabytes(ctx.getBandwidthLimitMb());
+    logger.info("Bandwidth: {}", throttle);
+
+    final DownloadEngine engine = DownloadEngine.builder(new BlobRangeReader(container))
+        .setConcurrentFiles(DEFAULT_CONCURRENT_FILES)
+        .setConcurrentParts(DEFAULT_CONCURRENT_DOWNLOAD_BLOCKS)
+        .setPartBufferSize(PartEncoder.partBufferSize(
+            DEFAULT_BLOCK_PART_SIZE, PartEncoder.DEFAULT_CHUNK_SIZE))
+        .setThrottle(throttle)
+        .build();
+    final TransferStats blockStats = engine.download(nodeId, blockBlobs, listener);
+    if (blockStats.getFailedFiles() > 0) {
+      throw new IOException(String.format("Failed to download %d files for backup: %s",
+        blockStats.getFailedFiles(), backupName));
+    }
+
+    // Backups taken before block blobs were used are streamed from page blobs.
+    final TransferStats pageStats = new TransferStats(nodeId);
+    final Closeable progress = pageStats.report(logger, TransferStats.DEFAULT_REPORT_INTERVAL_MS);
+    try {
+      final List<CloudPageBlob> ordered = new ArrayList<>(pageBlobs.keySet());
+      ordered.sort(Comparator.comparing(CloudPageBlob::getName));
+      for (CloudPageBlob pageBlob : ordered) {
+        final File file = new File(localLocation + File.separator + pageBlob.getName());
+        final long originalSize = pageBlobs.get(pageBlob);
+        listener.admit(file, originalSize >= 0 ? originalSize : pageBlob.getProperties().getLength());
+        if (downloadFile(localLocation, pageBlob, originalSize, throttle, pageStats)) {
+          listener.downloaded(file);
+        } else {
+          listener.failed(file);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Download interrupted");
+    } finally {
+      progress.close();
+      pageStats.stop();
+    }
+
+    logger.info("Done downloading snapshots for backup: {} | block blobs: {} | page blobs: {}", backupName,
+      blockStats, pageStats);
+  }
+
+  @Override
+  public TransferStats verify(RestoreContext ctx) throws IOException {
+    final String backupName = ctx.getName();
+    final String nodeId = ctx.getNodeId();
+    final String containerName = StringUtils.lowerCase(getContainerName(ctx.getExternalLocation()));
+    final CloudBlobContainer container = getCloudBlobContainer(ctx.getAccountId(), ctx.getSecretKey(),
+      containerName);
+    if (container == null) {
+      throw new IOException(String.format("Unable to connect to %s, for container %s",
+        ctx.getExternalLocation(), containerName));
+    }
+    final String keyPrefix = String.format("%s/%s", backupName, nodeId);
+
+    // Page blobs are written without a part index, so they can not be
+    // verified and count as failed files.
+    final List<DownloadEngine.FileDownload> blockBlobs = new ArrayList<>();
+    int pageBlobs = 0;
+    try {
+      for (ListBlobItem item : container.listBlobs(keyPrefix, true)) {
+        if (item instanceof CloudBlockBlob) {
+          final CloudBlockBlob blob = (CloudBlockBlob) item;
+          blockBlobs.add(new DownloadEngine.FileDownload(blob.getName(), blob.getProperties().getLength(),
+            new File(blob.getName())));
+        } else if (item instanceof CloudPageBlob) {
+          logger.error("Page blob can not be verified: {}", ((CloudPageBlob) item).getName());
+          pageBlobs++;
+        }
+      }
+    } catch (NoSuchElementException e) {
+      throw new IOException(String.format("Unable to list blobs with prefix: %s", keyPrefix), e);
+    }
+    logger.info("Blobs to verify for this node: block blobs = {}, page blobs = {}", blockBlobs.size(),
+      pageBlobs);
+
+    final DownloadEngine engine = DownloadEngine.builder(new BlobRangeReader(container))
+        .setConcurrentFiles(DEFAULT_CONCURRENT_FILES)
+        .setConcurrentParts(DEFAULT_CONCURRENT_DOWNLOAD_BLOCKS)
+        .setPartBufferSize(PartEncoder.partBufferSize(
+            DEFAULT_BLOCK_PART_SIZE, PartEncoder.DEFAULT_CHUNK_SIZE))
+        .setThrottle(BandwidthThrottle.ofMegabytes(ctx.getBandwidthLimitMb()))
+        .build();
+    final TransferStats stats = engine.verify(nodeId, blockBlobs);
+    for (int i = 0; i < pageBlobs; i++) {
+      stats.addFailedFile();
+    }
+    logger.info("Done verifying backup: {} | {}", backupName, stats);
+    return stats;
+  }
+
+  @Override
+  public TransferStats uploadIncremental(BackupContext ctx, Map<String, File> files) throws IOException {
+    // Azure backups have no manifest to chain the shipped SSTables to, and a restore lists every blob under the
+    // backup's key, so they would be restored with the snapshot.
+    throw new IOException(String.format("Incremental backups can not be shipped to Azure backup: %s",
+      ctx.getName()));
+  }
 
-    for (String fileKey : snapshotFileKeys.keySet()) {
-      downloadFile(localLocation, container, fileKey, snapshotFileKeys.get(fileKey));
+  @Override
+  public long prune(BackupContext ctx) {
+    // Azure backups have no manifest to record the cluster that wrote them, and the location may be shared, so
+    // they never expire.
+    if (BackupRetention.of(ctx).isEnabled()) {
+      logger.warn("Backup retention is not supported for Azure, no backups are deleted: {}",
+        ctx.getExternalLocation());
     }
+    return 0;
   }
 
-  private void downloadFile(String localLocation, CloudBlobContainer container, String fileKey, long originalSize) {
+  @Override
+  public void archiveCommitLog(BackupContext ctx, File segment) throws IOException {
+    final String key = CommitLogArchiver.prefix(ctx.getNodeId()) + CommitLogArchiver.objectName(segment);
+    final CloudBlobContainer container = getContainer(ctx.getAccountId(), ctx.getSecretKey(),
+      ctx.getExternalLocation());
+    // Segments are always archived as block blobs, one at a time.
+    final UploadEngine engine = UploadEngine.builder(new BlockBlobPartWriter(container))
+        .setConcurrentFiles(1)
+        .setConcurrentParts(DEFAULT_CONCURRENT_BLOCKS)
+        .setPartSize(DEFAULT_BLOCK_PART_SIZE)
+        .setChunkSize(PartEncoder.DEFAULT_CHUNK_SIZE)
+        .setCompression(CompressionPolicy.parse(ctx.getCompression()))
+        .setThrottle(BandwidthThrottle.ofMegabytes(ctx.getBandwidthLimitMb()))
+        .build();
+    final TransferStats stats = engine.upload(ctx.getNodeId(),
+      Collections.singletonList(new UploadEngine.FileUpload(segment, key)));
+    if (stats.getFailedFiles() > 0) {
+      throw new IOException(String.format("Failed to archive commitlog segment: %s", key));
+    }
+  }
+
+  @Override
+  public int downloadCommitLog(RestoreContext ctx, File directory) throws IOException {
+    final String nodeId = ctx.getNodeId();
+    final CloudBlobContainer container = getContainer(ctx.getAccountId(), ctx.getSecretKey(),
+      ctx.getExternalLocation());
+    final String prefix = CommitLogArchiver.prefix(nodeId);
+    final Map<String, CloudBlockBlob> blobs = new HashMap<>();
+    try {
+      for (ListBlobItem item : container.listBlobs(prefix, true)) {
+        if (item instanceof CloudBlockBlob) {
+          final CloudBlockBlob blob = (CloudBlockBlob) item;
+          blobs.put(blob.getName().substring(prefix.length()), blob);
+        }
+      }
+    } catch (NoSuchElementException e) {
+      throw new IOException(String.format("Unable to list blobs with prefix: %s", prefix), e);
+    }
+    final List<DownloadEngine.FileDownload> downloads = new ArrayList<>();
+    for (String name : CommitLogArchiver.select(blobs.keySet(), ctx.getPointInTimeMs())) {
+      final CloudBlockBlob blob = blobs.get(name);
+      downloads.add(new DownloadEngine.FileDownload(blob.getName(), blob.getProperties().getLength(),
+        new File(directory, CommitLogArchiver.segmentName(name))));
+    }
+    logger.info("Commitlog segments to replay for this node: {} of {}", downloads.size(), blobs.size());
+
+    final DownloadEngine engine = DownloadEngine.builder(new BlobRangeReader(container))
+        .setConcurrentFiles(1)
+        .setConcurrentParts(DEFAULT_CONCURRENT_DOWNLOAD_BLOCKS)
+        .setPartBufferSize(PartEncoder.partBufferSize(
+            DEFAULT_BLOCK_PART_SIZE, PartEncoder.DEFAULT_CHUNK_SIZE))
+        .setThrottle(BandwidthThrottle.ofMegabytes(ctx.getBandwidthLimitMb()))
+        .build();
+    final TransferStats stats = engine.download(nodeId, downloads);
+    if (stats.getFailedFiles() > 0) {
+      throw new IOException(String.format("Failed to download %d commitlog segments for node: %s",
+        stats.getFailedFiles(), nodeId));
+    }
+    return downloads.size();
+  }
+
+  private CloudBlobContainer getContainer(String accountName, String accountKey, String externalLocation)
+    throws IOException {
+    final String containerName = StringUtils.lowerCase(getContainerName(externalLocation));
+    final CloudBlobContainer container = getCloudBlobContainer(accountName, accountKey, containerName);
+    if (container == null) {
+      throw new IOException(String.format("Unable to connect to %s, for container %s", externalLocation,
+        containerName));
+    }
+    return container;
+  }
+
+  private boolean downloadFile(String localLocation, CloudPageBlob pageBlob, long originalSize,
+    BandwidthThrottle throttle, TransferStats stats) {
+
+    final String fileKey = pageBlob.getName();
 
     logger.info("Downloading |  Local location {} | fileKey: {} | Size: {}", localLocation, fileKey, originalSize);
 
@@ -194,32 +480,63 @@ public class AzureStorageDriver implements BackupStorageDriver {
     // Only create parent directory once, if it doesn't exist.
     if (!createParentDir(file)) {
       logger.error("Unable to create parent directories!");
-      return;
+      return false;
     }
 
     InputStream inputStream = null;
-    SnappyInputStream compress = null;
+    InputStream compress = null;
 
     try (
       FileOutputStream fileOutputStream = new FileOutputStream(file, true);
       BufferedOutputStream bos = new BufferedOutputStream(fileOutputStream)) {
 
-      final CloudPageBlob pageBlobReference = container.getPageBlobReference(fileKey);
-      inputStream = new PageBlobInputStream(pageBlobReference);
-      compress = new SnappyInputStream(inputStream);
+      // The metadata came with the listing, so the attributes are not downloaded again.
+      final CompressionDriver codec = getCodec(pageBlob);
+      inputStream = throttle.wrap(originalSize >= 0 ?
+        new PageBlobInputStream(pageBlob, originalSize) :
+        new PageBlobInputStream(pageBlob), stats);
+      compress = codec.decompress(inputStream);
 
       IOUtils.copy(compress, bos, DEFAULT_PART_SIZE_DOWNLOAD);
-
+      stats.addFile(file.length());
+      return true;
     } catch (Exception e) {
       logger.error("Unable to write file: {}", fileKey, e);
+      stats.addFailedFile();
+      return false;
     } finally {
       IOUtils.closeQuietly(compress);
       IOUtils.closeQuietly(inputStream);
     }
   }
 
+  /**
+   * Estimates the size of a file once it is compressed, so that its page blob
+   * can be created with about the right size.  A low estimate costs a resize
+   * as the blob grows, a high one costs a resize when the blob is closed.
+   */
+  static long estimateBlobSize(File file, CompressionDriver codec) {
+    if (codec.getId() == NoCompressionDriver.ID) {
+      return file.length();
+    }
+    return (long) (file.length() * ESTIMATED_COMPRESSION_RATIO);
+  }
+
+  private CompressionDriver getCodec(CloudPageBlob pageBlobReference) {
+    final HashMap<String, String> metadata = pageBlobReference.getMetadata();
+    if (metadata == null || !metadata.containsKey(CODEC_KEY)) {
+      // Blobs written before codecs were recorded are Snappy compressed.
+      return new SnappyCompressionDriver();
+    }
+    return CompressionDrivers.create(metadata.get(CODEC_KEY));
+  }
+
   private String getContainerName(String externalLocation) {
-    return externalLocation.substring("azure://".length()).replace("/", "");
+    return StringUtils.substringBefore(externalLocation.substring("azure://".length()), "?").replace("/", "");
+  }
+
+  static boolean isPageBlob(String externalLocation) {
+    return PAGE_BLOB_PARAMETER.equals(StringUtils.substringAfter(externalLocation, "?"));
   }
 
   private CloudBlobContainer getCloudBlobContainer(String accountName, String accountKey, String containerName) {
@@ -256,28 +573,45 @@ public class AzureStorageDriver implements BackupStorageDriver {
     return true;
   }
 
-  private Map<String, Long> getSnapshotFileKeys(CloudBlobContainer container, String keyPrefix) {
-    Map<String, Long> snapshotFiles = new HashMap<>();
+  private void listSnapshotBlobs(RestoreContext ctx,
+    CloudBlobContainer container,
+    String keyPrefix,
+    String localLocation,
+    List<DownloadEngine.FileDownload> blockBlobs,
+    Map<CloudPageBlob, Long> pageBlobs) throws IOException {
 
     try {
-      for (ListBlobItem item : container.listBlobs(keyPrefix, true)) {
-        if (item instanceof CloudPageBlob) {
-          CloudPageBlob cloudBlob = (CloudPageBlob) item;
-          snapshotFiles.put(cloudBlob.getName(), getOriginalFileSize(cloudBlob));
+      // The listing includes the metadata, so the original size and codec
+      // of page blobs are known without a request per blob.
+      for (ListBlobItem item : container.listBlobs(keyPrefix, true,
+        EnumSet.of(BlobListingDetails.METADATA), null, null)) {
+        if (item instanceof CloudBlob
+          && !StorageUtil.isSelected(ctx, ((CloudBlob) item).getName().substring(keyPrefix.length() + 1))) {
+          continue;
+        }
+        if (item instanceof CloudBlockBlob) {
+          final CloudBlockBlob blob = (CloudBlockBlob) item;
+          final File file = new File(localLocation + File.separator + blob.getName());
+          if (!createParentDir(file)) {
+            continue;
+          }
+          // The listing carries the length, so no request is made per blob.
+          blockBlobs.add(new DownloadEngine.FileDownload(blob.getName(), blob.getProperties().getLength(),
+            file));
+        } else if (item instanceof CloudPageBlob) {
+          final CloudPageBlob blob = (CloudPageBlob) item;
+          pageBlobs.put(blob, getOriginalFileSize(blob));
         }
       }
-    } catch (StorageException e) {
-      logger.error("Unable to retrieve metadata.", e);
+    } catch (NoSuchElementException e) {
       // all or none
-      snapshotFiles = new HashMap<>();
+      throw new IOException(String.format("Unable to list blobs with prefix: %s", keyPrefix), e);
     }
-    return snapshotFiles;
   }
 
-  private long getOriginalFileSize(CloudPageBlob pageBlobReference) throws StorageException {
-    long size = 0;
+  private long getOriginalFileSize(CloudPageBlob pageBlobReference) {
+    long size = -1;
 
-    pageBlobReference.downloadAttributes();
     HashMap<String, String> map = pageBlobReference.getMetadata();
     if (map != null && map.size() > 0) {
       try {
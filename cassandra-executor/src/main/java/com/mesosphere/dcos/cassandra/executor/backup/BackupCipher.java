@@ -0,0 +1,315 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.mesosphere.dcos.cassandra.common.tasks.CassandraTaskExecutor;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * BackupCipher encrypts the frames of backup objects with AES-GCM under a
+ * key that is held by the executor and never sent to the storage service.
+ * Each compressed frame is encrypted in place in its part buffer by the
+ * PartEncoder, and decrypted in place by the PartDecoder before it is
+ * decompressed, so encryption adds no pass over the data and no copies
+ * beyond those made by the JCE provider.
+ * <p>
+ * Every frame is sealed on its own with a nonce stored in front of it, so
+ * each part, and each frame, can be decrypted independently:
+ * <pre>
+ * payload := nonce:byte[12] ciphertext:byte[] tag:byte[16]
+ * </pre>
+ * A cipher is bound to the object it encrypts by {@link #forObject}. The
+ * nonce is an HMAC-SHA256 of the object's key, the frame's offset and
+ * length in the original file and its compressed data, under a key derived
+ * from the backup key. A frame is therefore encrypted the same way every
+ * time, which keeps encoding deterministic so an interrupted upload can
+ * resume from its completed parts, while frames with different content,
+ * offsets or objects get different nonces. The object key, offset and
+ * length are also authenticated, so a frame can not be moved within or
+ * between objects, and an object can not be restored under another key.
+ * <p>
+ * The key is read from the BACKUP_ENCRYPTION_KEY environment variable as a
+ * base64 encoded 128, 192 or 256 bit AES key. Keys that were used before
+ * the key was rotated are listed, comma separated, in
+ * BACKUP_PREVIOUS_ENCRYPTION_KEYS so that older backups can be restored.
+ * Objects record the id of their key, which is derived from the key.
+ */
+public class BackupCipher {
+
+    public static final String KEY_ENV =
+        CassandraTaskExecutor.BACKUP_ENCRYPTION_KEY;
+    public static final String PREVIOUS_KEYS_ENV =
+        CassandraTaskExecutor.BACKUP_PREVIOUS_ENCRYPTION_KEYS;
+    public static final int NONCE_SIZE = 12;
+    public static final int TAG_SIZE = 16;
+    public static final int OVERHEAD = NONCE_SIZE + TAG_SIZE;
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String MAC = "HmacSHA256";
+
+    /**
+     * The Cipher of a thread. A GCM Cipher refuses to encrypt twice in a
+     * row with the same nonce, which happens when the same frame is encoded
+     * again, so a fresh Cipher is used in that case.
+     */
+    private static class CipherState {
+        private Cipher cipher;
+        private byte[] lastNonce;
+    }
+
+    private final SecretKeySpec key;
+    private final SecretKeySpec nonceKey;
+    private final long keyId;
+    private final byte[] object;
+    private final ThreadLocal<CipherState> ciphers;
+    private final ThreadLocal<Mac> macs;
+
+    /**
+     * Constructs a new BackupCipher.
+     *
+     * @param key The backup key, a 16, 24 or 32 byte AES key.
+     */
+    public BackupCipher(final byte[] key) {
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalArgumentException(String.format(
+                "Backup encryption key must be 16, 24 or 32 bytes, " +
+                    "found %d", key.length));
+        }
+        this.key = new SecretKeySpec(derive(key, "frame key", key.length),
+            "AES");
+        this.nonceKey = new SecretKeySpec(derive(key, "frame nonce", 32),
+            MAC);
+        // HMAC pads short keys with zeros, so the length of the key is
+        // part of its id.
+        this.keyId = ByteBuffer.wrap(derive(key, "key id " + key.length, 8))
+            .getLong();
+        this.object = new byte[0];
+        this.ciphers = ThreadLocal.withInitial(CipherState::new);
+        this.macs = ThreadLocal.withInitial(() -> mac(nonceKey));
+    }
+
+    private BackupCipher(final BackupCipher cipher, final byte[] object) {
+        this.key = cipher.key;
+        this.nonceKey = cipher.nonceKey;
+        this.keyId = cipher.keyId;
+        this.object = object;
+        this.ciphers = cipher.ciphers;
+        this.macs = cipher.macs;
+    }
+
+    /**
+     * Parses a key.
+     *
+     * @param key The base64 encoded key.
+     * @return A BackupCipher for the key.
+     */
+    public static BackupCipher parse(final String key) {
+        try {
+            return new BackupCipher(Base64.getDecoder().decode(key.trim()));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(
+                "Invalid backup encryption key: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the cipher that new backups are encrypted with.
+     *
+     * @return The cipher of the key in BACKUP_ENCRYPTION_KEY, or null if it
+     * is not set and backups are not encrypted.
+     * @throws IllegalArgumentException If the key is not valid.
+     */
+    public static BackupCipher fromEnvironment() {
+        final String key = System.getenv(KEY_ENV);
+        return (key == null || key.trim().isEmpty()) ? null : parse(key);
+    }
+
+    /**
+     * Gets the ciphers that backups can be decrypted with.
+     *
+     * @return The ciphers of the keys in BACKUP_ENCRYPTION_KEY and
+     * BACKUP_PREVIOUS_ENCRYPTION_KEYS.
+     * @throws IllegalArgumentException If a key is not valid.
+     */
+    public static List<BackupCipher> allFromEnvironment() {
+        final List<BackupCipher> ciphers = new ArrayList<>();
+        final BackupCipher current = fromEnvironment();
+        if (current != null) {
+            ciphers.add(current);
+        }
+        final String previous = System.getenv(PREVIOUS_KEYS_ENV);
+        if (previous != null) {
+            for (String key : previous.split(",")) {
+                if (!key.trim().isEmpty()) {
+                    ciphers.add(parse(key));
+                }
+            }
+        }
+        return ciphers;
+    }
+
+    /**
+     * Gets the id of the key.
+     *
+     * @return An id derived from the key that identifies it without
+     * revealing it.
+     */
+    public long getKeyId() {
+        return keyId;
+    }
+
+    /**
+     * Binds the cipher to an object. Frames sealed by the returned cipher
+     * can only be opened by a cipher bound to the same object.
+     *
+     * @param objectKey The key of the object in its external location.
+     * @return A cipher with the same backup key that authenticates
+     * objectKey with every frame.
+     */
+    public BackupCipher forObject(final String objectKey) {
+        return new BackupCipher(this,
+            objectKey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encrypts a compressed frame in place.
+     *
+     * @param payload   A buffer whose position is the start of the frame's
+     *                  payload. The compressed data must follow NONCE_SIZE
+     *                  bytes after the position, and the buffer must have
+     *                  room for the tag after the data.
+     * @param length    The length of the compressed data.
+     * @param rawOffset The offset of the frame in the original file.
+     * @param rawLength The uncompressed length of the frame.
+     * @return The length of the payload, length + OVERHEAD.
+     * @throws IOException If the frame can not be encrypted.
+     */
+    public int seal(final ByteBuffer payload,
+                    final int length,
+                    final long rawOffset,
+                    final int rawLength) throws IOException {
+        final int start = payload.position();
+        final ByteBuffer data = payload.duplicate();
+        data.position(start + NONCE_SIZE);
+        data.limit(start + NONCE_SIZE + length);
+        final byte[] aad = aad(rawOffset, rawLength);
+        final Mac mac = macs.get();
+        mac.update(aad);
+        mac.update(data.duplicate());
+        final byte[] nonce = Arrays.copyOf(mac.doFinal(), NONCE_SIZE);
+        final ByteBuffer out = payload.duplicate();
+        out.limit(out.capacity());
+        out.position(start);
+        out.put(nonce);
+        try {
+            final Cipher cipher = cipher(nonce);
+            cipher.updateAAD(aad);
+            return NONCE_SIZE + cipher.doFinal(data, out);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to encrypt frame", e);
+        }
+    }
+
+    /**
+     * Decrypts a frame in place.
+     *
+     * @param payload   The payload of the frame between its position and
+     *                  limit. Its content is overwritten.
+     * @param rawOffset The offset of the frame in the original file.
+     * @param rawLength The uncompressed length of the frame.
+     * @return A slice of payload that holds the compressed data.
+     * @throws IOException If the frame is corrupt or was encrypted with a
+     *                     different key.
+     */
+    public ByteBuffer open(final ByteBuffer payload,
+                           final long rawOffset,
+                           final int rawLength) throws IOException {
+        if (payload.remaining() < OVERHEAD) {
+            throw new IOException("Encrypted frame is truncated");
+        }
+        final byte[] nonce = new byte[NONCE_SIZE];
+        final ByteBuffer data = payload.duplicate();
+        data.get(nonce);
+        final ByteBuffer out = data.duplicate();
+        try {
+            final Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key,
+                new GCMParameterSpec(TAG_SIZE * 8, nonce));
+            cipher.updateAAD(aad(rawOffset, rawLength));
+            final int length = cipher.doFinal(data, out);
+            final ByteBuffer compressed = payload.duplicate();
+            compressed.position(payload.position() + NONCE_SIZE);
+            compressed.limit(compressed.position() + length);
+            return compressed.slice();
+        } catch (AEADBadTagException e) {
+            throw new IOException("Encrypted frame failed authentication", e);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to decrypt frame", e);
+        }
+    }
+
+    private Cipher cipher(final byte[] nonce)
+        throws GeneralSecurityException {
+        final CipherState state = ciphers.get();
+        if (state.cipher == null || Arrays.equals(nonce, state.lastNonce)) {
+            state.cipher = Cipher.getInstance(TRANSFORMATION);
+        }
+        state.cipher.init(Cipher.ENCRYPT_MODE, key,
+            new GCMParameterSpec(TAG_SIZE * 8, nonce));
+        state.lastNonce = nonce;
+        return state.cipher;
+    }
+
+    private byte[] aad(final long rawOffset, final int rawLength) {
+        return ByteBuffer.allocate(object.length + 12).put(object)
+            .putLong(rawOffset).putInt(rawLength).array();
+    }
+
+    private static Mac mac(final SecretKeySpec key) {
+        try {
+            final Mac mac = Mac.getInstance(MAC);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private static byte[] derive(final byte[] key,
+                                 final String purpose,
+                                 final int length) {
+        return Arrays.copyOf(mac(new SecretKeySpec(key, MAC)).doFinal(
+            purpose.getBytes(StandardCharsets.UTF_8)), length);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AES-GCM, key id = %016x", keyId);
+    }
+}
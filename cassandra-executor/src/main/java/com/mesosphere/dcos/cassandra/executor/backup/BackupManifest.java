@@ -0,0 +1,495 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.mesosphere.dcos.cassandra.common.util.JsonUtils;
+import com.mesosphere.dcos.cassandra.executor.compress.CompressionDrivers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * BackupManifest lists the SSTable components of a node's backup and the
+ * keys of the objects that hold them. Because SSTable components are
+ * immutable, a component with the same path, size and checksum as one in a
+ * previous manifest of the node is the same file, and an incremental backup
+ * references the existing object instead of uploading it again. The object
+ * of a component may therefore belong to an older backup.
+ * <p>
+ * For each component the manifest also records the codec and the MD5 of
+ * every part of its object, so a restore can verify each part as it is
+ * downloaded. Components stored by a FileStorageDriver are plain copies of
+ * their files and have no codec or parts. While an upload is in progress,
+ * incomplete manifests are written as checkpoints so an interrupted upload
+ * can resume.
+ * <p>
+ * SSTables shipped from the incremental backups directories after a backup
+ * are recorded in an incremental manifest of their own. It is chained to
+ * the manifest of the backup by the digest of that manifest, so it is
+ * ignored once the backup is uploaded again or pruned, and the manifest of
+ * the backup itself never changes.
+ * <p>
+ * A manifest records the name of the service that wrote it, as several
+ * clusters may share an external location. A node only deletes expired
+ * backups whose manifest was written by its own service.
+ */
+public class BackupManifest {
+
+    public static final int VERSION = 1;
+
+    private static final int CHECKSUM_BUFFER_SIZE = 256 * 1024;
+    private static final ThreadLocal<ByteBuffer> CHECKSUM_BUFFER =
+        ThreadLocal.withInitial(() ->
+            ByteBuffer.allocateDirect(CHECKSUM_BUFFER_SIZE));
+
+    /**
+     * Component describes a single SSTable component in a backup.
+     */
+    public static class Component {
+
+        @JsonCreator
+        public static Component create(
+            @JsonProperty("path") final String path,
+            @JsonProperty("size") final long size,
+            @JsonProperty("checksum") final String checksum,
+            @JsonProperty("key") final String key,
+            @JsonProperty("object_size") final long objectSize,
+            @JsonProperty("codec") final String codec,
+            @JsonProperty("parts") final List<String> parts) {
+            return new Component(path, size, checksum, key, objectSize,
+                codec, parts);
+        }
+
+        @JsonProperty("path")
+        private final String path;
+        @JsonProperty("size")
+        private final long size;
+        @JsonProperty("checksum")
+        private final String checksum;
+        @JsonProperty("key")
+        private final String key;
+        @JsonProperty("object_size")
+        private final long objectSize;
+        @JsonProperty("codec")
+        private final String codec;
+        @JsonProperty("parts")
+        private final List<String> parts;
+
+        public Component(final String path,
+                         final long size,
+                         final String checksum,
+                         final String key,
+                         final long objectSize,
+                         final String codec,
+                         final List<String> parts) {
+            this.path = path;
+            this.size = size;
+            this.checksum = checksum;
+            this.key = key;
+            this.objectSize = objectSize;
+            this.codec = codec;
+            this.parts = (parts == null) ?
+                Collections.emptyList() :
+                Collections.unmodifiableList(new ArrayList<>(parts));
+        }
+
+        /**
+         * Creates a component that is not yet stored in an object.
+         *
+         * @param path     The path of the component.
+         * @param size     The size of the component in bytes.
+         * @param checksum The CRC32 of the component as a hex string.
+         * @return A Component without an object.
+         */
+        public static Component local(final String path,
+                                      final long size,
+                                      final String checksum) {
+            return new Component(path, size, checksum, null, -1, null,
+                null);
+        }
+
+        /**
+         * Gets a copy of the component stored in an object.
+         *
+         * @param key   The key of the object.
+         * @param index The PartIndex of the object.
+         * @return A copy of this component that references the object.
+         */
+        public Component withObject(final String key, final PartIndex index) {
+            final List<String> md5s = new ArrayList<>(
+                index.getEntries().size());
+            for (PartIndex.Entry entry : index.getEntries()) {
+                md5s.add(entry.getMd5Hex());
+            }
+            return new Component(path, size, checksum, key,
+                index.getObjectSize(),
+                CompressionDrivers.name(index.getCodec()), md5s);
+        }
+
+        /**
+         * Gets a copy of the component stored as a plain copy of its file.
+         *
+         * @param key The key of the copy.
+         * @return A copy of this component that references the copy. The
+         * copy is not encoded, so it has no codec and no parts.
+         */
+        public Component withFile(final String key) {
+            return new Component(path, size, checksum, key, size, null, null);
+        }
+
+        /**
+         * Gets the path of the component.
+         *
+         * @return The path of the component relative to the node's backup,
+         * i.e. keyspace/column family/file name.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Gets the size of the component.
+         *
+         * @return The size of the uncompressed component in bytes.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Gets the checksum of the component.
+         *
+         * @return The CRC32 of the uncompressed component as a hex string.
+         */
+        public String getChecksum() {
+            return checksum;
+        }
+
+        /**
+         * Gets the key of the object.
+         *
+         * @return The key of the object that holds the component.
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Gets the size of the object.
+         *
+         * @return The size of the object that holds the component in bytes.
+         */
+        public long getObjectSize() {
+            return objectSize;
+        }
+
+        /**
+         * Gets the codec of the object.
+         *
+         * @return The name of the codec the object was encoded with.
+         */
+        public String getCodec() {
+            return codec;
+        }
+
+        /**
+         * Gets the part checksums of the object.
+         *
+         * @return The hex MD5 digests of the parts of the object, in part
+         * number order.
+         */
+        public List<String> getParts() {
+            return parts;
+        }
+
+        /**
+         * Tests if the component has the same content as another.
+         *
+         * @param other The component to compare to.
+         * @return True if the components have the same path, size and
+         * checksum.
+         */
+        public boolean sameContent(final Component other) {
+            return Objects.equals(path, other.path) &&
+                size == other.size &&
+                Objects.equals(checksum, other.checksum);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Component)) return false;
+            Component that = (Component) o;
+            return sameContent(that) &&
+                objectSize == that.objectSize &&
+                Objects.equals(key, that.key) &&
+                Objects.equals(codec, that.codec) &&
+                Objects.equals(parts, that.parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, checksum, key, objectSize, codec,
+                parts);
+        }
+
+        @Override
+        public String toString() {
+            return JsonUtils.toJsonString(this);
+        }
+    }
+
+    @JsonCreator
+    public static BackupManifest create(
+        @JsonProperty("version") final int version,
+        @JsonProperty("backup_name") final String backupName,
+        @JsonProperty("node_id") final String nodeId,
+        @JsonProperty("cluster") final String cluster,
+        @JsonProperty("complete") final boolean complete,
+        @JsonProperty("base") final String base,
+        @JsonProperty("components") final List<Component> components) {
+        if (version != VERSION) {
+            throw new IllegalArgumentException(String.format(
+                "Unsupported manifest version %d", version));
+        }
+        return new BackupManifest(backupName, nodeId, cluster, complete, base,
+            components);
+    }
+
+    /**
+     * Parses a manifest from JSON.
+     *
+     * @param bytes The JSON representation of the manifest.
+     * @return The parsed BackupManifest.
+     * @throws IOException If bytes is not a valid manifest.
+     */
+    public static BackupManifest parse(final byte[] bytes)
+        throws IOException {
+        return JsonUtils.MAPPER.readValue(bytes, BackupManifest.class);
+    }
+
+    /**
+     * Computes the checksum of a file. The pages of the file are not kept
+     * in the page cache.
+     *
+     * @param file The file to checksum.
+     * @return The CRC32 of the file as a hex string.
+     * @throws IOException If the file can not be read.
+     */
+    public static String checksum(final File file) throws IOException {
+        final CRC32 crc = new CRC32();
+        try (ChunkReader reader = ChunkReader.open(file,
+            ChunkReader.Mode.CHANNEL, CHECKSUM_BUFFER.get(),
+            CHECKSUM_BUFFER_SIZE)) {
+            ByteBuffer chunk;
+            while ((chunk = reader.next()).hasRemaining()) {
+                crc.update(chunk);
+            }
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    @JsonProperty("backup_name")
+    private final String backupName;
+    @JsonProperty("node_id")
+    private final String nodeId;
+    @JsonProperty("cluster")
+    private final String cluster;
+    @JsonProperty("complete")
+    private final boolean complete;
+    @JsonProperty("base")
+    private final String base;
+    @JsonProperty("components")
+    private final List<Component> components;
+    @JsonIgnore
+    private final Map<String, Component> byPath;
+
+    public BackupManifest(final String backupName,
+                          final String nodeId,
+                          final boolean complete,
+                          final List<Component> components) {
+        this(backupName, nodeId, null, complete, null, components);
+    }
+
+    public BackupManifest(final String backupName,
+                          final String nodeId,
+                          final String cluster,
+                          final boolean complete,
+                          final String base,
+                          final List<Component> components) {
+        this.backupName = backupName;
+        this.nodeId = nodeId;
+        this.cluster = cluster;
+        this.complete = complete;
+        this.base = base;
+        this.components = (components == null) ?
+            Collections.emptyList() :
+            Collections.unmodifiableList(new ArrayList<>(components));
+        this.byPath = new HashMap<>(this.components.size());
+        for (Component component : this.components) {
+            byPath.put(component.getPath(), component);
+        }
+    }
+
+    @JsonProperty("version")
+    public int getVersion() {
+        return VERSION;
+    }
+
+    public String getBackupName() {
+        return backupName;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Gets the cluster of the manifest.
+     *
+     * @return The name of the service that wrote the manifest, or null if
+     * it was written before manifests recorded it.
+     */
+    public String getCluster() {
+        return cluster;
+    }
+
+    /**
+     * Tests if the manifest was written by a cluster.
+     *
+     * @param cluster The name of the service.
+     * @return True if the manifest records cluster as its writer.
+     */
+    public boolean isWrittenBy(final String cluster) {
+        return this.cluster != null && this.cluster.equals(cluster);
+    }
+
+    /**
+     * Tests if the manifest is complete.
+     *
+     * @return True if every component of the backup was uploaded. An
+     * incomplete manifest is a checkpoint of an interrupted upload.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Gets the base of the manifest.
+     *
+     * @return The digest of the backup manifest an incremental manifest is
+     * chained to, or null if this is the manifest of a backup.
+     */
+    public String getBase() {
+        return base;
+    }
+
+    public List<Component> getComponents() {
+        return components;
+    }
+
+    /**
+     * Computes the digest of the manifest.
+     *
+     * @return The CRC32 of the manifest's JSON representation as a hex
+     * string.
+     * @throws IOException If the manifest can not be serialized.
+     */
+    public String digest() throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(toBytes());
+        return Long.toHexString(crc.getValue());
+    }
+
+    /**
+     * Tests if an incremental manifest is chained to this manifest.
+     *
+     * @param incremental The incremental manifest of the backup.
+     * @return True if incremental was recorded for this manifest.
+     * @throws IOException If the manifest can not be serialized.
+     */
+    public boolean isChained(final BackupManifest incremental)
+        throws IOException {
+        return incremental.isComplete() &&
+            Objects.equals(incremental.getBase(), digest());
+    }
+
+    /**
+     * Gets the manifest with the components of its incremental manifest.
+     *
+     * @param incremental The incremental manifest of the backup, if any.
+     * @return A copy of this manifest to which the components of
+     * incremental are added, or this manifest if incremental is absent or
+     * not chained to it.
+     * @throws IOException If the manifest can not be serialized.
+     */
+    public BackupManifest withIncremental(
+        final Optional<BackupManifest> incremental) throws IOException {
+        if (!incremental.isPresent() || !isChained(incremental.get())) {
+            return this;
+        }
+        final Map<String, Component> merged = new LinkedHashMap<>();
+        for (Component component : components) {
+            merged.put(component.getPath(), component);
+        }
+        for (Component component : incremental.get().getComponents()) {
+            merged.put(component.getPath(), component);
+        }
+        return new BackupManifest(backupName, nodeId, cluster, complete, base,
+            new ArrayList<>(merged.values()));
+    }
+
+    /**
+     * Finds a component with the same content as candidate.
+     *
+     * @param candidate The component to look up.
+     * @return The component of this manifest with the same path, size and
+     * checksum as candidate, if one exists.
+     */
+    public Optional<Component> find(final Component candidate) {
+        final Component component = byPath.get(candidate.getPath());
+        return (component != null && component.sameContent(candidate)) ?
+            Optional.of(component) : Optional.empty();
+    }
+
+    /**
+     * Gets the JSON representation of the manifest.
+     *
+     * @return The manifest serialized as JSON.
+     * @throws IOException If the manifest can not be serialized.
+     */
+    public byte[] toBytes() throws IOException {
+        return JsonUtils.MAPPER.writeValueAsBytes(this);
+    }
+
+    @Override
+    public String toString() {
+        return JsonUtils.toJsonString(this);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupContext;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * BackupRetention decides which of a node's backups in the external location
+ * have expired. For each of the most recent keepDaily days, and for each of
+ * the most recent keepWeekly weeks, that have a backup, the latest backup of
+ * the day or week is kept. Days and weeks are in UTC, and weeks start on
+ * Monday. All other backups expire, except the backup that was just taken.
+ * <p>
+ * A backup whose manifest is incomplete was interrupted and can not be
+ * restored, so it always expires. An incremental backup references the
+ * objects of older backups, so the objects of an expired backup that are
+ * referenced by the manifest of a kept backup must not be deleted.
+ */
+public class BackupRetention {
+
+    private final int keepDaily;
+    private final int keepWeekly;
+
+    /**
+     * Constructs a new BackupRetention.
+     *
+     * @param keepDaily  The number of days for which a backup is kept.
+     * @param keepWeekly The number of weeks for which a backup is kept.
+     */
+    public BackupRetention(final int keepDaily, final int keepWeekly) {
+        this.keepDaily = Math.max(0, keepDaily);
+        this.keepWeekly = Math.max(0, keepWeekly);
+    }
+
+    /**
+     * Gets the retention of a backup.
+     *
+     * @param ctx The context of the backup.
+     * @return The retention the scheduler configured for the backup.
+     */
+    public static BackupRetention of(final BackupContext ctx) {
+        return new BackupRetention(ctx.getKeepDaily(), ctx.getKeepWeekly());
+    }
+
+    /**
+     * Tests if backups expire.
+     *
+     * @return True if a number of daily or weekly backups is configured,
+     * false if every backup is kept.
+     */
+    public boolean isEnabled() {
+        return keepDaily > 0 || keepWeekly > 0;
+    }
+
+    /**
+     * Selects the expired backups of a node.
+     *
+     * @param current    The name of the backup that was just taken.
+     * @param complete   The time of each backup of the node that can be
+     *                   restored, in milliseconds since the epoch, by name.
+     * @param incomplete The names of the backups of the node whose manifest
+     *                   is incomplete.
+     * @return The names of the expired backups. If retention is not enabled
+     * no backup expires.
+     */
+    public Set<String> expired(final String current,
+                               final Map<String, Long> complete,
+                               final Collection<String> incomplete) {
+        final Set<String> expired = new TreeSet<>();
+        if (!isEnabled()) {
+            return expired;
+        }
+        final List<Map.Entry<String, Long>> newest = new ArrayList<>(
+            complete.entrySet());
+        newest.sort(Map.Entry.<String, Long>comparingByValue(
+            Comparator.reverseOrder())
+            .thenComparing(Map.Entry.comparingByKey()));
+        final Set<LocalDate> days = new HashSet<>();
+        final Set<LocalDate> weeks = new HashSet<>();
+        for (Map.Entry<String, Long> backup : newest) {
+            final LocalDate day = Instant.ofEpochMilli(backup.getValue())
+                .atZone(ZoneOffset.UTC).toLocalDate();
+            final LocalDate week = day.with(DayOfWeek.MONDAY);
+            boolean keep = false;
+            if (!days.contains(day) && days.size() < keepDaily) {
+                days.add(day);
+                keep = true;
+            }
+            if (!weeks.contains(week) && weeks.size() < keepWeekly) {
+                weeks.add(week);
+                keep = true;
+            }
+            if (!keep) {
+                expired.add(backup.getKey());
+            }
+        }
+        expired.addAll(incomplete);
+        expired.remove(current);
+        return expired;
+    }
+
+    /**
+     * Gets the keys of the objects referenced by manifests.
+     *
+     * @param manifests The manifests of the kept backups.
+     * @return The keys of the objects that hold their components.
+     */
+    public static Set<String> referencedKeys(
+        final Collection<BackupManifest> manifests) {
+        final Set<String> keys = new HashSet<>();
+        for (BackupManifest manifest : manifests) {
+            for (BackupManifest.Component component :
+                manifest.getComponents()) {
+                if (component.getKey() != null) {
+                    keys.add(component.getKey());
+                }
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("keep daily = %d, keep weekly = %d", keepDaily,
+            keepWeekly);
+    }
+}
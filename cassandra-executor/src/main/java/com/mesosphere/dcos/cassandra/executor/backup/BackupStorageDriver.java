@@ -18,8 +18,17 @@ package com.mesosphere.dcos.cassandra.executor.backup;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupContext;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreContext;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * BackupStorageDriver is the interface to all drivers that store and
@@ -40,4 +49,101 @@ public interface BackupStorageDriver {
      * @throws IOException If the download from the remote location fails.
      */
     void download(RestoreContext ctx) throws IOException, URISyntaxException;
+
+    /**
+     * Verifies a backup in the remote location without writing it to disk.
+     * Every object of the node's backup is read and checked against the
+     * checksums recorded when it was uploaded.
+     * @param ctx The context of the restore that identifies the backup.
+     * @return The statistics of the verification. Files that failed
+     * verification are counted as failed files.
+     * @throws IOException If the backup can not be read.
+     */
+    TransferStats verify(RestoreContext ctx)
+        throws IOException, URISyntaxException;
+
+    /**
+     * Uploads SSTables that Cassandra linked into the incremental backups
+     * directories of the node's tables after a backup was taken. They are
+     * recorded in an incremental manifest chained to the manifest of the
+     * backup, which is not changed, so a restore only includes them when
+     * it asks for them. Drivers without manifests do not support this.
+     * @param ctx The context of the backup the files are shipped to.
+     * @param files The files keyed by their path in the backup, i.e.
+     * keyspace/column family/file name. The driver may delete a file once
+     * it is stored.
+     * @return The statistics of the upload.
+     * @throws IOException If the files can not be stored or the backup has
+     * no complete manifest.
+     */
+    TransferStats uploadIncremental(BackupContext ctx, Map<String, File> files)
+        throws IOException, URISyntaxException;
+
+    /**
+     * Deletes the node's backups that have expired under the retention of a
+     * backup, once the backup has been uploaded. The objects of an expired
+     * backup that are referenced by the manifest of a kept backup are not
+     * deleted. Until they are, the expired backup keeps an incomplete
+     * manifest of them, so they are deleted by a later prune once no kept
+     * backup references them. Only backups whose manifest records the
+     * cluster of the backup expire, as the location may be shared.
+     * @param ctx The context of the backup that was just uploaded.
+     * @return The number of objects deleted.
+     * @throws IOException If the backups can not be listed or an object can
+     * not be deleted.
+     */
+    long prune(BackupContext ctx) throws IOException, URISyntaxException;
+
+    /**
+     * Archives a closed commitlog segment to the external location of a
+     * backup. The segment is stored under the node's commitlog directory
+     * with the name given by CommitLogArchiver.objectName, and the local
+     * segment is deleted once it is stored.
+     * @param ctx The context of the backup that requested archiving.
+     * @param segment The closed commitlog segment.
+     * @throws IOException If the segment can not be stored.
+     */
+    void archiveCommitLog(BackupContext ctx, File segment)
+        throws IOException, URISyntaxException;
+
+    /**
+     * Downloads the archived commitlog segments needed to replay the node's
+     * writes up to the point in time of a restore, as selected by
+     * CommitLogArchiver.select.
+     * @param ctx The context of the restore.
+     * @param directory The directory the segments are written to, with
+     * their original file names.
+     * @return The number of segments downloaded.
+     * @throws IOException If a segment can not be downloaded.
+     */
+    int downloadCommitLog(RestoreContext ctx, File directory)
+        throws IOException, URISyntaxException;
+
+    /**
+     * Downloads snapshot files from a remote location and reports each file
+     * to a listener as it is downloaded. Drivers that can not report files
+     * individually download the whole snapshot and then report every file.
+     * @param ctx The context of the restore.
+     * @param listener The listener that admits and is notified of each file.
+     * @throws IOException If the download from the remote location fails.
+     */
+    default void download(RestoreContext ctx, DownloadListener listener)
+        throws IOException, URISyntaxException {
+        download(ctx);
+        final List<File> files;
+        try (Stream<Path> paths = Files.walk(Paths.get(
+            ctx.getLocalLocation(), ctx.getName(), ctx.getNodeId()))) {
+            files = paths.map(Path::toFile).filter(File::isFile).sorted()
+                .collect(Collectors.toList());
+        }
+        try {
+            for (File file : files) {
+                listener.admit(file, file.length());
+                listener.downloaded(file);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Download interrupted");
+        }
+    }
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BandwidthThrottle limits the rate at which a node transfers backup data.
+ * It is a token bucket holding up to one second of bytes, shared by all of
+ * the transfer threads of a backup or restore. A transfer acquires the
+ * bytes it is about to send or receive and blocks until the bucket has
+ * refilled enough to cover them.
+ */
+public class BandwidthThrottle {
+
+    public static final long BYTES_PER_MB = 1024 * 1024;
+
+    /**
+     * A throttle that never blocks.
+     */
+    public static final BandwidthThrottle UNLIMITED =
+        new BandwidthThrottle(null, 0);
+
+    /**
+     * Creates a throttle.
+     *
+     * @param bytesPerSecond The maximum transfer rate in bytes per second.
+     * @return A throttle that limits transfers to bytesPerSecond, or
+     * UNLIMITED if bytesPerSecond is not positive.
+     */
+    public static BandwidthThrottle create(final long bytesPerSecond) {
+        return (bytesPerSecond <= 0) ?
+            UNLIMITED :
+            new BandwidthThrottle(RateLimiter.create(bytesPerSecond),
+                bytesPerSecond);
+    }
+
+    /**
+     * Creates a throttle from a limit in MB/s.
+     *
+     * @param megabytesPerSecond The maximum transfer rate in MB/s.
+     * @return A throttle that limits transfers to megabytesPerSecond, or
+     * UNLIMITED if megabytesPerSecond is not positive.
+     */
+    public static BandwidthThrottle ofMegabytes(final int megabytesPerSecond) {
+        return create(megabytesPerSecond * BYTES_PER_MB);
+    }
+
+    private final RateLimiter limiter;
+    private final long bytesPerSecond;
+
+    private BandwidthThrottle(final RateLimiter limiter,
+                              final long bytesPerSecond) {
+        this.limiter = limiter;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public boolean isLimited() {
+        return limiter != null;
+    }
+
+    /**
+     * Gets the limit.
+     *
+     * @return The maximum transfer rate in bytes per second, or 0 if the
+     * throttle is UNLIMITED.
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Acquires permission to transfer bytes, blocking until it is granted.
+     *
+     * @param bytes The number of bytes about to be transferred.
+     * @return The time spent waiting in nanoseconds.
+     */
+    public long acquire(final int bytes) {
+        if (limiter == null || bytes <= 0) {
+            return 0;
+        }
+        return (long) (limiter.acquire(bytes) * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Wraps a stream so that everything written to it is throttled and
+     * counted as transferred.
+     *
+     * @param out   The stream to throttle.
+     * @param stats The stats that record the bytes written and the time
+     *              spent waiting.
+     * @return A throttled stream.
+     */
+    public OutputStream wrap(final OutputStream out,
+                             final TransferStats stats) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                stats.addThrottled(acquire(1));
+                out.write(b);
+                stats.addTransferredBytes(1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                stats.addThrottled(acquire(len));
+                out.write(b, off, len);
+                stats.addTransferredBytes(len);
+            }
+        };
+    }
+
+    /**
+     * Wraps a stream so that everything read from it is throttled and
+     * counted as transferred.
+     *
+     * @param in    The stream to throttle.
+     * @param stats The stats that record the bytes read and the time spent
+     *              waiting.
+     * @return A throttled stream.
+     */
+    public InputStream wrap(final InputStream in, final TransferStats stats) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                final int b = in.read();
+                if (b >= 0) {
+                    stats.addThrottled(acquire(1));
+                    stats.addTransferredBytes(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                final int read = in.read(b, off, len);
+                if (read > 0) {
+                    stats.addThrottled(acquire(read));
+                    stats.addTransferredBytes(read);
+                }
+                return read;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return isLimited() ?
+            String.format("%d bytes/s", bytesPerSecond) : "unlimited";
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.CloudBlobContainer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+
+/**
+ * BlobRangeReader implements RangeReader using ranged downloads of Azure
+ * blobs. Each read uses its own blob reference, so ranges of the same blob
+ * may be read concurrently. The range is written straight into the buffer.
+ */
+class BlobRangeReader implements RangeReader {
+
+    private final CloudBlobContainer container;
+
+    BlobRangeReader(final CloudBlobContainer container) {
+        this.container = container;
+    }
+
+    @Override
+    public void read(String key, long offset, ByteBuffer buffer)
+        throws IOException {
+        final OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                checkRemaining(1);
+                buffer.put((byte) b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                checkRemaining(len);
+                buffer.put(b, off, len);
+            }
+
+            private void checkRemaining(int len) throws IOException {
+                if (buffer.remaining() < len) {
+                    throw new IOException(String.format(
+                        "Range is longer than requested: container = %s, " +
+                            "key = %s, offset = %d",
+                        container.getName(), key, offset));
+                }
+            }
+        };
+        try {
+            container.getBlockBlobReference(key).downloadRange(offset,
+                (long) buffer.remaining(), out);
+        } catch (URISyntaxException | StorageException e) {
+            throw new IOException(String.format(
+                "Failed to read range: container = %s, key = %s, offset = %d",
+                container.getName(), key, offset), e);
+        }
+        if (buffer.hasRemaining()) {
+            throw new EOFException(String.format(
+                "Unexpected end of blob: container = %s, key = %s, " +
+                    "offset = %d", container.getName(), key, offset));
+        }
+    }
+}
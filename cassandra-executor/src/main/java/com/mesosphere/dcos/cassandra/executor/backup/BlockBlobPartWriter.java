@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.mesosphere.dcos.cassandra.executor.backup.azure.PageBlobOutputStream;
+import com.mesosphere.dcos.cassandra.executor.compress.CompressionDrivers;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.BlobRequestOptions;
+import com.microsoft.azure.storage.blob.BlockEntry;
+import com.microsoft.azure.storage.blob.CloudBlobContainer;
+import com.microsoft.azure.storage.blob.CloudBlockBlob;
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * BlockBlobPartWriter implements PartWriter using Azure block blobs. Each
+ * part is staged as one or more uncommitted blocks of at most
+ * MAX_BLOCK_SIZE bytes, and the object is created by committing the block
+ * list of all of its parts. Parts are staged concurrently, each through its
+ * own blob reference. The original size and codec of the object are
+ * recorded in the blob metadata when it is committed.
+ * <p>
+ * Azure does not report the digests of uncommitted blocks, so an
+ * interrupted upload is not resumed. Its uncommitted blocks are discarded
+ * by Azure.
+ */
+class BlockBlobPartWriter implements PartWriter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        BlockBlobPartWriter.class);
+
+    public static final int MAX_BLOCK_SIZE = 4 * 1024 * 1024;
+
+    private static final String BLOCK_ID_SEPARATOR = ",";
+
+    private final CloudBlobContainer container;
+    private final BlobRequestOptions options;
+
+    BlockBlobPartWriter(final CloudBlobContainer container) {
+        this.container = container;
+        this.options = new BlobRequestOptions();
+        this.options.setUseTransactionalContentMD5(true);
+    }
+
+    /**
+     * Gets the id of a block. Block ids must have the same length within a
+     * blob, so the part and slice numbers are zero padded.
+     *
+     * @param partNumber The one based number of the part.
+     * @param slice      The zero based number of the block in the part.
+     * @return The Base64 encoded block id.
+     */
+    static String blockId(final int partNumber, final int slice) {
+        return Base64.getEncoder().encodeToString(
+            String.format("%08d-%04d", partNumber, slice)
+                .getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private CloudBlockBlob blob(final String key) throws IOException {
+        try {
+            return container.getBlockBlobReference(key);
+        } catch (URISyntaxException | StorageException e) {
+            throw new IOException(String.format(
+                "Invalid blob reference: container = %s, key = %s",
+                container.getName(), key), e);
+        }
+    }
+
+    @Override
+    public String initiate(String key) throws IOException {
+        // Blocks are staged against the blob name, there is no upload to
+        // create.
+        return UUID.randomUUID().toString();
+    }
+
+    @Override
+    public String writePart(String key,
+                            String uploadId,
+                            int partNumber,
+                            ByteBuffer data,
+                            byte[] md5) throws IOException {
+        final CloudBlockBlob blob = blob(key);
+        final List<String> ids = new ArrayList<>();
+        final ByteBuffer remaining = data.duplicate();
+        try {
+            while (remaining.hasRemaining()) {
+                final ByteBuffer block = remaining.duplicate();
+                block.limit(block.position() +
+                    Math.min(MAX_BLOCK_SIZE, remaining.remaining()));
+                final String id = blockId(partNumber, ids.size());
+                blob.uploadBlock(id, new ByteBufferInputStream(block),
+                    block.remaining(), null, options, null);
+                ids.add(id);
+                remaining.position(block.limit());
+            }
+        } catch (StorageException e) {
+            throw new IOException(String.format(
+                "Failed to stage part: container = %s, key = %s, part = %d",
+                container.getName(), key, partNumber), e);
+        }
+        LOGGER.debug("Staged part: key = {}, part = {}, blocks = {}, md5 = {}",
+            key, partNumber, ids.size(), Hex.encodeHex(md5));
+        return String.join(BLOCK_ID_SEPARATOR, ids);
+    }
+
+    @Override
+    public void complete(String key, String uploadId, List<String> tags)
+        throws IOException {
+        commit(key, tags, null);
+    }
+
+    @Override
+    public void complete(String key,
+                         String uploadId,
+                         List<String> tags,
+                         PartIndex index) throws IOException {
+        commit(key, tags, index);
+    }
+
+    private void commit(final String key,
+                        final List<String> tags,
+                        final PartIndex index) throws IOException {
+        final List<BlockEntry> blocks = new ArrayList<>();
+        for (String tag : tags) {
+            for (String id : tag.split(BLOCK_ID_SEPARATOR)) {
+                blocks.add(new BlockEntry(id));
+            }
+        }
+        final CloudBlockBlob blob = blob(key);
+        if (index != null) {
+            blob.getMetadata().put(PageBlobOutputStream.ORIGINAL_SIZE_KEY,
+                Long.toString(index.getRawSize()));
+            blob.getMetadata().put(AzureStorageDriver.CODEC_KEY,
+                CompressionDrivers.name(index.getCodec()));
+        }
+        LOGGER.debug("Committing blob: container = {}, key = {}, blocks = {}",
+            container.getName(), key, blocks.size());
+        try {
+            blob.commitBlockList(blocks, null, options, null);
+        } catch (StorageException e) {
+            throw new IOException(String.format(
+                "Failed to commit blob: container = %s, key = %s",
+                container.getName(), key), e);
+        }
+    }
+
+    @Override
+    public void abort(String key, String uploadId) {
+        // Uncommitted blocks can not be deleted on their own. They are
+        // discarded when the blob is next committed, or by Azure after a
+        // week.
+        LOGGER.info("Abandoning staged blocks: container = {}, key = {}",
+            container.getName(), key);
+    }
+}
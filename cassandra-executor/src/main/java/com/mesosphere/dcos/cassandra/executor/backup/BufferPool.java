@@ -0,0 +1,169 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * BufferPool is a fixed size pool of reusable direct ByteBuffers. All of
+ * the buffers are allocated when the pool is constructed, so the memory used
+ * by a transfer is bounded by the size of the pool regardless of the number
+ * or the size of the files that are transferred. Callers block in
+ * {@link #acquire()} until a buffer is returned to the pool.
+ * <p>
+ * The pools of a transfer take their buffers from the executor's
+ * SharedBufferPool, and return them to it once they are closed.
+ */
+public class BufferPool {
+
+    private final BlockingQueue<ByteBuffer> buffers;
+    private final Set<ByteBuffer> owned =
+        Collections.newSetFromMap(new IdentityHashMap<>());
+    private final int count;
+    private final int bufferSize;
+    private final SharedBufferPool parent;
+    private boolean closed = false;
+
+    /**
+     * Constructs a new BufferPool.
+     *
+     * @param count      The number of buffers in the pool.
+     * @param bufferSize The capacity of each buffer in bytes.
+     */
+    public BufferPool(final int count, final int bufferSize) {
+        if (count <= 0 || bufferSize <= 0) {
+            throw new IllegalArgumentException(String.format(
+                "Invalid buffer pool: count = %d, bufferSize = %d",
+                count, bufferSize));
+        }
+        this.count = count;
+        this.bufferSize = bufferSize;
+        this.parent = null;
+        this.buffers = new ArrayBlockingQueue<>(count);
+        for (int i = 0; i < count; i++) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+            owned.add(buffer);
+            buffers.add(buffer);
+        }
+    }
+
+    BufferPool(final SharedBufferPool parent,
+               final List<ByteBuffer> reserved,
+               final int bufferSize) {
+        this.count = reserved.size();
+        this.bufferSize = bufferSize;
+        this.parent = parent;
+        this.buffers = new ArrayBlockingQueue<>(count);
+        for (ByteBuffer buffer : reserved) {
+            owned.add(buffer);
+            buffers.add(buffer);
+        }
+    }
+
+    /**
+     * Takes a buffer from the pool, blocking until one is available.
+     *
+     * @return A cleared buffer with a capacity of getBufferSize() bytes.
+     * @throws InterruptedException If the calling thread is interrupted
+     *                              while waiting for a buffer.
+     */
+    public ByteBuffer acquire() throws InterruptedException {
+        final ByteBuffer buffer = buffers.take();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool.
+     *
+     * @param buffer A buffer previously returned by acquire(). Buffers that
+     *               were not allocated by the pool are not added to it.
+     * @return True if the buffer was returned to the pool.
+     */
+    public boolean release(final ByteBuffer buffer) {
+        if (buffer == null) {
+            return false;
+        }
+        synchronized (this) {
+            if (!owned.contains(buffer)) {
+                return false;
+            }
+            buffer.clear();
+            if (!closed) {
+                return buffers.offer(buffer);
+            }
+            owned.remove(buffer);
+        }
+        parent.release(buffer);
+        return true;
+    }
+
+    /**
+     * Closes the pool. The buffers of a pool taken from a SharedBufferPool
+     * are returned to it, those in use once they are released.
+     */
+    public void close() {
+        if (parent == null) {
+            return;
+        }
+        final List<ByteBuffer> available = new ArrayList<>(count);
+        synchronized (this) {
+            closed = true;
+            buffers.drainTo(available);
+            // Not removeAll, which may compare buffers by their contents.
+            for (ByteBuffer buffer : available) {
+                owned.remove(buffer);
+            }
+        }
+        for (ByteBuffer buffer : available) {
+            parent.release(buffer);
+        }
+    }
+
+    /**
+     * Gets the buffer size.
+     *
+     * @return The capacity of each buffer in the pool.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Gets the number of buffers.
+     *
+     * @return The total number of buffers managed by the pool.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the number of available buffers.
+     *
+     * @return The number of buffers that can be acquired without blocking.
+     */
+    public int getAvailable() {
+        return buffers.size();
+    }
+}
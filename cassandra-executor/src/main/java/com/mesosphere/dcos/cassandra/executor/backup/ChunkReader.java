@@ -0,0 +1,287 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.mesosphere.dcos.cassandra.common.tasks.CassandraTaskExecutor;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.CLibrary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ChunkReader reads a file sequentially in chunks without copying its data
+ * to the heap. In CHANNEL mode the file is read through a FileChannel into
+ * a pooled direct chunk buffer. In MAPPED mode the file is mapped in large
+ * windows and each chunk is a slice of the current window, so the data is
+ * not copied at all. Each window is unmapped as soon as it has been read.
+ * <p>
+ * A backup reads every SSTable of the node once, and the pages it reads
+ * would otherwise push the data Cassandra serves out of the page cache. As
+ * each window of the file is read, the reader advises the kernel with
+ * posix_fadvise(POSIX_FADV_DONTNEED) that the window's pages are not
+ * needed, as Cassandra does for the SSTables it compacts. Pages that
+ * Cassandra has mapped are not dropped. Where posix_fadvise is not
+ * available, the advice is skipped.
+ */
+public abstract class ChunkReader implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        ChunkReader.class);
+
+    public static final String READ_MODE_ENV =
+        CassandraTaskExecutor.BACKUP_READ_MODE;
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Mode is the way a ChunkReader reads a file.
+     */
+    public enum Mode {
+        CHANNEL,
+        MAPPED;
+
+        /**
+         * Gets the mode of the executor.
+         *
+         * @return The mode named by the BACKUP_READ_MODE environment
+         * variable, or CHANNEL if it is not set or is not a mode.
+         */
+        public static Mode fromEnvironment() {
+            final String name = System.getenv(READ_MODE_ENV);
+            if (name == null || name.isEmpty()) {
+                return CHANNEL;
+            }
+            try {
+                return valueOf(name.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("Unknown backup read mode {}, using {}", name,
+                    CHANNEL);
+                return CHANNEL;
+            }
+        }
+    }
+
+    /**
+     * Opens a file. The file is closed, and its pages are advised as not
+     * needed, when the reader is closed.
+     *
+     * @param file      The file to read.
+     * @param mode      The way the file is read.
+     * @param chunk     A direct buffer of at least chunkSize bytes used to
+     *                  read the file in CHANNEL mode. It is not used in
+     *                  MAPPED mode.
+     * @param chunkSize The maximum size of each chunk.
+     * @return A ChunkReader for the file.
+     * @throws IOException If the file can not be opened.
+     */
+    public static ChunkReader open(final File file,
+                                  final Mode mode,
+                                  final ByteBuffer chunk,
+                                  final int chunkSize) throws IOException {
+        return open(file, mode, chunk, chunkSize, DEFAULT_WINDOW_SIZE);
+    }
+
+    static ChunkReader open(final File file,
+                           final Mode mode,
+                           final ByteBuffer chunk,
+                           final int chunkSize,
+                           final long window) throws IOException {
+        final FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.READ);
+        if (mode != Mode.MAPPED) {
+            return new ChannelReader(channel, true, chunk, chunkSize, window);
+        }
+        try {
+            return new MappedReader(channel, true, chunkSize, window);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads an open channel into a chunk buffer from its current position.
+     * The channel is not closed, and its pages are not advised, when the
+     * reader is closed.
+     *
+     * @param channel   The channel to read.
+     * @param chunk     A direct buffer of at least chunkSize bytes.
+     * @param chunkSize The maximum size of each chunk.
+     * @return A ChunkReader for the channel.
+     */
+    public static ChunkReader of(final FileChannel channel,
+                                 final ByteBuffer chunk,
+                                 final int chunkSize) {
+        return new ChannelReader(channel, false, chunk, chunkSize,
+            Long.MAX_VALUE);
+    }
+
+    /**
+     * Advises the kernel that the cached pages of a range of a file are not
+     * needed.
+     *
+     * @param channel The channel of the file.
+     * @param offset  The offset of the range.
+     * @param length  The length of the range in bytes.
+     */
+    public static void skipCache(final FileChannel channel,
+                                 final long offset,
+                                 final long length) {
+        if (length <= 0) {
+            return;
+        }
+        final int fd = CLibrary.getfd(channel);
+        if (fd >= 0) {
+            CLibrary.trySkipCache(fd, offset, length);
+        }
+    }
+
+    protected final FileChannel channel;
+    private final boolean owned;
+    private final long window;
+    private long advised = 0;
+
+    protected ChunkReader(final FileChannel channel,
+                          final boolean owned,
+                          final long window) {
+        this.channel = channel;
+        this.owned = owned;
+        this.window = window;
+    }
+
+    /**
+     * Reads the next chunk. The chunk is valid until the next call.
+     *
+     * @return A buffer that holds the next chunk between its position and
+     * limit, with no bytes remaining at the end of the file.
+     * @throws IOException If the file can not be read.
+     */
+    public abstract ByteBuffer next() throws IOException;
+
+    /**
+     * Advises the pages that have been read, once a full window of them
+     * has accumulated.
+     *
+     * @param position The position up to which the file has been read.
+     * @param force    True to advise the pages regardless of the window.
+     */
+    protected void advise(final long position, final boolean force) {
+        if (owned && (force || position - advised >= window)) {
+            skipCache(channel, advised, position - advised);
+            advised = position;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (owned) {
+            try {
+                advise(channel.size(), true);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private static class ChannelReader extends ChunkReader {
+        private final ByteBuffer chunk;
+        private final int chunkSize;
+        private long position;
+
+        private ChannelReader(final FileChannel channel,
+                              final boolean owned,
+                              final ByteBuffer chunk,
+                              final int chunkSize,
+                              final long window) {
+            super(channel, owned, window);
+            this.chunk = chunk;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public ByteBuffer next() throws IOException {
+            chunk.clear();
+            chunk.limit(chunkSize);
+            while (chunk.hasRemaining()) {
+                if (channel.read(chunk) < 0) {
+                    break;
+                }
+            }
+            chunk.flip();
+            position += chunk.remaining();
+            advise(position, false);
+            return chunk;
+        }
+    }
+
+    private static class MappedReader extends ChunkReader {
+        private final int chunkSize;
+        private final long windowSize;
+        private final long size;
+        private MappedByteBuffer mapped;
+        private long windowStart = 0;
+
+        private MappedReader(final FileChannel channel,
+                             final boolean owned,
+                             final int chunkSize,
+                             final long windowSize) throws IOException {
+            super(channel, owned, windowSize);
+            this.chunkSize = chunkSize;
+            this.windowSize = windowSize;
+            this.size = channel.size();
+        }
+
+        @Override
+        public ByteBuffer next() throws IOException {
+            if (mapped != null && !mapped.hasRemaining()) {
+                windowStart += mapped.capacity();
+                unmap();
+                advise(windowStart, true);
+            }
+            if (mapped == null) {
+                final long length = Math.min(windowSize, size - windowStart);
+                if (length <= 0) {
+                    return ByteBuffer.allocate(0);
+                }
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+                    windowStart, length);
+            }
+            final ByteBuffer chunk = mapped.slice();
+            chunk.limit(Math.min(chunkSize, chunk.remaining()));
+            mapped.position(mapped.position() + chunk.remaining());
+            return chunk;
+        }
+
+        private void unmap() {
+            if (mapped != null) {
+                FileUtils.clean(mapped);
+                mapped = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            unmap();
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,469 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.mesosphere.dcos.cassandra.common.config.CassandraConfig;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * CommitLogArchiver archives the closed commitlog segments of a node, so a
+ * backup can be restored to a point in time after it was taken.
+ * <p>
+ * Cassandra is configured to hard link every segment it closes into an
+ * archive directory on the same volume. The archiver periodically ships the
+ * linked segments, oldest first, to the external location of the last
+ * backup that requested archiving, through its BackupStorageDriver, and
+ * deletes each segment once it is stored. The archive directory is the
+ * queue, so the memory used does not depend on the number of pending
+ * segments. Until a backup requests archiving, the oldest segments are
+ * dropped once the pending segments exceed a size limit.
+ * <p>
+ * Archived segments are named with the time they were closed, so a restore
+ * can select the segments needed to replay up to a point in time. The
+ * segments are staged in a restore directory, and Cassandra replays them,
+ * up to the point in time, the next time it starts.
+ */
+public class CommitLogArchiver implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        CommitLogArchiver.class);
+
+    public static final String DIRECTORY = "_commitlog";
+    public static final String PROPERTIES_FILE =
+        "commitlog_archiving.properties";
+    public static final long DEFAULT_INTERVAL_MS = 10000;
+    public static final long DEFAULT_MAX_PENDING_BYTES =
+        1024L * 1024 * 1024;
+
+    private static final String TARGET_FILE = "target.json";
+    private static final String POINT_IN_TIME_FILE = "point_in_time";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final DateTimeFormatter POINT_IN_TIME_FORMAT =
+        DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss")
+            .withZone(ZoneOffset.UTC);
+
+    private static class Target {
+        private final BackupContext context;
+        private final BackupStorageDriver driver;
+
+        private Target(final BackupContext context,
+                       final BackupStorageDriver driver) {
+            this.context = context;
+            this.driver = driver;
+        }
+    }
+
+    private final Path archiveDirectory;
+    private final Path restoreDirectory;
+    private final long maxPendingBytes;
+    private final BooleanSupplier started;
+    private volatile Target target;
+    private final AtomicLong archivedSegments = new AtomicLong();
+    private final AtomicLong archivedBytes = new AtomicLong();
+    private final AtomicLong droppedSegments = new AtomicLong();
+
+    /**
+     * Gets the default archive directory.
+     *
+     * @return The directory on the persistent volume that Cassandra links
+     * closed segments into.
+     */
+    public static Path defaultArchiveDirectory() {
+        return Paths.get(CassandraConfig.VOLUME_PATH, "commitlog_archive")
+            .toAbsolutePath();
+    }
+
+    /**
+     * Gets the default restore directory.
+     *
+     * @return The directory on the persistent volume that segments are
+     * staged in for replay.
+     */
+    public static Path defaultRestoreDirectory() {
+        return Paths.get(CassandraConfig.VOLUME_PATH, "commitlog_restore")
+            .toAbsolutePath();
+    }
+
+    /**
+     * Constructs a new CommitLogArchiver. If a target was persisted by a
+     * previous executor, archiving resumes to it.
+     *
+     * @param archiveDirectory The directory Cassandra links closed segments
+     *                         into.
+     * @param restoreDirectory The directory segments are staged in for
+     *                         replay.
+     * @param maxPendingBytes  The maximum size of the pending segments kept
+     *                         while archiving has not been requested.
+     * @param started          Tests if Cassandra has started, i.e. has
+     *                         replayed any staged segments.
+     */
+    public CommitLogArchiver(final Path archiveDirectory,
+                             final Path restoreDirectory,
+                             final long maxPendingBytes,
+                             final BooleanSupplier started) {
+        this.archiveDirectory = archiveDirectory;
+        this.restoreDirectory = restoreDirectory;
+        this.maxPendingBytes = maxPendingBytes;
+        this.started = started;
+        final File targetFile = archiveDirectory.resolve(TARGET_FILE)
+            .toFile();
+        if (targetFile.isFile()) {
+            try {
+                final BackupContext context =
+                    BackupContext.JSON_SERIALIZER.deserialize(
+                        Files.readAllBytes(targetFile.toPath()));
+                target = new Target(context,
+                    StorageDriverFactory.createStorageDriver(context));
+                LOGGER.info("Resuming commitlog archiving to {}",
+                    context.getExternalLocation());
+            } catch (IOException e) {
+                LOGGER.error("Failed to read commitlog archiving target", e);
+            }
+        }
+    }
+
+    /**
+     * Gets the prefix of a node's archived segments.
+     *
+     * @param nodeId The id of the node.
+     * @return The path of the node's archived segments relative to the
+     * external location.
+     */
+    public static String prefix(final String nodeId) {
+        return DIRECTORY + "/" + nodeId + "/";
+    }
+
+    /**
+     * Gets the name of the object a segment is archived as.
+     *
+     * @param segment The closed segment.
+     * @return The time the segment was closed followed by its file name.
+     */
+    public static String objectName(final File segment) {
+        return segment.lastModified() + "-" + segment.getName();
+    }
+
+    /**
+     * Gets the time an archived segment was closed.
+     *
+     * @param objectName The name of the archived segment.
+     * @return The time in milliseconds since the epoch, or empty if the name
+     * is not the name of an archived segment.
+     */
+    public static Optional<Long> closedMillis(final String objectName) {
+        final int separator = objectName.indexOf('-');
+        if (separator <= 0 || !objectName.endsWith(SEGMENT_SUFFIX)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Long.parseLong(
+                objectName.substring(0, separator)));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Gets the file name of an archived segment.
+     *
+     * @param objectName The name of the archived segment.
+     * @return The file name of the segment when it was written.
+     */
+    public static String segmentName(final String objectName) {
+        return objectName.substring(objectName.indexOf('-') + 1);
+    }
+
+    /**
+     * Selects the archived segments needed to replay up to a point in time.
+     * Every segment closed before the point in time is selected, as is the
+     * first segment closed after it, which holds the last writes before the
+     * point in time.
+     *
+     * @param objectNames   The names of the archived segments.
+     * @param pointInTimeMs The point in time in milliseconds since the
+     *                      epoch.
+     * @return The names of the selected segments, in the order they were
+     * closed.
+     */
+    public static List<String> select(final Collection<String> objectNames,
+                                      final long pointInTimeMs) {
+        final List<String> sorted = objectNames.stream()
+            .filter(name -> closedMillis(name).isPresent())
+            .sorted(Comparator.comparing((String name) ->
+                closedMillis(name).get()).thenComparing(name -> name))
+            .collect(Collectors.toList());
+        final List<String> selected = new ArrayList<>();
+        for (String name : sorted) {
+            selected.add(name);
+            if (closedMillis(name).get() > pointInTimeMs) {
+                break;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Prepares a restore directory for a download. Segments left by an
+     * earlier restore are deleted.
+     *
+     * @param restoreDirectory The directory the segments will be
+     *                         downloaded to.
+     * @throws IOException If the directory can not be created or cleared.
+     */
+    public static void prepareRestore(final Path restoreDirectory)
+        throws IOException {
+        Files.createDirectories(restoreDirectory);
+        clear(restoreDirectory);
+    }
+
+    /**
+     * Stages downloaded segments for replay. The next time Cassandra starts
+     * it replays the segments in the restore directory up to the point in
+     * time.
+     *
+     * @param restoreDirectory The directory the segments were downloaded to.
+     * @param pointInTimeMs    The point in time in milliseconds since the
+     *                         epoch.
+     * @throws IOException If the point in time can not be written.
+     */
+    public static void stageRestore(final Path restoreDirectory,
+                                    final long pointInTimeMs)
+        throws IOException {
+        Files.write(restoreDirectory.resolve(POINT_IN_TIME_FILE),
+            Long.toString(pointInTimeMs).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Gets the point in time of a staged restore.
+     *
+     * @return The point in time of the segments staged for replay, or empty
+     * if no segments are staged.
+     */
+    public Optional<Long> getStagedPointInTime() {
+        final Path file = restoreDirectory.resolve(POINT_IN_TIME_FILE);
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Long.parseLong(new String(
+                Files.readAllBytes(file), StandardCharsets.UTF_8).trim()));
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.error("Failed to read point in time of staged restore", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes Cassandra's commitlog archiving configuration. Closed segments
+     * are linked into the archive directory and, if segments are staged for
+     * replay, they are restored up to their point in time.
+     *
+     * @param file The commitlog_archiving.properties file of Cassandra.
+     * @throws IOException If the configuration can not be written.
+     */
+    public void writeProperties(final Path file) throws IOException {
+        Files.createDirectories(archiveDirectory);
+        final Properties properties = new Properties();
+        properties.setProperty("archive_command",
+            "/bin/ln %path " + archiveDirectory + "/%name");
+        final Optional<Long> pointInTime = getStagedPointInTime();
+        if (pointInTime.isPresent()) {
+            properties.setProperty("restore_command", "/bin/cp -f %from %to");
+            properties.setProperty("restore_directories",
+                restoreDirectory.toString());
+            properties.setProperty("restore_point_in_time",
+                POINT_IN_TIME_FORMAT.format(Instant.ofEpochMilli(
+                    pointInTime.get())));
+            LOGGER.info("Replaying staged commitlog segments up to {}",
+                properties.getProperty("restore_point_in_time"));
+        }
+        try (Writer writer = Files.newBufferedWriter(file,
+            StandardCharsets.UTF_8)) {
+            properties.store(writer, "Written by the Cassandra executor");
+        }
+    }
+
+    /**
+     * Starts archiving segments to the external location of a backup. The
+     * target is persisted, so archiving resumes if the executor restarts.
+     *
+     * @param context The context of the backup.
+     * @param driver  The BackupStorageDriver of the external location.
+     * @throws IOException If the target can not be persisted.
+     */
+    public void start(final BackupContext context,
+                      final BackupStorageDriver driver) throws IOException {
+        Files.createDirectories(archiveDirectory);
+        final Path file = archiveDirectory.resolve(TARGET_FILE);
+        // The target holds the credentials of the external location.
+        Files.write(file, BackupContext.JSON_SERIALIZER.serialize(context));
+        Files.setPosixFilePermissions(file,
+            PosixFilePermissions.fromString("rw-------"));
+        target = new Target(context, driver);
+        LOGGER.info("Archiving commitlog segments to {}",
+            context.getExternalLocation());
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (getStagedPointInTime().isPresent() &&
+                started.getAsBoolean()) {
+                clearRestore();
+            }
+            final List<File> segments = listPending();
+            final Target current = target;
+            if (current == null) {
+                dropOldest(segments);
+                return;
+            }
+            for (File segment : segments) {
+                final long size = segment.length();
+                final long closed = segment.lastModified();
+                // The driver deletes the segment once it is stored.
+                current.driver.archiveCommitLog(current.context, segment);
+                archivedSegments.incrementAndGet();
+                archivedBytes.addAndGet(size);
+                LOGGER.info("Archived commitlog segment: {} | lag ms: {}",
+                    segment.getName(),
+                    System.currentTimeMillis() - closed);
+            }
+        } catch (Throwable t) {
+            // The segment is retried on the next run.
+            LOGGER.error("Failed to archive commitlog segments", t);
+        }
+    }
+
+    /**
+     * Gets the archive lag.
+     *
+     * @return The time in milliseconds since the oldest pending segment was
+     * closed, or 0 if no segment is pending.
+     */
+    public long getLagMillis() {
+        final List<File> pending = listPending();
+        return pending.isEmpty() ? 0 :
+            Math.max(0, System.currentTimeMillis() -
+                pending.get(0).lastModified());
+    }
+
+    public int getPendingSegments() {
+        return listPending().size();
+    }
+
+    public long getPendingBytes() {
+        return listPending().stream().mapToLong(File::length).sum();
+    }
+
+    public long getArchivedSegments() {
+        return archivedSegments.get();
+    }
+
+    public long getArchivedBytes() {
+        return archivedBytes.get();
+    }
+
+    public long getDroppedSegments() {
+        return droppedSegments.get();
+    }
+
+    /**
+     * Registers the archiver's gauges.
+     *
+     * @param registry The MetricRegistry of the executor.
+     */
+    public void register(final MetricRegistry registry) {
+        registry.register("commitlog.archive.lag_ms",
+            (Gauge<Long>) this::getLagMillis);
+        registry.register("commitlog.archive.pending_segments",
+            (Gauge<Integer>) this::getPendingSegments);
+        registry.register("commitlog.archive.pending_bytes",
+            (Gauge<Long>) this::getPendingBytes);
+        registry.register("commitlog.archive.archived_segments",
+            (Gauge<Long>) this::getArchivedSegments);
+        registry.register("commitlog.archive.archived_bytes",
+            (Gauge<Long>) this::getArchivedBytes);
+        registry.register("commitlog.archive.dropped_segments",
+            (Gauge<Long>) this::getDroppedSegments);
+    }
+
+    private List<File> listPending() {
+        final File[] files = archiveDirectory.toFile().listFiles(file ->
+            file.isFile() && file.getName().endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        final List<File> segments = new ArrayList<>(Arrays.asList(files));
+        segments.sort(Comparator.comparingLong(File::lastModified)
+            .thenComparing(File::getName));
+        return segments;
+    }
+
+    private void dropOldest(final List<File> segments) throws IOException {
+        long pending = segments.stream().mapToLong(File::length).sum();
+        for (File segment : segments) {
+            if (pending <= maxPendingBytes) {
+                break;
+            }
+            pending -= segment.length();
+            Files.delete(segment.toPath());
+            droppedSegments.incrementAndGet();
+            LOGGER.warn("Commitlog archiving was not requested by a backup, " +
+                "dropped segment: {}", segment.getName());
+        }
+    }
+
+    private static void clear(final Path directory) throws IOException {
+        final File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+    }
+
+    private void clearRestore() throws IOException {
+        clear(restoreDirectory);
+        LOGGER.info("Cassandra started, cleared replayed commitlog " +
+            "segments: {}", restoreDirectory);
+    }
+}
@@ -0,0 +1,1027 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mesosphere.dcos.cassandra.executor.compress.CompressionDriver;
+import com.mesosphere.dcos.cassandra.executor.compress.CompressionDrivers;
+import com.mesosphere.dcos.cassandra.executor.compress.SnappyCompressionDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+/**
+ * DownloadEngine downloads a set of objects written by the UploadEngine
+ * through a RangeReader. For each object the PartIndex is read from the end
+ * of the object, the local file is preallocated to its original size, and
+ * the parts are fetched, verified and decoded concurrently, each one written
+ * at its own offset with positional FileChannel writes. Up to
+ * concurrentFiles files are open at once, and up to concurrentParts parts
+ * across all files are fetched or decoded at once using pooled direct
+ * buffers, reserved from a SharedBufferPool for each transfer.
+ * <p>
+ * The numbers of the parts written to a file are appended to a progress
+ * file next to it. If a download fails, the partial file and its progress
+ * file are kept, and the next download of the same object only fetches the
+ * parts that are missing. When the expected size and part digests of a file
+ * are known from a BackupManifest, the PartIndex of the object is verified
+ * against them before any part is fetched.
+ * <p>
+ * Every read is retried on its own according to a RetryPolicy, and slow
+ * part reads are hedged by a RequestRunner, so a part that corrupts or
+ * times out is fetched again without failing its file. Encrypted objects
+ * are decrypted with the BackupCipher of the key recorded in their
+ * PartIndex as their parts are decoded.
+ * <p>
+ * Objects uploaded before the PartIndex was introduced are a single Snappy
+ * stream without an index. They are read sequentially and decompressed
+ * into their file, without concurrency or resume.
+ */
+public class DownloadEngine {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        DownloadEngine.class);
+
+    /**
+     * A remote object and the local file it will be written to.
+     */
+    public static class FileDownload {
+        private final String key;
+        private final long size;
+        private final File file;
+        private final long rawSize;
+        private final List<String> parts;
+        private final String checksum;
+
+        public FileDownload(final String key,
+                            final long size,
+                            final File file) {
+            this(key, size, file, -1, Collections.emptyList());
+        }
+
+        /**
+         * Constructs a new FileDownload that is verified against a manifest.
+         *
+         * @param key     The key of the object.
+         * @param size    The size of the object in bytes.
+         * @param file    The file the object is written to.
+         * @param rawSize The expected size of the file, or -1 if unknown.
+         * @param parts   The expected hex MD5 digests of the parts of the
+         *                object, or an empty list if unknown.
+         */
+        public FileDownload(final String key,
+                            final long size,
+                            final File file,
+                            final long rawSize,
+                            final List<String> parts) {
+            this(key, size, file, rawSize, parts, null);
+        }
+
+        /**
+         * Constructs a new FileDownload that is verified against a manifest,
+         * including the checksum of its content.
+         *
+         * @param key      The key of the object.
+         * @param size     The size of the object in bytes.
+         * @param file     The file the object is written to.
+         * @param rawSize  The expected size of the file, or -1 if unknown.
+         * @param parts    The expected hex MD5 digests of the parts of the
+         *                 object, or an empty list if unknown.
+         * @param checksum The expected CRC32 of the file as a hex string,
+         *                 or null if unknown.
+         */
+        public FileDownload(final String key,
+                            final long size,
+                            final File file,
+                            final long rawSize,
+                            final List<String> parts,
+                            final String checksum) {
+            this.key = key;
+            this.size = size;
+            this.file = file;
+            this.rawSize = rawSize;
+            this.parts = parts;
+            this.checksum = checksum;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return The size of the remote object in bytes.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return The expected size of the file in bytes, or -1 if unknown.
+         */
+        public long getRawSize() {
+            return rawSize;
+        }
+
+        public List<String> getParts() {
+            return parts;
+        }
+
+        /**
+         * @return The expected CRC32 of the file as a hex string, or null if
+         * unknown.
+         */
+        public String getChecksum() {
+            return checksum;
+        }
+    }
+
+    /**
+     * DownloadSource supplies the files of a download in batches, so the
+     * first files are downloaded while the rest are still being listed.
+     */
+    public interface DownloadSource {
+
+        /**
+         * Gets a DownloadSource that supplies a single batch.
+         *
+         * @param downloads The files to download.
+         * @return A DownloadSource that supplies downloads.
+         */
+        static DownloadSource of(final List<FileDownload> downloads) {
+            final AtomicBoolean supplied = new AtomicBoolean();
+            return () -> supplied.getAndSet(true) ?
+                Optional.empty() : Optional.of(downloads);
+        }
+
+        /**
+         * Gets the next batch of files, blocking until it is available.
+         *
+         * @return The next batch of files, or empty once every file has
+         * been supplied.
+         * @throws IOException          If the files can not be listed.
+         * @throws InterruptedException If the wait is interrupted.
+         */
+        Optional<List<FileDownload>> next()
+            throws IOException, InterruptedException;
+    }
+
+    public static final String PROGRESS_SUFFIX = ".progress";
+
+    // The size of the ranges read from an object without a part index.
+    private static final int LEGACY_RANGE_SIZE = 1024 * 1024;
+
+    /**
+     * Gets the progress file of a download.
+     *
+     * @param file The file being downloaded.
+     * @return The file that records the parts written to file.
+     */
+    public static File progressFile(final File file) {
+        return new File(file.getPath() + PROGRESS_SUFFIX);
+    }
+
+    private final RangeReader reader;
+    private final int concurrentFiles;
+    private final int concurrentParts;
+    private final int partBufferSize;
+    private final BandwidthThrottle throttle;
+    private final RetryPolicy retryPolicy;
+    private final List<BackupCipher> ciphers;
+    private final SharedBufferPool bufferPool;
+
+    private DownloadEngine(final Builder builder) {
+        this.reader = builder.reader;
+        this.concurrentFiles = builder.concurrentFiles;
+        this.concurrentParts = builder.concurrentParts;
+        this.partBufferSize = builder.partBufferSize;
+        this.throttle = builder.throttle;
+        this.retryPolicy = builder.retryPolicy;
+        this.ciphers = builder.ciphers;
+        this.bufferPool = builder.bufferPool;
+    }
+
+    /**
+     * Creates a Builder for a DownloadEngine that reads its objects through
+     * reader. Every other property of the engine has a default.
+     *
+     * @param reader The RangeReader used to read the objects.
+     * @return A Builder for a DownloadEngine.
+     */
+    public static Builder builder(final RangeReader reader) {
+        return new Builder(reader);
+    }
+
+    /**
+     * Builder for DownloadEngine.
+     */
+    public static class Builder {
+        private final RangeReader reader;
+        private int concurrentFiles = 1;
+        private int concurrentParts = 1;
+        private int partBufferSize = PartEncoder.partBufferSize(
+            UploadEngine.DEFAULT_PART_SIZE, PartEncoder.DEFAULT_CHUNK_SIZE);
+        private BandwidthThrottle throttle = BandwidthThrottle.UNLIMITED;
+        private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+        private List<BackupCipher> ciphers = BackupCipher.allFromEnvironment();
+        private SharedBufferPool bufferPool = SharedBufferPool.executor();
+
+        private Builder(final RangeReader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Sets the maximum number of files downloaded at once.
+         *
+         * @param concurrentFiles The maximum number of files downloaded at
+         *                        once.
+         * @return The Builder instance.
+         */
+        public Builder setConcurrentFiles(final int concurrentFiles) {
+            this.concurrentFiles = concurrentFiles;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of parts downloaded at once across all
+         * files.
+         *
+         * @param concurrentParts The maximum number of parts downloaded at
+         *                        once.
+         * @return The Builder instance.
+         */
+        public Builder setConcurrentParts(final int concurrentParts) {
+            this.concurrentParts = concurrentParts;
+            return this;
+        }
+
+        /**
+         * Sets the size of the largest part that can be downloaded, see
+         * {@link PartEncoder#partBufferSize(int, int)}.
+         *
+         * @param partBufferSize The size of the part buffers in bytes.
+         * @return The Builder instance.
+         */
+        public Builder setPartBufferSize(final int partBufferSize) {
+            this.partBufferSize = partBufferSize;
+            return this;
+        }
+
+        /**
+         * Sets the throttle that limits the rate at which parts are read.
+         * By default, downloads are not throttled.
+         *
+         * @param throttle The bandwidth throttle.
+         * @return The Builder instance.
+         */
+        public Builder setThrottle(final BandwidthThrottle throttle) {
+            this.throttle = throttle;
+            return this;
+        }
+
+        /**
+         * Sets the policy that retries and hedges each read.
+         *
+         * @param retryPolicy The retry policy.
+         * @return The Builder instance.
+         */
+        public Builder setRetryPolicy(final RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the ciphers that encrypted objects can be decrypted with. By
+         * default, they are the keys of the executor, see
+         * {@link BackupCipher#allFromEnvironment()}.
+         *
+         * @param ciphers The ciphers.
+         * @return The Builder instance.
+         */
+        public Builder setCiphers(final List<BackupCipher> ciphers) {
+            this.ciphers = ciphers;
+            return this;
+        }
+
+        /**
+         * Sets the pool the buffers of each transfer are reserved from. By
+         * default, it is the pool of the executor.
+         *
+         * @param bufferPool The shared buffer pool.
+         * @return The Builder instance.
+         */
+        public Builder setBufferPool(final SharedBufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+            return this;
+        }
+
+        /**
+         * Creates a DownloadEngine with the properties of the Builder.
+         *
+         * @return A DownloadEngine.
+         */
+        public DownloadEngine build() {
+            return new DownloadEngine(this);
+        }
+    }
+
+    /**
+     * Downloads files. Files that fail to download are logged, deleted and
+     * skipped.
+     *
+     * @param nodeId    The id of the node, used to report throughput.
+     * @param downloads The files to download.
+     * @return The statistics of the transfer.
+     * @throws IOException If the download is interrupted.
+     */
+    public TransferStats download(final String nodeId,
+                                  final List<FileDownload> downloads)
+        throws IOException {
+        return download(nodeId, DownloadSource.of(downloads),
+            DownloadListener.NONE);
+    }
+
+    /**
+     * Downloads files in path order, so the components of an SSTable are
+     * downloaded together. Files that fail to download are logged, deleted
+     * and skipped.
+     *
+     * @param nodeId    The id of the node, used to report throughput.
+     * @param downloads The files to download.
+     * @param listener  The listener that admits each file before it is
+     *                  downloaded and is notified once it is downloaded.
+     * @return The statistics of the transfer.
+     * @throws IOException If the download is interrupted.
+     */
+    public TransferStats download(final String nodeId,
+                                  final List<FileDownload> downloads,
+                                  final DownloadListener listener)
+        throws IOException {
+        return download(nodeId, DownloadSource.of(downloads), listener);
+    }
+
+    /**
+     * Downloads the files supplied by a DownloadSource. The files of each
+     * batch are downloaded in path order, and the download of a batch
+     * starts as soon as it is supplied. Files that fail to download are
+     * logged, deleted and skipped.
+     *
+     * @param nodeId   The id of the node, used to report throughput.
+     * @param source   The source of the files to download.
+     * @param listener The listener that admits each file before it is
+     *                 downloaded and is notified once it is downloaded.
+     * @return The statistics of the transfer.
+     * @throws IOException If the files can not be listed or the download
+     *                     is interrupted.
+     */
+    public TransferStats download(final String nodeId,
+                                  final DownloadSource source,
+                                  final DownloadListener listener)
+        throws IOException {
+        final TransferStats stats = new TransferStats(nodeId);
+        final SharedBufferPool.Reservation buffers =
+            reserve(concurrentParts, "Download interrupted");
+        final BufferPool partPool = buffers.getPartPool();
+        final BufferPool chunkPool = buffers.getChunkPool();
+        final ExecutorService fileExecutor = Executors.newFixedThreadPool(
+            concurrentFiles,
+            new ThreadFactoryBuilder().setNameFormat("download-file-%d")
+                .setDaemon(true).build());
+        final ExecutorService partExecutor = Executors.newFixedThreadPool(
+            concurrentParts,
+            new ThreadFactoryBuilder().setNameFormat("download-part-%d")
+                .setDaemon(true).build());
+        final RequestRunner requests = new RequestRunner(retryPolicy, stats);
+        LOGGER.info("Downloading files: concurrent files = {}, " +
+                "concurrent parts = {}, bandwidth = {}, retries = {}",
+            concurrentFiles, concurrentParts, throttle, retryPolicy);
+        final Closeable progress = stats.report(LOGGER,
+            TransferStats.DEFAULT_REPORT_INTERVAL_MS);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            Optional<List<FileDownload>> batch;
+            while ((batch = source.next()).isPresent()) {
+                final List<FileDownload> ordered = new ArrayList<>(
+                    batch.get());
+                ordered.sort(Comparator.comparing(
+                    download -> download.getFile().getAbsolutePath()));
+                for (FileDownload download : ordered) {
+                    listener.admit(download.getFile(),
+                        download.getRawSize() >= 0 ?
+                            download.getRawSize() : download.getSize());
+                    futures.add(fileExecutor.submit(() -> {
+                        if (downloadFile(download, partPool, chunkPool,
+                            partExecutor, requests, stats)) {
+                            listener.downloaded(download.getFile());
+                        } else {
+                            listener.failed(download.getFile());
+                        }
+                    }));
+                }
+            }
+            LOGGER.info("Scheduled {} files for download", futures.size());
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Download interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Download failed", e.getCause());
+        } finally {
+            fileExecutor.shutdownNow();
+            partExecutor.shutdownNow();
+            requests.close();
+            buffers.close();
+            progress.close();
+            stats.stop();
+        }
+        LOGGER.info("Download throughput: {}", stats);
+        return stats;
+    }
+
+    /**
+     * Verifies objects without writing them to disk. Every part of each
+     * object is read, checked against its MD5 digest and decompressed, and
+     * the decompressed content is checked against the expected size and
+     * checksum of the file. The parts of an object are read in order, and
+     * up to concurrentFiles objects are verified at once.
+     *
+     * @param nodeId    The id of the node, used to report throughput.
+     * @param downloads The objects to verify. Their files are not written.
+     * @return The statistics of the verification. Objects that failed
+     * verification are counted as failed files.
+     * @throws IOException If the verification is interrupted.
+     */
+    public TransferStats verify(final String nodeId,
+                                final List<FileDownload> downloads)
+        throws IOException {
+        final TransferStats stats = new TransferStats(nodeId);
+        final SharedBufferPool.Reservation buffers =
+            reserve(concurrentFiles, "Verification interrupted");
+        final BufferPool partPool = buffers.getPartPool();
+        final BufferPool chunkPool = buffers.getChunkPool();
+        final ExecutorService executor = Executors.newFixedThreadPool(
+            concurrentFiles,
+            new ThreadFactoryBuilder().setNameFormat("verify-file-%d")
+                .setDaemon(true).build());
+        final RequestRunner requests = new RequestRunner(retryPolicy, stats);
+        LOGGER.info("Verifying {} objects: concurrent files = {}, " +
+                "bandwidth = {}, retries = {}", downloads.size(),
+            concurrentFiles, throttle, retryPolicy);
+        final Closeable progress = stats.report(LOGGER,
+            TransferStats.DEFAULT_REPORT_INTERVAL_MS);
+        try {
+            final List<Future<?>> futures = new ArrayList<>(downloads.size());
+            for (FileDownload download : downloads) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        verifyFile(download, partPool, chunkPool, requests,
+                            stats);
+                    } catch (Throwable t) {
+                        if (t instanceof InterruptedException) {
+                            Thread.currentThread().interrupt();
+                        }
+                        LOGGER.error(String.format(
+                            "Object failed verification: %s",
+                            download.getKey()), t);
+                        stats.addFailedFile();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Verification interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Verification failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            requests.close();
+            buffers.close();
+            progress.close();
+            stats.stop();
+        }
+        LOGGER.info("Verification throughput: {}", stats);
+        return stats;
+    }
+
+    private SharedBufferPool.Reservation reserve(final int count,
+                                                 final String interrupted)
+        throws InterruptedIOException {
+        try {
+            return bufferPool.reserve(count, PartEncoder.DEFAULT_CHUNK_SIZE,
+                count, partBufferSize);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(interrupted);
+        }
+    }
+
+    private void verifyFile(final FileDownload download,
+                            final BufferPool partPool,
+                            final BufferPool chunkPool,
+                            final RequestRunner requests,
+                            final TransferStats stats) throws Exception {
+        final String key = download.getKey();
+        final Optional<PartIndex> found = readIndex(key, download.getSize(),
+            requests);
+        if (!found.isPresent()) {
+            verifyLegacyFile(download, requests, stats);
+            return;
+        }
+        final PartIndex index = found.get();
+        verifyIndex(download, index);
+        final CompressionDriver codec = CompressionDrivers.forId(
+            index.getCodec());
+        final BackupCipher cipher = cipher(key, index);
+        final CRC32 crc = new CRC32();
+        final ByteBuffer part = partPool.acquire();
+        ByteBuffer chunk = null;
+        try {
+            chunk = chunkPool.acquire();
+            for (PartIndex.Entry entry : index.getEntries()) {
+                if (entry.getLength() > partPool.getBufferSize()) {
+                    throw new IOException(String.format(
+                        "Part is larger than %d bytes: key = %s, %s",
+                        partPool.getBufferSize(), key, entry));
+                }
+                requests.execute(String.format("verify part: key = %s, " +
+                    "part = %d", key, entry.getPartNumber()), hedge -> {
+                    part.clear();
+                    part.limit(entry.getLength());
+                    stats.addThrottled(throttle.acquire(entry.getLength()));
+                    reader.read(key, entry.getObjectOffset(), part);
+                    part.flip();
+                    PartDecoder.verify(entry, part);
+                    return part;
+                });
+                PartDecoder.decode(entry, part, chunk, codec, cipher,
+                    (frame, position) -> crc.update(frame));
+                stats.addPart(entry.getLength());
+            }
+        } finally {
+            partPool.release(part);
+            chunkPool.release(chunk);
+        }
+        final String checksum = Long.toHexString(crc.getValue());
+        if (download.getChecksum() != null &&
+            !download.getChecksum().equals(checksum)) {
+            throw new IOException(String.format(
+                "Checksum %s does not match manifest checksum %s: key = %s",
+                checksum, download.getChecksum(), key));
+        }
+        stats.addFile(index.getRawSize());
+        LOGGER.debug("Verified object: {} | parts: {} | size: {} | " +
+                "checksum: {}", key, index.getEntries().size(),
+            index.getRawSize(), checksum);
+    }
+
+    private boolean downloadFile(final FileDownload download,
+                                 final BufferPool partPool,
+                                 final BufferPool chunkPool,
+                                 final ExecutorService partExecutor,
+                                 final RequestRunner requests,
+                                 final TransferStats stats) {
+        final File file = download.getFile();
+        final File progressFile = progressFile(file);
+        final String key = download.getKey();
+        boolean resumable = false;
+        try {
+            final Optional<PartIndex> found = readIndex(key,
+                download.getSize(), requests);
+            if (!found.isPresent()) {
+                downloadLegacyFile(download, requests, stats);
+                return true;
+            }
+            final PartIndex index = found.get();
+            verifyIndex(download, index);
+            final CompressionDriver codec = CompressionDrivers.forId(
+                index.getCodec());
+            final BackupCipher cipher = cipher(key, index);
+            final Set<Integer> completed = readProgress(file, progressFile,
+                index);
+            LOGGER.info("Downloading file: {} | key: {} | parts: {} | " +
+                    "completed parts: {} | size: {} | codec: {}",
+                file.getAbsolutePath(), key, index.getEntries().size(),
+                completed.size(), index.getRawSize(), codec.getName());
+            try (FileChannel progress = FileChannel.open(
+                progressFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                 RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                out.setLength(index.getRawSize());
+                resumable = true;
+                final FileChannel channel = out.getChannel();
+                final AtomicReference<Throwable> failure =
+                    new AtomicReference<>();
+                final List<Future<?>> futures =
+                    new ArrayList<>(index.getEntries().size());
+                for (PartIndex.Entry entry : index.getEntries()) {
+                    if (completed.contains(entry.getPartNumber())) {
+                        stats.addResumedPart();
+                        continue;
+                    }
+                    futures.add(partExecutor.submit(() -> {
+                        downloadPart(key, entry, codec, cipher, channel,
+                            partPool, chunkPool, requests, failure, stats);
+                        recordProgress(progress, entry.getPartNumber());
+                        return null;
+                    }));
+                }
+                // Every part must finish before the channel is closed.
+                for (Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        failure.compareAndSet(null, e.getCause());
+                    }
+                }
+                if (failure.get() != null) {
+                    throw new IOException("Failed to download part",
+                        failure.get());
+                }
+                channel.force(false);
+            }
+            Files.delete(progressFile.toPath());
+            stats.addFile(index.getRawSize());
+            LOGGER.debug("Successfully downloaded file: {}",
+                file.getAbsolutePath());
+            return true;
+        } catch (Throwable t) {
+            if (t instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            LOGGER.error(String.format("Error downloading file: %s",
+                file.getAbsolutePath()), t);
+            stats.addFailedFile();
+            if (resumable) {
+                LOGGER.info("Keeping partial file for resume: {}",
+                    file.getAbsolutePath());
+            } else {
+                final boolean delete = file.delete();
+                progressFile.delete();
+                LOGGER.debug("Deletion status: {} for file {}",
+                    delete, file.getAbsolutePath());
+            }
+            return false;
+        }
+    }
+
+    private BackupCipher cipher(final String key, final PartIndex index)
+        throws IOException {
+        if (!index.isEncrypted()) {
+            return null;
+        }
+        for (BackupCipher cipher : ciphers) {
+            if (cipher.getKeyId() == index.getKeyId()) {
+                return cipher.forObject(key);
+            }
+        }
+        throw new IOException(String.format(
+            "Object is encrypted with an unknown key: key = %s, " +
+                "key id = %016x. Set %s or %s to the key of the backup",
+            key, index.getKeyId(), BackupCipher.KEY_ENV,
+            BackupCipher.PREVIOUS_KEYS_ENV));
+    }
+
+    private static void verifyIndex(final FileDownload download,
+                                    final PartIndex index)
+        throws IOException {
+        if (download.getRawSize() >= 0 &&
+            download.getRawSize() != index.getRawSize()) {
+            throw new IOException(String.format(
+                "Object size %d does not match manifest size %d: key = %s",
+                index.getRawSize(), download.getRawSize(),
+                download.getKey()));
+        }
+        final List<String> parts = download.getParts();
+        if (parts.isEmpty()) {
+            return;
+        }
+        if (parts.size() != index.getEntries().size()) {
+            throw new IOException(String.format(
+                "Object has %d parts, manifest has %d: key = %s",
+                index.getEntries().size(), parts.size(), download.getKey()));
+        }
+        for (PartIndex.Entry entry : index.getEntries()) {
+            if (!entry.getMd5Hex().equals(
+                parts.get(entry.getPartNumber() - 1))) {
+                throw new IOException(String.format(
+                    "Part does not match manifest: key = %s, %s",
+                    download.getKey(), entry));
+            }
+        }
+    }
+
+    /**
+     * Reads the parts already written to a file by a previous download.
+     * A file of the right size without a progress file was completely
+     * downloaded. A progress file is only trusted if the file still has the
+     * size it was preallocated to.
+     */
+    private static Set<Integer> readProgress(final File file,
+                                             final File progressFile,
+                                             final PartIndex index)
+        throws IOException {
+        final Set<Integer> completed = new HashSet<>();
+        final boolean sized = file.isFile() &&
+            file.length() == index.getRawSize();
+        if (sized && !progressFile.exists()) {
+            for (PartIndex.Entry entry : index.getEntries()) {
+                completed.add(entry.getPartNumber());
+            }
+            return completed;
+        }
+        if (sized) {
+            final ByteBuffer parts = ByteBuffer.wrap(
+                Files.readAllBytes(progressFile.toPath()));
+            while (parts.remaining() >= 4) {
+                completed.add(parts.getInt());
+            }
+        } else {
+            Files.deleteIfExists(progressFile.toPath());
+        }
+        return completed;
+    }
+
+    private static void recordProgress(final FileChannel progress,
+                                       final int partNumber)
+        throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.putInt(partNumber).flip();
+        synchronized (progress) {
+            while (buffer.hasRemaining()) {
+                progress.write(buffer);
+            }
+        }
+    }
+
+    private void downloadPart(final String key,
+                              final PartIndex.Entry entry,
+                              final CompressionDriver codec,
+                              final BackupCipher cipher,
+                              final FileChannel channel,
+                              final BufferPool partPool,
+                              final BufferPool chunkPool,
+                              final RequestRunner requests,
+                              final AtomicReference<Throwable> failure,
+                              final TransferStats stats) throws Exception {
+        if (failure.get() != null) {
+            throw new IOException("Download aborted", failure.get());
+        }
+        if (entry.getLength() > partPool.getBufferSize()) {
+            throw new IOException(String.format(
+                "Part is larger than %d bytes: key = %s, %s",
+                partPool.getBufferSize(), key, entry));
+        }
+        final ByteBuffer part = partPool.acquire();
+        // The part buffer is released once it has been decoded and the
+        // read into it has finished, which may be later if a hedged read
+        // won. A hedged read can not share the part buffer with the slow
+        // read, so it reads into a buffer of its own.
+        final AtomicInteger holders = new AtomicInteger(1);
+        final Runnable release = () -> {
+            if (holders.decrementAndGet() == 0) {
+                partPool.release(part);
+            }
+        };
+        ByteBuffer chunk = null;
+        try {
+            chunk = chunkPool.acquire();
+            holders.incrementAndGet();
+            final ByteBuffer data = requests.executeHedged(String.format(
+                "download part: key = %s, part = %d", key,
+                entry.getPartNumber()), hedge -> {
+                final ByteBuffer target = hedge ?
+                    ByteBuffer.allocateDirect(entry.getLength()) : part;
+                target.clear();
+                target.limit(entry.getLength());
+                stats.addThrottled(throttle.acquire(entry.getLength()));
+                LOGGER.debug("Downloading part: {} | key: {}",
+                    entry.getPartNumber(), key);
+                reader.read(key, entry.getObjectOffset(), target);
+                target.flip();
+                PartDecoder.verify(entry, target);
+                return target;
+            }, release);
+            PartDecoder.decode(entry, data, chunk, channel, codec, cipher);
+            stats.addPart(entry.getLength());
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+            throw t;
+        } finally {
+            release.run();
+            chunkPool.release(chunk);
+        }
+    }
+
+    /**
+     * Reads the PartIndex of an object.
+     *
+     * @return The index of the object, or empty if the object was uploaded
+     * before the PartIndex was introduced.
+     */
+    private Optional<PartIndex> readIndex(final String key,
+                                          final long size,
+                                          final RequestRunner requests)
+        throws IOException {
+        if (size < PartIndex.TRAILER_SIZE) {
+            return Optional.empty();
+        }
+        final ByteBuffer trailer = ByteBuffer.allocate(PartIndex.TRAILER_SIZE);
+        requests.execute("read index: key = " + key, hedge -> {
+            trailer.clear();
+            reader.read(key, size - PartIndex.TRAILER_SIZE, trailer);
+            return trailer.flip();
+        });
+        if (!PartIndex.hasIndex(trailer)) {
+            return Optional.empty();
+        }
+        final int indexSize = PartIndex.parseSize(trailer);
+        if (indexSize > size) {
+            throw new IOException("Part index is larger than object: " + key);
+        }
+        final ByteBuffer index = ByteBuffer.allocate(indexSize);
+        requests.execute("read index: key = " + key, hedge -> {
+            index.clear();
+            reader.read(key, size - indexSize, index);
+            return index.flip();
+        });
+        return Optional.of(PartIndex.parse(index));
+    }
+
+    private void downloadLegacyFile(final FileDownload download,
+                                    final RequestRunner requests,
+                                    final TransferStats stats)
+        throws IOException {
+        final File file = download.getFile();
+        LOGGER.info("Downloading file without a part index: {} | key: {} | " +
+                "size: {}", file.getAbsolutePath(), download.getKey(),
+            download.getSize());
+        Files.deleteIfExists(progressFile(file).toPath());
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[PartEncoder.DEFAULT_CHUNK_SIZE];
+        long rawSize = 0;
+        try (InputStream in = openLegacy(download, requests, stats);
+             OutputStream out = new BufferedOutputStream(
+                 new FileOutputStream(file), buffer.length)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                crc.update(buffer, 0, read);
+                rawSize += read;
+            }
+        }
+        verifyLegacy(download, rawSize, crc);
+        stats.addFile(rawSize);
+        LOGGER.debug("Successfully downloaded file: {}",
+            file.getAbsolutePath());
+    }
+
+    private void verifyLegacyFile(final FileDownload download,
+                                  final RequestRunner requests,
+                                  final TransferStats stats)
+        throws IOException {
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[PartEncoder.DEFAULT_CHUNK_SIZE];
+        long rawSize = 0;
+        try (InputStream in = openLegacy(download, requests, stats)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                rawSize += read;
+            }
+        }
+        verifyLegacy(download, rawSize, crc);
+        stats.addFile(rawSize);
+        LOGGER.debug("Verified object without a part index: {} | size: {}",
+            download.getKey(), rawSize);
+    }
+
+    private static void verifyLegacy(final FileDownload download,
+                                     final long rawSize,
+                                     final CRC32 crc) throws IOException {
+        if (download.getRawSize() >= 0 && download.getRawSize() != rawSize) {
+            throw new IOException(String.format(
+                "Object size %d does not match manifest size %d: key = %s",
+                rawSize, download.getRawSize(), download.getKey()));
+        }
+        final String checksum = Long.toHexString(crc.getValue());
+        if (download.getChecksum() != null &&
+            !download.getChecksum().equals(checksum)) {
+            throw new IOException(String.format(
+                "Checksum %s does not match manifest checksum %s: key = %s",
+                checksum, download.getChecksum(), download.getKey()));
+        }
+    }
+
+    /**
+     * Opens an object without a part index as a stream of its decompressed
+     * content. The object is read in ranges, each of which is retried on
+     * its own.
+     */
+    private InputStream openLegacy(final FileDownload download,
+                                   final RequestRunner requests,
+                                   final TransferStats stats)
+        throws IOException {
+        final String key = download.getKey();
+        final long size = download.getSize();
+        if (size == 0) {
+            // An empty object has no Snappy header to read.
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        final ByteBuffer range = ByteBuffer.allocate(LEGACY_RANGE_SIZE);
+        range.flip();
+        final InputStream object = new InputStream() {
+            private long position = 0;
+
+            private boolean fill() throws IOException {
+                if (range.hasRemaining()) {
+                    return true;
+                }
+                if (position >= size) {
+                    return false;
+                }
+                final long offset = position;
+                final int length = (int) Math.min(LEGACY_RANGE_SIZE,
+                    size - offset);
+                requests.execute(String.format("read object: key = %s, " +
+                    "offset = %d", key, offset), hedge -> {
+                    range.clear();
+                    range.limit(length);
+                    stats.addThrottled(throttle.acquire(length));
+                    reader.read(key, offset, range);
+                    return range.flip();
+                });
+                position += length;
+                stats.addTransferredBytes(length);
+                return true;
+            }
+
+            @Override
+            public int read() throws IOException {
+                return fill() ? range.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!fill()) {
+                    return -1;
+                }
+                final int count = Math.min(len, range.remaining());
+                range.get(b, off, count);
+                return count;
+            }
+        };
+        return new SnappyCompressionDriver().decompress(object);
+    }
+}
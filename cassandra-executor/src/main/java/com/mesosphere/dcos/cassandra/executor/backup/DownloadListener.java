@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import java.io.File;
+
+/**
+ * DownloadListener observes the files of a restore as they are downloaded,
+ * so they can be loaded while the rest of the backup is still being
+ * downloaded. Files are admitted in path order, so all components of an
+ * SSTable are admitted one after another.
+ */
+public interface DownloadListener {
+
+    /**
+     * A DownloadListener that does not observe the downloads.
+     */
+    DownloadListener NONE = new DownloadListener() {
+        @Override
+        public void admit(File file, long size) {
+        }
+
+        @Override
+        public void downloaded(File file) {
+        }
+    };
+
+    /**
+     * Called before the download of a file is started, from the thread that
+     * schedules the downloads. The call may block to limit the disk space
+     * used by downloaded files.
+     *
+     * @param file The file that will be downloaded.
+     * @param size The expected size of the file in bytes.
+     * @throws InterruptedException If the download is interrupted while
+     *                              waiting.
+     */
+    void admit(File file, long size) throws InterruptedException;
+
+    /**
+     * Called once a file has been downloaded and verified, from the thread
+     * that downloaded it. Files that fail to download are not reported.
+     *
+     * @param file The downloaded file.
+     */
+    void downloaded(File file);
+
+    /**
+     * Called when a file that was admitted failed to download, from the
+     * thread that downloaded it.
+     *
+     * @param file The file that failed to download.
+     */
+    default void failed(File file) {
+    }
+}
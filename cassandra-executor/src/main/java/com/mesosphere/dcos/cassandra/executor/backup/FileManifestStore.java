@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+
+/**
+ * FileManifestStore implements ManifestStore with files below a root
+ * directory. Manifests are written to a temporary file that is then renamed,
+ * so a reader never sees a partially written manifest.
+ */
+class FileManifestStore implements ManifestStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        FileManifestStore.class);
+
+    private final Path root;
+
+    FileManifestStore(final Path root) {
+        this.root = root;
+    }
+
+    @Override
+    public Optional<BackupManifest> read(String key) throws IOException {
+        final Path path = root.resolve(key);
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(BackupManifest.parse(Files.readAllBytes(path)));
+        } catch (IOException e) {
+            throw new IOException(String.format(
+                "Failed to read manifest: root = %s, key = %s", root, key), e);
+        }
+    }
+
+    @Override
+    public void write(String key, BackupManifest manifest)
+        throws IOException {
+        final Path path = root.resolve(key);
+        final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(path.getParent());
+            Files.write(temp, manifest.toBytes());
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IOException(String.format(
+                "Failed to write manifest: root = %s, key = %s", root, key),
+                e);
+        }
+        LOGGER.info("Wrote manifest: key = {}, components = {}, " +
+            "complete = {}", key, manifest.getComponents().size(),
+            manifest.isComplete());
+    }
+}
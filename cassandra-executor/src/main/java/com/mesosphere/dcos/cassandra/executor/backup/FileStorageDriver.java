@@ -0,0 +1,814 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupContext;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupRestoreContext;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Implements a BackupStorageDriver that stores backups in a directory of a
+ * local or network file system, e.g. an NFS mount, given as a
+ * file:///path/to/directory external location.
+ * <p>
+ * Backups have the same layout and manifests as in the object stores, with
+ * each key resolved against the directory. Snapshot files are stored as
+ * plain copies, so a file is hard linked into the backup when the data
+ * directory and the backup directory are on the same file system, and is
+ * otherwise copied with FileChannel.transferTo. Files are transferred in
+ * parallel and the copies are throttled by the backup's bandwidth limit.
+ * As no network is involved, the driver also serves as a local stand-in for
+ * the object stores when measuring the backup pipeline.
+ */
+public class FileStorageDriver implements BackupStorageDriver {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        FileStorageDriver.class);
+
+    public static final int DEFAULT_CONCURRENT_FILES = 4;
+    // Copies are throttled and counted in chunks of this size.
+    public static final int DEFAULT_TRANSFER_SIZE = 8 * 1024 * 1024;
+    public static final String MANIFESTS_DIRECTORY =
+        S3StorageDriver.MANIFESTS_DIRECTORY;
+    public static final String INCREMENTAL_MANIFEST_SUFFIX =
+        S3StorageDriver.INCREMENTAL_MANIFEST_SUFFIX;
+
+    /**
+     * A file to link or copy, and the action to perform once it has been
+     * transferred.
+     */
+    private static class Transfer {
+        private final Path source;
+        private final Path target;
+        private final long size;
+        private final Runnable onTransferred;
+
+        private Transfer(final Path source,
+                         final Path target,
+                         final long size,
+                         final Runnable onTransferred) {
+            this.source = source;
+            this.target = target;
+            this.size = size;
+            this.onTransferred = onTransferred;
+        }
+    }
+
+    private final StorageUtil storageUtil = new StorageUtil();
+    private final int concurrentFiles;
+
+    public FileStorageDriver() {
+        this(DEFAULT_CONCURRENT_FILES);
+    }
+
+    /**
+     * Constructs a new FileStorageDriver.
+     *
+     * @param concurrentFiles The number of files transferred in parallel.
+     */
+    public FileStorageDriver(final int concurrentFiles) {
+        this.concurrentFiles = concurrentFiles;
+    }
+
+    /**
+     * Gets the directory that holds the backups.
+     */
+    Path getRoot(BackupRestoreContext ctx) throws URISyntaxException {
+        return Paths.get(new URI(ctx.getExternalLocation()).getPath());
+    }
+
+    /**
+     * Gets the key of a node's manifest, relative to the root directory.
+     * As in the object stores, the manifest of a backup is stored under the
+     * backup's name, and the manifest of the latest backup of the node is
+     * stored at the root.
+     */
+    String getManifestKey(String prefixKey, String nodeId) {
+        final String prefix = prefixKey.isEmpty() ? "" : prefixKey + "/";
+        return prefix + MANIFESTS_DIRECTORY + "/" + nodeId + ".json";
+    }
+
+    /**
+     * Gets the key of the incremental manifest of a node's backup, relative
+     * to the root directory.
+     */
+    String getIncrementalManifestKey(String prefixKey, String nodeId) {
+        final String prefix = prefixKey.isEmpty() ? "" : prefixKey + "/";
+        return prefix + MANIFESTS_DIRECTORY + "/" + nodeId +
+            INCREMENTAL_MANIFEST_SUFFIX;
+    }
+
+    /**
+     * Reads the manifest of a node's backup. If includeIncremental is set,
+     * the SSTables shipped to the backup after its snapshot are included.
+     */
+    private BackupManifest readManifest(Path root,
+                                        String backupName,
+                                        String nodeId,
+                                        boolean includeIncremental)
+        throws IOException {
+        final ManifestStore manifests = new FileManifestStore(root);
+        final BackupManifest manifest = manifests.read(
+            getManifestKey(backupName, nodeId)).orElseThrow(
+            () -> new IOException(String.format(
+                "Backup %s of node %s has no manifest in %s", backupName,
+                nodeId, root)));
+        if (!manifest.isComplete()) {
+            throw new IOException(String.format(
+                "Backup %s of node %s is incomplete", backupName, nodeId));
+        }
+        return includeIncremental ?
+            manifest.withIncremental(manifests.read(
+                getIncrementalManifestKey(backupName, nodeId))) :
+            manifest;
+    }
+
+    @Override
+    public void upload(BackupContext ctx)
+        throws IOException, URISyntaxException {
+        final String backupName = ctx.getName();
+        final String nodeId = ctx.getNodeId();
+        final Path root = getRoot(ctx);
+        Files.createDirectories(root);
+
+        final String key = backupName + "/" + nodeId;
+        LOGGER.info("Backup key: {} | Root: {}", key, root);
+        final File dataDirectory = new File(ctx.getLocalLocation());
+        final List<UploadEngine.FileUpload> uploads = listUploads(
+            ctx, dataDirectory, key, backupName);
+
+        final ManifestStore manifests = new FileManifestStore(root);
+        final String latestManifestKey = getManifestKey("", nodeId);
+        // Files shipped to the previous backup are referenced as well.
+        Optional<BackupManifest> previous = ctx.isIncremental() ?
+            manifests.read(latestManifestKey) : Optional.empty();
+        if (previous.isPresent()) {
+            previous = Optional.of(previous.get().withIncremental(
+                manifests.read(getIncrementalManifestKey(
+                    previous.get().getBackupName(), nodeId))));
+        }
+        LOGGER.info("Incremental backup: {} | Previous manifest: {}",
+            ctx.isIncremental(), previous.map(
+                BackupManifest::getBackupName).orElse("none"));
+
+        final ManifestTracker tracker = new ManifestTracker(manifests,
+            getManifestKey(backupName, nodeId), backupName, nodeId,
+            ctx.getCluster(), ManifestTracker.DEFAULT_CHECKPOINT_INTERVAL_MS);
+        final List<Transfer> transfers = new ArrayList<>();
+        for (UploadEngine.FileUpload upload : tracker.select(uploads, key,
+            previous)) {
+            final File file = upload.getFile();
+            transfers.add(new Transfer(file.toPath(),
+                root.resolve(upload.getKey()), file.length(), () -> {
+                tracker.copied(upload);
+                // As with the object stores, the snapshot file is removed
+                // once it is stored.
+                final boolean delete = file.delete();
+                LOGGER.debug("Deletion status: {} for file {}", delete,
+                    file.getAbsolutePath());
+            }));
+        }
+
+        final TransferStats stats = transferAll(nodeId, transfers,
+            isSameFileSystem(dataDirectory.toPath(), root),
+            BandwidthThrottle.ofMegabytes(ctx.getBandwidthLimitMb()),
+            DownloadListener.NONE);
+        if (stats.getFailedFiles() > 0) {
+            tracker.checkpoint();
+            throw new IOException(String.format(
+                "Failed to upload %d files for backup: %s",
+                stats.getFailedFiles(), backupName));
+        }
+        manifests.write(latestManifestKey, tracker.complete());
+
+        LOGGER.info("Done uploading snapshots for backup: {} | {}",
+            backupName, stats);
+    }
+
+    private List<UploadEngine.FileUpload> listUploads(BackupContext ctx,
+                                                      File dataDirectory,
+                                                      String key,
+                                                      String backupName)
+        throws IOException {
+        final List<UploadEngine.FileUpload> uploads = new ArrayList<>();
+
+        // Ex: data/<keyspace>/<cf>/snapshots/</snapshot-dir>/<files>
+        for (File keyspaceDir : dataDirectory.listFiles()) {
+            if (keyspaceDir.isFile()) {
+                continue;
+            }
+            for (File cfDir : keyspaceDir.listFiles()) {
+                final File snapshotDir = new File(cfDir, "snapshots");
+                if (!storageUtil.isValidBackupDir(ctx, keyspaceDir, cfDir,
+                    snapshotDir)) {
+                    LOGGER.info("Skipping directory: {}",
+                        snapshotDir.getAbsolutePath());
+                    continue;
+                }
+                final Optional<File> snapshotDirectory =
+                    storageUtil.getValidSnapshotDirectory(snapshotDir,
+                        backupName);
+                if (!snapshotDirectory.isPresent()) {
+                    LOGGER.warn("Snapshots directory: {} doesn't contain " +
+                            "the current backup directory: {}",
+                        snapshotDir.getName(), backupName);
+                    continue;
+                }
+                final String cfKey = key + "/" + keyspaceDir.getName() +
+                    "/" + cfDir.getName() + "/";
+                try (Stream<Path> paths = Files.walk(
+                    snapshotDirectory.get().toPath())) {
+                    paths.map(Path::toFile).filter(File::isFile).forEach(
+                        file -> uploads.add(new UploadEngine.FileUpload(file,
+                            cfKey + file.getName())));
+                }
+            }
+        }
+        return uploads;
+    }
+
+    @Override
+    public void download(RestoreContext ctx)
+        throws IOException, URISyntaxException {
+        download(ctx, DownloadListener.NONE);
+    }
+
+    @Override
+    public void download(RestoreContext ctx, DownloadListener listener)
+        throws IOException, URISyntaxException {
+        final String backupName = ctx.getName();
+        final String nodeId = ctx.getNodeId();
+        final Path root = getRoot(ctx);
+
+        final BackupManifest manifest = readManifest(root, backupName,
+            nodeId, ctx.isIncludeIncremental());
+
+        // Ex: <localLocation>/<backupName>/<nodeId>/<keyspace>/<cf>/<files>
+        final Path localLocation = Paths.get(ctx.getLocalLocation());
+        final Path nodeDirectory = localLocation.resolve(backupName)
+            .resolve(nodeId);
+        final List<Transfer> transfers = new ArrayList<>();
+        for (BackupManifest.Component component :
+            manifest.getComponents()) {
+            if (!StorageUtil.isSelected(ctx, component.getPath())) {
+                continue;
+            }
+            if (component.getCodec() != null) {
+                throw new IOException(String.format(
+                    "Component %s of backup %s is encoded with %s and was " +
+                        "not stored by a file system backup",
+                    component.getPath(), backupName, component.getCodec()));
+            }
+            final Path target = nodeDirectory.resolve(component.getPath());
+            transfers.add(new Transfer(root.resolve(component.getKey()),
+                target, component.getSize(),
+                () -> listener.downloaded(target.toFile())));
+        }
+        // The components of an SSTable are transferred together.
+        transfers.sort(Comparator.comparing(transfer -> transfer.target));
+        Files.createDirectories(nodeDirectory);
+
+        final TransferStats stats = transferAll(nodeId, transfers,
+            isSameFileSystem(root, nodeDirectory),
+            BandwidthThrottle.ofMegabytes(ctx.getBandwidthLimitMb()),
+            listener);
+        if (stats.getFailedFiles() > 0) {
+            throw new IOException(String.format(
+                "Failed to download %d files for backup: %s",
+                stats.getFailedFiles(), backupName));
+        }
+
+        LOGGER.info("Done downloading snapshots for backup: {} | {}",
+            backupName, stats);
+    }
+
+    @Override
+    public TransferStats verify(RestoreContext ctx)
+        throws IOException, URISyntaxException {
+        final String backupName = ctx.getName();
+        final String nodeId = ctx.getNodeId();
+        final Path root = getRoot(ctx);
+
+        final BackupManifest manifest = readManifest(root, backupName,
+            nodeId, ctx.isIncludeIncremental());
+        final BandwidthThrottle throttle = BandwidthThrottle.ofMegabytes(
+            ctx.getBandwidthLimitMb());
+
+        final TransferStats stats = new TransferStats(nodeId);
+        final ExecutorService executor = Executors.newFixedThreadPool(
+            concurrentFiles,
+            new ThreadFactoryBuilder().setNameFormat("file-verify-%d")
+                .setDaemon(true).build());
+        LOGGER.info("Verifying {} files: concurrent files = {}, " +
+                "bandwidth = {}", manifest.getComponents().size(),
+            concurrentFiles, throttle);
+        final Closeable progress = stats.report(LOGGER,
+            TransferStats.DEFAULT_REPORT_INTERVAL_MS);
+        try {
+            final List<Future<?>> futures = new ArrayList<>(
+                manifest.getComponents().size());
+            for (BackupManifest.Component component :
+                manifest.getComponents()) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        verifyFile(root.resolve(component.getKey()),
+                            component, throttle, stats);
+                        stats.addFile(component.getSize());
+                    } catch (Throwable t) {
+                        LOGGER.error(String.format(
+                            "File failed verification: %s",
+                            component.getKey()), t);
+                        stats.addFailedFile();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Verification interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Verification failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            progress.close();
+            stats.stop();
+        }
+        LOGGER.info("Done verifying backup: {} | {}", backupName, stats);
+        return stats;
+    }
+
+    @Override
+    public TransferStats uploadIncremental(BackupContext ctx,
+                                           Map<String, File> files)
+        throws IOException, URISyntaxException {
+        final String backupName = ctx.getName();
+        final String nodeId = ctx.getNodeId();
+        final Path root = getRoot(ctx);
+        final String key = backupName + "/" + nodeId;
+        final ManifestStore manifests = new FileManifestStore(root);
+        final BackupManifest manifest = manifests.read(
+            getManifestKey(backupName, nodeId))
+            .filter(BackupManifest::isComplete)
+            .orElseThrow(() -> new IOException(String.format(
+                "Backup %s of node %s has no complete manifest in %s",
+                backupName, nodeId, root)));
+        final String incrementalKey = getIncrementalManifestKey(backupName,
+            nodeId);
+        final Optional<BackupManifest> incremental = manifests.read(
+            incrementalKey);
+
+        final List<UploadEngine.FileUpload> uploads = new ArrayList<>();
+        for (Map.Entry<String, File> file : files.entrySet()) {
+            uploads.add(new UploadEngine.FileUpload(file.getValue(),
+                key + "/" + file.getKey()));
+        }
+        // Files already in the backup are referenced, and checkpoints would
+        // replace the complete incremental manifest.
+        final ManifestTracker tracker = new ManifestTracker(manifests,
+            incrementalKey, backupName, nodeId, ctx.getCluster(),
+            Long.MAX_VALUE);
+        final List<Transfer> transfers = new ArrayList<>();
+        for (UploadEngine.FileUpload upload : tracker.select(uploads, key,
+            Optional.of(manifest.withIncremental(incremental)))) {
+            final File file = upload.getFile();
+            transfers.add(new Transfer(file.toPath(),
+                root.resolve(upload.getKey()), file.length(),
+                () -> tracker.copied(upload)));
+        }
+        final TransferStats stats = transferAll(nodeId, transfers,
+            !files.isEmpty() && isSameFileSystem(
+                files.values().iterator().next().toPath(), root),
+            BandwidthThrottle.ofMegabytes(ctx.getBandwidthLimitMb()),
+            DownloadListener.NONE);
+        tracker.chain(manifest, incremental);
+        if (stats.getFailedFiles() > 0) {
+            throw new IOException(String.format(
+                "Failed to upload %d incremental files for backup: %s",
+                stats.getFailedFiles(), backupName));
+        }
+        return stats;
+    }
+
+    @Override
+    public long prune(BackupContext ctx)
+        throws IOException, URISyntaxException {
+        final BackupRetention retention = BackupRetention.of(ctx);
+        if (!retention.isEnabled()) {
+            return 0;
+        }
+        final String cluster = ctx.getCluster();
+        if (cluster == null || cluster.isEmpty()) {
+            LOGGER.warn("Backup retention skipped, the cluster of the " +
+                "backup is unknown: {}", ctx.getName());
+            return 0;
+        }
+        final String nodeId = ctx.getNodeId();
+        final Path root = getRoot(ctx);
+        final ManifestStore manifests = new FileManifestStore(root);
+
+        // As in the object stores, only the backups whose manifest was
+        // written by this cluster expire, and the files the manifests of
+        // other clusters reference are kept.
+        final Map<String, Long> complete = new HashMap<>();
+        final List<String> incomplete = new ArrayList<>();
+        final Map<String, BackupManifest> manifestsByName = new HashMap<>();
+        final List<BackupManifest> kept = new ArrayList<>();
+        final File[] directories = root.toFile().listFiles(File::isDirectory);
+        for (File directory : directories == null ?
+            new File[0] : directories) {
+            final String name = directory.getName();
+            if (name.startsWith("_")) {
+                // The latest manifests and the commitlog archive.
+                continue;
+            }
+            final Path manifestPath = root.resolve(
+                getManifestKey(name, nodeId));
+            if (!Files.exists(manifestPath)) {
+                continue;
+            }
+            final Optional<BackupManifest> manifest = manifests.read(
+                getManifestKey(name, nodeId));
+            if (!manifest.isPresent()) {
+                continue;
+            } else if (!manifest.get().isWrittenBy(cluster)) {
+                kept.add(manifest.get().withIncremental(manifests.read(
+                    getIncrementalManifestKey(name, nodeId))));
+            } else if (manifest.get().isComplete()) {
+                complete.put(name,
+                    Files.getLastModifiedTime(manifestPath).toMillis());
+                manifestsByName.put(name, manifest.get());
+            } else {
+                incomplete.add(name);
+            }
+        }
+        final Set<String> expired = retention.expired(ctx.getName(), complete,
+            incomplete);
+        LOGGER.info("Backup retention: {} | backups = {}, incomplete = {}, " +
+                "expired = {}", retention, complete.size(), incomplete.size(),
+            expired);
+
+        for (Map.Entry<String, BackupManifest> manifest :
+            manifestsByName.entrySet()) {
+            if (!expired.contains(manifest.getKey())) {
+                kept.add(manifest.getValue().withIncremental(manifests.read(
+                    getIncrementalManifestKey(manifest.getKey(), nodeId))));
+            }
+        }
+        manifests.read(getManifestKey("", nodeId)).ifPresent(kept::add);
+        final Set<String> referenced = BackupRetention.referencedKeys(kept);
+
+        long deleted = 0;
+        for (String name : expired) {
+            final String nodePrefix = name + "/" + nodeId + "/";
+            final Map<String, BackupManifest.Component> retained =
+                new TreeMap<>();
+            for (BackupManifest manifest : kept) {
+                for (BackupManifest.Component component :
+                    manifest.getComponents()) {
+                    if (component.getKey() != null &&
+                        component.getKey().startsWith(nodePrefix)) {
+                        retained.put(component.getKey(), component);
+                    }
+                }
+            }
+            // As in the object stores, the manifest is marked incomplete
+            // before any file is deleted.
+            manifests.write(getManifestKey(name, nodeId),
+                new BackupManifest(name, nodeId, cluster, false, null,
+                    new ArrayList<>(retained.values())));
+            final Path nodeDirectory = root.resolve(name).resolve(nodeId);
+            long files = 0;
+            for (Path path : listFiles(nodeDirectory)) {
+                final String key = root.relativize(path).toString()
+                    .replace(File.separatorChar, '/');
+                if (!referenced.contains(key)) {
+                    Files.delete(path);
+                    files++;
+                }
+            }
+            deleteEmptyDirectories(nodeDirectory);
+            if (Files.deleteIfExists(root.resolve(
+                getIncrementalManifestKey(name, nodeId)))) {
+                files++;
+            }
+            if (retained.isEmpty()) {
+                Files.delete(root.resolve(getManifestKey(name, nodeId)));
+                files++;
+                deleteEmptyDirectories(root.resolve(name));
+            }
+            deleted += files;
+            LOGGER.info("Pruned backup: {} | deleted files = {}, " +
+                "referenced files = {}", name, files, retained.size());
+        }
+        return deleted;
+    }
+
+    private static List<Path> listFiles(final Path directory)
+        throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile)
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static void deleteEmptyDirectories(final Path directory)
+        throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        final List<Path> directories;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            directories = paths.filter(Files::isDirectory)
+                .sorted(Comparator.reverseOrder())
+                .collect(Collectors.toList());
+        }
+        for (Path path : directories) {
+            final String[] entries = path.toFile().list();
+            if (entries != null && entries.length == 0) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Override
+    public void archiveCommitLog(BackupContext ctx, File segment)
+        throws IOException, URISyntaxException {
+        final Path target = getRoot(ctx)
+            .resolve(CommitLogArchiver.prefix(ctx.getNodeId()))
+            .resolve(CommitLogArchiver.objectName(segment));
+        Files.createDirectories(target.getParent());
+        transfer(segment.toPath(), target,
+            isSameFileSystem(segment.toPath(), target.getParent()),
+            BandwidthThrottle.ofMegabytes(ctx.getBandwidthLimitMb()),
+            new TransferStats(ctx.getNodeId()));
+        Files.delete(segment.toPath());
+    }
+
+    @Override
+    public int downloadCommitLog(RestoreContext ctx, File directory)
+        throws IOException, URISyntaxException {
+        final Path source = getRoot(ctx).resolve(
+            CommitLogArchiver.prefix(ctx.getNodeId()));
+        final String[] names = source.toFile().list();
+        if (names == null) {
+            LOGGER.info("No commitlog segments archived for this node: {}",
+                source);
+            return 0;
+        }
+        final List<String> selected = CommitLogArchiver.select(
+            Arrays.asList(names), ctx.getPointInTimeMs());
+        LOGGER.info("Commitlog segments to replay for this node: {} of {}",
+            selected.size(), names.length);
+        final BandwidthThrottle throttle = BandwidthThrottle.ofMegabytes(
+            ctx.getBandwidthLimitMb());
+        final TransferStats stats = new TransferStats(ctx.getNodeId());
+        final boolean link = isSameFileSystem(source, directory.toPath());
+        for (String name : selected) {
+            transfer(source.resolve(name), directory.toPath().resolve(
+                CommitLogArchiver.segmentName(name)), link, throttle, stats);
+        }
+        return selected.size();
+    }
+
+    /**
+     * Verifies a stored copy against the size and checksum of its
+     * component. The copy is read with the same throttle as a restore.
+     */
+    private static void verifyFile(final Path file,
+                                   final BackupManifest.Component component,
+                                   final BandwidthThrottle throttle,
+                                   final TransferStats stats)
+        throws IOException {
+        final CRC32 crc = new CRC32();
+        final ByteBuffer buffer = ByteBuffer.allocate(DEFAULT_TRANSFER_SIZE);
+        long size = 0;
+        try (FileChannel in = FileChannel.open(file,
+            StandardOpenOption.READ)) {
+            stats.addThrottled(throttle.acquire(buffer.capacity()));
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                if (!buffer.hasRemaining()) {
+                    buffer.flip();
+                    crc.update(buffer);
+                    buffer.clear();
+                    stats.addThrottled(throttle.acquire(buffer.capacity()));
+                }
+                size += read;
+                stats.addTransferredBytes(read);
+            }
+            buffer.flip();
+            crc.update(buffer);
+        }
+        if (size != component.getSize()) {
+            throw new IOException(String.format(
+                "File size %d does not match manifest size %d: %s", size,
+                component.getSize(), file));
+        }
+        final String checksum = Long.toHexString(crc.getValue());
+        if (!checksum.equals(component.getChecksum())) {
+            throw new IOException(String.format(
+                "Checksum %s does not match manifest checksum %s: %s",
+                checksum, component.getChecksum(), file));
+        }
+    }
+
+    private TransferStats transferAll(final String nodeId,
+                                      final List<Transfer> transfers,
+                                      final boolean link,
+                                      final BandwidthThrottle throttle,
+                                      final DownloadListener listener)
+        throws IOException {
+        final TransferStats stats = new TransferStats(nodeId);
+        final AtomicLong linked = new AtomicLong();
+        final ExecutorService executor = Executors.newFixedThreadPool(
+            concurrentFiles,
+            new ThreadFactoryBuilder().setNameFormat("file-transfer-%d")
+                .setDaemon(true).build());
+        LOGGER.info("Transferring {} files: concurrent files = {}, " +
+                "hard links = {}, bandwidth = {}", transfers.size(),
+            concurrentFiles, link, throttle);
+        final Closeable progress = stats.report(LOGGER,
+            TransferStats.DEFAULT_REPORT_INTERVAL_MS);
+        try {
+            final List<Future<?>> futures = new ArrayList<>(
+                transfers.size());
+            for (Transfer transfer : transfers) {
+                listener.admit(transfer.target.toFile(), transfer.size);
+                futures.add(executor.submit(() -> {
+                    try {
+                        if (transfer(transfer.source, transfer.target, link,
+                            throttle, stats)) {
+                            linked.incrementAndGet();
+                        }
+                        final long size = Files.size(transfer.target);
+                        if (size != transfer.size) {
+                            throw new IOException(String.format(
+                                "Expected %d bytes but transferred %d",
+                                transfer.size, size));
+                        }
+                        stats.addFile(size);
+                        transfer.onTransferred.run();
+                    } catch (Throwable t) {
+                        LOGGER.error(String.format(
+                            "Error transferring file: %s to %s",
+                            transfer.source, transfer.target), t);
+                        stats.addFailedFile();
+                        listener.failed(transfer.target.toFile());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Transfer interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Transfer failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            progress.close();
+            stats.stop();
+        }
+        LOGGER.info("Transfer throughput: {} | linked files = {}", stats,
+            linked.get());
+        return stats;
+    }
+
+    /**
+     * Transfers a file. The file is linked or copied to a temporary file
+     * next to the target, which then replaces the target, so an interrupted
+     * transfer never leaves a partial target behind.
+     *
+     * @param source   The file to transfer.
+     * @param target   The path of the transferred file.
+     * @param link     True to try to hard link the file before copying it.
+     * @param throttle The throttle that limits the copy bandwidth.
+     * @param stats    The statistics that count the copied bytes.
+     * @return True if the file was hard linked, false if it was copied.
+     * @throws IOException If the file can not be transferred.
+     */
+    static boolean transfer(final Path source,
+                            final Path target,
+                            final boolean link,
+                            final BandwidthThrottle throttle,
+                            final TransferStats stats) throws IOException {
+        Files.createDirectories(target.getParent());
+        final Path temp = target.resolveSibling(target.getFileName() +
+            ".tmp");
+        Files.deleteIfExists(temp);
+        boolean linked = false;
+        if (link) {
+            try {
+                Files.createLink(temp, source);
+                linked = true;
+            } catch (IOException | UnsupportedOperationException e) {
+                LOGGER.warn("Failed to link file, copying it instead: {}",
+                    source, e);
+            }
+        }
+        if (!linked) {
+            copy(source, temp, throttle, stats);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        // Renaming a link onto a link to the same file leaves both in place.
+        Files.deleteIfExists(temp);
+        return linked;
+    }
+
+    private static void copy(final Path source,
+                             final Path target,
+                             final BandwidthThrottle throttle,
+                             final TransferStats stats) throws IOException {
+        try (FileChannel in = FileChannel.open(source,
+            StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target,
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            final long size = in.size();
+            long position = 0;
+            while (position < size) {
+                final int count = (int) Math.min(DEFAULT_TRANSFER_SIZE,
+                    size - position);
+                stats.addThrottled(throttle.acquire(count));
+                final long transferred = in.transferTo(position, count, out);
+                if (transferred <= 0) {
+                    throw new IOException(String.format(
+                        "File was truncated while copying: %s", source));
+                }
+                position += transferred;
+                stats.addTransferredBytes(transferred);
+            }
+            out.force(true);
+            ChunkReader.skipCache(in, 0, size);
+        }
+    }
+
+    /**
+     * Tests if two paths are on the same file system, so files can be hard
+     * linked between them.
+     */
+    static boolean isSameFileSystem(final Path first, final Path second) {
+        try {
+            return Files.getFileStore(first).equals(
+                Files.getFileStore(second));
+        } catch (IOException e) {
+            LOGGER.warn(String.format(
+                "Failed to get the file stores of %s and %s", first, second),
+                e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.mesosphere.dcos.cassandra.common.config.CassandraConfig;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * IncrementalBackupShipper ships the SSTables that Cassandra links into the
+ * backups directory of each table when incremental_backups is enabled, so
+ * the last backup of the node stays close to current between snapshots.
+ * <p>
+ * The backups directories are watched with a WatchService, and are
+ * rescanned periodically to pick up new tables and events that were lost.
+ * Once a directory has been quiet for a moment, its SSTables are shipped in
+ * small batches that never split the components of an SSTable. Each batch
+ * is hard linked into a staging directory and shipped to the last backup
+ * that asked for it through its BackupStorageDriver, which records it in
+ * the backup's incremental manifest, and the files in the backups
+ * directories are deleted only once the batch is stored. A batch that fails
+ * is retried after a delay.
+ */
+public class IncrementalBackupShipper implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        IncrementalBackupShipper.class);
+
+    public static final String BACKUPS_DIRECTORY = "backups";
+    public static final int DEFAULT_BATCH_FILES = 64;
+    public static final long DEFAULT_BATCH_BYTES = 256L * 1024 * 1024;
+    public static final long DEFAULT_QUIET_MS = 2000;
+    public static final long DEFAULT_RESCAN_MS = 60 * 1000;
+    public static final long DEFAULT_RETRY_MS = 30 * 1000;
+    public static final long DEFAULT_POLL_MS = 1000;
+
+    private static final String TARGET_FILE = "target.json";
+    private static final String STAGING_DIRECTORY = "staging";
+
+    private static class Target {
+        private final BackupContext context;
+        private final BackupStorageDriver driver;
+
+        private Target(final BackupContext context,
+                       final BackupStorageDriver driver) {
+            this.context = context;
+            this.driver = driver;
+        }
+    }
+
+    private final Path directory;
+    private final int batchFiles;
+    private final long batchBytes;
+    private final long quietMs;
+    private volatile Target target;
+    private final Map<WatchKey, Path> watched = new HashMap<>();
+    // The time after which each backups directory with pending files can
+    // be shipped.
+    private final Map<Path, Long> pending = new ConcurrentHashMap<>();
+    private final AtomicLong shippedFiles = new AtomicLong();
+    private final AtomicLong shippedBytes = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    /**
+     * Gets the default shipper directory.
+     *
+     * @return The directory on the persistent volume that holds the
+     * shipper's target and staging directory.
+     */
+    public static Path defaultDirectory() {
+        return Paths.get(CassandraConfig.VOLUME_PATH, "incremental_backups")
+            .toAbsolutePath();
+    }
+
+    /**
+     * Constructs a new IncrementalBackupShipper. If a target was persisted
+     * by a previous executor, shipping resumes to it.
+     *
+     * @param directory  The directory that holds the target and the staging
+     *                   directory. It must be on the same file system as
+     *                   the data directory.
+     * @param batchFiles The maximum number of files in a batch.
+     * @param batchBytes The maximum size of a batch. An SSTable larger than
+     *                   this is shipped in a batch of its own.
+     * @param quietMs    The time a backups directory must be quiet before
+     *                   its files are shipped.
+     */
+    public IncrementalBackupShipper(final Path directory,
+                                    final int batchFiles,
+                                    final long batchBytes,
+                                    final long quietMs) {
+        this.directory = directory;
+        this.batchFiles = batchFiles;
+        this.batchBytes = batchBytes;
+        this.quietMs = quietMs;
+        final File targetFile = directory.resolve(TARGET_FILE).toFile();
+        if (targetFile.isFile()) {
+            try {
+                final BackupContext context =
+                    BackupContext.JSON_SERIALIZER.deserialize(
+                        Files.readAllBytes(targetFile.toPath()));
+                target = new Target(context,
+                    StorageDriverFactory.createStorageDriver(context));
+                LOGGER.info("Resuming incremental backups to {}",
+                    context.getName());
+            } catch (IOException e) {
+                LOGGER.error("Failed to read incremental backup target", e);
+            }
+        }
+    }
+
+    /**
+     * Starts shipping incremental backups to a backup. Files linked before
+     * the backup was taken are part of its snapshot, and are referenced
+     * instead of uploaded when they are shipped. The target is persisted,
+     * so shipping resumes if the executor restarts.
+     *
+     * @param context The context of the backup.
+     * @param driver  The BackupStorageDriver of the backup.
+     * @throws IOException If the target can not be persisted.
+     */
+    public void start(final BackupContext context,
+                      final BackupStorageDriver driver) throws IOException {
+        Files.createDirectories(directory);
+        final Path file = directory.resolve(TARGET_FILE);
+        // The target holds the credentials of the external location.
+        Files.write(file, BackupContext.JSON_SERIALIZER.serialize(context));
+        Files.setPosixFilePermissions(file,
+            PosixFilePermissions.fromString("rw-------"));
+        target = new Target(context, driver);
+        LOGGER.info("Shipping incremental backups to backup: {}",
+            context.getName());
+    }
+
+    @Override
+    public void run() {
+        try (WatchService watcher = FileSystems.getDefault()
+            .newWatchService()) {
+            long lastScan = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                final WatchKey key = watcher.poll(DEFAULT_POLL_MS,
+                    TimeUnit.MILLISECONDS);
+                final long now = System.currentTimeMillis();
+                // The shipper is only started once per executor, so an
+                // error fails this pass, not the shipper.
+                try {
+                    if (key != null) {
+                        handle(key, now);
+                        WatchKey next;
+                        while ((next = watcher.poll()) != null) {
+                            handle(next, now);
+                        }
+                    }
+                    if (target == null) {
+                        continue;
+                    }
+                    if (now - lastScan >= DEFAULT_RESCAN_MS) {
+                        lastScan = now;
+                        scan(watcher, now);
+                    }
+                    ship(now);
+                } catch (ClosedWatchServiceException e) {
+                    throw e;
+                } catch (Exception e) {
+                    LOGGER.error("Incremental backup shipper pass failed", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            LOGGER.error("Incremental backup shipper failed", t);
+        }
+        LOGGER.info("Incremental backup shipper stopped");
+    }
+
+    private void handle(final WatchKey key, final long now) {
+        final Path backups = watched.get(key);
+        // Each event delays shipping until the directory is quiet, lost
+        // events are recovered by the next scan.
+        final List<WatchEvent<?>> events = key.pollEvents();
+        if (backups != null && !events.isEmpty()) {
+            pending.put(backups, now + quietMs);
+        }
+        if (!key.reset()) {
+            watched.remove(key);
+        }
+    }
+
+    /**
+     * Scans the data directory of the target backup, watches every backups
+     * directory and marks those that hold files as pending.
+     *
+     * A directory that can not be watched, e.g. because its table was
+     * dropped or the watch limit was reached, is still shipped when it
+     * holds files, and is watched again by the next scan.
+     *
+     * @param watcher The WatchService the directories are registered with.
+     * @param now     The current time in milliseconds.
+     */
+    void scan(final WatchService watcher, final long now) {
+        final Target current = target;
+        if (current == null) {
+            return;
+        }
+        final File[] keyspaces = new File(current.context.getLocalLocation())
+            .listFiles(File::isDirectory);
+        if (keyspaces == null) {
+            return;
+        }
+        for (File keyspace : keyspaces) {
+            final File[] tables = keyspace.listFiles(File::isDirectory);
+            if (tables == null) {
+                continue;
+            }
+            for (File table : tables) {
+                final Path backups = table.toPath().resolve(
+                    BACKUPS_DIRECTORY);
+                if (!StorageUtil.isSelected(current.context,
+                    keyspace.getName(), table.getName()) ||
+                    !Files.isDirectory(backups)) {
+                    continue;
+                }
+                if (!watched.containsValue(backups)) {
+                    try {
+                        watched.put(watch(watcher, backups), backups);
+                    } catch (IOException e) {
+                        LOGGER.warn(String.format("Failed to watch " +
+                            "incremental backups: %s", backups), e);
+                    }
+                }
+                final String[] files = backups.toFile().list();
+                if (files != null && files.length > 0 &&
+                    !pending.containsKey(backups)) {
+                    pending.put(backups, now + quietMs);
+                }
+            }
+        }
+    }
+
+    WatchKey watch(final WatchService watcher, final Path backups)
+        throws IOException {
+        return backups.register(watcher,
+            StandardWatchEventKinds.ENTRY_CREATE);
+    }
+
+    /**
+     * Ships the files of the pending backups directories that have been
+     * quiet for the quiet period.
+     *
+     * @param now The current time in milliseconds.
+     * @return The number of files shipped.
+     */
+    int ship(final long now) {
+        final Target current = target;
+        if (current == null) {
+            return 0;
+        }
+        int shipped = 0;
+        for (Map.Entry<Path, Long> entry :
+            new ArrayList<>(pending.entrySet())) {
+            if (entry.getValue() > now) {
+                continue;
+            }
+            final Path backups = entry.getKey();
+            try {
+                shipped += shipDirectory(current, backups);
+                pending.remove(backups);
+            } catch (Throwable t) {
+                LOGGER.error(String.format("Failed to ship incremental " +
+                    "backups: %s", backups), t);
+                failedBatches.incrementAndGet();
+                pending.put(backups, now + DEFAULT_RETRY_MS);
+            }
+        }
+        return shipped;
+    }
+
+    private int shipDirectory(final Target current, final Path backups)
+        throws Exception {
+        final File[] files = backups.toFile().listFiles(File::isFile);
+        if (files == null || files.length == 0) {
+            return 0;
+        }
+        // The components of an SSTable are shipped in the same batch.
+        final Map<String, List<File>> sstables = new TreeMap<>();
+        for (File file : files) {
+            sstables.computeIfAbsent(SSTableFiles.sstable(file.getName())
+                .orElse(file.getName()), name -> new ArrayList<>()).add(file);
+        }
+        final Path table = backups.getParent();
+        final String prefix = table.getParent().getFileName() + "/" +
+            table.getFileName() + "/";
+        int shipped = 0;
+        List<File> batch = new ArrayList<>();
+        long bytes = 0;
+        for (List<File> components : sstables.values()) {
+            final long size = components.stream().mapToLong(File::length)
+                .sum();
+            if (!batch.isEmpty() && (batch.size() + components.size() >
+                batchFiles || bytes + size > batchBytes)) {
+                shipped += shipBatch(current, prefix, batch, bytes);
+                batch = new ArrayList<>();
+                bytes = 0;
+            }
+            batch.addAll(components);
+            bytes += size;
+        }
+        if (!batch.isEmpty()) {
+            shipped += shipBatch(current, prefix, batch, bytes);
+        }
+        return shipped;
+    }
+
+    private int shipBatch(final Target current,
+                          final String prefix,
+                          final List<File> batch,
+                          final long bytes) throws Exception {
+        final Path staging = directory.resolve(STAGING_DIRECTORY);
+        clear(staging);
+        Files.createDirectories(staging);
+        final Map<String, File> staged = new LinkedHashMap<>();
+        for (File file : batch) {
+            final Path link = staging.resolve(file.getName());
+            try {
+                Files.createLink(link, file.toPath());
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(file.toPath(), link,
+                    StandardCopyOption.REPLACE_EXISTING);
+            }
+            staged.put(prefix + file.getName(), link.toFile());
+        }
+        try {
+            current.driver.uploadIncremental(current.context, staged);
+        } finally {
+            clear(staging);
+        }
+        // Only delete the files once they are part of the backup.
+        for (File file : batch) {
+            Files.deleteIfExists(file.toPath());
+        }
+        shippedFiles.addAndGet(batch.size());
+        shippedBytes.addAndGet(bytes);
+        LOGGER.info("Shipped incremental backup: backup = {}, files = {}, " +
+                "bytes = {}, table = {}", current.context.getName(),
+            batch.size(), bytes, prefix);
+        return batch.size();
+    }
+
+    private static void clear(final Path directory) throws IOException {
+        final File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+    }
+
+    public int getPendingDirectories() {
+        return pending.size();
+    }
+
+    public long getShippedFiles() {
+        return shippedFiles.get();
+    }
+
+    public long getShippedBytes() {
+        return shippedBytes.get();
+    }
+
+    public long getFailedBatches() {
+        return failedBatches.get();
+    }
+
+    /**
+     * Registers the shipper's gauges.
+     *
+     * @param registry The MetricRegistry of the executor.
+     */
+    public void register(final MetricRegistry registry) {
+        registry.register("incremental_backups.shipped_files",
+            (Gauge<Long>) this::getShippedFiles);
+        registry.register("incremental_backups.shipped_bytes",
+            (Gauge<Long>) this::getShippedBytes);
+        registry.register("incremental_backups.failed_batches",
+            (Gauge<Long>) this::getFailedBatches);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * ManifestStore is the interface to remote stores that hold backup
+ * manifests.
+ */
+public interface ManifestStore {
+
+    /**
+     * Reads a manifest.
+     *
+     * @param key The key of the manifest.
+     * @return The manifest stored under key, if it exists.
+     * @throws IOException If the manifest can not be read or parsed.
+     */
+    Optional<BackupManifest> read(String key) throws IOException;
+
+    /**
+     * Writes a manifest, replacing any manifest stored under the same key.
+     *
+     * @param key      The key of the manifest.
+     * @param manifest The manifest to write.
+     * @throws IOException If the manifest can not be written.
+     */
+    void write(String key, BackupManifest manifest) throws IOException;
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * ManifestTracker builds the manifest of a node's backup while its files are
+ * uploaded. It selects the files that need to be uploaded, records each
+ * file as it is uploaded, and periodically writes the incomplete manifest
+ * as a checkpoint. When a backup is retried after a failure, components
+ * recorded in the checkpoint are not uploaded again, and uploaded files
+ * that were deleted locally are carried over from it.
+ */
+public class ManifestTracker {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        ManifestTracker.class);
+
+    public static final long DEFAULT_CHECKPOINT_INTERVAL_MS = 30 * 1000;
+
+    private final ManifestStore store;
+    private final String manifestKey;
+    private final String backupName;
+    private final String nodeId;
+    private final String cluster;
+    private final long checkpointIntervalMs;
+    private final List<BackupManifest.Component> components =
+        new ArrayList<>();
+    private final Map<UploadEngine.FileUpload, BackupManifest.Component>
+        pending = new HashMap<>();
+    private long lastCheckpoint = System.currentTimeMillis();
+
+    /**
+     * Constructs a new ManifestTracker.
+     *
+     * @param store                The store the manifest is written to.
+     * @param manifestKey          The key of the backup's manifest.
+     * @param backupName           The name of the backup.
+     * @param nodeId               The id of the node.
+     * @param checkpointIntervalMs The minimum interval between checkpoints.
+     */
+    public ManifestTracker(final ManifestStore store,
+                           final String manifestKey,
+                           final String backupName,
+                           final String nodeId,
+                           final long checkpointIntervalMs) {
+        this(store, manifestKey, backupName, nodeId, null,
+            checkpointIntervalMs);
+    }
+
+    /**
+     * Constructs a new ManifestTracker.
+     *
+     * @param store                The store the manifest is written to.
+     * @param manifestKey          The key of the backup's manifest.
+     * @param backupName           The name of the backup.
+     * @param nodeId               The id of the node.
+     * @param cluster              The name of the service that takes the
+     *                             backup, recorded in the manifest.
+     * @param checkpointIntervalMs The minimum interval between checkpoints.
+     */
+    public ManifestTracker(final ManifestStore store,
+                           final String manifestKey,
+                           final String backupName,
+                           final String nodeId,
+                           final String cluster,
+                           final long checkpointIntervalMs) {
+        this.store = store;
+        this.manifestKey = manifestKey;
+        this.backupName = backupName;
+        this.nodeId = nodeId;
+        this.cluster = cluster;
+        this.checkpointIntervalMs = checkpointIntervalMs;
+    }
+
+    /**
+     * Selects the files that must be uploaded. Files whose component is
+     * recorded in a checkpoint of this backup or, for incremental backups,
+     * in the previous manifest of the node are referenced instead.
+     *
+     * @param uploads  The files of the node's snapshot.
+     * @param nodeKey  The key prefix of the node's objects. The path of a
+     *                 component is its key relative to nodeKey.
+     * @param previous The previous manifest of the node for an incremental
+     *                 backup.
+     * @return The files that must be uploaded.
+     * @throws IOException If a file can not be read or the checkpoint can not
+     *                     be read.
+     */
+    public synchronized List<UploadEngine.FileUpload> select(
+        final List<UploadEngine.FileUpload> uploads,
+        final String nodeKey,
+        final Optional<BackupManifest> previous) throws IOException {
+        final Optional<BackupManifest> checkpoint = store.read(manifestKey)
+            .filter(manifest -> !manifest.isComplete());
+        if (checkpoint.isPresent()) {
+            LOGGER.info("Resuming backup from checkpoint: {} | " +
+                "components: {}", manifestKey,
+                checkpoint.get().getComponents().size());
+        }
+        final List<UploadEngine.FileUpload> selected = new ArrayList<>();
+        final Set<String> paths = new HashSet<>();
+        for (UploadEngine.FileUpload upload : uploads) {
+            final File file = upload.getFile();
+            final BackupManifest.Component candidate =
+                BackupManifest.Component.local(
+                    upload.getKey().substring(nodeKey.length() + 1),
+                    file.length(),
+                    BackupManifest.checksum(file));
+            paths.add(candidate.getPath());
+            Optional<BackupManifest.Component> existing =
+                checkpoint.flatMap(manifest -> manifest.find(candidate));
+            if (!existing.isPresent()) {
+                existing = previous.flatMap(
+                    manifest -> manifest.find(candidate));
+            }
+            if (existing.isPresent()) {
+                components.add(existing.get());
+            } else {
+                pending.put(upload, candidate);
+                selected.add(upload);
+            }
+        }
+        // Files are deleted once they are uploaded, so the components
+        // uploaded before the checkpoint are no longer in the snapshot.
+        if (checkpoint.isPresent()) {
+            for (BackupManifest.Component component :
+                checkpoint.get().getComponents()) {
+                if (!paths.contains(component.getPath())) {
+                    components.add(component);
+                }
+            }
+        }
+        LOGGER.info("Components: {} | Referenced: {} | To upload: {}",
+            components.size() + selected.size(), components.size(),
+            selected.size());
+        return selected;
+    }
+
+    /**
+     * Records an uploaded file and writes a checkpoint if the checkpoint
+     * interval has elapsed. A failure to write the checkpoint is logged.
+     *
+     * @param upload A file returned by select that has been uploaded.
+     */
+    public synchronized void uploaded(final UploadEngine.FileUpload upload) {
+        final BackupManifest.Component candidate = pending.remove(upload);
+        record(candidate.withObject(upload.getKey(), upload.getIndex()));
+    }
+
+    /**
+     * Records a file that was stored as a plain copy under its key and
+     * writes a checkpoint if the checkpoint interval has elapsed. A failure
+     * to write the checkpoint is logged.
+     *
+     * @param upload A file returned by select that has been copied.
+     */
+    public synchronized void copied(final UploadEngine.FileUpload upload) {
+        final BackupManifest.Component candidate = pending.remove(upload);
+        record(candidate.withFile(upload.getKey()));
+    }
+
+    private void record(final BackupManifest.Component component) {
+        components.add(component);
+        if (System.currentTimeMillis() - lastCheckpoint >=
+            checkpointIntervalMs) {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to write checkpoint: " + manifestKey, e);
+            }
+        }
+    }
+
+    /**
+     * Writes the incomplete manifest.
+     *
+     * @throws IOException If the manifest can not be written.
+     */
+    public synchronized void checkpoint() throws IOException {
+        lastCheckpoint = System.currentTimeMillis();
+        store.write(manifestKey, new BackupManifest(backupName, nodeId,
+            cluster, false, null, components));
+    }
+
+    /**
+     * Writes the incremental manifest of a backup. It holds the components
+     * of an earlier incremental manifest and the recorded components, less
+     * those that are already in the backup's manifest, and is chained to
+     * that manifest. Files that were not uploaded are left out.
+     *
+     * @param base        The complete manifest of the backup.
+     * @param incremental The incremental manifest of the backup, if any.
+     * @return The incremental manifest.
+     * @throws IOException If the manifest can not be written.
+     */
+    public synchronized BackupManifest chain(
+        final BackupManifest base,
+        final Optional<BackupManifest> incremental) throws IOException {
+        final Map<String, BackupManifest.Component> byPath =
+            new LinkedHashMap<>();
+        if (incremental.isPresent() && base.isChained(incremental.get())) {
+            for (BackupManifest.Component component :
+                incremental.get().getComponents()) {
+                byPath.put(component.getPath(), component);
+            }
+        }
+        for (BackupManifest.Component component : components) {
+            if (!base.find(component).isPresent()) {
+                byPath.put(component.getPath(), component);
+            }
+        }
+        final BackupManifest manifest = new BackupManifest(backupName,
+            nodeId, cluster, true, base.digest(),
+            new ArrayList<>(byPath.values()));
+        store.write(manifestKey, manifest);
+        return manifest;
+    }
+
+    /**
+     * Writes the complete manifest.
+     *
+     * @return The complete manifest.
+     * @throws IOException If the manifest can not be written.
+     */
+    public synchronized BackupManifest complete() throws IOException {
+        if (!pending.isEmpty()) {
+            throw new IllegalStateException(String.format(
+                "%d files have not been uploaded", pending.size()));
+        }
+        final BackupManifest manifest = new BackupManifest(backupName,
+            nodeId, cluster, true, null, components);
+        store.write(manifestKey, manifest);
+        return manifest;
+    }
+}
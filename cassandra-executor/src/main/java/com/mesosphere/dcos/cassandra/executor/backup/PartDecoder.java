@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.mesosphere.dcos.cassandra.executor.compress.CompressionDriver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * PartDecoder decodes the parts written by PartEncoder. Each frame of a part
+ * is decompressed, by the codec recorded in the PartIndex, from a direct
+ * part buffer into a direct chunk buffer and written to the destination
+ * file at its offset, so parts may be decoded in any order and concurrently
+ * into the same file. The frames of an encrypted object are decrypted in
+ * place in the part buffer by a BackupCipher just before they are
+ * decompressed.
+ */
+public class PartDecoder {
+
+    /**
+     * ChunkSink receives the decompressed frames of a part.
+     */
+    public interface ChunkSink {
+
+        /**
+         * Receives a decompressed frame.
+         *
+         * @param chunk    The frame between its position and limit. The
+         *                 sink must consume all of it.
+         * @param position The offset of the frame in the original file.
+         */
+        void accept(ByteBuffer chunk, long position) throws IOException;
+    }
+
+    private PartDecoder() {
+    }
+
+    /**
+     * Verifies the MD5 digest of a part.
+     *
+     * @param entry The index entry of the part.
+     * @param part  The frames of the part between its position and limit.
+     * @throws IOException If the digest does not match the index.
+     */
+    public static void verify(final PartIndex.Entry entry,
+                              final ByteBuffer part) throws IOException {
+        final MessageDigest md5 = PartEncoder.md5();
+        md5.update(part.duplicate());
+        if (!Arrays.equals(entry.getMd5(), md5.digest())) {
+            throw new IOException(String.format(
+                "Checksum mismatch: %s", entry));
+        }
+    }
+
+    /**
+     * Decodes a part into a file.
+     *
+     * @param entry   The index entry of the part.
+     * @param part    A direct buffer containing the frames of the part
+     *                between its position and limit.
+     * @param chunk   A direct buffer large enough to hold the largest
+     *                uncompressed frame.
+     * @param channel The channel of the destination file.
+     * @param codec   The codec that compressed the frames.
+     * @return The number of uncompressed bytes written.
+     * @throws IOException If the part is corrupt or can not be written.
+     */
+    public static long decode(final PartIndex.Entry entry,
+                              final ByteBuffer part,
+                              final ByteBuffer chunk,
+                              final FileChannel channel,
+                              final CompressionDriver codec)
+        throws IOException {
+        return decode(entry, part, chunk, channel, codec, null);
+    }
+
+    /**
+     * Decodes a part of an encrypted object into a file.
+     *
+     * @param entry   The index entry of the part.
+     * @param part    A direct buffer containing the frames of the part
+     *                between its position and limit. The frames are
+     *                decrypted in place.
+     * @param chunk   A direct buffer large enough to hold the largest
+     *                uncompressed frame.
+     * @param channel The channel of the destination file.
+     * @param codec   The codec that compressed the frames.
+     * @param cipher  The cipher that encrypted the frames, or null if they
+     *                are not encrypted.
+     * @return The number of uncompressed bytes written.
+     * @throws IOException If the part is corrupt or can not be written.
+     */
+    public static long decode(final PartIndex.Entry entry,
+                              final ByteBuffer part,
+                              final ByteBuffer chunk,
+                              final FileChannel channel,
+                              final CompressionDriver codec,
+                              final BackupCipher cipher)
+        throws IOException {
+        return decode(entry, part, chunk, codec, cipher, (frame, offset) -> {
+            long position = offset;
+            while (frame.hasRemaining()) {
+                position += channel.write(frame, position);
+            }
+        });
+    }
+
+    /**
+     * Decodes a part into a ChunkSink.
+     *
+     * @param entry The index entry of the part.
+     * @param part  A direct buffer containing the frames of the part
+     *              between its position and limit.
+     * @param chunk A direct buffer large enough to hold the largest
+     *              uncompressed frame.
+     * @param codec The codec that compressed the frames.
+     * @param sink  The sink that receives the frames in order.
+     * @return The number of uncompressed bytes decoded.
+     * @throws IOException If the part is corrupt or the sink fails.
+     */
+    public static long decode(final PartIndex.Entry entry,
+                              final ByteBuffer part,
+                              final ByteBuffer chunk,
+                              final CompressionDriver codec,
+                              final ChunkSink sink)
+        throws IOException {
+        return decode(entry, part, chunk, codec, null, sink);
+    }
+
+    /**
+     * Decodes a part of an encrypted object into a ChunkSink.
+     *
+     * @param entry  The index entry of the part.
+     * @param part   A direct buffer containing the frames of the part
+     *               between its position and limit. The frames are
+     *               decrypted in place.
+     * @param chunk  A direct buffer large enough to hold the largest
+     *               uncompressed frame.
+     * @param codec  The codec that compressed the frames.
+     * @param cipher The cipher that encrypted the frames, or null if they
+     *               are not encrypted.
+     * @param sink   The sink that receives the frames in order.
+     * @return The number of uncompressed bytes decoded.
+     * @throws IOException If the part is corrupt or the sink fails.
+     */
+    public static long decode(final PartIndex.Entry entry,
+                              final ByteBuffer part,
+                              final ByteBuffer chunk,
+                              final CompressionDriver codec,
+                              final BackupCipher cipher,
+                              final ChunkSink sink)
+        throws IOException {
+        final ByteBuffer frames = part.duplicate();
+        long position = entry.getRawOffset();
+        while (frames.hasRemaining()) {
+            if (frames.remaining() < PartEncoder.FRAME_HEADER_SIZE) {
+                throw new IOException("Truncated frame header: " + entry);
+            }
+            final int rawLength = frames.getInt();
+            final int compressedLength = frames.getInt();
+            if (rawLength < 0 || rawLength > chunk.capacity() ||
+                compressedLength < 0 ||
+                compressedLength > frames.remaining()) {
+                throw new IOException("Corrupt frame: " + entry);
+            }
+            ByteBuffer compressed = frames.slice();
+            compressed.limit(compressedLength);
+            if (cipher != null) {
+                try {
+                    compressed = cipher.open(compressed, position, rawLength);
+                } catch (IOException e) {
+                    throw new IOException("Corrupt frame: " + entry, e);
+                }
+            }
+            chunk.clear();
+            try {
+                codec.decompress(compressed, chunk, rawLength);
+            } catch (IOException e) {
+                throw new IOException("Corrupt frame: " + entry, e);
+            }
+            chunk.flip();
+            final int decoded = chunk.remaining();
+            sink.accept(chunk, position);
+            position += decoded;
+            frames.position(frames.position() + compressedLength);
+        }
+        final long written = position - entry.getRawOffset();
+        if (written != entry.getRawLength()) {
+            throw new IOException(String.format(
+                "Decoded %d bytes, expected %d: %s", written,
+                entry.getRawLength(), entry));
+        }
+        return written;
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.mesosphere.dcos.cassandra.executor.compress.CompressionDriver;
+import com.mesosphere.dcos.cassandra.executor.compress.CompressionDrivers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PartEncoder turns a file into the parts of a backup object. The file is
+ * read in chunks by a ChunkReader, either into a direct chunk buffer or as
+ * slices of a mapping of the file, each chunk is
+ * compressed by a CompressionDriver straight into a pooled direct part
+ * buffer as a frame, and the
+ * MD5 digest of the part is updated incrementally as each frame is written.
+ * The part buffer is then handed to the PartHandler and uploaded from the
+ * same buffer, so the data is never copied to the heap.
+ * <p>
+ * A part is a sequence of frames and contains whole frames only, so every
+ * part can be decoded on its own:
+ * <pre>
+ * frame := rawLength:int compressedLength:int compressed:byte[]
+ * </pre>
+ * When the encoder has a BackupCipher, each frame is encrypted in place
+ * right after it is compressed, and compressed is replaced by the payload
+ * of the cipher. The last part of the object is followed by the PartIndex,
+ * which records the id of the codec that compressed the frames and the id
+ * of the key that encrypted them.
+ */
+public class PartEncoder {
+
+    public static final int FRAME_HEADER_SIZE = 8;
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    // Room for the index of up to ~1600 parts in the last part buffer.
+    // Larger indexes are written to a separately allocated buffer.
+    public static final int INDEX_RESERVE = 64 * 1024;
+
+    /**
+     * PartHandler supplies empty part buffers to the encoder and receives
+     * the encoded parts.
+     */
+    public interface PartHandler {
+
+        /**
+         * Gets an empty part buffer of at least
+         * {@link PartEncoder#partBufferSize(int, int)} bytes.
+         */
+        ByteBuffer acquire() throws IOException;
+
+        /**
+         * Returns a part buffer that will not be passed to accept.
+         */
+        void release(ByteBuffer buffer);
+
+        /**
+         * Receives an encoded part. The handler takes ownership of the
+         * buffer. The buffer of the last part is allocated by the encoder
+         * instead of being acquired if the index does not fit in the part
+         * buffer, in which case the acquired buffer has already been
+         * released, and the allocated buffer must not be returned to a pool.
+         *
+         * @param partNumber The one based number of the part.
+         * @param part       The content of the part between its position
+         *                   and limit.
+         * @param md5        The MD5 digest of the content of the part.
+         */
+        void accept(int partNumber, ByteBuffer part, byte[] md5)
+            throws IOException;
+    }
+
+    /**
+     * Gets the size of the part buffers required by an encoder with any
+     * codec.
+     *
+     * @param partSize  The target size of the parts.
+     * @param chunkSize The size of the uncompressed chunks.
+     * @return The capacity required for each part buffer.
+     */
+    public static int partBufferSize(int partSize, int chunkSize) {
+        return partSize + FRAME_HEADER_SIZE + BackupCipher.OVERHEAD +
+            CompressionDrivers.maxCompressedLength(chunkSize) + INDEX_RESERVE;
+    }
+
+    private final int partSize;
+    private final int chunkSize;
+    private final BackupCipher cipher;
+
+    /**
+     * Constructs a new PartEncoder.
+     *
+     * @param partSize  The target size of the parts. Every part except the
+     *                  last is at least partSize bytes long.
+     * @param chunkSize The size of the uncompressed chunks that are
+     *                  compressed into frames.
+     * @param cipher    The cipher that encrypts the frames, or null if the
+     *                  frames are not encrypted.
+     */
+    public PartEncoder(final int partSize,
+                       final int chunkSize,
+                       final BackupCipher cipher) {
+        this.partSize = partSize;
+        this.chunkSize = chunkSize;
+        this.cipher = cipher;
+    }
+
+    /**
+     * Constructs a new PartEncoder that does not encrypt.
+     *
+     * @param partSize  The target size of the parts. Every part except the
+     *                  last is at least partSize bytes long.
+     * @param chunkSize The size of the uncompressed chunks that are
+     *                  compressed into frames.
+     */
+    public PartEncoder(final int partSize, final int chunkSize) {
+        this(partSize, chunkSize, null);
+    }
+
+    public int getPartSize() {
+        return partSize;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public BackupCipher getCipher() {
+        return cipher;
+    }
+
+    /**
+     * Gets the encoder of an object.
+     *
+     * @param key The key of the object in its external location.
+     * @return An encoder whose cipher is bound to key, or this encoder if
+     * it does not encrypt.
+     */
+    public PartEncoder forObject(final String key) {
+        return (cipher == null) ? this :
+            new PartEncoder(partSize, chunkSize, cipher.forObject(key));
+    }
+
+    /**
+     * Encodes a file.
+     *
+     * @param channel The channel of the file to encode.
+     * @param chunk   A direct buffer of at least chunkSize bytes used to read
+     *                the file.
+     * @param codec   The codec used to compress the frames.
+     * @param handler The handler that supplies and receives the parts.
+     * @return The index of the encoded object.
+     * @throws IOException If the file can not be read or a part can not be
+     *                     handled.
+     */
+    public PartIndex encode(final FileChannel channel,
+                            final ByteBuffer chunk,
+                            final CompressionDriver codec,
+                            final PartHandler handler) throws IOException {
+        return encode(ChunkReader.of(channel, chunk, chunkSize), codec,
+            handler);
+    }
+
+    /**
+     * Encodes a file.
+     *
+     * @param reader  The reader of the file to encode. Its chunks must be
+     *                at most chunkSize bytes.
+     * @param codec   The codec used to compress the frames.
+     * @param handler The handler that supplies and receives the parts.
+     * @return The index of the encoded object.
+     * @throws IOException If the file can not be read or a part can not be
+     *                     handled.
+     */
+    public PartIndex encode(final ChunkReader reader,
+                            final CompressionDriver codec,
+                            final PartHandler handler) throws IOException {
+        final List<PartIndex.Entry> entries = new ArrayList<>();
+        final MessageDigest md5 = md5();
+        long objectOffset = 0;
+        long rawOffset = 0;
+        int rawLength = 0;
+        ByteBuffer part = handler.acquire();
+        try {
+            while (true) {
+                final ByteBuffer chunk = reader.next();
+                final int read = chunk.remaining();
+                if (read == 0) {
+                    break;
+                }
+                appendFrame(chunk, rawOffset + rawLength, part, codec, md5);
+                rawLength += read;
+                if (part.position() >= partSize) {
+                    final PartIndex.Entry entry = new PartIndex.Entry(
+                        entries.size() + 1, objectOffset, part.position(),
+                        rawOffset, rawLength, md5.digest());
+                    entries.add(entry);
+                    objectOffset += entry.getLength();
+                    rawOffset += rawLength;
+                    rawLength = 0;
+                    part.flip();
+                    final ByteBuffer full = part;
+                    part = null;
+                    handler.accept(entry.getPartNumber(), full,
+                        entry.getMd5());
+                    part = handler.acquire();
+                }
+            }
+
+            // The last part holds the remaining frames and the index.
+            final MessageDigest partMd5 = cloneDigest(md5);
+            final PartIndex.Entry last = new PartIndex.Entry(
+                entries.size() + 1, objectOffset, part.position(),
+                rawOffset, rawLength, md5.digest());
+            entries.add(last);
+            final PartIndex index = (cipher == null) ?
+                new PartIndex(entries, codec.getId()) :
+                new PartIndex(entries, codec.getId(), true,
+                    cipher.getKeyId());
+            if (part.remaining() < index.getSerializedSize()) {
+                final ByteBuffer larger = ByteBuffer.allocateDirect(
+                    part.position() + index.getSerializedSize());
+                part.flip();
+                larger.put(part);
+                handler.release(part);
+                part = larger;
+            }
+            final int indexStart = part.position();
+            index.write(part);
+            final ByteBuffer written = part.duplicate();
+            written.flip();
+            written.position(indexStart);
+            partMd5.update(written);
+            part.flip();
+            final ByteBuffer full = part;
+            part = null;
+            handler.accept(last.getPartNumber(), full, partMd5.digest());
+            return index;
+        } finally {
+            if (part != null) {
+                handler.release(part);
+            }
+        }
+    }
+
+    private void appendFrame(final ByteBuffer chunk,
+                             final long rawOffset,
+                             final ByteBuffer part,
+                             final CompressionDriver codec,
+                             final MessageDigest md5) throws IOException {
+        final int rawLength = chunk.remaining();
+        final int start = part.position();
+        final int overhead = (cipher == null) ? 0 : BackupCipher.OVERHEAD;
+        if (part.remaining() < FRAME_HEADER_SIZE + overhead +
+            codec.maxCompressedLength(rawLength)) {
+            throw new IllegalStateException("Part buffer is too small");
+        }
+        // The frame is compressed after the room for its nonce, and then
+        // encrypted in place.
+        final ByteBuffer out = part.duplicate();
+        out.position(start + FRAME_HEADER_SIZE +
+            (cipher == null ? 0 : BackupCipher.NONCE_SIZE));
+        int compressedLength = codec.compress(chunk, out);
+        if (cipher != null) {
+            final ByteBuffer payload = part.duplicate();
+            payload.position(start + FRAME_HEADER_SIZE);
+            compressedLength = cipher.seal(payload, compressedLength,
+                rawOffset, rawLength);
+        }
+        part.putInt(start, rawLength);
+        part.putInt(start + 4, compressedLength);
+        final int end = start + FRAME_HEADER_SIZE + compressedLength;
+        final ByteBuffer frame = part.duplicate();
+        frame.limit(end);
+        frame.position(start);
+        md5.update(frame);
+        part.position(end);
+    }
+
+    static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    private static MessageDigest cloneDigest(final MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("MD5 digest can not be cloned",
+                e);
+        }
+    }
+}
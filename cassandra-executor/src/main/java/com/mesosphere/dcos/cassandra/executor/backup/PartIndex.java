@@ -0,0 +1,343 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PartIndex describes the parts of a backup object written by PartEncoder.
+ * The index is stored at the end of the last part of the object as a list
+ * of fixed size entries followed by a fixed size trailer:
+ * <pre>
+ * entry   := objectOffset:long length:int rawOffset:long rawLength:int
+ *            md5:byte[16]
+ * cipher  := keyId:long
+ * trailer := entryCount:int version:short codec:short magic:long
+ * </pre>
+ * The cipher section is only present in version 2 indexes, which are
+ * written for objects whose frames are encrypted by a BackupCipher, and
+ * records the id of the key. Unencrypted objects are written as version 1.
+ * A reader fetches the trailer from the end of the object, then the entries
+ * before it, and can then fetch and decode any part on its own.
+ */
+public class PartIndex {
+
+    public static final long MAGIC = 0x4443_4F53_4241_4B31L; // "DCOSBAK1"
+    public static final short VERSION = 1;
+    public static final short ENCRYPTED_VERSION = 2;
+    public static final int ENTRY_SIZE = 8 + 4 + 8 + 4 + 16;
+    public static final int CIPHER_SIZE = 8;
+    public static final int TRAILER_SIZE = 4 + 2 + 2 + 8;
+
+    /**
+     * Entry describes a single part of an object.
+     */
+    public static class Entry {
+        private final int partNumber;
+        private final long objectOffset;
+        private final int length;
+        private final long rawOffset;
+        private final int rawLength;
+        private final byte[] md5;
+
+        public Entry(final int partNumber,
+                     final long objectOffset,
+                     final int length,
+                     final long rawOffset,
+                     final int rawLength,
+                     final byte[] md5) {
+            this.partNumber = partNumber;
+            this.objectOffset = objectOffset;
+            this.length = length;
+            this.rawOffset = rawOffset;
+            this.rawLength = rawLength;
+            this.md5 = md5;
+        }
+
+        /**
+         * @return The one based number of the part.
+         */
+        public int getPartNumber() {
+            return partNumber;
+        }
+
+        /**
+         * @return The offset of the first frame of the part in the object.
+         */
+        public long getObjectOffset() {
+            return objectOffset;
+        }
+
+        /**
+         * @return The length of the frames of the part in the object,
+         * excluding the index stored in the last part.
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * @return The offset of the part's data in the original file.
+         */
+        public long getRawOffset() {
+            return rawOffset;
+        }
+
+        /**
+         * @return The length of the part's data in the original file.
+         */
+        public int getRawLength() {
+            return rawLength;
+        }
+
+        /**
+         * @return The MD5 digest of the frames of the part.
+         */
+        public byte[] getMd5() {
+            return md5;
+        }
+
+        public String getMd5Hex() {
+            return new String(Hex.encodeHex(md5));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("part = %d, object offset = %d, length = " +
+                    "%d, raw offset = %d, raw length = %d, md5 = %s",
+                partNumber, objectOffset, length, rawOffset, rawLength,
+                getMd5Hex());
+        }
+    }
+
+    private final List<Entry> entries;
+    private final short codec;
+    private final boolean encrypted;
+    private final long keyId;
+
+    public PartIndex(final List<Entry> entries,
+                     final short codec,
+                     final boolean encrypted,
+                     final long keyId) {
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+        this.codec = codec;
+        this.encrypted = encrypted;
+        this.keyId = keyId;
+    }
+
+    public PartIndex(final List<Entry> entries, final short codec) {
+        this(entries, codec, false, 0);
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public short getCodec() {
+        return codec;
+    }
+
+    /**
+     * Tests if the object is encrypted.
+     *
+     * @return True if the frames of the object are encrypted by a
+     * BackupCipher.
+     */
+    public boolean isEncrypted() {
+        return encrypted;
+    }
+
+    /**
+     * Gets the id of the key the object is encrypted with.
+     *
+     * @return The id of the BackupCipher key, if the object is encrypted.
+     */
+    public long getKeyId() {
+        return keyId;
+    }
+
+    /**
+     * Gets the size of the original file.
+     *
+     * @return The sum of the raw lengths of all parts.
+     */
+    public long getRawSize() {
+        long size = 0;
+        for (Entry entry : entries) {
+            size += entry.getRawLength();
+        }
+        return size;
+    }
+
+    /**
+     * Gets the size of the encoded object.
+     *
+     * @return The sum of the lengths of all parts plus the size of the
+     * index.
+     */
+    public long getObjectSize() {
+        long size = getSerializedSize();
+        for (Entry entry : entries) {
+            size += entry.getLength();
+        }
+        return size;
+    }
+
+    /**
+     * Gets the serialized size of the index.
+     *
+     * @return The number of bytes written by write().
+     */
+    public int getSerializedSize() {
+        return serializedSize(entries.size(), encrypted);
+    }
+
+    public static int serializedSize(int entryCount) {
+        return serializedSize(entryCount, false);
+    }
+
+    public static int serializedSize(int entryCount, boolean encrypted) {
+        return entryCount * ENTRY_SIZE + (encrypted ? CIPHER_SIZE : 0) +
+            TRAILER_SIZE;
+    }
+
+    /**
+     * Writes the index at the current position of buffer.
+     *
+     * @param buffer The buffer that the index is written to.
+     */
+    public void write(final ByteBuffer buffer) {
+        for (Entry entry : entries) {
+            buffer.putLong(entry.getObjectOffset());
+            buffer.putInt(entry.getLength());
+            buffer.putLong(entry.getRawOffset());
+            buffer.putInt(entry.getRawLength());
+            buffer.put(entry.getMd5());
+        }
+        if (encrypted) {
+            buffer.putLong(keyId);
+        }
+        buffer.putInt(entries.size());
+        buffer.putShort(encrypted ? ENCRYPTED_VERSION : VERSION);
+        buffer.putShort(codec);
+        buffer.putLong(MAGIC);
+    }
+
+    /**
+     * Tests if an object ends with a part index. Objects uploaded before
+     * the PartIndex was introduced are a single Snappy stream without one.
+     *
+     * @param trailer A buffer containing the last TRAILER_SIZE bytes of an
+     *                object between its position and limit.
+     * @return True if the trailer ends with the magic of a part index.
+     */
+    public static boolean hasIndex(final ByteBuffer trailer) {
+        return trailer.remaining() >= TRAILER_SIZE &&
+            trailer.getLong(trailer.limit() - 8) == MAGIC;
+    }
+
+    /**
+     * Reads the number of entries from a trailer.
+     *
+     * @param trailer A buffer containing the last TRAILER_SIZE bytes of an
+     *                object between its position and limit.
+     * @return The number of entries in the index.
+     * @throws IOException If the trailer is not valid.
+     */
+    public static int parseEntryCount(final ByteBuffer trailer)
+        throws IOException {
+        return parseTrailer(trailer)[0];
+    }
+
+    /**
+     * Reads the size of the index from a trailer.
+     *
+     * @param trailer A buffer containing the last TRAILER_SIZE bytes of an
+     *                object between its position and limit.
+     * @return The serialized size of the index, including the trailer.
+     * @throws IOException If the trailer is not valid.
+     */
+    public static int parseSize(final ByteBuffer trailer) throws IOException {
+        final int[] parsed = parseTrailer(trailer);
+        return serializedSize(parsed[0], parsed[1] == ENCRYPTED_VERSION);
+    }
+
+    private static int[] parseTrailer(final ByteBuffer trailer)
+        throws IOException {
+        if (trailer.remaining() < TRAILER_SIZE) {
+            throw new IOException("Part index trailer is truncated");
+        }
+        final ByteBuffer buffer = trailer.duplicate();
+        buffer.position(buffer.limit() - TRAILER_SIZE);
+        final int count = buffer.getInt();
+        final short version = buffer.getShort();
+        buffer.getShort();
+        final long magic = buffer.getLong();
+        if (magic != MAGIC) {
+            throw new IOException("Object does not contain a part index");
+        }
+        if (version != VERSION && version != ENCRYPTED_VERSION) {
+            throw new IOException(String.format(
+                "Unsupported part index version %d", version));
+        }
+        if (count < 0) {
+            throw new IOException("Invalid part index entry count");
+        }
+        return new int[]{count, version};
+    }
+
+    /**
+     * Parses an index.
+     *
+     * @param buffer A buffer that ends with the serialized index, between
+     *               its position and limit.
+     * @return The parsed PartIndex.
+     * @throws IOException If the index is not valid.
+     */
+    public static PartIndex parse(final ByteBuffer buffer) throws IOException {
+        final int[] trailer = parseTrailer(buffer);
+        final int count = trailer[0];
+        final boolean encrypted = trailer[1] == ENCRYPTED_VERSION;
+        final int size = serializedSize(count, encrypted);
+        if (buffer.remaining() < size) {
+            throw new IOException("Part index is truncated");
+        }
+        final ByteBuffer index = buffer.duplicate();
+        index.position(index.limit() - size);
+        final List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final long objectOffset = index.getLong();
+            final int length = index.getInt();
+            final long rawOffset = index.getLong();
+            final int rawLength = index.getInt();
+            final byte[] md5 = new byte[16];
+            index.get(md5);
+            entries.add(new Entry(i + 1, objectOffset, length, rawOffset,
+                rawLength, md5));
+        }
+        final long keyId = encrypted ? index.getLong() : 0;
+        index.getInt();
+        index.getShort();
+        final short codec = index.getShort();
+        return new PartIndex(entries, codec, encrypted, keyId);
+    }
+}
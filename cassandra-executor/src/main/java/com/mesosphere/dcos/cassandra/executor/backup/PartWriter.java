@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * PartWriter is the interface to remote stores that accept an object as a
+ * set of independently uploaded parts (e.g. S3 multipart uploads). The
+ * UploadEngine calls writePart concurrently for the parts of an object, so
+ * implementations must be thread safe. Stores that keep incomplete uploads
+ * implement findUpload and listParts so that an interrupted upload can
+ * resume from its completed parts.
+ */
+public interface PartWriter {
+
+    /**
+     * Starts a new object.
+     *
+     * @param key The key of the object.
+     * @return An opaque id that identifies the upload of the object.
+     * @throws IOException If the upload can not be started.
+     */
+    String initiate(String key) throws IOException;
+
+    /**
+     * Finds an incomplete upload of an object.
+     *
+     * @param key The key of the object.
+     * @return The id of the most recent incomplete upload of the object, if
+     * one exists.
+     * @throws IOException If the uploads can not be listed.
+     */
+    default Optional<String> findUpload(String key) throws IOException {
+        return Optional.empty();
+    }
+
+    /**
+     * Lists the completed parts of an incomplete upload.
+     *
+     * @param key      The key of the object.
+     * @param uploadId The id of the upload.
+     * @return The tags of the completed parts by part number. A tag is the
+     * hex MD5 digest of the part content.
+     * @throws IOException If the parts can not be listed.
+     */
+    default Map<Integer, String> listParts(String key, String uploadId)
+        throws IOException {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Writes a single part of an object.
+     *
+     * @param key        The key of the object.
+     * @param uploadId   The id returned by initiate.
+     * @param partNumber The one based number of the part.
+     * @param data       The content of the part between its position and
+     *                   limit. Implementations must not retain or modify
+     *                   the buffer. A part may be written more than once,
+     *                   concurrently if a slow write is hedged, and each
+     *                   write replaces the part.
+     * @param md5        The MD5 digest of the content of the part.
+     * @return The tag that identifies the stored part.
+     * @throws IOException If the part can not be written.
+     */
+    String writePart(String key,
+                     String uploadId,
+                     int partNumber,
+                     ByteBuffer data,
+                     byte[] md5) throws IOException;
+
+    /**
+     * Completes an object from its parts.
+     *
+     * @param key      The key of the object.
+     * @param uploadId The id returned by initiate.
+     * @param tags     The tags of the parts in part number order.
+     * @throws IOException If the object can not be completed.
+     */
+    void complete(String key, String uploadId, List<String> tags)
+        throws IOException;
+
+    /**
+     * Completes an object from its parts. Stores that keep metadata with
+     * an object override this to record the original size and codec of the
+     * object from its index.
+     *
+     * @param key      The key of the object.
+     * @param uploadId The id returned by initiate.
+     * @param tags     The tags of the parts in part number order.
+     * @param index    The PartIndex of the object.
+     * @throws IOException If the object can not be completed.
+     */
+    default void complete(String key,
+                          String uploadId,
+                          List<String> tags,
+                          PartIndex index) throws IOException {
+        complete(key, uploadId, tags);
+    }
+
+    /**
+     * Aborts the upload of an object, discarding any written parts.
+     *
+     * @param key      The key of the object.
+     * @param uploadId The id returned by initiate.
+     */
+    void abort(String key, String uploadId);
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * RangeReader is the interface to remote stores that can read an arbitrary
+ * byte range of an object (e.g. S3 ranged GETs). The DownloadEngine calls
+ * read concurrently for the parts of an object, so implementations must be
+ * thread safe.
+ */
+public interface RangeReader {
+
+    /**
+     * Reads a range of an object.
+     *
+     * @param key    The key of the object.
+     * @param offset The offset of the first byte of the range.
+     * @param buffer The buffer that is filled from its position to its
+     *               limit. Implementations must not retain the buffer.
+     * @throws IOException If the range can not be read in full.
+     */
+    void read(String key, long offset, ByteBuffer buffer) throws IOException;
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RequestRunner runs the requests of a single transfer according to a
+ * RetryPolicy. Every request is retried on its own, so a failed part is
+ * sent again without restarting its file.
+ * <p>
+ * Hedged requests are for the parts of an object, which are all about the
+ * same size. The runner keeps the latencies of recent part requests, and
+ * when a part request takes longer than the 95th percentile of them, a
+ * duplicate is sent and the first to succeed is used. The slower request
+ * is not cancelled, as the store may already be writing it. A part must be
+ * idempotent to be hedged, and a buffer used by a hedged request must not
+ * be reused until every request sent for it has finished, which the
+ * runner signals with a callback.
+ */
+public class RequestRunner implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        RequestRunner.class);
+
+    public static final int LATENCY_SAMPLES = 128;
+    public static final int MIN_LATENCY_SAMPLES = 16;
+    public static final double HEDGE_PERCENTILE = 0.95;
+    public static final long MIN_HEDGE_DELAY_MS = 50;
+
+    /**
+     * Request is a single request to an external location.
+     *
+     * @param <T> The type of the response.
+     */
+    public interface Request<T> {
+
+        /**
+         * Sends the request.
+         *
+         * @param hedge True if the request is a hedge, sent while an
+         *              earlier copy of it may still be running.
+         * @return The response.
+         * @throws IOException If the request fails.
+         */
+        T call(boolean hedge) throws IOException;
+    }
+
+    /**
+     * Runs a callback once every request sent for a call has finished.
+     */
+    private static class Settler {
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final Runnable onSettled;
+
+        private Settler(final Runnable onSettled) {
+            this.onSettled = onSettled;
+        }
+
+        private void acquire() {
+            pending.incrementAndGet();
+        }
+
+        private void release() {
+            if (pending.decrementAndGet() == 0) {
+                onSettled.run();
+            }
+        }
+    }
+
+    private final RetryPolicy policy;
+    private final TransferStats stats;
+    private final ExecutorService executor;
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int samples = 0;
+    private int next = 0;
+
+    /**
+     * Constructs a new RequestRunner.
+     *
+     * @param policy The RetryPolicy of the transfer.
+     * @param stats  The statistics of the transfer, which count retries
+     *               and hedges.
+     */
+    public RequestRunner(final RetryPolicy policy, final TransferStats stats) {
+        this.policy = policy;
+        this.stats = stats;
+        this.executor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("hedged-request-%d")
+                .setDaemon(true).build());
+    }
+
+    /**
+     * Runs a request with retries.
+     *
+     * @param description The description of the request for the log.
+     * @param request     The request.
+     * @param <T>         The type of the response.
+     * @return The response of the first successful attempt.
+     * @throws IOException If every attempt fails, or the request can not be
+     *                     retried.
+     */
+    public <T> T execute(final String description,
+                         final Request<T> request) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return request.call(false);
+            } catch (IOException e) {
+                backoff(description, attempt, e);
+            }
+        }
+    }
+
+    /**
+     * Runs an idempotent part request with retries and hedging.
+     *
+     * @param description The description of the request for the log.
+     * @param request     The request.
+     * @param onSettled   Called once every request sent has finished,
+     *                    which may be after this method returns.
+     * @param <T>         The type of the response.
+     * @return The response of the first successful request.
+     * @throws IOException If every attempt fails, or the request can not be
+     *                     retried.
+     */
+    public <T> T executeHedged(final String description,
+                               final Request<T> request,
+                               final Runnable onSettled) throws IOException {
+        final Settler settler = new Settler(onSettled);
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return hedged(description, request, settler);
+                } catch (IOException e) {
+                    backoff(description, attempt, e);
+                }
+            }
+        } finally {
+            settler.release();
+        }
+    }
+
+    private <T> T hedged(final String description,
+                         final Request<T> request,
+                         final Settler settler) throws IOException {
+        final long delay = hedgeDelayMs();
+        if (delay < 0) {
+            final long start = System.nanoTime();
+            final T response = request.call(false);
+            record(System.nanoTime() - start);
+            return response;
+        }
+        final CompletionService<T> completion =
+            new ExecutorCompletionService<>(executor);
+        submit(completion, request, false, settler);
+        int running = 1;
+        Future<T> hedge = null;
+        IOException failure = null;
+        try {
+            Future<T> done = completion.poll(delay, TimeUnit.MILLISECONDS);
+            if (done == null) {
+                LOGGER.info("Hedging request slower than {} ms: {}", delay,
+                    description);
+                stats.addHedge();
+                hedge = submit(completion, request, true, settler);
+                running++;
+            }
+            while (true) {
+                if (done == null) {
+                    done = completion.take();
+                }
+                running--;
+                try {
+                    final T response = done.get();
+                    if (done == hedge) {
+                        stats.addHedgeWin();
+                    }
+                    return response;
+                } catch (ExecutionException e) {
+                    final IOException io = asIOException(e.getCause());
+                    if (failure == null) {
+                        failure = io;
+                    } else {
+                        failure.addSuppressed(io);
+                    }
+                    if (running == 0) {
+                        throw failure;
+                    }
+                }
+                done = null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request interrupted: " +
+                description);
+        }
+    }
+
+    private <T> Future<T> submit(final CompletionService<T> completion,
+                                 final Request<T> request,
+                                 final boolean hedge,
+                                 final Settler settler) {
+        settler.acquire();
+        return completion.submit(() -> {
+            try {
+                final long start = System.nanoTime();
+                final T response = request.call(hedge);
+                record(System.nanoTime() - start);
+                return response;
+            } finally {
+                settler.release();
+            }
+        });
+    }
+
+    private static IOException asIOException(final Throwable t) {
+        if (t instanceof IOException) {
+            return (IOException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IOException(t);
+    }
+
+    private void backoff(final String description,
+                         final int attempt,
+                         final IOException failure) throws IOException {
+        if (attempt >= policy.getMaxAttempts() ||
+            !RetryPolicy.isRetryable(failure) ||
+            Thread.currentThread().isInterrupted()) {
+            throw failure;
+        }
+        final long delay = policy.backoffMs(attempt);
+        LOGGER.warn("Request failed, retrying in {} ms: {}, attempt = {}, " +
+            "error = {}", delay, description, attempt + 1, failure.toString());
+        stats.addRetry();
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request interrupted: " +
+                description);
+        }
+    }
+
+    private synchronized void record(final long nanos) {
+        latencies[next] = nanos;
+        next = (next + 1) % latencies.length;
+        samples = Math.min(samples + 1, latencies.length);
+    }
+
+    /**
+     * Gets the time after which a part request is hedged.
+     *
+     * @return The 95th percentile of the recent part request latencies in
+     * milliseconds, at least MIN_HEDGE_DELAY_MS, or -1 if requests are not
+     * hedged, either by the policy or because too few requests have been
+     * sent to know their latency.
+     */
+    synchronized long hedgeDelayMs() {
+        if (!policy.isHedging() || samples < MIN_LATENCY_SAMPLES) {
+            return -1;
+        }
+        final long[] sorted = Arrays.copyOf(latencies, samples);
+        Arrays.sort(sorted);
+        final int index = (int) Math.ceil(HEDGE_PERCENTILE * samples) - 1;
+        return Math.max(MIN_HEDGE_DELAY_MS,
+            TimeUnit.NANOSECONDS.toMillis(sorted[index]));
+    }
+
+    /**
+     * Stops the runner. Hedged requests that are still running finish in
+     * the background.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * RetryPolicy describes how the requests a transfer makes to its external
+ * location are retried. A failed request is retried after an exponential
+ * backoff with full jitter, i.e. a random delay between 0 and
+ * min(maxDelayMs, baseDelayMs * 2^(attempt - 1)), so the requests of many
+ * transfer threads that fail together do not retry together. When hedging
+ * is enabled, a duplicate of a request that is much slower than usual is
+ * sent, and the first response is used.
+ */
+public class RetryPolicy {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final long DEFAULT_BASE_DELAY_MS = 100;
+    public static final long DEFAULT_MAX_DELAY_MS = 10000;
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(
+        DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS,
+        true);
+
+    /**
+     * A policy that never retries or hedges a request.
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0, false);
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final boolean hedging;
+
+    /**
+     * Constructs a new RetryPolicy.
+     *
+     * @param maxAttempts The maximum number of attempts of each request.
+     * @param baseDelayMs The maximum delay before the first retry.
+     * @param maxDelayMs  The maximum delay before any retry.
+     * @param hedging     True to hedge requests that are slower than usual.
+     */
+    public RetryPolicy(final int maxAttempts,
+                       final long baseDelayMs,
+                       final long maxDelayMs,
+                       final boolean hedging) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.hedging = hedging;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getBaseDelayMs() {
+        return baseDelayMs;
+    }
+
+    public long getMaxDelayMs() {
+        return maxDelayMs;
+    }
+
+    public boolean isHedging() {
+        return hedging;
+    }
+
+    /**
+     * Gets the delay before a retry.
+     *
+     * @param attempt The one based number of the attempt that failed.
+     * @return A random delay in milliseconds between 0 and the backoff of
+     * the attempt.
+     */
+    public long backoffMs(final int attempt) {
+        final long backoff = Math.min(maxDelayMs,
+            baseDelayMs << Math.min(attempt - 1, 30));
+        return backoff <= 0 ? 0 :
+            ThreadLocalRandom.current().nextLong(backoff + 1);
+    }
+
+    /**
+     * Tests if a failed request may be retried. Interrupted requests are
+     * not retried, and neither are reads past the end of an object, which
+     * fail the same way every time.
+     *
+     * @param t The failure of the request.
+     * @return True if the request may be retried.
+     */
+    public static boolean isRetryable(final Throwable t) {
+        return t instanceof IOException &&
+            !(t instanceof InterruptedIOException) &&
+            !(t instanceof EOFException);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("max attempts = %d, base delay ms = %d, " +
+                "max delay ms = %d, hedging = %b", maxAttempts, baseDelayMs,
+            maxDelayMs, hedging);
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * S3Lister lists the objects of a backup. Every listing is paginated, and
+ * the marker of each request is advanced past the last key of the previous
+ * page, so prefixes with more than one page of objects are listed
+ * completely.
+ * <p>
+ * A node's backup is listed by its keyspace/column family sub-prefixes,
+ * which are discovered with delimited listings and then listed
+ * concurrently. The objects of each column family are returned as a batch
+ * as soon as it has been listed, so downloads can start before the whole
+ * backup has been listed.
+ */
+public class S3Lister {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        S3Lister.class);
+
+    public static final int DEFAULT_CONCURRENCY = 8;
+    public static final int MAX_KEYS = 1000;
+    public static final String DELIMITER = "/";
+
+    /**
+     * Listing supplies the batches of objects of a concurrent listing.
+     */
+    public interface Listing extends Closeable {
+
+        /**
+         * Gets the next batch of objects, blocking until it is available.
+         *
+         * @return The objects under one sub-prefix, or empty once every
+         * sub-prefix has been listed.
+         * @throws IOException          If a sub-prefix can not be listed.
+         * @throws InterruptedException If the wait is interrupted.
+         */
+        Optional<List<S3ObjectSummary>> next()
+            throws IOException, InterruptedException;
+
+        /**
+         * Stops listing.
+         */
+        @Override
+        void close();
+    }
+
+    private final AmazonS3Client amazonS3Client;
+    private final String bucketName;
+    private final int concurrency;
+    private final int maxKeys;
+
+    /**
+     * Constructs a new S3Lister.
+     *
+     * @param amazonS3Client The client used to list the bucket.
+     * @param bucketName     The name of the bucket.
+     * @param concurrency    The maximum number of prefixes listed at once.
+     */
+    public S3Lister(final AmazonS3Client amazonS3Client,
+                    final String bucketName,
+                    final int concurrency) {
+        this(amazonS3Client, bucketName, concurrency, MAX_KEYS);
+    }
+
+    S3Lister(final AmazonS3Client amazonS3Client,
+             final String bucketName,
+             final int concurrency,
+             final int maxKeys) {
+        this.amazonS3Client = amazonS3Client;
+        this.bucketName = bucketName;
+        this.concurrency = concurrency;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Lists every object under a prefix.
+     *
+     * @param prefix The prefix of the keys.
+     * @return The objects under prefix, in key order.
+     */
+    public List<S3ObjectSummary> list(final String prefix) {
+        final List<S3ObjectSummary> objects = new ArrayList<>();
+        list(prefix, null, listing ->
+            objects.addAll(listing.getObjectSummaries()));
+        return objects;
+    }
+
+    /**
+     * Lists the sub-prefixes directly under a prefix.
+     *
+     * @param prefix The prefix of the keys, ending with the delimiter.
+     * @return The sub-prefixes under prefix, each ending with the delimiter.
+     */
+    public List<String> listPrefixes(final String prefix) {
+        final List<String> prefixes = new ArrayList<>();
+        list(prefix, DELIMITER, page ->
+            prefixes.addAll(page.getCommonPrefixes()));
+        return prefixes;
+    }
+
+    /**
+     * Lists the objects under a prefix by sub-prefix. The sub-prefixes two
+     * levels below prefix, i.e. the column families of a node's backup,
+     * are listed concurrently, and objects that are not under such a
+     * sub-prefix are returned in batches of their own.
+     *
+     * @param prefix The prefix of the keys, ending with the delimiter.
+     * @return A Listing that supplies the objects. It must be closed.
+     */
+    public Listing listByPrefix(final String prefix) {
+        final ConcurrentListing listing = new ConcurrentListing();
+        listing.submit(() -> {
+            final List<String> keyspaces = listDirectory(prefix, listing);
+            for (String keyspace : keyspaces) {
+                listing.submit(() -> {
+                    final List<String> tables = listDirectory(keyspace,
+                        listing);
+                    for (String table : tables) {
+                        listing.submit(() -> {
+                            final List<S3ObjectSummary> objects =
+                                list(table);
+                            LOGGER.info("Listed {} objects under prefix: {}",
+                                objects.size(), table);
+                            listing.add(objects);
+                        });
+                    }
+                });
+            }
+        });
+        return listing;
+    }
+
+    /**
+     * Lists a prefix with the delimiter, adds the objects directly under it
+     * to listing, and returns the sub-prefixes.
+     */
+    private List<String> listDirectory(final String prefix,
+                                       final ConcurrentListing listing) {
+        final List<String> prefixes = new ArrayList<>();
+        final List<S3ObjectSummary> objects = new ArrayList<>();
+        list(prefix, DELIMITER, page -> {
+            prefixes.addAll(page.getCommonPrefixes());
+            objects.addAll(page.getObjectSummaries());
+        });
+        if (!objects.isEmpty()) {
+            listing.add(objects);
+        }
+        return prefixes;
+    }
+
+    private void list(final String prefix,
+                      final String delimiter,
+                      final Consumer<ObjectListing> consumer) {
+        final ListObjectsRequest request = new ListObjectsRequest()
+            .withBucketName(bucketName)
+            .withPrefix(prefix)
+            .withDelimiter(delimiter)
+            .withMaxKeys(maxKeys);
+        while (true) {
+            final ObjectListing page = amazonS3Client.listObjects(request);
+            consumer.accept(page);
+            if (!page.isTruncated()) {
+                return;
+            }
+            request.setMarker(nextMarker(page));
+        }
+    }
+
+    /**
+     * Gets the marker of the page that follows a truncated page. S3 only
+     * returns a next marker for delimited listings, otherwise the listing
+     * continues after the last key of the page.
+     *
+     * @param page A truncated page.
+     * @return The marker of the next page.
+     */
+    static String nextMarker(final ObjectListing page) {
+        if (page.getNextMarker() != null) {
+            return page.getNextMarker();
+        }
+        String marker = null;
+        final List<S3ObjectSummary> objects = page.getObjectSummaries();
+        if (!objects.isEmpty()) {
+            marker = objects.get(objects.size() - 1).getKey();
+        }
+        final List<String> prefixes = page.getCommonPrefixes();
+        if (!prefixes.isEmpty()) {
+            final String prefix = prefixes.get(prefixes.size() - 1);
+            if (marker == null || prefix.compareTo(marker) > 0) {
+                marker = prefix;
+            }
+        }
+        if (marker == null) {
+            throw new IllegalStateException(String.format(
+                "Truncated listing of prefix %s has no keys",
+                page.getPrefix()));
+        }
+        return marker;
+    }
+
+    private class ConcurrentListing implements Listing {
+        // Marks the end of the listing, compared by identity.
+        private final List<S3ObjectSummary> end = new ArrayList<>();
+        private final BlockingQueue<List<S3ObjectSummary>> batches =
+            new LinkedBlockingQueue<>();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicReference<Throwable> error =
+            new AtomicReference<>();
+        private final ExecutorService executor = Executors.newFixedThreadPool(
+            concurrency,
+            new ThreadFactoryBuilder().setNameFormat("s3-list-%d")
+                .setDaemon(true).build());
+
+        private void submit(final Runnable task) {
+            outstanding.incrementAndGet();
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (AmazonClientException | IllegalStateException e) {
+                    LOGGER.error("Failed to list bucket: " + bucketName, e);
+                    error.compareAndSet(null, e);
+                    batches.add(end);
+                } finally {
+                    if (outstanding.decrementAndGet() == 0) {
+                        batches.add(end);
+                    }
+                }
+            });
+        }
+
+        private void add(final List<S3ObjectSummary> objects) {
+            batches.add(objects);
+        }
+
+        @Override
+        public Optional<List<S3ObjectSummary>> next()
+            throws IOException, InterruptedException {
+            final List<S3ObjectSummary> batch = batches.take();
+            if (batch == end) {
+                batches.add(end);
+                if (error.get() != null) {
+                    throw new IOException("Failed to list bucket: " +
+                        bucketName, error.get());
+                }
+                return Optional.empty();
+            }
+            return Optional.of(batch);
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * S3ManifestStore implements ManifestStore with S3 objects.
+ */
+class S3ManifestStore implements ManifestStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        S3ManifestStore.class);
+
+    private final AmazonS3Client amazonS3Client;
+    private final String bucketName;
+
+    S3ManifestStore(final AmazonS3Client amazonS3Client,
+                    final String bucketName) {
+        this.amazonS3Client = amazonS3Client;
+        this.bucketName = bucketName;
+    }
+
+    @Override
+    public Optional<BackupManifest> read(String key) throws IOException {
+        try (S3Object object = amazonS3Client.getObject(bucketName, key)) {
+            return Optional.of(BackupManifest.parse(
+                IOUtils.toByteArray(object.getObjectContent())));
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                return Optional.empty();
+            }
+            throw new IOException(String.format(
+                "Failed to read manifest: bucket = %s, key = %s",
+                bucketName, key), e);
+        } catch (AmazonClientException e) {
+            throw new IOException(String.format(
+                "Failed to read manifest: bucket = %s, key = %s",
+                bucketName, key), e);
+        }
+    }
+
+    @Override
+    public void write(String key, BackupManifest manifest)
+        throws IOException {
+        final byte[] bytes = manifest.toBytes();
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(bytes.length);
+        try {
+            amazonS3Client.putObject(bucketName, key,
+                new ByteArrayInputStream(bytes), metadata);
+        } catch (AmazonClientException e) {
+            throw new IOException(String.format(
+                "Failed to write manifest: bucket = %s, key = %s",
+                bucketName, key), e);
+        }
+        LOGGER.info("Wrote manifest: key = {}, components = {}, " +
+            "complete = {}", key, manifest.getComponents().size(),
+            manifest.isComplete());
+    }
+}
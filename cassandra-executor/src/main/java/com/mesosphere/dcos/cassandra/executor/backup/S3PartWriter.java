@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListMultipartUploadsRequest;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.MultipartUpload;
+import com.amazonaws.services.s3.model.MultipartUploadListing;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * S3PartWriter implements PartWriter using S3 multipart uploads. The
+ * underlying AmazonS3Client is thread safe, so parts of the same upload
+ * may be written concurrently.
+ */
+class S3PartWriter implements PartWriter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        S3PartWriter.class);
+
+    private final AmazonS3Client amazonS3Client;
+    private final String bucketName;
+
+    S3PartWriter(final AmazonS3Client amazonS3Client,
+                 final String bucketName) {
+        this.amazonS3Client = amazonS3Client;
+        this.bucketName = bucketName;
+    }
+
+    @Override
+    public String initiate(String key) throws IOException {
+        try {
+            return amazonS3Client.initiateMultipartUpload(
+                new InitiateMultipartUploadRequest(bucketName, key))
+                .getUploadId();
+        } catch (AmazonClientException e) {
+            throw new IOException(String.format(
+                "Failed to initiate upload: bucket = %s, key = %s",
+                bucketName, key), e);
+        }
+    }
+
+    @Override
+    public Optional<String> findUpload(String key) throws IOException {
+        MultipartUpload latest = null;
+        final ListMultipartUploadsRequest request =
+            new ListMultipartUploadsRequest(bucketName).withPrefix(key);
+        try {
+            MultipartUploadListing listing;
+            do {
+                listing = amazonS3Client.listMultipartUploads(request);
+                for (MultipartUpload upload : listing.getMultipartUploads()) {
+                    if (upload.getKey().equals(key) && (latest == null ||
+                        upload.getInitiated().after(latest.getInitiated()))) {
+                        latest = upload;
+                    }
+                }
+                request.setKeyMarker(listing.getNextKeyMarker());
+                request.setUploadIdMarker(listing.getNextUploadIdMarker());
+            } while (listing.isTruncated());
+        } catch (AmazonClientException e) {
+            throw new IOException(String.format(
+                "Failed to list uploads: bucket = %s, key = %s",
+                bucketName, key), e);
+        }
+        return Optional.ofNullable(latest).map(MultipartUpload::getUploadId);
+    }
+
+    @Override
+    public Map<Integer, String> listParts(String key, String uploadId)
+        throws IOException {
+        final Map<Integer, String> parts = new HashMap<>();
+        final ListPartsRequest request = new ListPartsRequest(bucketName,
+            key, uploadId);
+        try {
+            PartListing listing;
+            do {
+                listing = amazonS3Client.listParts(request);
+                for (PartSummary part : listing.getParts()) {
+                    parts.put(part.getPartNumber(),
+                        part.getETag().replace("\"", ""));
+                }
+                request.setPartNumberMarker(
+                    listing.getNextPartNumberMarker());
+            } while (listing.isTruncated());
+        } catch (AmazonClientException e) {
+            throw new IOException(String.format(
+                "Failed to list parts: bucket = %s, key = %s, uploadId = %s",
+                bucketName, key, uploadId), e);
+        }
+        return parts;
+    }
+
+    @Override
+    public String writePart(String key,
+                            String uploadId,
+                            int partNumber,
+                            ByteBuffer data,
+                            byte[] md5) throws IOException {
+        final UploadPartRequest uploadPartRequest = new UploadPartRequest()
+            .withBucketName(bucketName)
+            .withKey(key)
+            .withUploadId(uploadId)
+            .withPartNumber(partNumber)
+            .withInputStream(new ByteBufferInputStream(data))
+            .withPartSize(data.remaining())
+            .withMD5Digest(Base64.getEncoder().encodeToString(md5));
+        final UploadPartResult uploadPartResult;
+        try {
+            uploadPartResult = amazonS3Client.uploadPart(uploadPartRequest);
+        } catch (AmazonClientException e) {
+            throw new IOException(String.format(
+                "Failed to upload part: bucket = %s, key = %s, part = %d",
+                bucketName, key, partNumber), e);
+        }
+        // The ETag of a part is the MD5 of its content, so a mismatch means
+        // S3 stored something other than what was sent. The IOException is
+        // retryable, so the part is sent again.
+        final String eTag = uploadPartResult.getPartETag().getETag()
+            .replace("\"", "");
+        final String expected = new String(Hex.encodeHex(md5));
+        if (!eTag.equalsIgnoreCase(expected)) {
+            throw new IOException(String.format(
+                "ETag of part does not match its MD5: bucket = %s, " +
+                    "key = %s, part = %d, eTag = %s, md5 = %s",
+                bucketName, key, partNumber, eTag, expected));
+        }
+        return eTag;
+    }
+
+    @Override
+    public void complete(String key, String uploadId, List<String> tags)
+        throws IOException {
+        final List<PartETag> partETags = new ArrayList<>(tags.size());
+        for (int i = 0; i < tags.size(); i++) {
+            partETags.add(new PartETag(i + 1, tags.get(i)));
+        }
+        LOGGER.debug("Done uploading, now completing bucket: {} | key: {} " +
+            "| uploadId: {}", bucketName, key, uploadId);
+        try {
+            amazonS3Client.completeMultipartUpload(
+                new CompleteMultipartUploadRequest(bucketName, key,
+                    uploadId, partETags));
+        } catch (AmazonClientException e) {
+            throw new IOException(String.format(
+                "Failed to complete upload: bucket = %s, key = %s",
+                bucketName, key), e);
+        }
+    }
+
+    @Override
+    public void abort(String key, String uploadId) {
+        try {
+            amazonS3Client.abortMultipartUpload(
+                new AbortMultipartUploadRequest(bucketName, key, uploadId));
+        } catch (AmazonClientException e) {
+            LOGGER.error(String.format("Failed to abort upload: bucket = " +
+                "%s, key = %s, uploadId = %s", bucketName, key, uploadId), e);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * S3RangeReader implements RangeReader using S3 ranged GETs. The underlying
+ * AmazonS3Client is thread safe, so ranges of the same object may be read
+ * concurrently.
+ */
+class S3RangeReader implements RangeReader {
+
+    private final AmazonS3Client amazonS3Client;
+    private final String bucketName;
+
+    S3RangeReader(final AmazonS3Client amazonS3Client,
+                  final String bucketName) {
+        this.amazonS3Client = amazonS3Client;
+        this.bucketName = bucketName;
+    }
+
+    @Override
+    public void read(String key, long offset, ByteBuffer buffer)
+        throws IOException {
+        final GetObjectRequest rangeObjectRequest = new GetObjectRequest(
+            bucketName, key);
+        rangeObjectRequest.setRange(offset, offset + buffer.remaining() - 1);
+        try {
+            final S3Object object = amazonS3Client.getObject(
+                rangeObjectRequest);
+            try (ReadableByteChannel channel = Channels.newChannel(
+                object.getObjectContent())) {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        throw new EOFException(String.format(
+                            "Unexpected end of object: bucket = %s, " +
+                                "key = %s, offset = %d",
+                            bucketName, key, offset));
+                    }
+                }
+            }
+        } catch (AmazonClientException e) {
+            throw new IOException(String.format(
+                "Failed to read range: bucket = %s, key = %s, offset = %d",
+                bucketName, key, offset), e);
+        }
+    }
+}
@@ -20,51 +20,41 @@ import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.S3ClientOptions;
 import com.amazonaws.services.s3.internal.Constants;
 import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
-import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
-import com.amazonaws.services.s3.model.GetObjectRequest;
-import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
-import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
-import com.amazonaws.services.s3.model.ListObjectsRequest;
-import com.amazonaws.services.s3.model.ObjectListing;
-import com.amazonaws.services.s3.model.PartETag;
-import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.ListMultipartUploadsRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.MultipartUpload;
+import com.amazonaws.services.s3.model.MultipartUploadListing;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
-import com.amazonaws.services.s3.model.UploadPartRequest;
-import com.amazonaws.services.s3.model.UploadPartResult;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupContext;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupRestoreContext;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreContext;
-import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.io.IOUtils;
+import com.mesosphere.dcos.cassandra.executor.compress.CompressionPolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xerial.snappy.SnappyInputStream;
-import org.xerial.snappy.SnappyOutputStream;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.FileSystems;
-import java.nio.file.FileVisitResult;
-import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.security.MessageDigest;
 import java.util.ArrayList;
-import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 /**
  * Implements a BackupStorageDriver that provides upload and download
@@ -74,8 +64,17 @@ public class S3StorageDriver implements BackupStorageDriver {
     private static final Logger LOGGER = LoggerFactory.getLogger(
             S3StorageDriver.class);
 
-    public static final int DEFAULT_PART_SIZE_UPLOAD = 4 * 1024 * 1024; // Chunk size set to 4MB
-    public static final int DEFAULT_PART_SIZE_DOWNLOAD = 4 * 1024 * 1024; // Chunk size set to 4MB
+    // S3 requires every part except the last to be at least 5MB
+    public static final int DEFAULT_PART_SIZE_UPLOAD = 8 * 1024 * 1024; // Part size set to 8MB
+    public static final int DEFAULT_CONCURRENT_FILES = 4;
+    public static final int DEFAULT_CONCURRENT_PARTS = 4;
+    public static final int DEFAULT_CONCURRENT_DOWNLOAD_PARTS = 8;
+    public static final int DEFAULT_CONCURRENT_DELETES = 4;
+    // The maximum number of keys of a multi-object delete request.
+    public static final int MAX_DELETE_KEYS = 1000;
+    public static final String MANIFESTS_DIRECTORY = "_manifests";
+    public static final String INCREMENTAL_MANIFEST_SUFFIX =
+            ".incremental.json";
 
     private StorageUtil storageUtil = new StorageUtil();
 
@@ -88,20 +87,62 @@ public class S3StorageDriver implements BackupStorageDriver {
         }
     }
 
-    String getPrefixKey(BackupRestoreContext ctx) throws URISyntaxException {
+    String getBaseKey(BackupRestoreContext ctx) throws URISyntaxException {
         URI uri = new URI(ctx.getExternalLocation());
         String[] segments = uri.getPath().split("/");
 
         int startIndex = uri.getScheme().equals(AmazonS3Client.S3_SERVICE_NAME) ? 1 : 2;
-        String prefixKey = "";
+        String baseKey = "";
         for (int i=startIndex; i<segments.length; i++) {
-            prefixKey += segments[i];
+            baseKey += segments[i];
         }
 
-        prefixKey = (prefixKey.length() > 0 && !prefixKey.endsWith("/")) ? prefixKey + "/" : prefixKey;
-        prefixKey += ctx.getName(); // append backup name
+        return (baseKey.length() > 0 && !baseKey.endsWith("/")) ? baseKey + "/" : baseKey;
+    }
+
+    String getPrefixKey(BackupRestoreContext ctx) throws URISyntaxException {
+        return getBaseKey(ctx) + ctx.getName(); // append backup name
+    }
+
+    /**
+     * Gets the key of a node's manifest. The manifest of a backup is stored
+     * under the backup's prefix key, and the manifest of the latest backup
+     * of the node, used to find unchanged components for incremental
+     * backups, is stored under the base key.
+     */
+    String getManifestKey(String prefixKey, String nodeId) {
+        final String prefix = (prefixKey.length() > 0 && !prefixKey.endsWith("/")) ?
+                prefixKey + "/" : prefixKey;
+        return prefix + MANIFESTS_DIRECTORY + "/" + nodeId + ".json";
+    }
+
+    /**
+     * Gets the key of the incremental manifest of a node's backup, which
+     * records the SSTables shipped to the backup after its snapshot.
+     */
+    String getIncrementalManifestKey(String prefixKey, String nodeId) {
+        final String prefix = (prefixKey.length() > 0 && !prefixKey.endsWith("/")) ?
+                prefixKey + "/" : prefixKey;
+        return prefix + MANIFESTS_DIRECTORY + "/" + nodeId +
+                INCREMENTAL_MANIFEST_SUFFIX;
+    }
 
-        return prefixKey;
+    /**
+     * Reads the manifest of a node's backup. If includeIncremental is set,
+     * the SSTables shipped to the backup after its snapshot are included.
+     */
+    private Optional<BackupManifest> readManifest(ManifestStore manifests,
+                                                  String prefixKey,
+                                                  String nodeId,
+                                                  boolean includeIncremental)
+            throws IOException {
+        final Optional<BackupManifest> manifest = manifests.read(
+                getManifestKey(prefixKey, nodeId));
+        if (!manifest.isPresent() || !includeIncremental) {
+            return manifest;
+        }
+        return Optional.of(manifest.get().withIncremental(manifests.read(
+                getIncrementalManifestKey(prefixKey, nodeId))));
     }
 
     String getEndpoint(BackupRestoreContext ctx) throws URISyntaxException {
@@ -138,6 +179,7 @@ public class S3StorageDriver implements BackupStorageDriver {
         final AmazonS3Client amazonS3Client = getAmazonS3Client(ctx);
 
         final File dataDirectory = new File(localLocation);
+        final List<UploadEngine.FileUpload> uploads = new ArrayList<>();
 
         // Ex: data/<keyspace>/<cf>/snapshots/</snapshot-dir>/<files>
         for (File keyspaceDir : dataDirectory.listFiles()) {
@@ -150,7 +192,7 @@ public class S3StorageDriver implements BackupStorageDriver {
             for (File cfDir : keyspaceDir.listFiles()) {
                 LOGGER.info("Entering column family: {}", cfDir.getName());
                 File snapshotDir = new File(cfDir, "snapshots");
-                if (!storageUtil.isValidBackupDir(keyspaceDir, cfDir, snapshotDir)) {
+                if (!storageUtil.isValidBackupDir(ctx, keyspaceDir, cfDir, snapshotDir)) {
                     LOGGER.info("Skipping directory: {}",
                             snapshotDir.getAbsolutePath());
                     continue;
@@ -168,13 +210,11 @@ public class S3StorageDriver implements BackupStorageDriver {
                     // Upload this directory
                     LOGGER.info("Going to upload directory: {}",
                             snapshotDirectory.get().getAbsolutePath());
-                    uploadDirectory(
+                    uploads.addAll(listDirectory(
                             snapshotDirectory.get().getAbsolutePath(),
-                            amazonS3Client,
-                            getBucketName(ctx),
                             key,
                             keyspaceDir.getName(),
-                            cfDir.getName());
+                            cfDir.getName()));
                 } else {
                     LOGGER.warn(
                             "Snapshots directory: {} doesn't contain the current backup directory: {}",
@@ -183,137 +223,87 @@ public class S3StorageDriver implements BackupStorageDriver {
             }
         }
 
-        LOGGER.info("Done uploading snapshots for backup: {}", backupName);
+        final String bucketName = getBucketName(ctx);
+        final ManifestStore manifests = new S3ManifestStore(amazonS3Client,
+                bucketName);
+        final String latestManifestKey = getManifestKey(getBaseKey(ctx), nodeId);
+        // Files shipped to the previous backup are referenced as well.
+        Optional<BackupManifest> previous = ctx.isIncremental() ?
+                manifests.read(latestManifestKey) : Optional.empty();
+        if (previous.isPresent()) {
+            previous = Optional.of(previous.get().withIncremental(
+                    manifests.read(getIncrementalManifestKey(getBaseKey(ctx) +
+                            previous.get().getBackupName(), nodeId))));
+        }
+        LOGGER.info("Incremental backup: {} | Previous manifest: {}",
+                ctx.isIncremental(), previous.map(
+                        BackupManifest::getBackupName).orElse("none"));
+
+        // SSTable components are immutable, so a component with the same
+        // path, size and checksum as in the previous backup is referenced.
+        final ManifestTracker tracker = new ManifestTracker(manifests,
+                getManifestKey(getPrefixKey(ctx), nodeId), backupName, nodeId,
+                ctx.getCluster(),
+                ManifestTracker.DEFAULT_CHECKPOINT_INTERVAL_MS);
+        final List<UploadEngine.FileUpload> selected = tracker.select(uploads,
+                key, previous);
+
+        final CompressionPolicy compression = CompressionPolicy.parse(
+                ctx.getCompression());
+        LOGGER.info("Compression: {}", compression);
+        final UploadEngine engine = UploadEngine.builder(
+                        new S3PartWriter(amazonS3Client, bucketName))
+                .setConcurrentFiles(DEFAULT_CONCURRENT_FILES)
+                .setConcurrentParts(DEFAULT_CONCURRENT_PARTS)
+                .setPartSize(DEFAULT_PART_SIZE_UPLOAD)
+                .setChunkSize(PartEncoder.DEFAULT_CHUNK_SIZE)
+                .setCompression(compression)
+                .setThrottle(BandwidthThrottle.ofMegabytes(
+                        ctx.getBandwidthLimitMb()))
+                .build();
+        final TransferStats stats = engine.upload(nodeId, selected,
+                tracker::uploaded);
+        if (stats.getFailedFiles() > 0) {
+            tracker.checkpoint();
+            throw new IOException(String.format(
+                    "Failed to upload %d files for backup: %s",
+                    stats.getFailedFiles(), backupName));
+        }
+        manifests.write(latestManifestKey, tracker.complete());
+
+        LOGGER.info("Done uploading snapshots for backup: {} | {}",
+                backupName, stats);
     }
 
-    private void uploadDirectory(String localLocation,
-                                 AmazonS3Client amazonS3Client,
-                                 String bucketName,
-                                 String key,
-                                 String keyspaceName,
-                                 String cfName) throws IOException {
+    private List<UploadEngine.FileUpload> listDirectory(String localLocation,
+                                                       String key,
+                                                       String keyspaceName,
+                                                       String cfName)
+            throws IOException {
         LOGGER.info(
-                "uploadDirectory() localLocation: {}, AmazonS3Client: {}, bucketName: {}, key: {}, keyspaceName: {}, cfName: {}",
-                localLocation, amazonS3Client, bucketName, key, keyspaceName,
-                cfName);
-        Files.walkFileTree(FileSystems.getDefault().getPath(localLocation),
-                new FileVisitor<Path>() {
-                    @Override
-                    public FileVisitResult preVisitDirectory(Path dir,
-                                                             BasicFileAttributes attrs)
-                            throws IOException {
-                        return FileVisitResult.CONTINUE;
-                    }
-
-                    @Override
-                    public FileVisitResult visitFile(Path path, BasicFileAttributes attrs)
-                      throws IOException {
-                        final File file = path.toFile();
-                      LOGGER.info("Visiting file: {}", file.getAbsolutePath());
-                        if (file.isFile()) {
-                            String fileKey = key + "/" + keyspaceName + "/" + cfName + "/" + file.getName();
-                            List<PartETag> partETags = new ArrayList<>();
-                          final InitiateMultipartUploadRequest uploadRequest = new InitiateMultipartUploadRequest(bucketName, fileKey);
-                          final InitiateMultipartUploadResult uploadResult = amazonS3Client.initiateMultipartUpload(uploadRequest);
-
-                            LOGGER.info(
-                                    "Initiating upload for file: {} | bucket: {} | key: {} | uploadId: {}",
-                                    file.getAbsolutePath(), bucketName, fileKey,
-                                    uploadResult.getUploadId());
-
-                            final byte[] buffer = new byte[DEFAULT_PART_SIZE_UPLOAD];
-                            BufferedInputStream inputStream = null;
-                            ByteArrayOutputStream baos = null;
-                            SnappyOutputStream compress = null;
-                            try {
-                              inputStream = new BufferedInputStream(new FileInputStream(file));
-                              baos = new ByteArrayOutputStream();
-                              compress = new SnappyOutputStream(baos);
-
-                                int chunkLength;
-                                int partNum = 1;
-                              while ((chunkLength = inputStream.read(buffer)) != -1) {
-                                LOGGER.debug("Compressing part: {}", partNum);
-                                compress.write(buffer, 0, chunkLength);
-                                compress.flush();
-                                final byte[] bytes = baos.toByteArray();
-                                final ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-                                final MessageDigest md5Digester = MessageDigest.getInstance("MD5");
-                                final byte[] digest = md5Digester.digest(bytes);
-                                final String md5String = Base64.getEncoder().encodeToString(digest);
-
-                                    final UploadPartRequest uploadPartRequest = new UploadPartRequest()
-                                            .withBucketName(bucketName)
-                                            .withKey(fileKey)
-                                            .withUploadId(uploadResult.getUploadId())
-                                            .withPartNumber(partNum++)
-                                            .withInputStream(bais)
-                                            .withPartSize(bytes.length)
-                                            .withMD5Digest(md5String);
-
-                                    LOGGER.debug(
-                                            "Uploading part: {} | bucket: {} | key: {} | uploadId: {}",
-                                            partNum, bucketName, fileKey,
-                                            uploadResult.getUploadId());
-                                    final UploadPartResult uploadPartResult = amazonS3Client.uploadPart(
-                                            uploadPartRequest);
-                                    final PartETag partETag = uploadPartResult.getPartETag();
-                                    if (!partETag.getETag().equals(new String(
-                                            Hex.encodeHex(digest)))) {
-                                        LOGGER.error("Error matching hex");
-                                        // TODO: Add retry logic
-                                    }
-                                    partETags.add(partETag);
-                                }
-                                LOGGER.debug(
-                                        "Done uploading, now completing bucket: {} | key: {} | uploadId: {}",
-                                        bucketName, fileKey,
-                                        uploadResult.getUploadId());
-                                final CompleteMultipartUploadRequest completeMultipartUploadRequest = new CompleteMultipartUploadRequest(
-                                        bucketName, fileKey,
-                                        uploadResult.getUploadId(), partETags);
-                                amazonS3Client.completeMultipartUpload(completeMultipartUploadRequest);
-                                LOGGER.debug(
-                                        "Successfully uploaded the file to S3. Deleting the file now: {}",
-                                        file.getAbsolutePath());
-                                final boolean delete = file.delete();
-                                LOGGER.debug("Deletion status: {} for file {}",
-                                        delete, file.getAbsolutePath());
-                            } catch (Exception e) {
-                                LOGGER.error("Error uploading file: {}", e);
-                                amazonS3Client.abortMultipartUpload(
-                                        new AbortMultipartUploadRequest(
-                                                bucketName, fileKey,
-                                                uploadResult.getUploadId()));
-                                // TODO: Add retry logic
-                            } finally {
-                                IOUtils.closeQuietly(inputStream);
-                                IOUtils.closeQuietly(compress);
-                                IOUtils.closeQuietly(baos);
-                            }
-                        }
-
-                        return FileVisitResult.CONTINUE;
-                    }
-
-                    @Override
-                    public FileVisitResult visitFileFailed(Path file,
-                                                           IOException exc)
-                            throws IOException {
-                        return FileVisitResult.CONTINUE;
-                    }
-
-                    @Override
-                    public FileVisitResult postVisitDirectory(Path dir,
-                                                              IOException exc)
-                            throws IOException {
-                        return FileVisitResult.CONTINUE;
-                    }
-                });
+                "listDirectory() localLocation: {}, key: {}, keyspaceName: {}, cfName: {}",
+                localLocation, key, keyspaceName, cfName);
+        final List<UploadEngine.FileUpload> uploads = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(
+                FileSystems.getDefault().getPath(localLocation))) {
+            paths.map(Path::toFile).filter(File::isFile).forEach(file -> {
+                LOGGER.info("Visiting file: {}", file.getAbsolutePath());
+                uploads.add(new UploadEngine.FileUpload(file,
+                        key + "/" + keyspaceName + "/" + cfName + "/" +
+                                file.getName()));
+            });
+        }
+        return uploads;
     }
 
     @Override
     public void download(RestoreContext ctx) throws IOException, URISyntaxException {
+        download(ctx, DownloadListener.NONE);
+    }
+
+    @Override
+    public void download(RestoreContext ctx, DownloadListener listener)
+            throws IOException, URISyntaxException {
         // Ex: data/<keyspace>/<cf>/snapshots/</snapshot-dir>/<files>
 
         // Location of data directory, where the data will be copied.
@@ -324,105 +314,509 @@ public class S3StorageDriver implements BackupStorageDriver {
         final String bucketName = getBucketName(ctx);
         final AmazonS3Client amazonS3Client = getAmazonS3Client(ctx);
 
-        final Map<String, Long> snapshotFileKeys = listSnapshotFiles(amazonS3Client, bucketName, backupName + "/" + nodeId);
+        // Objects of backups with a manifest may belong to older backups,
+        // backups without one are restored from a listing of their objects.
+        final Optional<BackupManifest> manifest = readManifest(
+                new S3ManifestStore(amazonS3Client, bucketName),
+                getPrefixKey(ctx), nodeId, ctx.isIncludeIncremental());
+        final String nodeDirectory = localLocation + File.separator +
+                backupName + File.separator + nodeId;
+        final String nodePrefix = getPrefixKey(ctx) + "/" + nodeId + "/";
+        final S3Lister.Listing listing;
+        final DownloadEngine.DownloadSource source;
+        if (manifest.isPresent()) {
+            if (!manifest.get().isComplete()) {
+                throw new IOException(String.format(
+                        "Backup %s of node %s is incomplete", backupName,
+                        nodeId));
+            }
+            listing = null;
+            final List<DownloadEngine.FileDownload> downloads = new ArrayList<>();
+            for (BackupManifest.Component component :
+                    manifest.get().getComponents()) {
+                if (!StorageUtil.isSelected(ctx, component.getPath())) {
+                    continue;
+                }
+                // Files restored from a manifest are verified against it.
+                final File file = new File(nodeDirectory + File.separator +
+                        component.getPath());
+                if (createParentDirectory(file)) {
+                    downloads.add(new DownloadEngine.FileDownload(
+                            component.getKey(), component.getObjectSize(),
+                            file, component.getSize(), component.getParts()));
+                }
+            }
+            LOGGER.info("Snapshot files for this node: {}", downloads.size());
+            source = DownloadEngine.DownloadSource.of(downloads);
+        } else {
+            // The objects of each column family are downloaded as soon as
+            // it has been listed.
+            listing = new S3Lister(amazonS3Client, bucketName,
+                    S3Lister.DEFAULT_CONCURRENCY).listByPrefix(nodePrefix);
+            source = () -> {
+                final Optional<List<S3ObjectSummary>> objects = listing.next();
+                if (!objects.isPresent()) {
+                    return Optional.empty();
+                }
+                final List<DownloadEngine.FileDownload> downloads =
+                        new ArrayList<>(objects.get().size());
+                for (S3ObjectSummary object : objects.get()) {
+                    final String path = object.getKey().substring(
+                            nodePrefix.length());
+                    if (!StorageUtil.isSelected(ctx, path)) {
+                        continue;
+                    }
+                    final File file = new File(nodeDirectory +
+                            File.separator + path);
+                    if (createParentDirectory(file)) {
+                        downloads.add(new DownloadEngine.FileDownload(
+                                object.getKey(), object.getSize(), file));
+                    }
+                }
+                return Optional.of(downloads);
+            };
+        }
+
+        final DownloadEngine engine = DownloadEngine.builder(
+                        new S3RangeReader(amazonS3Client, bucketName))
+                .setConcurrentFiles(DEFAULT_CONCURRENT_FILES)
+                .setConcurrentParts(DEFAULT_CONCURRENT_DOWNLOAD_PARTS)
+                .setPartBufferSize(PartEncoder.partBufferSize(
+                        DEFAULT_PART_SIZE_UPLOAD,
+                        PartEncoder.DEFAULT_CHUNK_SIZE))
+                .setThrottle(BandwidthThrottle.ofMegabytes(
+                        ctx.getBandwidthLimitMb()))
+                .build();
+        final TransferStats stats;
+        try {
+            stats = engine.download(nodeId, source, listener);
+        } finally {
+            if (listing != null) {
+                listing.close();
+            }
+        }
+        if (stats.getFailedFiles() > 0) {
+            throw new IOException(String.format(
+                    "Failed to download %d files for backup: %s",
+                    stats.getFailedFiles(), backupName));
+        }
+
+        LOGGER.info("Done downloading snapshots for backup: {} | {}",
+                backupName, stats);
+    }
 
-        LOGGER.info("Snapshot files for this node: {}", snapshotFileKeys);
+    @Override
+    public TransferStats verify(RestoreContext ctx)
+            throws IOException, URISyntaxException {
+        final String backupName = ctx.getName();
+        final String nodeId = ctx.getNodeId();
+        final String bucketName = getBucketName(ctx);
+        final AmazonS3Client amazonS3Client = getAmazonS3Client(ctx);
 
-        for (String fileKey : snapshotFileKeys.keySet()) {
-            downloadFile(localLocation, bucketName, amazonS3Client, fileKey,
-                    snapshotFileKeys.get(fileKey));
+        // Backups without a manifest have no checksums, only the parts of
+        // their objects can be verified.
+        final Optional<BackupManifest> manifest = readManifest(
+                new S3ManifestStore(amazonS3Client, bucketName),
+                getPrefixKey(ctx), nodeId, ctx.isIncludeIncremental());
+        final List<DownloadEngine.FileDownload> objects = new ArrayList<>();
+        if (manifest.isPresent()) {
+            if (!manifest.get().isComplete()) {
+                throw new IOException(String.format(
+                        "Backup %s of node %s is incomplete", backupName,
+                        nodeId));
+            }
+            for (BackupManifest.Component component :
+                    manifest.get().getComponents()) {
+                objects.add(new DownloadEngine.FileDownload(
+                        component.getKey(), component.getObjectSize(),
+                        new File(component.getPath()), component.getSize(),
+                        component.getParts(), component.getChecksum()));
+            }
+        } else {
+            final String nodePrefix = getPrefixKey(ctx) + "/" + nodeId + "/";
+            for (S3ObjectSummary object : new S3Lister(amazonS3Client,
+                    bucketName, 1).list(nodePrefix)) {
+                objects.add(new DownloadEngine.FileDownload(object.getKey(),
+                        object.getSize(), new File(object.getKey().substring(
+                        nodePrefix.length()))));
+            }
         }
+        LOGGER.info("Objects to verify for this node: {}", objects.size());
+
+        final DownloadEngine engine = DownloadEngine.builder(
+                        new S3RangeReader(amazonS3Client, bucketName))
+                .setConcurrentFiles(DEFAULT_CONCURRENT_FILES)
+                .setConcurrentParts(DEFAULT_CONCURRENT_DOWNLOAD_PARTS)
+                .setPartBufferSize(PartEncoder.partBufferSize(
+                        DEFAULT_PART_SIZE_UPLOAD,
+                        PartEncoder.DEFAULT_CHUNK_SIZE))
+                .setThrottle(BandwidthThrottle.ofMegabytes(
+                        ctx.getBandwidthLimitMb()))
+                .build();
+        final TransferStats stats = engine.verify(nodeId, objects);
+        LOGGER.info("Done verifying backup: {} | {}", backupName, stats);
+        return stats;
     }
 
-    private void downloadFile(String localLocation,
-                              String bucketName,
-                              AmazonS3Client amazonS3Client,
-                              String fileKey,
-                              Long sizeInBytes) {
-        LOGGER.info(
-                "DownloadFile | Local location: {} | Bucket Name: {} | fileKey: {} | Size in bytes: {}",
-                localLocation, bucketName, fileKey, sizeInBytes);
-        InputStream inputStream = null;
-        BufferedOutputStream bos = null;
-        SnappyInputStream is = null;
-        FileOutputStream fileOutputStream = null;
-        try {
-            long position = 0;
-            final String fileLocation = localLocation + File.separator + fileKey;
-            File f = new File(fileLocation);
-
-            // Only create parent directory once, if it doesn't exist.
-            final File parentDir = new File(f.getParent());
-            if (!parentDir.isDirectory()) {
-                final boolean parentDirCreated = parentDir.mkdirs();
-                if (!parentDirCreated) {
-                    LOGGER.error(
-                            "Error creating parent directory for file: {}. Skipping to next",
-                            fileLocation);
-                    return;
+    @Override
+    public TransferStats uploadIncremental(BackupContext ctx,
+                                           Map<String, File> files)
+            throws IOException, URISyntaxException {
+        final String backupName = ctx.getName();
+        final String nodeId = ctx.getNodeId();
+        final String nodeKey = getPrefixKey(ctx) + "/" + nodeId;
+        final String bucketName = getBucketName(ctx);
+        final AmazonS3Client amazonS3Client = getAmazonS3Client(ctx);
+        final ManifestStore manifests = new S3ManifestStore(amazonS3Client,
+                bucketName);
+        final BackupManifest manifest = manifests.read(
+                getManifestKey(getPrefixKey(ctx), nodeId))
+                .filter(BackupManifest::isComplete)
+                .orElseThrow(() -> new IOException(String.format(
+                        "Backup %s of node %s has no complete manifest",
+                        backupName, nodeId)));
+        final String incrementalKey = getIncrementalManifestKey(
+                getPrefixKey(ctx), nodeId);
+        final Optional<BackupManifest> incremental = manifests.read(
+                incrementalKey);
+
+        final List<UploadEngine.FileUpload> uploads = new ArrayList<>();
+        for (Map.Entry<String, File> file : files.entrySet()) {
+            uploads.add(new UploadEngine.FileUpload(file.getValue(),
+                    nodeKey + "/" + file.getKey()));
+        }
+        // Files already in the backup are referenced, and checkpoints would
+        // replace the complete incremental manifest.
+        final ManifestTracker tracker = new ManifestTracker(manifests,
+                incrementalKey, backupName, nodeId, ctx.getCluster(),
+                Long.MAX_VALUE);
+        final List<UploadEngine.FileUpload> selected = tracker.select(uploads,
+                nodeKey, Optional.of(manifest.withIncremental(incremental)));
+        final UploadEngine engine = UploadEngine.builder(
+                        new S3PartWriter(amazonS3Client, bucketName))
+                .setConcurrentFiles(DEFAULT_CONCURRENT_FILES)
+                .setConcurrentParts(DEFAULT_CONCURRENT_PARTS)
+                .setPartSize(DEFAULT_PART_SIZE_UPLOAD)
+                .setChunkSize(PartEncoder.DEFAULT_CHUNK_SIZE)
+                .setCompression(CompressionPolicy.parse(ctx.getCompression()))
+                .setThrottle(BandwidthThrottle.ofMegabytes(
+                        ctx.getBandwidthLimitMb()))
+                .build();
+        final TransferStats stats = engine.upload(nodeId, selected,
+                tracker::uploaded);
+        tracker.chain(manifest, incremental);
+        if (stats.getFailedFiles() > 0) {
+            throw new IOException(String.format(
+                    "Failed to upload %d incremental files for backup: %s",
+                    stats.getFailedFiles(), backupName));
+        }
+        return stats;
+    }
+
+    @Override
+    public long prune(BackupContext ctx)
+            throws IOException, URISyntaxException {
+        final BackupRetention retention = BackupRetention.of(ctx);
+        if (!retention.isEnabled()) {
+            return 0;
+        }
+        final String cluster = ctx.getCluster();
+        if (cluster == null || cluster.isEmpty()) {
+            LOGGER.warn("Backup retention skipped, the cluster of the " +
+                    "backup is unknown: {}", ctx.getName());
+            return 0;
+        }
+        final String nodeId = ctx.getNodeId();
+        final String bucketName = getBucketName(ctx);
+        final String baseKey = getBaseKey(ctx);
+        final AmazonS3Client amazonS3Client = getAmazonS3Client(ctx);
+        final S3Lister lister = new S3Lister(amazonS3Client, bucketName,
+                S3Lister.DEFAULT_CONCURRENCY);
+        final ManifestStore manifests = new S3ManifestStore(amazonS3Client,
+                bucketName);
+
+        // Backups are dated by their manifest. Only the backups whose
+        // manifest was written by this cluster expire. The location may be
+        // shared, so backups without a manifest, or whose manifest was
+        // written by another cluster, are never deleted, and the objects
+        // the manifests of other clusters reference are kept.
+        final Map<String, Long> complete = new HashMap<>();
+        final List<String> incomplete = new ArrayList<>();
+        final Map<String, BackupManifest> manifestsByName = new HashMap<>();
+        final List<BackupManifest> kept = new ArrayList<>();
+        for (String prefix : lister.listPrefixes(baseKey)) {
+            final String name = prefix.substring(baseKey.length(),
+                    prefix.length() - 1);
+            if (name.startsWith("_")) {
+                // The latest manifests and the commitlog archive.
+                continue;
+            }
+            final String manifestKey = getManifestKey(baseKey + name, nodeId);
+            final Optional<S3ObjectSummary> manifestObject = lister
+                    .list(manifestKey).stream()
+                    .filter(object -> object.getKey().equals(manifestKey))
+                    .findFirst();
+            if (!manifestObject.isPresent()) {
+                continue;
+            }
+            final Optional<BackupManifest> manifest = manifests.read(
+                    manifestKey);
+            if (!manifest.isPresent()) {
+                continue;
+            } else if (!manifest.get().isWrittenBy(cluster)) {
+                kept.add(manifest.get().withIncremental(manifests.read(
+                        getIncrementalManifestKey(baseKey + name, nodeId))));
+            } else if (manifest.get().isComplete()) {
+                complete.put(name,
+                        manifestObject.get().getLastModified().getTime());
+                manifestsByName.put(name, manifest.get());
+            } else {
+                incomplete.add(name);
+            }
+        }
+        final Set<String> expired = retention.expired(ctx.getName(), complete,
+                incomplete);
+        LOGGER.info("Backup retention: {} | backups = {}, incomplete = {}, " +
+                "expired = {}", retention, complete.size(), incomplete.size(),
+                expired);
+
+        for (Map.Entry<String, BackupManifest> manifest :
+                manifestsByName.entrySet()) {
+            if (!expired.contains(manifest.getKey())) {
+                kept.add(manifest.getValue().withIncremental(manifests.read(
+                        getIncrementalManifestKey(baseKey + manifest.getKey(),
+                                nodeId))));
+            }
+        }
+        manifests.read(getManifestKey(baseKey, nodeId)).ifPresent(kept::add);
+        final Set<String> referenced = BackupRetention.referencedKeys(kept);
+
+        long deleted = 0;
+        for (String name : expired) {
+            final String nodePrefix = baseKey + name + "/" + nodeId + "/";
+            final String manifestKey = getManifestKey(baseKey + name, nodeId);
+            final Map<String, BackupManifest.Component> retained =
+                    new TreeMap<>();
+            for (BackupManifest manifest : kept) {
+                for (BackupManifest.Component component :
+                        manifest.getComponents()) {
+                    if (component.getKey() != null &&
+                            component.getKey().startsWith(nodePrefix)) {
+                        retained.put(component.getKey(), component);
+                    }
+                }
+            }
+            // The manifest is marked incomplete before any object is
+            // deleted, so a backup that was partially deleted is never
+            // restored or kept.
+            manifests.write(manifestKey, new BackupManifest(name, nodeId,
+                    cluster, false, null, new ArrayList<>(retained.values())));
+            final List<String> keys = new ArrayList<>();
+            for (S3ObjectSummary object : lister.list(nodePrefix)) {
+                if (!referenced.contains(object.getKey())) {
+                    keys.add(object.getKey());
                 }
             }
+            deleted += deleteObjects(amazonS3Client, bucketName, keys);
+            abortMultipartUploads(amazonS3Client, bucketName, nodePrefix);
+            final String incrementalKey = getIncrementalManifestKey(
+                    baseKey + name, nodeId);
+            if (manifests.read(incrementalKey).isPresent()) {
+                deleted += deleteObjects(amazonS3Client, bucketName,
+                        Collections.singletonList(incrementalKey));
+            }
+            if (retained.isEmpty()) {
+                deleted += deleteObjects(amazonS3Client, bucketName,
+                        Collections.singletonList(manifestKey));
+            }
+            LOGGER.info("Pruned backup: {} | deleted objects = {}, " +
+                    "referenced objects = {}", name, keys.size(),
+                    retained.size());
+        }
+        return deleted;
+    }
 
-            fileOutputStream = new FileOutputStream(f, true);
-            while (position <= sizeInBytes) {
-                final byte[] buffer = new byte[DEFAULT_PART_SIZE_DOWNLOAD];
-                final GetObjectRequest rangeObjectRequest = new GetObjectRequest(
-                        bucketName, fileKey);
-
-                rangeObjectRequest.setRange(position,
-                        DEFAULT_PART_SIZE_DOWNLOAD);
-                final S3Object object = amazonS3Client.getObject(
-                        rangeObjectRequest);
-
-                inputStream = object.getObjectContent();
-                is = new SnappyInputStream(
-                        new BufferedInputStream(inputStream));
-                bos = new BufferedOutputStream(fileOutputStream,
-                        DEFAULT_PART_SIZE_DOWNLOAD);
-                int bytesWritten = 0;
-                try {
-                    int c;
-                    while ((c = is.read(buffer, 0,
-                            DEFAULT_PART_SIZE_DOWNLOAD)) != -1) {
-                        bytesWritten += c;
-                        bos.write(buffer, 0, c);
-                    }
-                } finally {
-                    IOUtils.closeQuietly(is);
-                    IOUtils.closeQuietly(bos);
+    /**
+     * Deletes objects with multi-object delete requests of up to
+     * MAX_DELETE_KEYS keys, DEFAULT_CONCURRENT_DELETES at a time.
+     *
+     * @return The number of objects deleted.
+     * @throws IOException If an object can not be deleted.
+     */
+    private long deleteObjects(AmazonS3Client amazonS3Client,
+                               String bucketName,
+                               List<String> keys) throws IOException {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                DEFAULT_CONCURRENT_DELETES,
+                new ThreadFactoryBuilder().setNameFormat("s3-delete-%d")
+                        .setDaemon(true).build());
+        try {
+            final List<Future<Integer>> futures = new ArrayList<>();
+            for (int start = 0; start < keys.size();
+                 start += MAX_DELETE_KEYS) {
+                final List<DeleteObjectsRequest.KeyVersion> batch =
+                        new ArrayList<>();
+                for (String key : keys.subList(start,
+                        Math.min(keys.size(), start + MAX_DELETE_KEYS))) {
+                    batch.add(new DeleteObjectsRequest.KeyVersion(key));
                 }
+                futures.add(executor.submit(() -> {
+                    try {
+                        amazonS3Client.deleteObjects(
+                                new DeleteObjectsRequest(bucketName)
+                                        .withKeys(batch)
+                                        .withQuiet(true));
+                        return 0;
+                    } catch (MultiObjectDeleteException e) {
+                        for (MultiObjectDeleteException.DeleteError error :
+                                e.getErrors()) {
+                            LOGGER.error("Failed to delete object: {} | {}",
+                                    error.getKey(), error.getMessage());
+                        }
+                        return e.getErrors().size();
+                    }
+                }));
+            }
+            int failed = 0;
+            for (Future<Integer> future : futures) {
+                failed += future.get();
+            }
+            if (failed > 0) {
+                throw new IOException(String.format(
+                        "Failed to delete %d of %d objects", failed,
+                        keys.size()));
+            }
+            return keys.size();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Delete interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to delete objects", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-                // TODO: Think about resumable downloads in future.
-                LOGGER.info("For file: {} wrote: {} bytes out of {} bytes",
-                        fileKey, position + bytesWritten, sizeInBytes);
-                position += DEFAULT_PART_SIZE_DOWNLOAD + 1;
+    /**
+     * Aborts the multipart uploads under a prefix that an interrupted
+     * upload left behind, so their parts are no longer stored.
+     */
+    private void abortMultipartUploads(AmazonS3Client amazonS3Client,
+                                       String bucketName,
+                                       String prefix) {
+        final ListMultipartUploadsRequest request =
+                new ListMultipartUploadsRequest(bucketName)
+                        .withPrefix(prefix);
+        while (true) {
+            final MultipartUploadListing listing =
+                    amazonS3Client.listMultipartUploads(request);
+            for (MultipartUpload upload : listing.getMultipartUploads()) {
+                LOGGER.info("Aborting multipart upload: {}", upload.getKey());
+                amazonS3Client.abortMultipartUpload(
+                        new AbortMultipartUploadRequest(bucketName,
+                                upload.getKey(), upload.getUploadId()));
             }
-        } catch (Exception e) {
+            if (!listing.isTruncated()) {
+                return;
+            }
+            request.setKeyMarker(listing.getNextKeyMarker());
+            request.setUploadIdMarker(listing.getNextUploadIdMarker());
+        }
+    }
+
+    @Override
+    public void archiveCommitLog(BackupContext ctx, File segment)
+            throws IOException, URISyntaxException {
+        final String key = getBaseKey(ctx) +
+                CommitLogArchiver.prefix(ctx.getNodeId()) +
+                CommitLogArchiver.objectName(segment);
+        final AmazonS3Client amazonS3Client = getAmazonS3Client(ctx);
+        // A segment is archived at a time, so a single file is uploaded.
+        final UploadEngine engine = UploadEngine.builder(
+                        new S3PartWriter(amazonS3Client, getBucketName(ctx)))
+                .setConcurrentFiles(1)
+                .setConcurrentParts(DEFAULT_CONCURRENT_PARTS)
+                .setPartSize(DEFAULT_PART_SIZE_UPLOAD)
+                .setChunkSize(PartEncoder.DEFAULT_CHUNK_SIZE)
+                .setCompression(CompressionPolicy.parse(ctx.getCompression()))
+                .setThrottle(BandwidthThrottle.ofMegabytes(
+                        ctx.getBandwidthLimitMb()))
+                .build();
+        final TransferStats stats = engine.upload(ctx.getNodeId(),
+                Collections.singletonList(
+                        new UploadEngine.FileUpload(segment, key)));
+        if (stats.getFailedFiles() > 0) {
+            throw new IOException(String.format(
+                    "Failed to archive commitlog segment: %s", key));
+        }
+    }
+
+    @Override
+    public int downloadCommitLog(RestoreContext ctx, File directory)
+            throws IOException, URISyntaxException {
+        final String nodeId = ctx.getNodeId();
+        final String bucketName = getBucketName(ctx);
+        final AmazonS3Client amazonS3Client = getAmazonS3Client(ctx);
+        final String prefix = getBaseKey(ctx) +
+                CommitLogArchiver.prefix(nodeId);
+        final Map<String, S3ObjectSummary> objects = new HashMap<>();
+        for (S3ObjectSummary object : new S3Lister(amazonS3Client,
+                bucketName, 1).list(prefix)) {
+            objects.put(object.getKey().substring(prefix.length()), object);
+        }
+        final List<DownloadEngine.FileDownload> downloads = new ArrayList<>();
+        for (String name : CommitLogArchiver.select(objects.keySet(),
+                ctx.getPointInTimeMs())) {
+            final S3ObjectSummary object = objects.get(name);
+            downloads.add(new DownloadEngine.FileDownload(object.getKey(),
+                    object.getSize(), new File(directory,
+                    CommitLogArchiver.segmentName(name))));
+        }
+        LOGGER.info("Commitlog segments to replay for this node: {} of {}",
+                downloads.size(), objects.size());
+
+        final DownloadEngine engine = DownloadEngine.builder(
+                        new S3RangeReader(amazonS3Client, bucketName))
+                .setConcurrentFiles(1)
+                .setConcurrentParts(DEFAULT_CONCURRENT_DOWNLOAD_PARTS)
+                .setPartBufferSize(PartEncoder.partBufferSize(
+                        DEFAULT_PART_SIZE_UPLOAD,
+                        PartEncoder.DEFAULT_CHUNK_SIZE))
+                .setThrottle(BandwidthThrottle.ofMegabytes(
+                        ctx.getBandwidthLimitMb()))
+                .build();
+        final TransferStats stats = engine.download(nodeId, downloads);
+        if (stats.getFailedFiles() > 0) {
+            throw new IOException(String.format(
+                    "Failed to download %d commitlog segments for node: %s",
+                    stats.getFailedFiles(), nodeId));
+        }
+        return downloads.size();
+    }
+
+    private static boolean createParentDirectory(File file) {
+        final File parentDir = file.getParentFile();
+        if (!parentDir.isDirectory() && !parentDir.mkdirs()) {
             LOGGER.error(
-                    "Error occuring while downloading fileKey: {} from bucket: {}. Reason: ",
-                    fileKey, bucketName, e);
-        } finally {
-            IOUtils.closeQuietly(inputStream);
-            IOUtils.closeQuietly(fileOutputStream);
+                    "Error creating parent directory for file: {}. Skipping to next",
+                    file.getAbsolutePath());
+            return false;
         }
+        return true;
     }
 
     public Map<String, Long> listSnapshotFiles(AmazonS3Client amazonS3Client,
                                                String bucketName,
                                                String backupName) {
         Map<String, Long> snapshotFiles = new HashMap<>();
-        ObjectListing objectListing;
-        ListObjectsRequest listObjectsRequest = new ListObjectsRequest()
-                .withBucketName(bucketName)
-                .withPrefix(backupName);
-        do {
-            objectListing = amazonS3Client.listObjects(listObjectsRequest);
-            for (S3ObjectSummary objectSummary : objectListing.getObjectSummaries()) {
-                snapshotFiles.put(objectSummary.getKey(),
-                        objectSummary.getSize());
-            }
-        } while (objectListing.isTruncated());
-
+        for (S3ObjectSummary objectSummary : new S3Lister(amazonS3Client,
+                bucketName, 1).list(backupName)) {
+            snapshotFiles.put(objectSummary.getKey(),
+                    objectSummary.getSize());
+        }
         return snapshotFiles;
     }
 }
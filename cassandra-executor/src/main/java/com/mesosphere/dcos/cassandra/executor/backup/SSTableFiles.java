@@ -0,0 +1,181 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SSTableFiles places restored SSTables into the live data directories of
+ * a node, so they can be loaded with a refresh instead of being streamed
+ * through sstableloader. SSTable components are named
+ * [keyspace-table-]version-generation-component, and all components of an
+ * SSTable share a generation. Restored SSTables are given generations above
+ * those in the live directory, so they never replace a live SSTable.
+ */
+public class SSTableFiles {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        SSTableFiles.class);
+
+    private static final Pattern COMPONENT = Pattern.compile(
+        "^((?:.+-)?[a-z]{2}-)(\\d+)(-.+)$");
+    private static final Pattern TABLE_DIRECTORY = Pattern.compile(
+        "^(.+)-[0-9a-f]{32}$");
+
+    private SSTableFiles() {
+    }
+
+    /**
+     * Gets the generation of an SSTable component.
+     *
+     * @param fileName The file name of the component.
+     * @return The generation of the component, or empty if the file is not
+     * an SSTable component.
+     */
+    public static Optional<Integer> generation(final String fileName) {
+        final Matcher matcher = COMPONENT.matcher(fileName);
+        return matcher.matches() ?
+            Optional.of(Integer.parseInt(matcher.group(2))) :
+            Optional.empty();
+    }
+
+    /**
+     * Gets the SSTable of a component.
+     *
+     * @param fileName The file name of the component.
+     * @return The name shared by all components of the SSTable, i.e. the
+     * file name up to and including the generation, or empty if the file
+     * is not an SSTable component.
+     */
+    public static Optional<String> sstable(final String fileName) {
+        final Matcher matcher = COMPONENT.matcher(fileName);
+        return matcher.matches() ?
+            Optional.of(matcher.group(1) + matcher.group(2)) :
+            Optional.empty();
+    }
+
+    /**
+     * Gets the name of the table stored in a table directory.
+     *
+     * @param directoryName The name of the directory, either the name of the
+     *                      table or the name followed by the table id.
+     * @return The name of the table.
+     */
+    public static String tableName(final String directoryName) {
+        final Matcher matcher = TABLE_DIRECTORY.matcher(directoryName);
+        return matcher.matches() ? matcher.group(1) : directoryName;
+    }
+
+    /**
+     * Finds the live directory of a table. If a table was dropped and
+     * created again, its old directory may remain, and the most recently
+     * modified directory is the live one.
+     *
+     * @param keyspaceDirectory The keyspace directory in the data directory.
+     * @param table             The name of the table.
+     * @return The live directory of the table.
+     * @throws IOException If the table has no directory, i.e. its schema
+     *                     has not been created.
+     */
+    public static File findTableDirectory(final File keyspaceDirectory,
+                                          final String table)
+        throws IOException {
+        final File[] directories = keyspaceDirectory.listFiles(file ->
+            file.isDirectory() && tableName(file.getName()).equals(table));
+        if (directories == null || directories.length == 0) {
+            throw new IOException(String.format(
+                "No data directory for table %s.%s. The schema must be " +
+                    "created before the backup is restored",
+                keyspaceDirectory.getName(), table));
+        }
+        if (directories.length > 1) {
+            LOGGER.warn("Found {} directories for table {}.{}, using the " +
+                    "most recently modified", directories.length,
+                keyspaceDirectory.getName(), table);
+        }
+        return Arrays.stream(directories)
+            .max(Comparator.comparingLong(File::lastModified)).get();
+    }
+
+    /**
+     * Moves the SSTables in a directory into a table directory. The SSTables
+     * are renumbered with generations above those of the SSTables in the
+     * table directory. Files that are not SSTable components are left in
+     * place.
+     *
+     * @param source The directory that holds the restored SSTables.
+     * @param target The live directory of the table.
+     * @return The number of SSTables that were moved.
+     * @throws IOException If a file can not be moved.
+     */
+    public static int moveSSTables(final File source, final File target)
+        throws IOException {
+        int next = maxGeneration(target) + 1;
+        final Map<Integer, List<File>> generations = new TreeMap<>();
+        final File[] files = source.listFiles(File::isFile);
+        if (files != null) {
+            for (File file : files) {
+                final Optional<Integer> generation = generation(
+                    file.getName());
+                if (generation.isPresent()) {
+                    generations.computeIfAbsent(generation.get(),
+                        key -> new ArrayList<>()).add(file);
+                } else {
+                    LOGGER.info("Skipping file that is not an SSTable " +
+                        "component: {}", file.getAbsolutePath());
+                }
+            }
+        }
+        for (List<File> components : generations.values()) {
+            final int generation = next++;
+            for (File component : components) {
+                final Matcher matcher = COMPONENT.matcher(
+                    component.getName());
+                matcher.matches();
+                final File moved = new File(target, matcher.group(1) +
+                    generation + matcher.group(3));
+                // The move fails rather than replace an existing file.
+                Files.move(component.toPath(), moved.toPath());
+                LOGGER.debug("Moved {} to {}", component, moved);
+            }
+        }
+        return generations.size();
+    }
+
+    private static int maxGeneration(final File directory) {
+        int max = 0;
+        final String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                max = Math.max(max, generation(name).orElse(0));
+            }
+        }
+        return max;
+    }
+}
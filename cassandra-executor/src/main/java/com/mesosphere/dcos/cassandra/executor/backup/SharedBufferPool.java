@@ -0,0 +1,236 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SharedBufferPool bounds the direct buffers of all the transfers of the
+ * executor. Snapshot uploads, incremental backups, commitlog archiving,
+ * restores and verifications run at the same time, and each transfer
+ * reserves the buffers of its chunk and part pools here before it starts.
+ * A transfer waits until its buffers fit the capacity of the pool, and a
+ * transfer that needs more than the capacity gets fewer buffers, which
+ * only limits its concurrency.
+ * <p>
+ * All the buffers of a transfer are reserved at once, so transfers never
+ * wait on each other's buffers once they have started. A buffer is returned
+ * to the shared pool when its transfer's pool is closed or, if it is still
+ * in use then, e.g. by a hedged request, when it is released. Returned
+ * buffers are reused by later transfers of the same buffer size.
+ */
+public class SharedBufferPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        SharedBufferPool.class);
+
+    /**
+     * The default capacity. It fits the memory of the executor beyond its
+     * heap, with room for the JVM itself.
+     */
+    public static final long DEFAULT_CAPACITY = 128L * 1024 * 1024;
+
+    private static final SharedBufferPool EXECUTOR =
+        new SharedBufferPool(DEFAULT_CAPACITY);
+
+    /**
+     * Reservation holds the buffer pools of a single transfer.
+     */
+    public static class Reservation {
+        private final BufferPool chunkPool;
+        private final BufferPool partPool;
+
+        private Reservation(final BufferPool chunkPool,
+                            final BufferPool partPool) {
+            this.chunkPool = chunkPool;
+            this.partPool = partPool;
+        }
+
+        public BufferPool getChunkPool() {
+            return chunkPool;
+        }
+
+        public BufferPool getPartPool() {
+            return partPool;
+        }
+
+        /**
+         * Returns the buffers of the transfer to the shared pool. Buffers
+         * that are still in use are returned when they are released.
+         */
+        public void close() {
+            chunkPool.close();
+            partPool.close();
+        }
+    }
+
+    private final long capacity;
+    private final Map<Integer, Deque<ByteBuffer>> free = new HashMap<>();
+    private long allocated = 0;
+    private long reserved = 0;
+
+    /**
+     * Gets the pool of the executor.
+     *
+     * @return The SharedBufferPool shared by all transfers of the executor.
+     */
+    public static SharedBufferPool executor() {
+        return EXECUTOR;
+    }
+
+    /**
+     * Constructs a new SharedBufferPool.
+     *
+     * @param capacity The maximum size of the buffers of the pool in bytes.
+     */
+    public SharedBufferPool(final long capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(String.format(
+                "Invalid buffer pool capacity: %d", capacity));
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Reserves the buffers of a transfer, blocking until they fit the
+     * capacity of the pool. If the transfer needs more than the capacity,
+     * the number of part buffers, and then of chunk buffers, is reduced to
+     * fit it, but never below one.
+     *
+     * @param chunks    The number of chunk buffers of the transfer.
+     * @param chunkSize The size of each chunk buffer in bytes.
+     * @param parts     The number of part buffers of the transfer.
+     * @param partSize  The size of each part buffer in bytes.
+     * @return The chunk and part pools of the transfer.
+     * @throws InterruptedException If the calling thread is interrupted
+     *                              while waiting for the buffers.
+     */
+    public synchronized Reservation reserve(final int chunks,
+                                            final int chunkSize,
+                                            final int parts,
+                                            final int partSize)
+        throws InterruptedException {
+        if (chunks <= 0 || chunkSize <= 0 || parts <= 0 || partSize <= 0) {
+            throw new IllegalArgumentException(String.format(
+                "Invalid buffer reservation: chunks = %d, chunkSize = %d, " +
+                    "parts = %d, partSize = %d", chunks, chunkSize, parts,
+                partSize));
+        }
+        int partCount = parts;
+        if ((long) chunks * chunkSize + (long) partCount * partSize >
+            capacity) {
+            partCount = (int) Math.max(1, Math.min(parts,
+                (capacity - (long) chunks * chunkSize) / partSize));
+        }
+        int chunkCount = chunks;
+        if ((long) chunkCount * chunkSize + (long) partCount * partSize >
+            capacity) {
+            chunkCount = (int) Math.max(1, Math.min(chunks,
+                (capacity - (long) partCount * partSize) / chunkSize));
+        }
+        if (chunkCount < chunks || partCount < parts) {
+            LOGGER.info("Reduced transfer buffers to fit the shared buffer " +
+                    "pool: capacity = {}, chunk buffers = {} of {}, " +
+                    "part buffers = {} of {}", capacity, chunkCount, chunks,
+                partCount, parts);
+        }
+        final long size = (long) chunkCount * chunkSize +
+            (long) partCount * partSize;
+        // A transfer larger than the capacity runs on its own.
+        while (reserved > 0 && reserved + size > capacity) {
+            wait();
+        }
+        reserved += size;
+        return new Reservation(
+            new BufferPool(this, take(chunkCount, chunkSize), chunkSize),
+            new BufferPool(this, take(partCount, partSize), partSize));
+    }
+
+    private List<ByteBuffer> take(final int count, final int bufferSize) {
+        final List<ByteBuffer> buffers = new ArrayList<>(count);
+        final Deque<ByteBuffer> reusable = free.get(bufferSize);
+        while (buffers.size() < count && reusable != null &&
+            !reusable.isEmpty()) {
+            buffers.add(reusable.pop());
+        }
+        // Free buffers of other sizes are dropped to make room for new
+        // ones.
+        final Iterator<Map.Entry<Integer, Deque<ByteBuffer>>> sizes =
+            free.entrySet().iterator();
+        while (buffers.size() < count) {
+            while (allocated + bufferSize > capacity && sizes.hasNext()) {
+                final Map.Entry<Integer, Deque<ByteBuffer>> dropped =
+                    sizes.next();
+                allocated -= (long) dropped.getKey() *
+                    dropped.getValue().size();
+                sizes.remove();
+            }
+            allocated += bufferSize;
+            buffers.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+        return buffers;
+    }
+
+    /**
+     * Returns a buffer of a closed BufferPool.
+     *
+     * @param buffer The buffer.
+     */
+    synchronized void release(final ByteBuffer buffer) {
+        buffer.clear();
+        free.computeIfAbsent(buffer.capacity(), size -> new ArrayDeque<>())
+            .push(buffer);
+        reserved -= buffer.capacity();
+        notifyAll();
+    }
+
+    /**
+     * Gets the capacity of the pool.
+     *
+     * @return The maximum size of the buffers of the pool in bytes.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the allocated size of the pool.
+     *
+     * @return The size of all the buffers allocated by the pool in bytes,
+     * reserved or free.
+     */
+    public synchronized long getAllocated() {
+        return allocated;
+    }
+
+    /**
+     * Gets the reserved size of the pool.
+     *
+     * @return The size of the buffers reserved by transfers in bytes.
+     */
+    public synchronized long getReserved() {
+        return reserved;
+    }
+}
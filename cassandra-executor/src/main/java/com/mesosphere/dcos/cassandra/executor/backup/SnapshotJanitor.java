@@ -0,0 +1,439 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.mesosphere.dcos.cassandra.common.config.CassandraConfig;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupContext;
+import com.mesosphere.dcos.cassandra.common.util.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * SnapshotJanitor clears the snapshots the framework took for backups that
+ * never finished. A snapshot hard links the SSTables of a node, so a
+ * snapshot that is not cleared pins SSTables that compaction has replaced,
+ * and the data volume slowly fills.
+ * <p>
+ * Every snapshot taken for a backup is tracked, and the tracked snapshots
+ * are persisted so they survive a restart of the executor. The snapshot of
+ * the latest backup is owned by that backup until its upload clears it.
+ * A snapshot is released when its snapshot or upload fails, or when a newer
+ * backup is taken, as the scheduler runs a single backup at a time, and a
+ * released snapshot is cleared once it has been released for a grace
+ * period. An owned snapshot that is not being uploaded is cleared once it
+ * reaches a maximum age, which covers backups stopped through the
+ * scheduler. Only snapshots the framework took are ever cleared.
+ */
+public class SnapshotJanitor implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        SnapshotJanitor.class);
+
+    public static final long DEFAULT_INTERVAL_MS = 10 * 60 * 1000;
+    public static final long DEFAULT_GRACE_MS = 60 * 60 * 1000;
+    public static final long DEFAULT_MAX_AGE_MS = 7 * 24 * 60 * 60 * 1000L;
+
+    private static final String SNAPSHOTS_FILE = "snapshots.json";
+    private static final String SNAPSHOTS_DIRECTORY = "snapshots";
+
+    /**
+     * Clears a snapshot on the node.
+     */
+    public interface SnapshotClearer {
+        void clear(String name) throws IOException;
+    }
+
+    /**
+     * Snapshot is a snapshot taken by the framework.
+     */
+    public static class Snapshot {
+
+        @JsonCreator
+        public static Snapshot create(
+            @JsonProperty("name") final String name,
+            @JsonProperty("local_location") final String localLocation,
+            @JsonProperty("taken_ms") final long takenMs,
+            @JsonProperty("released_ms") final long releasedMs) {
+            return new Snapshot(name, localLocation, takenMs, releasedMs);
+        }
+
+        @JsonProperty("name")
+        private final String name;
+        @JsonProperty("local_location")
+        private final String localLocation;
+        @JsonProperty("taken_ms")
+        private final long takenMs;
+        @JsonProperty("released_ms")
+        private final long releasedMs;
+
+        public Snapshot(final String name,
+                        final String localLocation,
+                        final long takenMs,
+                        final long releasedMs) {
+            this.name = name;
+            this.localLocation = localLocation;
+            this.takenMs = takenMs;
+            this.releasedMs = releasedMs;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getLocalLocation() {
+            return localLocation;
+        }
+
+        public long getTakenMs() {
+            return takenMs;
+        }
+
+        /**
+         * Gets the time the snapshot was released.
+         *
+         * @return The time in milliseconds since the epoch the snapshot was
+         * released by its backup, or -1 if it is owned by the backup.
+         */
+        public long getReleasedMs() {
+            return releasedMs;
+        }
+
+        @JsonIgnore
+        public boolean isReleased() {
+            return releasedMs >= 0;
+        }
+
+        Snapshot release(final long now) {
+            return isReleased() ? this :
+                new Snapshot(name, localLocation, takenMs, now);
+        }
+    }
+
+    private final Path directory;
+    private final long graceMs;
+    private final long maxAgeMs;
+    private final BooleanSupplier running;
+    private final SnapshotClearer clearer;
+    private final Map<String, Snapshot> snapshots = new TreeMap<>();
+    private final Set<String> inUse = new HashSet<>();
+    private final AtomicLong clearedSnapshots = new AtomicLong();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+    private final AtomicLong failedClears = new AtomicLong();
+
+    /**
+     * Gets the default janitor directory.
+     *
+     * @return The directory on the persistent volume that holds the tracked
+     * snapshots.
+     */
+    public static Path defaultDirectory() {
+        return Paths.get(CassandraConfig.VOLUME_PATH, "snapshot_janitor")
+            .toAbsolutePath();
+    }
+
+    /**
+     * Constructs a new SnapshotJanitor. Snapshots tracked by a previous
+     * executor are tracked again.
+     *
+     * @param directory The directory that holds the tracked snapshots.
+     * @param graceMs   The time a released snapshot is kept before it is
+     *                  cleared.
+     * @param maxAgeMs  The age at which an owned snapshot that is not being
+     *                  uploaded is cleared.
+     * @param running   Tests if the Cassandra daemon is running, so that
+     *                  snapshots can be cleared.
+     * @param clearer   Clears a snapshot on the node.
+     */
+    public SnapshotJanitor(final Path directory,
+                           final long graceMs,
+                           final long maxAgeMs,
+                           final BooleanSupplier running,
+                           final SnapshotClearer clearer) {
+        this.directory = directory;
+        this.graceMs = graceMs;
+        this.maxAgeMs = maxAgeMs;
+        this.running = running;
+        this.clearer = clearer;
+        final File file = directory.resolve(SNAPSHOTS_FILE).toFile();
+        if (file.isFile()) {
+            try {
+                final List<Snapshot> tracked = JsonUtils.MAPPER.readValue(
+                    file, new TypeReference<List<Snapshot>>() {
+                    });
+                for (Snapshot snapshot : tracked) {
+                    snapshots.put(snapshot.getName(), snapshot);
+                }
+                LOGGER.info("Tracking {} snapshots", snapshots.size());
+            } catch (IOException e) {
+                LOGGER.error("Failed to read tracked snapshots", e);
+            }
+        }
+    }
+
+    /**
+     * Tracks the snapshot of a backup before it is taken. The snapshots of
+     * earlier backups are released.
+     *
+     * @param context The context of the backup.
+     */
+    public synchronized void track(final BackupContext context) {
+        final long now = System.currentTimeMillis();
+        for (Map.Entry<String, Snapshot> entry : snapshots.entrySet()) {
+            if (!entry.getKey().equals(context.getName())) {
+                entry.setValue(entry.getValue().release(now));
+            }
+        }
+        final Snapshot existing = snapshots.get(context.getName());
+        snapshots.put(context.getName(), new Snapshot(context.getName(),
+            context.getLocalLocation(),
+            existing == null ? now : existing.getTakenMs(), -1));
+        inUse.add(context.getName());
+        persist();
+    }
+
+    /**
+     * Marks the snapshot of a backup as being uploaded, so it is not
+     * cleared until the upload ends.
+     *
+     * @param context The context of the backup.
+     */
+    public synchronized void acquire(final BackupContext context) {
+        inUse.add(context.getName());
+    }
+
+    /**
+     * Ends the use of a snapshot by a snapshot or upload task.
+     *
+     * @param name    The name of the snapshot.
+     * @param success True if the task succeeded. The snapshot of a failed
+     *                task is released.
+     */
+    public synchronized void done(final String name, final boolean success) {
+        inUse.remove(name);
+        final Snapshot snapshot = snapshots.get(name);
+        if (!success && snapshot != null) {
+            snapshots.put(name, snapshot.release(
+                System.currentTimeMillis()));
+            persist();
+        }
+    }
+
+    /**
+     * Stops tracking a snapshot that was cleared by its upload.
+     *
+     * @param name The name of the snapshot.
+     */
+    public synchronized void cleared(final String name) {
+        inUse.remove(name);
+        if (snapshots.remove(name) != null) {
+            persist();
+        }
+    }
+
+    /**
+     * Tests if a tracked snapshot is orphaned.
+     *
+     * @param snapshot The tracked snapshot.
+     * @param now      The current time in milliseconds.
+     * @return True if the snapshot is not in use and has been released for
+     * the grace period or, if it is owned, has reached the maximum age.
+     */
+    boolean isOrphaned(final Snapshot snapshot, final long now) {
+        if (inUse.contains(snapshot.getName())) {
+            return false;
+        }
+        return snapshot.isReleased() ?
+            now - snapshot.getReleasedMs() >= graceMs :
+            now - snapshot.getTakenMs() >= maxAgeMs;
+    }
+
+    @Override
+    public void run() {
+        if (!running.getAsBoolean()) {
+            return;
+        }
+        try {
+            collect(System.currentTimeMillis());
+        } catch (Throwable t) {
+            // The snapshots are retried on the next run.
+            LOGGER.error("Failed to clear orphaned snapshots", t);
+        }
+    }
+
+    /**
+     * Clears the orphaned snapshots.
+     *
+     * @param now The current time in milliseconds.
+     * @return The number of bytes of disk space reclaimed.
+     */
+    synchronized long collect(final long now) {
+        long reclaimed = 0;
+        for (Snapshot snapshot : new ArrayList<>(snapshots.values())) {
+            if (!isOrphaned(snapshot, now)) {
+                continue;
+            }
+            final List<File> directories = snapshotDirectories(snapshot);
+            final long bytes = exclusiveBytes(directories);
+            try {
+                if (!directories.isEmpty()) {
+                    clearer.clear(snapshot.getName());
+                }
+            } catch (IOException e) {
+                failedClears.incrementAndGet();
+                LOGGER.error(String.format("Failed to clear orphaned " +
+                    "snapshot: %s", snapshot.getName()), e);
+                continue;
+            }
+            snapshots.remove(snapshot.getName());
+            persist();
+            clearedSnapshots.incrementAndGet();
+            reclaimedBytes.addAndGet(bytes);
+            reclaimed += bytes;
+            LOGGER.info("Cleared orphaned snapshot: {} | taken ms = {}, " +
+                    "released ms = {}, reclaimed bytes = {}",
+                snapshot.getName(), snapshot.getTakenMs(),
+                snapshot.getReleasedMs(), bytes);
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Lists the directories of a snapshot, i.e.
+     * data/keyspace/table/snapshots/name.
+     *
+     * @param snapshot The tracked snapshot.
+     * @return The snapshot directories of the tables in the snapshot.
+     */
+    static List<File> snapshotDirectories(final Snapshot snapshot) {
+        final List<File> directories = new ArrayList<>();
+        final File[] keyspaces = new File(snapshot.getLocalLocation())
+            .listFiles(File::isDirectory);
+        if (keyspaces == null) {
+            return directories;
+        }
+        for (File keyspace : keyspaces) {
+            final File[] tables = keyspace.listFiles(File::isDirectory);
+            if (tables == null) {
+                continue;
+            }
+            for (File table : tables) {
+                final File directory = new File(new File(table,
+                    SNAPSHOTS_DIRECTORY), snapshot.getName());
+                if (directory.isDirectory()) {
+                    directories.add(directory);
+                }
+            }
+        }
+        return directories;
+    }
+
+    /**
+     * Gets the disk space held only by snapshot directories. A file that
+     * is still linked from the live data directory takes no space once its
+     * snapshot link is removed, so only files with a single link count.
+     *
+     * @param directories The snapshot directories.
+     * @return The number of bytes that clearing the directories reclaims.
+     */
+    static long exclusiveBytes(final List<File> directories) {
+        long bytes = 0;
+        for (File directory : directories) {
+            final File[] files = directory.listFiles(File::isFile);
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                try {
+                    final Object links = Files.getAttribute(file.toPath(),
+                        "unix:nlink");
+                    if (((Number) links).intValue() <= 1) {
+                        bytes += file.length();
+                    }
+                } catch (UnsupportedOperationException | IOException e) {
+                    // Without link counts the whole file is counted.
+                    bytes += file.length();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private void persist() {
+        try {
+            Files.createDirectories(directory);
+            final Path file = directory.resolve(SNAPSHOTS_FILE);
+            final Path temporary = directory.resolve(SNAPSHOTS_FILE + ".tmp");
+            Files.write(temporary, JsonUtils.MAPPER.writeValueAsBytes(
+                new ArrayList<>(snapshots.values())));
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.error("Failed to persist tracked snapshots", e);
+        }
+    }
+
+    public synchronized int getTrackedSnapshots() {
+        return snapshots.size();
+    }
+
+    public long getClearedSnapshots() {
+        return clearedSnapshots.get();
+    }
+
+    public long getReclaimedBytes() {
+        return reclaimedBytes.get();
+    }
+
+    public long getFailedClears() {
+        return failedClears.get();
+    }
+
+    /**
+     * Registers the janitor's gauges.
+     *
+     * @param registry The MetricRegistry of the executor.
+     */
+    public void register(final MetricRegistry registry) {
+        registry.register("snapshots.tracked",
+            (Gauge<Integer>) this::getTrackedSnapshots);
+        registry.register("snapshots.cleared",
+            (Gauge<Long>) this::getClearedSnapshots);
+        registry.register("snapshots.reclaimed_bytes",
+            (Gauge<Long>) this::getReclaimedBytes);
+        registry.register("snapshots.failed_clears",
+            (Gauge<Long>) this::getFailedClears);
+    }
+}
@@ -1,6 +1,8 @@
 package com.mesosphere.dcos.cassandra.executor.backup;
 
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupContext;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupUploadTask;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupVerifyTask;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.DownloadSnapshotTask;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -23,11 +25,22 @@ public class StorageDriverFactory {
     return getBackupStorageDriver(externalLocation);
   }
 
+  public static BackupStorageDriver createStorageDriver(BackupVerifyTask backupVerifyTask) {
+    final String externalLocation = backupVerifyTask.getRestoreContext().getExternalLocation();
+    return getBackupStorageDriver(externalLocation);
+  }
+
+  public static BackupStorageDriver createStorageDriver(BackupContext backupContext) {
+    return getBackupStorageDriver(backupContext.getExternalLocation());
+  }
+
   private static BackupStorageDriver getBackupStorageDriver(String externalLocation) {
-    // there is only 2 storage backends.  more and we should create a map of types.
     if (StorageUtil.isAzure(externalLocation)) {
       LOGGER.info("Using the Azure Driver.");
       return new AzureStorageDriver();
+    } else if (StorageUtil.isFile(externalLocation)) {
+      LOGGER.info("Using the File Driver.");
+      return new FileStorageDriver();
     } else {
       LOGGER.info("Using the S3 Driver.");
       return new S3StorageDriver();
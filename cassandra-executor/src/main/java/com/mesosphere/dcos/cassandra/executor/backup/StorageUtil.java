@@ -2,6 +2,7 @@ package com.mesosphere.dcos.cassandra.executor.backup;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupRestoreContext;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,9 +23,10 @@ public class StorageUtil {
   private final Map<String, List<String>> SKIP_COLUMN_FAMILIES = ImmutableMap.of();
 
   /**
-   * Filters unwanted keyspaces and column families
+   * Filters unwanted keyspaces and column families, and those that are not
+   * selected by the backup
    */
-  boolean isValidBackupDir(File ksDir, File cfDir, File bkDir) {
+  boolean isValidBackupDir(BackupRestoreContext ctx, File ksDir, File cfDir, File bkDir) {
     if (!bkDir.isDirectory() && !bkDir.exists()) {
       return false;
     }
@@ -42,6 +44,11 @@ public class StorageUtil {
       return false;
     }
 
+    if (!isSelected(ctx, ksName, cfName)) {
+      logger.debug("Skipping column family that is not selected: {}.{}", ksName, cfName);
+      return false;
+    }
+
     return true;
   }
 
@@ -58,8 +65,41 @@ public class StorageUtil {
     return Optional.of(validSnapshot);
   }
 
+  /**
+   * Tests if a column family is selected by a backup or restore. An empty
+   * selection of key spaces or column families selects all of them.
+   *
+   * @param ctx      The context of the backup or restore.
+   * @param keySpace The name of the key space.
+   * @param cfDir    The name of the column family, or of its directory
+   *                 including the table id.
+   * @return True if the column family is backed up or restored.
+   */
+  public static boolean isSelected(BackupRestoreContext ctx, String keySpace, String cfDir) {
+    return (ctx.getKeySpaces().isEmpty() || ctx.getKeySpaces().contains(keySpace))
+      && (ctx.getColumnFamilies().isEmpty()
+      || ctx.getColumnFamilies().contains(SSTableFiles.tableName(cfDir)));
+  }
+
+  /**
+   * Tests if a file of a backup belongs to a selected column family.
+   *
+   * @param ctx  The context of the backup or restore.
+   * @param path The path of the file relative to the node's backup, i.e.
+   *             keyspace/column family/file name.
+   * @return True if the file is backed up or restored.
+   */
+  public static boolean isSelected(BackupRestoreContext ctx, String path) {
+    final String[] segments = path.split("/", 3);
+    return segments.length < 3 || isSelected(ctx, segments[0], segments[1]);
+  }
+
   static boolean isAzure(String externalLocation) {
     // default to s3 (backward compatible)
     return StringUtils.isNotEmpty(externalLocation) && externalLocation.startsWith("azure:");
   }
+
+  static boolean isFile(String externalLocation) {
+    return StringUtils.isNotEmpty(externalLocation) && externalLocation.startsWith("file:");
+  }
 }
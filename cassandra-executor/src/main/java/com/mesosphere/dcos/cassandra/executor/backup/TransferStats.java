@@ -0,0 +1,282 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TransferStats accumulates the counters for a single backup or restore
+ * transfer on a node. It is safe to update from multiple transfer threads.
+ * Besides the totals, it tracks the time transfers spent waiting on a
+ * BandwidthThrottle and the live network rate since the last progress
+ * report.
+ */
+public class TransferStats {
+
+    public static final long DEFAULT_REPORT_INTERVAL_MS = 10000;
+
+    private final String nodeId;
+    private final long startNanos = System.nanoTime();
+    private volatile long endNanos = -1;
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong failedFiles = new AtomicLong();
+    private final AtomicLong parts = new AtomicLong();
+    private final AtomicLong resumedParts = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong transferredBytes = new AtomicLong();
+    private final AtomicLong throttledNanos = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private long sampleNanos = startNanos;
+    private long sampleBytes = 0;
+
+    /**
+     * Constructs a new TransferStats and starts its clock.
+     *
+     * @param nodeId The id of the node performing the transfer.
+     */
+    public TransferStats(final String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * Records a file that was transferred successfully.
+     *
+     * @param rawBytes The size of the uncompressed file in bytes.
+     */
+    public void addFile(final long rawBytes) {
+        files.incrementAndGet();
+        bytes.addAndGet(rawBytes);
+    }
+
+    public void addFailedFile() {
+        failedFiles.incrementAndGet();
+    }
+
+    /**
+     * Records a part that was transferred.
+     *
+     * @param transferredBytes The number of bytes sent or received over the
+     *                         network for the part.
+     */
+    public void addPart(final long transferredBytes) {
+        parts.incrementAndGet();
+        addTransferredBytes(transferredBytes);
+    }
+
+    /**
+     * Records bytes sent or received over the network by a stream transfer
+     * that is not split into parts.
+     *
+     * @param transferredBytes The number of bytes sent or received.
+     */
+    public void addTransferredBytes(final long transferredBytes) {
+        this.transferredBytes.addAndGet(transferredBytes);
+    }
+
+    /**
+     * Records a part that was already transferred by an earlier attempt and
+     * was skipped.
+     */
+    public void addResumedPart() {
+        resumedParts.incrementAndGet();
+    }
+
+    /**
+     * Records time spent waiting for a BandwidthThrottle.
+     *
+     * @param nanos The time spent waiting in nanoseconds.
+     */
+    public void addThrottled(final long nanos) {
+        if (nanos > 0) {
+            throttledNanos.addAndGet(nanos);
+        }
+    }
+
+    /**
+     * Records a request that failed and will be retried.
+     */
+    public void addRetry() {
+        retries.incrementAndGet();
+    }
+
+    /**
+     * Records a duplicate request sent for a slow request.
+     */
+    public void addHedge() {
+        hedges.incrementAndGet();
+    }
+
+    /**
+     * Records a duplicate request that finished before the slow request.
+     */
+    public void addHedgeWin() {
+        hedgeWins.incrementAndGet();
+    }
+
+    /**
+     * Stops the clock. Subsequent calls have no effect.
+     */
+    public void stop() {
+        if (endNanos < 0) {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getFiles() {
+        return files.get();
+    }
+
+    public long getFailedFiles() {
+        return failedFiles.get();
+    }
+
+    public long getParts() {
+        return parts.get();
+    }
+
+    public long getResumedParts() {
+        return resumedParts.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getTransferredBytes() {
+        return transferredBytes.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getHedges() {
+        return hedges.get();
+    }
+
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * Gets the time spent throttled.
+     *
+     * @return The total time the transfer threads spent waiting for the
+     * BandwidthThrottle in milliseconds.
+     */
+    public long getThrottledMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(throttledNanos.get());
+    }
+
+    /**
+     * Gets the live network throughput and starts a new sample.
+     *
+     * @return The number of bytes sent or received over the network per
+     * second since the previous call, or since the start of the transfer.
+     */
+    public synchronized long sampleTransferredBytesPerSecond() {
+        final long now = System.nanoTime();
+        final long bytes = getTransferredBytes();
+        final long elapsed = Math.max(1,
+            TimeUnit.NANOSECONDS.toMillis(now - sampleNanos));
+        final long rate = ((bytes - sampleBytes) * 1000) / elapsed;
+        sampleNanos = now;
+        sampleBytes = bytes;
+        return rate;
+    }
+
+    /**
+     * Logs the progress of the transfer periodically until the returned
+     * Closeable is closed.
+     *
+     * @param logger     The logger the progress is written to.
+     * @param intervalMs The interval between progress reports.
+     * @return A Closeable that stops the reports.
+     */
+    public Closeable report(final Logger logger, final long intervalMs) {
+        final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("transfer-progress")
+                    .setDaemon(true).build());
+        executor.scheduleAtFixedRate(() -> logger.info(
+            "Transfer progress: node = {}, files = {}, parts = {}, " +
+                "transferred bytes = {}, live transferred bytes/s = {}, " +
+                "throttled ms = {}",
+            nodeId, getFiles(), getParts(), getTransferredBytes(),
+            sampleTransferredBytesPerSecond(), getThrottledMillis()),
+            intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        return executor::shutdownNow;
+    }
+
+    /**
+     * Gets the elapsed time.
+     *
+     * @return The elapsed time of the transfer in milliseconds, up to now if
+     * the transfer has not been stopped.
+     */
+    public long getElapsedMillis() {
+        final long end = endNanos < 0 ? System.nanoTime() : endNanos;
+        return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+    }
+
+    /**
+     * Gets the throughput.
+     *
+     * @return The number of uncompressed file bytes transferred per second.
+     */
+    public long getBytesPerSecond() {
+        final long elapsed = Math.max(1, getElapsedMillis());
+        return (getBytes() * 1000) / elapsed;
+    }
+
+    /**
+     * Gets the network throughput.
+     *
+     * @return The number of bytes sent or received over the network per
+     * second.
+     */
+    public long getTransferredBytesPerSecond() {
+        final long elapsed = Math.max(1, getElapsedMillis());
+        return (getTransferredBytes() * 1000) / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("node = %s, files = %d, failed files = %d, " +
+                "parts = %d, resumed parts = %d, bytes = %d, " +
+                "transferred bytes = %d, elapsed ms = %d, bytes/s = %d, " +
+                "transferred bytes/s = %d, throttled ms = %d, retries = %d, " +
+                "hedges = %d, hedge wins = %d",
+            nodeId, getFiles(), getFailedFiles(), getParts(),
+            getResumedParts(), getBytes(),
+            getTransferredBytes(), getElapsedMillis(), getBytesPerSecond(),
+            getTransferredBytesPerSecond(), getThrottledMillis(),
+            getRetries(), getHedges(), getHedgeWins());
+    }
+}
@@ -0,0 +1,633 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mesosphere.dcos.cassandra.executor.compress.CompressionDriver;
+import com.mesosphere.dcos.cassandra.executor.compress.CompressionPolicy;
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * UploadEngine uploads a set of files concurrently through a PartWriter.
+ * Up to concurrentFiles files are in flight at once and, for each file, up
+ * to concurrentParts parts are being encoded or uploaded at once. Each file
+ * is read by a ChunkReader, into a pooled direct chunk buffer or from a
+ * mapping of the file, and encoded by a PartEncoder into pooled direct part
+ * buffers, so memory use is bounded independently of the number
+ * of files uploaded and file data is never copied through the heap. The
+ * buffers are reserved from a SharedBufferPool for each upload, so
+ * concurrent transfers of the executor share one bound. The
+ * codec of each file is selected by a CompressionPolicy, and when the
+ * engine has a BackupCipher, each frame is encrypted in the part buffer as
+ * it is compressed. Each part is retried and hedged on its own by a
+ * RequestRunner, and a file whose part still fails is retried from its
+ * completed parts.
+ */
+public class UploadEngine {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        UploadEngine.class);
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * A local file and the key it will be stored under.
+     */
+    public static class FileUpload {
+        private final File file;
+        private final String key;
+        private volatile PartIndex index = null;
+
+        public FileUpload(final File file, final String key) {
+            this.file = file;
+            this.key = key;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return True if the file was uploaded successfully.
+         */
+        public boolean isUploaded() {
+            return index != null;
+        }
+
+        /**
+         * @return The PartIndex of the stored object, or null if the file
+         * has not been uploaded.
+         */
+        public PartIndex getIndex() {
+            return index;
+        }
+
+        /**
+         * @return The size of the stored object in bytes, or -1 if the file
+         * has not been uploaded.
+         */
+        public long getObjectSize() {
+            return (index == null) ? -1 : index.getObjectSize();
+        }
+    }
+
+    private final PartWriter writer;
+    private final int concurrentFiles;
+    private final int concurrentParts;
+    private final int partSize;
+    private final int maxAttempts;
+    private final CompressionPolicy compression;
+    private final BandwidthThrottle throttle;
+    private final PartEncoder encoder;
+    private final ChunkReader.Mode readMode;
+    private final RetryPolicy retryPolicy;
+    private final SharedBufferPool bufferPool;
+
+    private UploadEngine(final Builder builder) {
+        this.writer = builder.writer;
+        this.concurrentFiles = builder.concurrentFiles;
+        this.concurrentParts = builder.concurrentParts;
+        this.partSize = builder.partSize;
+        this.maxAttempts = builder.maxAttempts;
+        this.compression = builder.compression;
+        this.throttle = builder.throttle;
+        this.encoder = new PartEncoder(builder.partSize,
+            builder.getChunkSize(), builder.cipher);
+        this.readMode = builder.readMode;
+        this.retryPolicy = builder.retryPolicy;
+        this.bufferPool = builder.bufferPool;
+    }
+
+    /**
+     * Creates a Builder for an UploadEngine that writes its parts through
+     * writer. Every other property of the engine has a default.
+     *
+     * @param writer The PartWriter used to store the parts.
+     * @return A Builder for an UploadEngine.
+     */
+    public static Builder builder(final PartWriter writer) {
+        return new Builder(writer);
+    }
+
+    /**
+     * Builder for UploadEngine.
+     */
+    public static class Builder {
+        private final PartWriter writer;
+        private int concurrentFiles = 1;
+        private int concurrentParts = 1;
+        private int partSize = DEFAULT_PART_SIZE;
+        private int chunkSize = -1;
+        private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        private CompressionPolicy compression = CompressionPolicy.parse(null);
+        private BandwidthThrottle throttle = BandwidthThrottle.UNLIMITED;
+        private ChunkReader.Mode readMode = ChunkReader.Mode.fromEnvironment();
+        private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+        private BackupCipher cipher = BackupCipher.fromEnvironment();
+        private SharedBufferPool bufferPool = SharedBufferPool.executor();
+
+        private Builder(final PartWriter writer) {
+            this.writer = writer;
+        }
+
+        /**
+         * Sets the maximum number of files uploaded at once.
+         *
+         * @param concurrentFiles The maximum number of files uploaded at
+         *                        once.
+         * @return The Builder instance.
+         */
+        public Builder setConcurrentFiles(final int concurrentFiles) {
+            this.concurrentFiles = concurrentFiles;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of parts of a single file held in memory
+         * at once.
+         *
+         * @param concurrentParts The maximum number of parts of a file held
+         *                        in memory at once.
+         * @return The Builder instance.
+         */
+        public Builder setConcurrentParts(final int concurrentParts) {
+            this.concurrentParts = concurrentParts;
+            return this;
+        }
+
+        /**
+         * Sets the minimum size of each part except the last.
+         *
+         * @param partSize The minimum size of each part in bytes.
+         * @return The Builder instance.
+         */
+        public Builder setPartSize(final int partSize) {
+            this.partSize = partSize;
+            return this;
+        }
+
+        /**
+         * Sets the size of the uncompressed chunks that are compressed into
+         * each part. By default, it is the default chunk size, or the part
+         * size if it is smaller.
+         *
+         * @param chunkSize The size of the chunks in bytes.
+         * @return The Builder instance.
+         */
+        public Builder setChunkSize(final int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of attempts to upload each file. Each
+         * attempt resumes from the parts completed by the previous one.
+         *
+         * @param maxAttempts The maximum number of attempts.
+         * @return The Builder instance.
+         */
+        public Builder setMaxAttempts(final int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Sets the policy that selects the codec of each file.
+         *
+         * @param compression The compression policy.
+         * @return The Builder instance.
+         */
+        public Builder setCompression(final CompressionPolicy compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * Sets the throttle that limits the rate at which parts are
+         * written. By default, uploads are not throttled.
+         *
+         * @param throttle The bandwidth throttle.
+         * @return The Builder instance.
+         */
+        public Builder setThrottle(final BandwidthThrottle throttle) {
+            this.throttle = throttle;
+            return this;
+        }
+
+        /**
+         * Sets the way files are read. By default, it is the read mode of
+         * the executor.
+         *
+         * @param readMode The read mode.
+         * @return The Builder instance.
+         */
+        public Builder setReadMode(final ChunkReader.Mode readMode) {
+            this.readMode = readMode;
+            return this;
+        }
+
+        /**
+         * Sets the policy that retries and hedges the request of each part.
+         *
+         * @param retryPolicy The retry policy.
+         * @return The Builder instance.
+         */
+        public Builder setRetryPolicy(final RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the cipher that encrypts the files. By default, it is the
+         * key of the executor, if it has one, see
+         * {@link BackupCipher#fromEnvironment()}.
+         *
+         * @param cipher The cipher, or null if the files are stored
+         *               unencrypted.
+         * @return The Builder instance.
+         */
+        public Builder setCipher(final BackupCipher cipher) {
+            this.cipher = cipher;
+            return this;
+        }
+
+        /**
+         * Sets the pool the buffers of each upload are reserved from. By
+         * default, it is the pool of the executor.
+         *
+         * @param bufferPool The shared buffer pool.
+         * @return The Builder instance.
+         */
+        public Builder setBufferPool(final SharedBufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+            return this;
+        }
+
+        private int getChunkSize() {
+            return (chunkSize > 0) ? chunkSize :
+                Math.min(partSize, PartEncoder.DEFAULT_CHUNK_SIZE);
+        }
+
+        /**
+         * Creates an UploadEngine with the properties of the Builder.
+         *
+         * @return An UploadEngine.
+         */
+        public UploadEngine build() {
+            return new UploadEngine(this);
+        }
+    }
+
+    /**
+     * Uploads files. Files that fail to upload are logged and skipped, and
+     * files that are uploaded successfully are deleted.
+     *
+     * @param nodeId  The id of the node, used to report throughput.
+     * @param uploads The files to upload.
+     * @return The statistics of the transfer.
+     * @throws IOException If the upload is interrupted.
+     */
+    public TransferStats upload(final String nodeId,
+                                final List<FileUpload> uploads)
+        throws IOException {
+        return upload(nodeId, uploads, upload -> {
+        });
+    }
+
+    /**
+     * Uploads files. Files that fail to upload are logged and skipped, and
+     * files that are uploaded successfully are deleted.
+     *
+     * @param nodeId     The id of the node, used to report throughput.
+     * @param uploads    The files to upload.
+     * @param onUploaded Called from the upload threads after each file is
+     *                   uploaded and before it is deleted.
+     * @return The statistics of the transfer.
+     * @throws IOException If the upload is interrupted.
+     */
+    public TransferStats upload(final String nodeId,
+                                final List<FileUpload> uploads,
+                                final Consumer<FileUpload> onUploaded)
+        throws IOException {
+        final TransferStats stats = new TransferStats(nodeId);
+        final SharedBufferPool.Reservation buffers;
+        try {
+            buffers = bufferPool.reserve(concurrentFiles,
+                encoder.getChunkSize(), concurrentFiles * concurrentParts,
+                PartEncoder.partBufferSize(partSize, encoder.getChunkSize()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload interrupted");
+        }
+        final BufferPool chunkPool = buffers.getChunkPool();
+        final BufferPool partPool = buffers.getPartPool();
+        final ExecutorService fileExecutor = Executors.newFixedThreadPool(
+            concurrentFiles,
+            new ThreadFactoryBuilder().setNameFormat("upload-file-%d")
+                .setDaemon(true).build());
+        final ExecutorService partExecutor = Executors.newFixedThreadPool(
+            concurrentFiles * concurrentParts,
+            new ThreadFactoryBuilder().setNameFormat("upload-part-%d")
+                .setDaemon(true).build());
+        final RequestRunner requests = new RequestRunner(retryPolicy, stats);
+        LOGGER.info("Uploading {} files: concurrent files = {}, " +
+                "concurrent parts = {}, part size = {}, bandwidth = {}, " +
+                "retries = {}, encryption = {}", uploads.size(),
+            concurrentFiles, concurrentParts, partSize, throttle,
+            retryPolicy, (encoder.getCipher() == null) ? "none" :
+                encoder.getCipher());
+        final Closeable progress = stats.report(LOGGER,
+            TransferStats.DEFAULT_REPORT_INTERVAL_MS);
+        try {
+            final List<Future<?>> futures = new ArrayList<>(uploads.size());
+            for (FileUpload upload : uploads) {
+                futures.add(fileExecutor.submit(() -> uploadFile(upload,
+                    chunkPool, partPool, partExecutor, requests, stats,
+                    onUploaded)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Upload failed", e.getCause());
+        } finally {
+            fileExecutor.shutdownNow();
+            partExecutor.shutdownNow();
+            requests.close();
+            buffers.close();
+            progress.close();
+            stats.stop();
+        }
+        LOGGER.info("Upload throughput: {}", stats);
+        return stats;
+    }
+
+    private void uploadFile(final FileUpload upload,
+                            final BufferPool chunkPool,
+                            final BufferPool partPool,
+                            final ExecutorService partExecutor,
+                            final RequestRunner requests,
+                            final TransferStats stats,
+                            final Consumer<FileUpload> onUploaded) {
+        final File file = upload.getFile();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                upload.index = uploadParts(upload, chunkPool, partPool,
+                    partExecutor, requests, stats);
+                stats.addFile(upload.index.getRawSize());
+                onUploaded.accept(upload);
+
+                LOGGER.debug("Successfully uploaded the file. Deleting the " +
+                    "file now: {}", file.getAbsolutePath());
+                final boolean delete = file.delete();
+                LOGGER.debug("Deletion status: {} for file {}",
+                    delete, file.getAbsolutePath());
+                return;
+            } catch (Throwable t) {
+                if (attempt >= maxAttempts ||
+                    Thread.currentThread().isInterrupted()) {
+                    // The incomplete upload is kept, so the next backup
+                    // attempt resumes from its completed parts.
+                    LOGGER.error(String.format("Error uploading file: %s",
+                        file.getAbsolutePath()), t);
+                    stats.addFailedFile();
+                    return;
+                }
+                LOGGER.warn(String.format("Error uploading file: %s, " +
+                    "resuming: attempt = %d", file.getAbsolutePath(),
+                    attempt + 1), t);
+            }
+        }
+    }
+
+    private PartIndex uploadParts(final FileUpload upload,
+                                  final BufferPool chunkPool,
+                                  final BufferPool partPool,
+                                  final ExecutorService partExecutor,
+                                  final RequestRunner requests,
+                                  final TransferStats stats)
+        throws IOException {
+        final File file = upload.getFile();
+        final String key = upload.getKey();
+        final Optional<String> incomplete = writer.findUpload(key);
+        final String uploadId = incomplete.isPresent() ?
+            incomplete.get() : writer.initiate(key);
+        final Map<Integer, String> completed = incomplete.isPresent() ?
+            writer.listParts(key, uploadId) :
+            Collections.<Integer, String>emptyMap();
+        LOGGER.info("{} upload for file: {} | key: {} | uploadId: {} | " +
+                "completed parts: {}",
+            incomplete.isPresent() ? "Resuming" : "Initiating",
+            file.getAbsolutePath(), key, uploadId, completed.size());
+
+        final CompressionDriver codec = compression.select(file);
+        LOGGER.debug("Compressing file: {} | codec: {}",
+            file.getAbsolutePath(), codec.getName());
+        final PartUploader parts = new PartUploader(key, uploadId,
+            completed, partPool, partExecutor, requests, stats);
+        try {
+            final PartIndex index;
+            // A mapped file is compressed straight from its mapping.
+            final ByteBuffer chunk = (readMode == ChunkReader.Mode.MAPPED) ?
+                null : acquire(chunkPool);
+            try (ChunkReader reader = ChunkReader.open(file, readMode, chunk,
+                encoder.getChunkSize())) {
+                index = encoder.forObject(key).encode(reader, codec, parts);
+            } finally {
+                chunkPool.release(chunk);
+            }
+            writer.complete(key, uploadId, parts.getTags(), index);
+            return index;
+        } catch (Throwable t) {
+            parts.cancel();
+            throw t;
+        }
+    }
+
+    private static ByteBuffer acquire(final BufferPool pool)
+        throws IOException {
+        try {
+            return pool.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload interrupted");
+        }
+    }
+
+    /**
+     * PartHandler that submits each encoded part to the part executor.
+     * At most concurrentParts parts of the file are being encoded or
+     * uploaded at once.
+     */
+    private class PartUploader implements PartEncoder.PartHandler {
+        private final String key;
+        private final String uploadId;
+        private final Map<Integer, String> completed;
+        private final BufferPool pool;
+        private final ExecutorService partExecutor;
+        private final RequestRunner requests;
+        private final TransferStats stats;
+        private final Semaphore inFlight = new Semaphore(concurrentParts);
+        private final List<Future<String>> futures = new ArrayList<>();
+        private volatile Throwable failure = null;
+
+        PartUploader(final String key,
+                     final String uploadId,
+                     final Map<Integer, String> completed,
+                     final BufferPool pool,
+                     final ExecutorService partExecutor,
+                     final RequestRunner requests,
+                     final TransferStats stats) {
+            this.key = key;
+            this.uploadId = uploadId;
+            this.completed = completed;
+            this.pool = pool;
+            this.partExecutor = partExecutor;
+            this.requests = requests;
+            this.stats = stats;
+        }
+
+        @Override
+        public ByteBuffer acquire() throws IOException {
+            if (failure != null) {
+                throw new IOException("Failed to upload part", failure);
+            }
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Upload interrupted");
+            }
+            try {
+                return UploadEngine.acquire(pool);
+            } catch (IOException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public void release(final ByteBuffer buffer) {
+            // The buffer of a last part with an oversized index was not
+            // acquired, and its pooled buffer was released already.
+            if (pool.release(buffer)) {
+                inFlight.release();
+            }
+        }
+
+        @Override
+        public void accept(final int partNumber,
+                           final ByteBuffer part,
+                           final byte[] md5) {
+            // The encoding is deterministic, so a completed part with the
+            // same digest does not need to be uploaded again.
+            final String completedTag = completed.get(partNumber);
+            if (completedTag != null && completedTag.equalsIgnoreCase(
+                new String(Hex.encodeHex(md5)))) {
+                release(part);
+                stats.addResumedPart();
+                futures.add(CompletableFuture.completedFuture(completedTag));
+                return;
+            }
+            futures.add(partExecutor.submit(() -> {
+                try {
+                    if (failure != null) {
+                        release(part);
+                        throw new IOException("Upload aborted", failure);
+                    }
+                    final int length = part.remaining();
+                    // Writing a part again with the same number replaces
+                    // it, so a part can be retried and hedged. The buffer
+                    // is released once no request is reading it.
+                    final String tag = requests.executeHedged(
+                        String.format("upload part: key = %s, part = %d",
+                            key, partNumber),
+                        hedge -> {
+                            stats.addThrottled(throttle.acquire(length));
+                            LOGGER.debug("Uploading part: {} | key: {} | " +
+                                "uploadId: {}", partNumber, key, uploadId);
+                            return writer.writePart(key, uploadId,
+                                partNumber, part, md5);
+                        },
+                        () -> release(part));
+                    stats.addPart(length);
+                    return tag;
+                } catch (Throwable t) {
+                    if (failure == null) {
+                        failure = t;
+                    }
+                    throw t;
+                }
+            }));
+        }
+
+        List<String> getTags() throws IOException {
+            final List<String> tags = new ArrayList<>(futures.size());
+            try {
+                for (Future<String> future : futures) {
+                    tags.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Upload interrupted");
+            } catch (ExecutionException e) {
+                throw new IOException("Failed to upload part", e.getCause());
+            }
+            return tags;
+        }
+
+        void cancel() {
+            if (failure == null) {
+                failure = new IOException("Upload cancelled");
+            }
+            // Parts that have not started fail fast, and every part
+            // returns its buffer to the pool once its requests finish.
+            for (Future<String> future : futures) {
+                try {
+                    future.get();
+                } catch (Throwable ignored) {
+                }
+            }
+        }
+    }
+}
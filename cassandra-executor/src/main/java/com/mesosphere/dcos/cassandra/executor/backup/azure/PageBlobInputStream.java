@@ -49,6 +49,21 @@ public class PageBlobInputStream extends FilterInputStream {
     setOriginalNonPageAlignedStreamSize();
   }
 
+  /**
+   * Creates a stream for a blob whose original size is already known, e.g.
+   * from the metadata returned by a listing, without downloading its
+   * attributes again.
+   *
+   * @param pageBlob     The Azure blob reference.
+   * @param originalSize The original non page aligned size of the content.
+   */
+  public PageBlobInputStream(CloudBlob pageBlob, long originalSize) throws StorageException {
+    super(pageBlob.openInputStream());
+    this.pageBlob = pageBlob;
+    this.totalsize = originalSize;
+    this.sizeRemaining = originalSize;
+  }
+
   /**
    * Sets up the original non page aligned size of the file from the PageBlob
    * from the meta-data.
@@ -18,6 +18,12 @@ import java.util.HashMap;
  * the default super doing byte by byte copies, hense the override.
  * It is designed to work in combination of PageBlobInputStream
  * but it isn't required as long as the "originalSize" metadata is saved.
+ * Metadata set on the blob reference before the stream is closed is kept.
+ * <p>
+ * Every resize is a round trip to Azure, so the blob should be created with
+ * an estimate of its final size.  When the estimate is exceeded the blob
+ * grows geometrically, and when the stream is closed it is shrunk to the
+ * page that holds the last byte written.
  */
 public class PageBlobOutputStream extends FilterOutputStream {
 
@@ -46,11 +52,18 @@ public class PageBlobOutputStream extends FilterOutputStream {
     this(pageBlob, PAGE_BLOB_PAGE_SIZE);
   }
 
+  /**
+   * Creates an output stream for a blob of an estimated size.
+   *
+   * @param pageBlob        The Azure blob reference.
+   * @param initialPageSize The estimated size of the content in bytes.  The
+   *                        blob is created with this size rounded up to a
+   *                        page.
+   */
   public PageBlobOutputStream(CloudPageBlob pageBlob, long initialPageSize) throws StorageException {
-    // to set the size we need to calc but that can't be the first line when we need to construct the super:(
-    super(pageBlob.openWriteNew(initialPageSize));
+    super(pageBlob.openWriteNew(roundToPageBlobSize(Math.max(initialPageSize, PAGE_BLOB_PAGE_SIZE))));
     this.pageBlob = pageBlob;
-    resize(initialPageSize);
+    this.currentPageSize = roundToPageBlobSize(Math.max(initialPageSize, PAGE_BLOB_PAGE_SIZE));
   }
 
   @Override
@@ -68,14 +81,25 @@ public class PageBlobOutputStream extends FilterOutputStream {
 
     this.checkStreamState();
 
-    // top off page size
+    // top off the last page
     // flush write does NOT occur unless full page is written
-    if (count < currentPageSize) {
-      byte[] pad = new byte[(int) (currentPageSize - count)];
+    final long usedPageSize = roundToPageBlobSize(Math.max(count, 1));
+    if (count < usedPageSize) {
+      byte[] pad = new byte[(int) (usedPageSize - count)];
       writePad(pad);
     }
     super.close();
 
+    // drop the pages reserved beyond the content
+    if (usedPageSize < currentPageSize) {
+      try {
+        pageBlob.resize(usedPageSize);
+        currentPageSize = usedPageSize;
+      } catch (StorageException e) {
+        throw new AzureIOException("Unable to shrink blob.", e);
+      }
+    }
+
     uploadMetadata();
   }
 
@@ -114,7 +138,10 @@ public class PageBlobOutputStream extends FilterOutputStream {
   }
 
   private HashMap<String, String> fileMetaData(long count) {
-    HashMap<String, String> metadata = new HashMap<>(1);
+    HashMap<String, String> metadata = new HashMap<>();
+    if (pageBlob.getMetadata() != null) {
+      metadata.putAll(pageBlob.getMetadata());
+    }
     metadata.put(ORIGINAL_SIZE_KEY, count + "");
     return metadata;
   }
@@ -127,7 +154,7 @@ public class PageBlobOutputStream extends FilterOutputStream {
 
   private void ensureCapacity(long minCapacity) {
     if (minCapacity > currentPageSize) {
-      resize(minCapacity);
+      resize(Math.max(minCapacity, currentPageSize * 2));
     }
   }
 
@@ -18,27 +18,88 @@ package com.mesosphere.dcos.cassandra.executor.compress;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
- * CompressionDriver is the interface to all Compression implementations that
- * compress and decompress snapshots during a Cassandra backup.
+ * CompressionDriver is the interface to all codecs that compress and
+ * decompress snapshot files during a Cassandra backup and restore. A codec
+ * compresses independent blocks between direct buffers, which is used by
+ * the part based S3 engines, and wraps streams, which is used by drivers
+ * that upload a file as a single stream. The id of the codec is stored with
+ * every object so that a restore can select the codec that wrote it.
  */
 public interface CompressionDriver {
+
+    /**
+     * Gets the id of the codec that is stored with backup objects.
+     *
+     * @return The id of the codec. Ids are never reused.
+     */
+    short getId();
+
+    /**
+     * Gets the name of the codec.
+     *
+     * @return The name used to configure the codec, e.g. "lz4".
+     */
+    String getName();
+
     /**
-     * Compresses the file/directory denoted by {@code sourcePath}, and produces an archive at {@code destinationPath}.
+     * Gets the maximum compressed length of a block.
      *
-     * @param sourcePath      Source path to compress.
-     * @param destinationPath Destination path.
+     * @param length The length of the uncompressed block.
+     * @return The maximum length of the compressed block.
      */
-    void compress(String sourcePath, String destinationPath) throws IOException;
+    int maxCompressedLength(int length);
 
     /**
-     * Decompresses the file/directory from source and stores it at destination.
-     * @param source The InputStream containing the source data to compress.
-     * @param destination The OutputStream containing the destination to
-     *                    write the decompressed output.
-     * @throws IOException If decompression fails.
+     * Compresses a block.
+     *
+     * @param source      A direct buffer containing the block between its
+     *                    position and limit. Its position is set to its limit.
+     * @param destination A direct buffer with at least
+     *                    maxCompressedLength(source.remaining()) bytes
+     *                    remaining. The compressed block is written at its
+     *                    position, which is advanced past it.
+     * @return The length of the compressed block.
+     * @throws IOException If the block can not be compressed.
      */
-    void decompress(InputStream source, OutputStream destination)
+    int compress(ByteBuffer source, ByteBuffer destination)
             throws IOException;
+
+    /**
+     * Decompresses a block.
+     *
+     * @param source      A direct buffer containing the compressed block
+     *                    between its position and limit. Its position is set
+     *                    to its limit.
+     * @param destination A direct buffer with at least rawLength bytes
+     *                    remaining. The block is written at its position,
+     *                    which is advanced past it.
+     * @param rawLength   The length of the uncompressed block.
+     * @throws IOException If the block is corrupt.
+     */
+    void decompress(ByteBuffer source, ByteBuffer destination, int rawLength)
+            throws IOException;
+
+    /**
+     * Wraps a stream so that the data written to it is compressed.
+     *
+     * @param destination The stream the compressed data is written to. It
+     *                    is closed when the returned stream is closed.
+     * @return A stream that compresses data written to it.
+     * @throws IOException If the stream can not be created.
+     */
+    OutputStream compress(OutputStream destination) throws IOException;
+
+    /**
+     * Wraps a stream of compressed data so that it can be read
+     * uncompressed.
+     *
+     * @param source The stream of compressed data. It is closed when the
+     *               returned stream is closed.
+     * @return A stream of the uncompressed data.
+     * @throws IOException If the stream can not be created.
+     */
+    InputStream decompress(InputStream source) throws IOException;
 }
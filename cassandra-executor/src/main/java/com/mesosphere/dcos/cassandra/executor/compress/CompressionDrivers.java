@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.compress;
+
+import java.io.IOException;
+
+/**
+ * CompressionDrivers creates the CompressionDriver for a codec from its
+ * configured name or from the id stored with a backup object.
+ */
+public class CompressionDrivers {
+
+    private static final CompressionDriver[] DRIVERS = {
+            new NoCompressionDriver(),
+            new SnappyCompressionDriver(),
+            new LZ4CompressionDriver(),
+            new ZstdCompressionDriver()
+    };
+
+    private CompressionDrivers() {
+    }
+
+    /**
+     * Gets the driver that decompresses objects written with a codec.
+     *
+     * @param id The id of the codec stored with the object.
+     * @return The CompressionDriver of the codec.
+     * @throws IOException If the codec is unknown.
+     */
+    public static CompressionDriver forId(final short id) throws IOException {
+        for (CompressionDriver driver : DRIVERS) {
+            if (driver.getId() == id) {
+                return driver;
+            }
+        }
+        throw new IOException("Unknown compression codec: " + id);
+    }
+
+    /**
+     * Gets the name of a codec.
+     *
+     * @param id The id of the codec stored with an object.
+     * @return The name of the codec.
+     */
+    public static String name(final short id) {
+        for (CompressionDriver driver : DRIVERS) {
+            if (driver.getId() == id) {
+                return driver.getName();
+            }
+        }
+        return "unknown-" + id;
+    }
+
+    /**
+     * Creates the driver for a codec.
+     *
+     * @param codec The name of the codec, optionally followed by a level,
+     *              e.g. "lz4" or "zstd:6".
+     * @return The CompressionDriver of the codec.
+     * @throws IllegalArgumentException If the codec or level is invalid.
+     */
+    public static CompressionDriver create(final String codec) {
+        final String[] parts = codec.trim().toLowerCase().split(":", 2);
+        if (parts[0].equals(ZstdCompressionDriver.NAME)) {
+            return (parts.length == 1) ? new ZstdCompressionDriver() :
+                    new ZstdCompressionDriver(parseLevel(parts[1]));
+        }
+        if (parts.length == 1) {
+            for (CompressionDriver driver : DRIVERS) {
+                if (driver.getName().equals(parts[0])) {
+                    return driver;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Invalid compression: " + codec);
+    }
+
+    /**
+     * Gets the largest compressed length of a block for any codec.
+     *
+     * @param length The length of the uncompressed block.
+     * @return The space required to compress the block with any codec.
+     */
+    public static int maxCompressedLength(final int length) {
+        int max = length;
+        for (CompressionDriver driver : DRIVERS) {
+            max = Math.max(max, driver.maxCompressedLength(length));
+        }
+        return max;
+    }
+
+    private static int parseLevel(final String level) {
+        try {
+            return Integer.parseInt(level);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    "Invalid compression level: " + level, e);
+        }
+    }
+}
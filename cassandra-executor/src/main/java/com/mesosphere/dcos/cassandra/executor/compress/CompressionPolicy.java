@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.compress;
+
+import java.io.File;
+
+/**
+ * CompressionPolicy selects the codec used to compress each file of a
+ * backup. The policy is configured by the compression of the backup, which
+ * is the name of a codec, e.g. "lz4" or "zstd:6", optionally prefixed by
+ * "adaptive:". An adaptive policy stores the data files of tables that use
+ * Cassandra's table compression as they are, since compressing them again
+ * costs CPU for almost no reduction in size.
+ */
+public class CompressionPolicy {
+
+    public static final String ADAPTIVE_PREFIX = "adaptive:";
+    public static final String DEFAULT = ADAPTIVE_PREFIX +
+            LZ4CompressionDriver.NAME;
+
+    private static final String DATA_SUFFIX = "-Data.db";
+    private static final String COMPRESSION_INFO_SUFFIX =
+            "-CompressionInfo.db";
+    private static final CompressionDriver NONE = new NoCompressionDriver();
+
+    /**
+     * Parses a compression policy.
+     *
+     * @param compression The compression of a backup or null for DEFAULT.
+     * @return The CompressionPolicy.
+     * @throws IllegalArgumentException If the compression is invalid.
+     */
+    public static CompressionPolicy parse(final String compression) {
+        final String policy = (compression == null ||
+                compression.trim().isEmpty()) ? DEFAULT :
+                compression.trim().toLowerCase();
+        if (policy.startsWith(ADAPTIVE_PREFIX)) {
+            return new CompressionPolicy(CompressionDrivers.create(
+                    policy.substring(ADAPTIVE_PREFIX.length())), true);
+        }
+        return new CompressionPolicy(CompressionDrivers.create(policy),
+                false);
+    }
+
+    /**
+     * Determines if a file is the data file of an SSTable that is already
+     * compressed. Compressed SSTables have a CompressionInfo component.
+     *
+     * @param file A file of an SSTable.
+     * @return True if file is the data file of a compressed SSTable.
+     */
+    public static boolean isCompressedData(final File file) {
+        final String name = file.getName();
+        if (!name.endsWith(DATA_SUFFIX)) {
+            return false;
+        }
+        final String prefix = name.substring(0,
+                name.length() - DATA_SUFFIX.length());
+        return new File(file.getParentFile(),
+                prefix + COMPRESSION_INFO_SUFFIX).isFile();
+    }
+
+    private final CompressionDriver driver;
+    private final boolean adaptive;
+
+    public CompressionPolicy(final CompressionDriver driver,
+                             final boolean adaptive) {
+        this.driver = driver;
+        this.adaptive = adaptive;
+    }
+
+    public CompressionDriver getDriver() {
+        return driver;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Selects the codec for a file.
+     *
+     * @param file The file to compress.
+     * @return The CompressionDriver used to compress file.
+     */
+    public CompressionDriver select(final File file) {
+        return (adaptive && isCompressedData(file)) ? NONE : driver;
+    }
+
+    @Override
+    public String toString() {
+        return (adaptive ? ADAPTIVE_PREFIX : "") + driver.getName();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.compress;
+
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * LZ4CompressionDriver implements CompressionDriver with the fast LZ4
+ * compressor, which compresses several times faster than Snappy at a
+ * similar ratio. It uses the LZ4 library that Cassandra uses for table
+ * compression.
+ */
+public class LZ4CompressionDriver implements CompressionDriver {
+
+    public static final short ID = 2;
+    public static final String NAME = "lz4";
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    private static final LZ4Factory FACTORY = LZ4Factory.fastestInstance();
+
+    private final LZ4Compressor compressor = FACTORY.fastCompressor();
+    private final LZ4SafeDecompressor decompressor =
+            FACTORY.safeDecompressor();
+
+    @Override
+    public short getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return compressor.maxCompressedLength(length);
+    }
+
+    @Override
+    public int compress(final ByteBuffer source, final ByteBuffer destination)
+            throws IOException {
+        try {
+            final int length = compressor.compress(source, source.position(),
+                    source.remaining(), destination, destination.position(),
+                    destination.remaining());
+            source.position(source.limit());
+            destination.position(destination.position() + length);
+            return length;
+        } catch (LZ4Exception e) {
+            throw new IOException("LZ4 compression failed", e);
+        }
+    }
+
+    @Override
+    public void decompress(final ByteBuffer source,
+                           final ByteBuffer destination,
+                           final int rawLength) throws IOException {
+        try {
+            final int length = decompressor.decompress(source,
+                    source.position(), source.remaining(), destination,
+                    destination.position(), rawLength);
+            if (length != rawLength) {
+                throw new IOException("Corrupt LZ4 block");
+            }
+            source.position(source.limit());
+            destination.position(destination.position() + length);
+        } catch (LZ4Exception e) {
+            throw new IOException("Corrupt LZ4 block", e);
+        }
+    }
+
+    @Override
+    public OutputStream compress(final OutputStream destination)
+            throws IOException {
+        return new LZ4BlockOutputStream(destination, DEFAULT_BLOCK_SIZE,
+                compressor);
+    }
+
+    @Override
+    public InputStream decompress(final InputStream source)
+            throws IOException {
+        return new LZ4BlockInputStream(source, FACTORY.fastDecompressor());
+    }
+}
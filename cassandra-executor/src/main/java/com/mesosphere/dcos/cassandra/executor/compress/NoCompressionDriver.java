@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * NoCompressionDriver implements CompressionDriver by storing data as is.
+ * It is used for files that are already compressed, such as the data files
+ * of tables with compression enabled.
+ */
+public class NoCompressionDriver implements CompressionDriver {
+
+    public static final short ID = 0;
+    public static final String NAME = "none";
+
+    @Override
+    public short getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return length;
+    }
+
+    @Override
+    public int compress(final ByteBuffer source, final ByteBuffer destination)
+            throws IOException {
+        final int length = source.remaining();
+        destination.put(source);
+        return length;
+    }
+
+    @Override
+    public void decompress(final ByteBuffer source,
+                           final ByteBuffer destination,
+                           final int rawLength) throws IOException {
+        if (source.remaining() != rawLength) {
+            throw new IOException("Corrupt uncompressed block");
+        }
+        destination.put(source);
+    }
+
+    @Override
+    public OutputStream compress(final OutputStream destination)
+            throws IOException {
+        return destination;
+    }
+
+    @Override
+    public InputStream decompress(final InputStream source)
+            throws IOException {
+        return source;
+    }
+}
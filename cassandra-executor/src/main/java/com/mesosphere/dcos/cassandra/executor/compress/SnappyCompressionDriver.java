@@ -15,69 +15,76 @@
  */
 package com.mesosphere.dcos.cassandra.executor.compress;
 
-import org.apache.commons.io.IOUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.xerial.snappy.Snappy;
 import org.xerial.snappy.SnappyInputStream;
 import org.xerial.snappy.SnappyOutputStream;
 
-import java.io.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * SnappyCompressionDriver implements CompressionDriver to implement Snappy
- * compression for Cassandra Backup and Restore.
+ * compression for Cassandra Backup and Restore. Snappy is the codec of
+ * backups written before codecs were configurable.
  */
 public class SnappyCompressionDriver implements CompressionDriver {
-    private static final Logger LOGGER = LoggerFactory.getLogger(
-            SnappyCompressionDriver.class);
 
-    public static final int DEFAULT_BUFFER_SIZE = 4 * 1024; // 3KB
+    public static final short ID = 1;
+    public static final String NAME = "snappy";
+    public static final int DEFAULT_BLOCK_SIZE = 32 * 1024;
 
-    public void compress(final InputStream source,
-                         final OutputStream destination) {
+    @Override
+    public short getId() {
+        return ID;
+    }
 
+    @Override
+    public String getName() {
+        return NAME;
     }
 
     @Override
-    public void compress(final String sourcePath, final String destinationPath)
+    public int maxCompressedLength(int length) {
+        return Snappy.maxCompressedLength(length);
+    }
+
+    @Override
+    public int compress(final ByteBuffer source, final ByteBuffer destination)
             throws IOException {
-        BufferedInputStream inputStream = null;
-        SnappyOutputStream compressedStream = null;
-        try {
-            inputStream = new BufferedInputStream(
-                    new FileInputStream(sourcePath));
-            compressedStream = new SnappyOutputStream(
-                    new BufferedOutputStream(
-                            new FileOutputStream(destinationPath)));
-            IOUtils.copy(inputStream, compressedStream);
-        } catch (IOException e) {
-            LOGGER.error("Failed to compress {} to {} due to: {}", sourcePath,
-                    destinationPath, e);
-        } finally {
-            IOUtils.closeQuietly(inputStream);
-            IOUtils.closeQuietly(compressedStream);
+        // Snappy leaves the positions unchanged and sets the limit of the
+        // destination to the end of the compressed block.
+        final ByteBuffer out = destination.duplicate();
+        final int length = Snappy.compress(source, out);
+        source.position(source.limit());
+        destination.position(destination.position() + length);
+        return length;
+    }
+
+    @Override
+    public void decompress(final ByteBuffer source,
+                           final ByteBuffer destination,
+                           final int rawLength) throws IOException {
+        if (Snappy.uncompressedLength(source) != rawLength ||
+                destination.remaining() < rawLength) {
+            throw new IOException("Corrupt Snappy block");
         }
+        final ByteBuffer out = destination.duplicate();
+        Snappy.uncompress(source, out);
+        source.position(source.limit());
+        destination.position(destination.position() + rawLength);
     }
 
     @Override
-    public void decompress(InputStream source, OutputStream destination)
+    public OutputStream compress(final OutputStream destination)
             throws IOException {
-        SnappyInputStream compressedInputStream = null;
-        BufferedOutputStream output = null;
-        try {
-            compressedInputStream = new SnappyInputStream(
-                    new BufferedInputStream(source));
-            output = new BufferedOutputStream(destination, DEFAULT_BUFFER_SIZE);
+        return new SnappyOutputStream(destination, DEFAULT_BLOCK_SIZE);
+    }
 
-            int bytesRead;
-            byte[] data = new byte[DEFAULT_BUFFER_SIZE];
-            while ((bytesRead = compressedInputStream.read(data, 0,
-                    DEFAULT_BUFFER_SIZE)) != -1) {
-                output.write(data, 0, bytesRead);
-            }
-        } finally {
-            IOUtils.closeQuietly(compressedInputStream);
-            IOUtils.closeQuietly(output);
-        }
+    @Override
+    public InputStream decompress(final InputStream source)
+            throws IOException {
+        return new SnappyInputStream(source);
     }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.compress;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * ZstdCompressionDriver implements CompressionDriver with Zstandard, which
+ * trades CPU for a better ratio than LZ4 or Snappy as its level increases.
+ * Blocks are compressed between direct buffers without copying them to the
+ * heap.
+ */
+public class ZstdCompressionDriver implements CompressionDriver {
+
+    public static final short ID = 3;
+    public static final String NAME = "zstd";
+    public static final int DEFAULT_LEVEL = 3;
+    public static final int MAX_LEVEL = 22;
+
+    private final int level;
+
+    /**
+     * Constructs a new ZstdCompressionDriver.
+     *
+     * @param level The compression level, between 1 and MAX_LEVEL.
+     */
+    public ZstdCompressionDriver(final int level) {
+        if (level < 1 || level > MAX_LEVEL) {
+            throw new IllegalArgumentException(
+                    "Invalid Zstandard level: " + level);
+        }
+        this.level = level;
+    }
+
+    public ZstdCompressionDriver() {
+        this(DEFAULT_LEVEL);
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public short getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return (int) Zstd.compressBound(length);
+    }
+
+    @Override
+    public int compress(final ByteBuffer source, final ByteBuffer destination)
+            throws IOException {
+        final long length = Zstd.compressDirectByteBuffer(
+                destination, destination.position(), destination.remaining(),
+                source, source.position(), source.remaining(), level);
+        if (Zstd.isError(length)) {
+            throw new IOException("Zstandard compression failed: " +
+                    Zstd.getErrorName(length));
+        }
+        source.position(source.limit());
+        destination.position(destination.position() + (int) length);
+        return (int) length;
+    }
+
+    @Override
+    public void decompress(final ByteBuffer source,
+                           final ByteBuffer destination,
+                           final int rawLength) throws IOException {
+        final long length = Zstd.decompressDirectByteBuffer(
+                destination, destination.position(), rawLength,
+                source, source.position(), source.remaining());
+        if (Zstd.isError(length) || length != rawLength) {
+            throw new IOException("Corrupt Zstandard block");
+        }
+        source.position(source.limit());
+        destination.position(destination.position() + rawLength);
+    }
+
+    @Override
+    public OutputStream compress(final OutputStream destination)
+            throws IOException {
+        return new ZstdOutputStream(destination, level);
+    }
+
+    @Override
+    public InputStream decompress(final InputStream source)
+            throws IOException {
+        return new ZstdInputStream(source);
+    }
+}
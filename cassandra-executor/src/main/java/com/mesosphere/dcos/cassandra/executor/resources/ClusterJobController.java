@@ -0,0 +1,60 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.resources;
+
+import com.codahale.metrics.annotation.Counted;
+import com.google.inject.Inject;
+import com.mesosphere.dcos.cassandra.executor.CassandraExecutor;
+import com.mesosphere.dcos.cassandra.executor.ClusterJobQueue;
+import org.apache.mesos.Executor;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import java.util.List;
+
+/**
+ * ClusterJobController implements the API for inspecting the cluster tasks
+ * that are queued or running on the node.
+ */
+@Path("/v1/jobs")
+@Produces(MediaType.APPLICATION_JSON)
+public class ClusterJobController {
+
+    private final CassandraExecutor executor;
+
+    /**
+     * Constructs a new controller.
+     * @param executor The Executor instance whose jobs are inspected.
+     */
+    @Inject
+    public ClusterJobController(Executor executor) {
+        this.executor = (CassandraExecutor) executor;
+    }
+
+    /**
+     * Gets the cluster jobs of the node.
+     * @return The running jobs, followed by the queued jobs in the order
+     * they will start.
+     */
+    @GET
+    @Counted
+    public List<ClusterJobQueue.JobStatus> getJobs() {
+
+        return executor.getClusterJobs().getJobs();
+    }
+}
@@ -16,16 +16,23 @@
 package com.mesosphere.dcos.cassandra.executor.tasks;
 
 import com.mesosphere.dcos.cassandra.common.tasks.CassandraTask;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupContext;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupSnapshotStatus;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupSnapshotTask;
 import com.mesosphere.dcos.cassandra.executor.CassandraDaemonProcess;
+import com.mesosphere.dcos.cassandra.executor.backup.SSTableFiles;
+import com.mesosphere.dcos.cassandra.executor.backup.SnapshotJanitor;
+import com.mesosphere.dcos.cassandra.executor.backup.StorageUtil;
 import org.apache.mesos.ExecutorDriver;
 import org.apache.mesos.Protos;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * Implements the execution of BackupSnapshot by executing the snapshot
@@ -38,6 +45,7 @@ public class BackupSnapshot implements Runnable {
     private CassandraDaemonProcess daemon;
     private ExecutorDriver driver;
     private BackupSnapshotTask cassandraTask;
+    private SnapshotJanitor snapshotJanitor;
 
     private void sendStatus(ExecutorDriver driver,
                             Protos.TaskState state,
@@ -47,6 +55,40 @@ public class BackupSnapshot implements Runnable {
         driver.sendStatusUpdate(status);
     }
 
+    private List<String> getKeySpaces(final BackupContext context) {
+        final List<String> nonSystemKeyspaces = daemon.getNonSystemKeySpaces();
+        if (context.getKeySpaces().isEmpty()) {
+            return nonSystemKeyspaces;
+        }
+        for (String keyspace : context.getKeySpaces()) {
+            if (!nonSystemKeyspaces.contains(keyspace)) {
+                LOGGER.warn("Selected keyspace {} is not a non system " +
+                    "keyspace of this node and will not be backed up",
+                    keyspace);
+            }
+        }
+        return nonSystemKeyspaces.stream()
+            .filter(context.getKeySpaces()::contains)
+            .collect(Collectors.toList());
+    }
+
+    private List<String> getColumnFamilies(final BackupContext context,
+                                           final String keyspace) {
+        // Only the tables of the keyspace that exist on this node can be
+        // snapshotted, so the selection is matched against its directories.
+        final File[] tables = new File(context.getLocalLocation(), keyspace)
+            .listFiles(File::isDirectory);
+        if (tables == null) {
+            return context.getColumnFamilies();
+        }
+        return Arrays.stream(tables)
+            .filter(table ->
+                StorageUtil.isSelected(context, keyspace, table.getName()))
+            .map(table -> SSTableFiles.tableName(table.getName()))
+            .distinct()
+            .collect(Collectors.toList());
+    }
+
     /**
      * Constructs a BackupSnapshot.
      * @param driver The ExecutorDriver used to send task status.
@@ -57,35 +99,69 @@ public class BackupSnapshot implements Runnable {
     public BackupSnapshot(ExecutorDriver driver,
                           CassandraDaemonProcess daemon,
                           BackupSnapshotTask cassandraTask) {
+        this(driver, daemon, cassandraTask, null);
+    }
+
+    /**
+     * Constructs a BackupSnapshot that tracks the snapshot it takes, so the
+     * snapshot is cleared if the backup never finishes.
+     * @param driver The ExecutorDriver used to send task status.
+     * @param daemon The CassandraDaemonProcess used to perform the snapshot.
+     * @param cassandraTask The CassandraTask that will be executed by the
+     *                      BackupSnapshot.
+     * @param snapshotJanitor The SnapshotJanitor of the node, or null if
+     *                        snapshots are not tracked.
+     */
+    public BackupSnapshot(ExecutorDriver driver,
+                          CassandraDaemonProcess daemon,
+                          BackupSnapshotTask cassandraTask,
+                          SnapshotJanitor snapshotJanitor) {
         this.daemon = daemon;
         this.driver = driver;
         this.cassandraTask = cassandraTask;
+        this.snapshotJanitor = snapshotJanitor;
     }
 
     @Override
     public void run() {
+        final BackupContext context = this.cassandraTask.getBackupContext();
+        if (snapshotJanitor != null) {
+            snapshotJanitor.track(context);
+        }
+        boolean success = false;
         try {
             // Send TASK_RUNNING
             sendStatus(driver, Protos.TaskState.TASK_RUNNING,
                     "Started taking snapshot");
 
-            final String snapshotName =
-                this.cassandraTask.getBackupContext() .getName();
-            final List<String> nonSystemKeyspaces = daemon
-                    .getNonSystemKeySpaces();
+            final String snapshotName = context.getName();
+            final List<String> nonSystemKeyspaces = getKeySpaces(context);
             LOGGER.info("Started taking snapshot for non system keyspaces: {}",
                     nonSystemKeyspaces);
             for (String keyspace : nonSystemKeyspaces) {
-                LOGGER.info("Taking snapshot for keyspace: {}", keyspace);
-                daemon.takeSnapShot(snapshotName, keyspace);
+                if (context.getColumnFamilies().isEmpty()) {
+                    LOGGER.info("Taking snapshot for keyspace: {}", keyspace);
+                    daemon.takeSnapShot(snapshotName, keyspace);
+                    continue;
+                }
+                for (String table : getColumnFamilies(context, keyspace)) {
+                    LOGGER.info("Taking snapshot for table: {}.{}", keyspace,
+                        table);
+                    daemon.takeSnapShot(snapshotName, keyspace, table);
+                }
             }
 
             // Send TASK_FINISHED
             sendStatus(driver, Protos.TaskState.TASK_FINISHED,
                     "Finished taking snapshot for non system keyspaces: " + nonSystemKeyspaces);
+            success = true;
         } catch (Throwable t) {
             LOGGER.error("Snapshot failed",t);
             sendStatus(driver, Protos.TaskState.TASK_FAILED, t.getMessage());
+        } finally {
+            if (snapshotJanitor != null) {
+                snapshotJanitor.done(context.getName(), success);
+            }
         }
     }
 }
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.tasks;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BulkLoader streams the SSTables of restored tables to the ring with the
+ * sstableloader binary. Tables are loaded by a bounded number of concurrent
+ * loader processes, and the bandwidth limit of the restore is divided
+ * between them with the --throttle option. The output of each process is
+ * drained while it runs, so a process never blocks on a full pipe, and its
+ * progress is logged periodically.
+ */
+public class BulkLoader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        BulkLoader.class);
+
+    // Each sstableloader is a JVM, so only a few are run at a time.
+    public static final int DEFAULT_CONCURRENCY = 2;
+    public static final long PROGRESS_INTERVAL_MS = 10000;
+    private static final int OUTPUT_TAIL_LINES = 20;
+
+    /**
+     * A restored table and the directory that holds its SSTables.
+     */
+    public static class Table {
+        private final String keyspace;
+        private final String name;
+        private final File directory;
+
+        public Table(final String keyspace,
+                     final String name,
+                     final File directory) {
+            this.keyspace = keyspace;
+            this.name = name;
+            this.directory = directory;
+        }
+
+        public String getKeyspace() {
+            return keyspace;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public File getDirectory() {
+            return directory;
+        }
+
+        @Override
+        public String toString() {
+            return keyspace + "." + name;
+        }
+    }
+
+    /**
+     * The outcome of loading a table.
+     */
+    public static class Result {
+        private final Table table;
+        private final int exitCode;
+        private final String output;
+
+        public Result(final Table table,
+                      final int exitCode,
+                      final String output) {
+            this.table = table;
+            this.exitCode = exitCode;
+            this.output = output;
+        }
+
+        public Table getTable() {
+            return table;
+        }
+
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        /**
+         * @return The last lines of the output of the loader.
+         */
+        public String getOutput() {
+            return output;
+        }
+
+        public boolean isSuccess() {
+            return exitCode == 0;
+        }
+    }
+
+    /**
+     * Gets the throttle of each loader process.
+     *
+     * @param bandwidthLimitMb The bandwidth limit of the restore in MB/s, or
+     *                         0 if it is not limited.
+     * @param concurrency      The number of concurrent loader processes.
+     * @return The --throttle value of each process in Mbit/s, or 0 if the
+     * processes are not throttled.
+     */
+    public static int throttleMbits(final int bandwidthLimitMb,
+                                    final int concurrency) {
+        return (bandwidthLimitMb <= 0) ? 0 :
+            Math.max(1, (bandwidthLimitMb * 8) / concurrency);
+    }
+
+    private final String binary;
+    private final String cassandraYaml;
+    private final String host;
+    private final int concurrency;
+    private final int throttleMbits;
+    private final Set<Process> running = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructs a new BulkLoader.
+     *
+     * @param binary        The path of the sstableloader binary.
+     * @param cassandraYaml The path of the Cassandra configuration.
+     * @param host          The address of the node the loader connects to.
+     * @param concurrency   The maximum number of concurrent loader
+     *                      processes.
+     * @param throttleMbits The throttle of each loader process in Mbit/s,
+     *                      or 0 if the processes are not throttled.
+     */
+    public BulkLoader(final String binary,
+                      final String cassandraYaml,
+                      final String host,
+                      final int concurrency,
+                      final int throttleMbits) {
+        this.binary = binary;
+        this.cassandraYaml = cassandraYaml;
+        this.host = host;
+        this.concurrency = concurrency;
+        this.throttleMbits = throttleMbits;
+    }
+
+    /**
+     * Gets the command that loads a table.
+     *
+     * @param table The table to load.
+     * @return The sstableloader command line.
+     */
+    List<String> command(final Table table) {
+        final List<String> command = new ArrayList<>(Arrays.asList(
+            binary, "-d", host, "-f", cassandraYaml));
+        if (throttleMbits > 0) {
+            command.add("--throttle");
+            command.add(Integer.toString(throttleMbits));
+        }
+        command.add(table.getDirectory().getAbsolutePath());
+        return command;
+    }
+
+    /**
+     * Loads tables. A table that fails to load does not stop the others.
+     *
+     * @param tables The tables to load.
+     * @return The result of each table, in the order of tables.
+     * @throws InterruptedException If loading is interrupted. Running loader
+     *                              processes are destroyed.
+     */
+    public List<Result> load(final List<Table> tables)
+        throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(
+            concurrency,
+            new ThreadFactoryBuilder().setNameFormat("sstableloader-%d")
+                .setDaemon(true).build());
+        final AtomicInteger completed = new AtomicInteger();
+        LOGGER.info("Loading {} tables: concurrency = {}, throttle = {} " +
+            "Mbit/s", tables.size(), concurrency, throttleMbits);
+        try {
+            final List<Future<Result>> futures = new ArrayList<>(
+                tables.size());
+            for (Table table : tables) {
+                futures.add(executor.submit(() -> {
+                    final Result result = load(table);
+                    LOGGER.info("Loaded table {} ({}/{}): exit code = {}",
+                        table, completed.incrementAndGet(), tables.size(),
+                        result.getExitCode());
+                    return result;
+                }));
+            }
+            final List<Result> results = new ArrayList<>(tables.size());
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Loader thread failed",
+                e.getCause());
+        } finally {
+            executor.shutdownNow();
+            for (Process process : running) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private Result load(final Table table) {
+        final List<String> command = command(table);
+        LOGGER.info("Executing command: {}", command);
+        final Deque<String> tail = new ArrayDeque<>(OUTPUT_TAIL_LINES);
+        Process process = null;
+        try {
+            process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .start();
+            running.add(process);
+            long lastProgress = 0;
+            try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(),
+                    StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (tail.size() == OUTPUT_TAIL_LINES) {
+                        tail.removeFirst();
+                    }
+                    tail.addLast(line);
+                    if (!line.contains("progress:")) {
+                        LOGGER.info("{}: {}", table, line);
+                    } else if (System.currentTimeMillis() - lastProgress >=
+                        PROGRESS_INTERVAL_MS) {
+                        lastProgress = System.currentTimeMillis();
+                        LOGGER.info("Loading table {}: {}", table,
+                            line.trim());
+                    }
+                }
+            }
+            return new Result(table, process.waitFor(),
+                String.join(System.lineSeparator(), tail));
+        } catch (IOException e) {
+            LOGGER.error(String.format("Failed to run sstableloader for " +
+                "table: %s", table), e);
+            return new Result(table, -1, e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result(table, -1, "Interrupted");
+        } finally {
+            if (process != null) {
+                running.remove(process);
+                if (process.isAlive()) {
+                    process.destroyForcibly();
+                }
+            }
+        }
+    }
+}
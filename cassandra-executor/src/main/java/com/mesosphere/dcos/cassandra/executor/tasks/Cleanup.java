@@ -85,6 +85,9 @@ public class Cleanup implements Runnable {
                     columnFamilies));
 
             for (String keyspace : keySpaces) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Cleanup was cancelled");
+                }
                 LOGGER.info("Starting cleanup : keySpace = {}, " +
                         "columnFamilies = {}",
                     keyspace,
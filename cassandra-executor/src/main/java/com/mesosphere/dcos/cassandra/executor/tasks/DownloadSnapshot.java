@@ -17,18 +17,26 @@ package com.mesosphere.dcos.cassandra.executor.tasks;
 
 import com.mesosphere.dcos.cassandra.common.tasks.backup.DownloadSnapshotTask;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreContext;
+import com.mesosphere.dcos.cassandra.executor.CassandraDaemonProcess;
 import com.mesosphere.dcos.cassandra.executor.backup.BackupStorageDriver;
+import com.mesosphere.dcos.cassandra.executor.backup.CommitLogArchiver;
 import org.apache.mesos.ExecutorDriver;
 import org.apache.mesos.Protos;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.nio.file.Path;
 import java.util.Optional;
 
 /**
  * DownloadSnapshot implements the execution of the DownloadSnapshotTask by
  * delegating download of the snapshotted tables to a BackupStorageDriver
- * implementation.
+ * implementation. When the restore has a disk limit, the downloaded
+ * SSTables are loaded while the download continues (see RestorePipeline).
+ * When the restore has a point in time, the archived commitlog segments
+ * needed to reach it are staged and replayed the next time the node starts
+ * (see CommitLogArchiver).
  */
 public class DownloadSnapshot implements Runnable {
     private static final Logger LOGGER = LoggerFactory.getLogger(
@@ -37,6 +45,8 @@ public class DownloadSnapshot implements Runnable {
     private RestoreContext context;
     private DownloadSnapshotTask cassandraTask;
     private BackupStorageDriver backupStorageDriver;
+    private CassandraDaemonProcess daemon;
+    private String version;
 
     private void sendStatus(ExecutorDriver driver,
                             Protos.TaskState state,
@@ -50,16 +60,24 @@ public class DownloadSnapshot implements Runnable {
      * Constructs a DownloadSnapshot.
      *
      * @param driver              The ExecutorDriver used to send task status.
+     * @param daemon              The CassandraDaemonProcess used to refresh
+     *                            tables in a pipelined restore.
      * @param task                The DownloadSnapshotTask that will be executed.
      * @param nodeId              The id of the node on which the task runs.
+     * @param version             The version of Cassandra that will be
+     *                            restored.
      * @param backupStorageDriver The BackupStorageDriver that implements
      *                            downloading the snapshot.
      */
     public DownloadSnapshot(ExecutorDriver driver,
+                            CassandraDaemonProcess daemon,
                             DownloadSnapshotTask task,
                             String nodeId,
+                            String version,
                             BackupStorageDriver backupStorageDriver) {
         this.driver = driver;
+        this.daemon = daemon;
+        this.version = version;
         this.backupStorageDriver = backupStorageDriver;
         this.cassandraTask = task;
         this.context = task.getRestoreContext();
@@ -74,7 +92,15 @@ public class DownloadSnapshot implements Runnable {
             sendStatus(driver, Protos.TaskState.TASK_RUNNING,
                     "Started downloading snapshot");
 
-            backupStorageDriver.download(context);
+            if (context.isPipelined()) {
+                downloadPipelined();
+            } else {
+                backupStorageDriver.download(context);
+            }
+
+            if (context.getPointInTimeMs() > 0) {
+                downloadCommitLog();
+            }
 
             // TODO: Do cleanup (So, that we are good when we start restoring the snapshots)
 
@@ -88,4 +114,35 @@ public class DownloadSnapshot implements Runnable {
         }
     }
 
+    private void downloadCommitLog() throws Exception {
+        final Path restoreDirectory =
+            CommitLogArchiver.defaultRestoreDirectory();
+        CommitLogArchiver.prepareRestore(restoreDirectory);
+        final int segments = backupStorageDriver.downloadCommitLog(context,
+            restoreDirectory.toFile());
+        CommitLogArchiver.stageRestore(restoreDirectory,
+            context.getPointInTimeMs());
+        LOGGER.info("Staged {} commitlog segments for replay up to {} ms",
+            segments, context.getPointInTimeMs());
+    }
+
+    private void downloadPipelined() throws Exception {
+        final File stagingDirectory = new File(context.getLocalLocation() +
+            File.separator + context.getName() + File.separator +
+            context.getNodeId() + ".pipeline");
+        final SnapshotLoader loader = new SnapshotLoader(daemon, context,
+            version);
+        final RestorePipeline pipeline = new RestorePipeline(
+            context.getDiskLimitMb() * 1024L * 1024L, stagingDirectory,
+            loader::load);
+        LOGGER.info("Restoring snapshot while downloading it: disk limit = " +
+            "{} MB", context.getDiskLimitMb());
+        try {
+            backupStorageDriver.download(context, pipeline);
+            pipeline.finish();
+        } catch (Throwable t) {
+            pipeline.abort();
+            throw t;
+        }
+    }
 }
@@ -106,6 +106,9 @@ public class Repair implements Runnable {
                     columnFamilies));
 
             for (String keyspace : keySpaces) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Repair was cancelled");
+                }
                 repairKeyspace(keyspace, columnFamilies);
             }
 
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.tasks;
+
+import com.mesosphere.dcos.cassandra.executor.backup.DownloadListener;
+import com.mesosphere.dcos.cassandra.executor.backup.SSTableFiles;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * RestorePipeline loads the SSTables of a restore while the rest of the
+ * backup is still being downloaded, and keeps the disk space used by
+ * downloaded files that have not been loaded yet under a limit.
+ * <p>
+ * Files are grouped by SSTable. Once every component of an SSTable has
+ * been downloaded, the loader thread moves the SSTable into a batch
+ * directory, loads the batch and deletes it, which releases its disk
+ * space. Files that are not SSTable components, such as snapshot
+ * manifests, are deleted once they are downloaded. The download of a file is only admitted while the disk space of
+ * the admitted files that have not been loaded is under the limit. An
+ * SSTable larger than the limit is admitted on its own, so the pipeline
+ * can always make progress.
+ */
+public class RestorePipeline implements DownloadListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        RestorePipeline.class);
+
+    /**
+     * Loader loads the SSTables of a batch.
+     */
+    public interface Loader {
+
+        /**
+         * Loads SSTables.
+         *
+         * @param keyspacesDirectory The directory that holds the SSTables in
+         *                           keyspace/column family directories.
+         */
+        void load(File keyspacesDirectory)
+            throws IOException, InterruptedException;
+    }
+
+    private static class Group {
+        private final String key;
+        private final boolean sstable;
+        private final List<File> files = new ArrayList<>();
+        private final Set<File> pending = new HashSet<>();
+        private long bytes = 0;
+        private boolean sealed = false;
+        private boolean failed = false;
+
+        private Group(final String key, final boolean sstable) {
+            this.key = key;
+            this.sstable = sstable;
+        }
+
+        private boolean isReady() {
+            return sealed && pending.isEmpty();
+        }
+    }
+
+    private final long limitBytes;
+    private final File stagingDirectory;
+    private final Loader loader;
+    private final Thread thread;
+    private final Map<File, Group> admitted = new HashMap<>();
+    private final Deque<Group> ready = new ArrayDeque<>();
+    private Group current = null;
+    private long usedBytes = 0;
+    private long loadedBytes = 0;
+    private int batches = 0;
+    private int failedFiles = 0;
+    private boolean finished = false;
+    private Throwable error = null;
+
+    /**
+     * Constructs a new RestorePipeline and starts its loader thread.
+     *
+     * @param limitBytes       The maximum disk space used by downloaded
+     *                         files that have not been loaded.
+     * @param stagingDirectory The directory batches are moved to before they
+     *                         are loaded. It must be on the same file system
+     *                         as the downloaded files.
+     * @param loader           The Loader that loads each batch.
+     */
+    public RestorePipeline(final long limitBytes,
+                           final File stagingDirectory,
+                           final Loader loader) {
+        this.limitBytes = limitBytes;
+        this.stagingDirectory = stagingDirectory;
+        this.loader = loader;
+        this.thread = new Thread(this::run, "restore-pipeline");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    @Override
+    public void admit(final File file, final long size)
+        throws InterruptedException {
+        synchronized (this) {
+            final Optional<String> sstable = SSTableFiles.sstable(
+                file.getName());
+            final String key = sstable
+                .map(name -> new File(file.getParentFile(), name).getPath())
+                .orElse(file.getPath());
+            if (current == null || !current.key.equals(key)) {
+                seal();
+                current = new Group(key, sstable.isPresent());
+            }
+            while (error == null && usedBytes > current.bytes &&
+                usedBytes + size > limitBytes) {
+                wait();
+            }
+            usedBytes += size;
+            current.bytes += size;
+            current.pending.add(file);
+            admitted.put(file, current);
+        }
+    }
+
+    @Override
+    public void downloaded(final File file) {
+        complete(file, false);
+    }
+
+    @Override
+    public void failed(final File file) {
+        complete(file, true);
+    }
+
+    /**
+     * Waits until every downloaded SSTable has been loaded and stops the
+     * loader thread. It must be called after the download returns.
+     *
+     * @throws IOException          If a file failed to download or a batch
+     *                              failed to load.
+     * @throws InterruptedException If the wait is interrupted.
+     */
+    public void finish() throws IOException, InterruptedException {
+        synchronized (this) {
+            seal();
+            finished = true;
+            notifyAll();
+        }
+        thread.join();
+        synchronized (this) {
+            if (error != null) {
+                throw new IOException("Failed to load restored SSTables",
+                    error);
+            } else if (failedFiles > 0) {
+                throw new IOException(String.format(
+                    "Failed to download %d files", failedFiles));
+            } else if (!admitted.isEmpty()) {
+                throw new IOException(String.format(
+                    "%d files were admitted but never downloaded",
+                    admitted.size()));
+            }
+            LOGGER.info("Restore pipeline finished: batches = {}, " +
+                "loaded bytes = {}", batches, loadedBytes);
+        }
+    }
+
+    /**
+     * Stops the loader thread without waiting for the remaining SSTables
+     * and deletes the staging directory.
+     */
+    public void abort() {
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        FileUtils.deleteQuietly(stagingDirectory);
+    }
+
+    /**
+     * Gets the disk space in use.
+     *
+     * @return The size of the admitted files that have not been loaded in
+     * bytes.
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    private synchronized void complete(final File file, final boolean failed) {
+        final Group group = admitted.remove(file);
+        if (group == null) {
+            return;
+        }
+        group.pending.remove(file);
+        group.files.add(file);
+        if (failed) {
+            group.failed = true;
+            failedFiles++;
+        }
+        if (group.isReady()) {
+            ready.add(group);
+            notifyAll();
+        }
+    }
+
+    private void seal() {
+        if (current != null) {
+            current.sealed = true;
+            if (current.isReady()) {
+                ready.add(current);
+                notifyAll();
+            }
+            current = null;
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                final List<Group> batch;
+                synchronized (this) {
+                    while (ready.isEmpty() &&
+                        !(finished && admitted.isEmpty())) {
+                        wait();
+                    }
+                    if (ready.isEmpty()) {
+                        return;
+                    }
+                    batch = new ArrayList<>(ready);
+                    ready.clear();
+                }
+                final long bytes = load(batch);
+                synchronized (this) {
+                    usedBytes -= bytes;
+                    loadedBytes += bytes;
+                    notifyAll();
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.info("Restore pipeline interrupted");
+        } catch (Throwable t) {
+            LOGGER.error("Restore pipeline failed", t);
+            synchronized (this) {
+                error = t;
+                notifyAll();
+            }
+        } finally {
+            FileUtils.deleteQuietly(stagingDirectory);
+        }
+    }
+
+    private long load(final List<Group> batch)
+        throws IOException, InterruptedException {
+        final File directory = new File(stagingDirectory,
+            "batch-" + (++batches));
+        long bytes = 0;
+        int sstables = 0;
+        try {
+            for (Group group : batch) {
+                bytes += group.bytes;
+                if (group.failed || !group.sstable) {
+                    if (group.failed) {
+                        LOGGER.warn("Skipping incomplete SSTable: {}",
+                            group.key);
+                    }
+                    group.files.forEach(FileUtils::deleteQuietly);
+                    continue;
+                }
+                for (File file : group.files) {
+                    final File columnFamily = file.getParentFile();
+                    final File target = new File(new File(new File(directory,
+                        columnFamily.getParentFile().getName()),
+                        columnFamily.getName()), file.getName());
+                    Files.createDirectories(target.getParentFile().toPath());
+                    Files.move(file.toPath(), target.toPath());
+                }
+                sstables++;
+            }
+            if (sstables > 0) {
+                LOGGER.info("Loading batch {}: SSTables = {}, bytes = {}",
+                    batches, sstables, bytes);
+                loader.load(directory);
+            }
+            return bytes;
+        } finally {
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+}
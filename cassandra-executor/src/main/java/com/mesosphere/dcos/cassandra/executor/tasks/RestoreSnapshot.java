@@ -17,25 +17,21 @@ package com.mesosphere.dcos.cassandra.executor.tasks;
 
 import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreContext;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreSnapshotTask;
-import com.mesosphere.dcos.cassandra.executor.CassandraPaths;
-import org.apache.commons.lang3.StringUtils;
+import com.mesosphere.dcos.cassandra.executor.CassandraDaemonProcess;
 import org.apache.mesos.ExecutorDriver;
 import org.apache.mesos.Protos;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.InetAddress;
-import java.util.Arrays;
-import java.util.List;
 import java.util.Optional;
 
 /**
- * Implements RestoreSnapshotTask by invoking the SSTableLoader binary that is
- * packaged with the Cassandra distribution.
+ * Implements RestoreSnapshotTask by loading the downloaded SSTables with a
+ * SnapshotLoader, which invokes the SSTableLoader binary that is packaged
+ * with the Cassandra distribution, or refreshes the tables of a ring with
+ * the same topology. A pipelined restore loads the SSTables while they are
+ * downloaded (see RestorePipeline), so there is nothing left to load.
  *
  * @TODO Why not just invoke the SSTableLoader class directly ins
  */
@@ -44,6 +40,7 @@ public class RestoreSnapshot implements Runnable {
         RestoreSnapshot.class);
 
     private final ExecutorDriver driver;
+    private final CassandraDaemonProcess daemon;
     private final RestoreContext context;
     private final RestoreSnapshotTask cassandraTask;
     private final String version;
@@ -52,16 +49,20 @@ public class RestoreSnapshot implements Runnable {
      * Constructs a new RestoreSnapshot.
      *
      * @param driver        The ExecutorDriver used to send task status.
+     * @param daemon        The CassandraDaemonProcess used to refresh
+     *                      tables.
      * @param cassandraTask The RestoreSnapshotTask that will be executed.
      * @param nodeId        The id of the node that will be restored.
      * @param version       The version of Cassandra that will be restored.
      */
     public RestoreSnapshot(
         ExecutorDriver driver,
+        CassandraDaemonProcess daemon,
         RestoreSnapshotTask cassandraTask,
         String nodeId,
         String version) {
         this.driver = driver;
+        this.daemon = daemon;
         this.version = version;
         this.cassandraTask = cassandraTask;
         this.context = cassandraTask.getRestoreContext();
@@ -73,75 +74,20 @@ public class RestoreSnapshot implements Runnable {
             // Send TASK_RUNNING
             sendStatus(driver, Protos.TaskState.TASK_RUNNING,
                 "Started restoring snapshot");
+            if (context.isPipelined()) {
+                // The SSTables were loaded while they were downloaded.
+                final String message = "Snapshot was restored while it " +
+                    "was downloaded";
+                LOGGER.info(message);
+                sendStatus(driver, Protos.TaskState.TASK_FINISHED, message);
+                return;
+            }
             final String keyspaceDirectory =
                     context.getLocalLocation() + File.separator +
                     context.getName() + File.separator +
                     context.getNodeId();
-
-            final String ssTableLoaderBinary =
-                CassandraPaths.create(version).bin()
-                    .resolve("sstableloader").toString();
-            final String cassandraYaml =
-                CassandraPaths.create(version).cassandraConfig().toString();
-
-            final File keyspacesDirectory = new File(keyspaceDirectory);
-            LOGGER.info("Keyspace Directory {} exists: {}", keyspaceDirectory, keyspacesDirectory.exists());
-
-            final File[] keyspaces = keyspacesDirectory.listFiles();
-
-            String libProcessAddress = System.getenv("LIBPROCESS_IP");
-            libProcessAddress = StringUtils.isBlank(
-                libProcessAddress) ? InetAddress.getLocalHost().getHostAddress() : libProcessAddress;
-
-            for (File keyspace : keyspaces) {
-                final File[] columnFamilies = keyspace.listFiles();
-
-                final String keyspaceName = keyspace.getName();
-                LOGGER.info("Going to bulk load keyspace: {}", keyspaceName);
-
-
-                for (File columnFamily : columnFamilies) {
-                    final String columnFamilyName = columnFamily.getName();
-                    LOGGER.info(
-                        "Bulk loading... keyspace: {} column family: {}",
-                        keyspaceName, columnFamilyName);
-
-                    final String columnFamilyPath = columnFamily.getAbsolutePath();
-                    final List<String> command = Arrays.asList(
-                        ssTableLoaderBinary, "-d", libProcessAddress, "-f",
-                        cassandraYaml, columnFamilyPath);
-                    LOGGER.info("Executing command: {}", command);
-
-                    final ProcessBuilder processBuilder = new ProcessBuilder(
-                        command);
-                    Process process = processBuilder.start();
-                    int exitCode = process.waitFor();
-
-                    String stdout = streamToString(process.getInputStream());
-                    String stderr = streamToString(process.getErrorStream());
-
-                    LOGGER.info("Command exit code: {}", exitCode);
-                    LOGGER.info("Command stdout: {}", stdout);
-                    LOGGER.info("Command stderr: {}", stderr);
-
-                    // Send TASK_ERROR
-                    if (exitCode != 0) {
-                        final String errMessage = String.format(
-                            "Error restoring snapshot. Exit code: %s Stdout: %s Stderr: %s",
-                            (exitCode + ""), stdout, stderr);
-                        LOGGER.error(errMessage);
-                        sendStatus(driver, Protos.TaskState.TASK_ERROR,
-                            errMessage);
-                    }
-
-                    LOGGER.info(
-                        "Done bulk loading! keyspace: {} column family: {}",
-                        keyspaceName, columnFamilyName);
-                }
-
-                LOGGER.info("Successfully bulk loaded keyspace: {}",
-                    keyspaceName);
-            }
+            new SnapshotLoader(daemon, context, version).load(
+                new File(keyspaceDirectory));
 
             final String message = "Finished restoring snapshot";
             LOGGER.info(message);
@@ -155,19 +101,6 @@ public class RestoreSnapshot implements Runnable {
         }
     }
 
-    private static String streamToString(InputStream stream) throws Exception {
-        BufferedReader reader = new BufferedReader(
-            new InputStreamReader(stream));
-        StringBuilder builder = new StringBuilder();
-        String line = null;
-        while ((line = reader.readLine()) != null) {
-            builder.append(line);
-            builder.append(System.getProperty("line.separator"));
-        }
-
-        return builder.toString();
-    }
-
     private void sendStatus(ExecutorDriver driver,
                             Protos.TaskState state,
                             String message) {
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.tasks;
+
+import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreContext;
+import com.mesosphere.dcos.cassandra.executor.CassandraDaemonProcess;
+import com.mesosphere.dcos.cassandra.executor.CassandraPaths;
+import com.mesosphere.dcos.cassandra.executor.backup.SSTableFiles;
+import com.mesosphere.dcos.cassandra.executor.backup.StorageUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SnapshotLoader loads downloaded SSTables into the ring. By default the
+ * SSTables are streamed with the sstableloader binary, for several tables
+ * at a time (see BulkLoader). When the restored ring has the same topology
+ * and tokens as the backed up ring, the SSTables are instead moved into the
+ * live data directories and loaded with a refresh.
+ */
+public class SnapshotLoader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        SnapshotLoader.class);
+
+    private final CassandraDaemonProcess daemon;
+    private final RestoreContext context;
+    private final String version;
+
+    /**
+     * Constructs a new SnapshotLoader.
+     *
+     * @param daemon  The CassandraDaemonProcess used to refresh tables.
+     * @param context The context of the restore.
+     * @param version The version of Cassandra that will be restored.
+     */
+    public SnapshotLoader(final CassandraDaemonProcess daemon,
+                          final RestoreContext context,
+                          final String version) {
+        this.daemon = daemon;
+        this.context = context;
+        this.version = version;
+    }
+
+    /**
+     * Loads SSTables.
+     *
+     * @param keyspacesDirectory The directory that holds the SSTables in
+     *                           keyspace/column family directories.
+     * @throws IOException          If a table can not be loaded.
+     * @throws InterruptedException If loading is interrupted.
+     */
+    public void load(final File keyspacesDirectory)
+        throws IOException, InterruptedException {
+        LOGGER.info("Keyspace Directory {} exists: {}",
+            keyspacesDirectory.getAbsolutePath(), keyspacesDirectory.exists());
+        if (context.isSameTopology()) {
+            refresh(keyspacesDirectory);
+        } else {
+            bulkLoad(keyspacesDirectory);
+        }
+    }
+
+    private void bulkLoad(final File keyspacesDirectory)
+        throws IOException, InterruptedException {
+        final String ssTableLoaderBinary =
+            CassandraPaths.create(version).bin()
+                .resolve("sstableloader").toString();
+        final String cassandraYaml =
+            CassandraPaths.create(version).cassandraConfig().toString();
+
+        String libProcessAddress = System.getenv("LIBPROCESS_IP");
+        libProcessAddress = StringUtils.isBlank(
+            libProcessAddress) ? InetAddress.getLocalHost().getHostAddress() : libProcessAddress;
+
+        final List<BulkLoader.Table> tables = new ArrayList<>();
+        for (File keyspace : keyspacesDirectory.listFiles()) {
+            for (File columnFamily : keyspace.listFiles()) {
+                if (!StorageUtil.isSelected(context, keyspace.getName(),
+                    columnFamily.getName())) {
+                    continue;
+                }
+                tables.add(new BulkLoader.Table(keyspace.getName(),
+                    columnFamily.getName(), columnFamily));
+            }
+        }
+        final int concurrency = (context.getLoaderConcurrency() > 0) ?
+            context.getLoaderConcurrency() :
+            BulkLoader.DEFAULT_CONCURRENCY;
+        final BulkLoader loader = new BulkLoader(ssTableLoaderBinary,
+            cassandraYaml, libProcessAddress, concurrency,
+            BulkLoader.throttleMbits(context.getBandwidthLimitMb(),
+                concurrency));
+
+        final List<String> failed = new ArrayList<>();
+        for (BulkLoader.Result result : loader.load(tables)) {
+            if (!result.isSuccess()) {
+                LOGGER.error("Error bulk loading table: {}, exit code: " +
+                        "{}, output: {}", result.getTable(),
+                    result.getExitCode(), result.getOutput());
+                failed.add(String.format("%s (exit code %d)",
+                    result.getTable(), result.getExitCode()));
+            }
+        }
+        if (!failed.isEmpty()) {
+            throw new IOException(String.format(
+                "Failed to bulk load %d of %d tables: %s",
+                failed.size(), tables.size(), failed));
+        }
+    }
+
+    /**
+     * Restores the downloaded snapshot on a ring with the same topology and
+     * tokens as the backed up ring. The SSTables of each table are moved
+     * into the live directory of the table, which is a rename on the data
+     * volume, and loaded with a refresh, so no data is streamed.
+     *
+     * @param keyspacesDirectory The directory the snapshot was downloaded to.
+     * @throws IOException If a table does not exist or its SSTables can not
+     *                     be moved.
+     */
+    private void refresh(final File keyspacesDirectory) throws IOException {
+        final File dataDirectory = new File(context.getLocalLocation());
+        for (File keyspace : keyspacesDirectory.listFiles(File::isDirectory)) {
+            final String keyspaceName = keyspace.getName();
+            for (File columnFamily : keyspace.listFiles(File::isDirectory)) {
+                if (!StorageUtil.isSelected(context, keyspaceName,
+                    columnFamily.getName())) {
+                    continue;
+                }
+                final String table = SSTableFiles.tableName(
+                    columnFamily.getName());
+                final File tableDirectory = SSTableFiles.findTableDirectory(
+                    new File(dataDirectory, keyspaceName), table);
+                final int moved = SSTableFiles.moveSSTables(columnFamily,
+                    tableDirectory);
+                LOGGER.info("Moved {} SSTables of table {}.{} to {}", moved,
+                    keyspaceName, table, tableDirectory.getAbsolutePath());
+                daemon.loadNewSSTables(keyspaceName, table);
+                LOGGER.info("Refreshed table {}.{}", keyspaceName, table);
+            }
+        }
+    }
+}
@@ -19,6 +19,9 @@ import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupContext;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupUploadTask;
 import com.mesosphere.dcos.cassandra.executor.CassandraDaemonProcess;
 import com.mesosphere.dcos.cassandra.executor.backup.BackupStorageDriver;
+import com.mesosphere.dcos.cassandra.executor.backup.CommitLogArchiver;
+import com.mesosphere.dcos.cassandra.executor.backup.IncrementalBackupShipper;
+import com.mesosphere.dcos.cassandra.executor.backup.SnapshotJanitor;
 import org.apache.mesos.ExecutorDriver;
 import org.apache.mesos.Protos;
 import org.slf4j.Logger;
@@ -39,6 +42,9 @@ public class UploadSnapshot implements Runnable {
     private final BackupContext context;
     private final BackupUploadTask cassandraTask;
     private final BackupStorageDriver backupStorageDriver;
+    private final CommitLogArchiver commitLogArchiver;
+    private final IncrementalBackupShipper incrementalBackupShipper;
+    private final SnapshotJanitor snapshotJanitor;
 
     /**
      * Constructs a new UploadSnapshot
@@ -54,10 +60,44 @@ public class UploadSnapshot implements Runnable {
         CassandraDaemonProcess daemon,
         BackupUploadTask cassandraTask,
         BackupStorageDriver backupStorageDriver) {
+        this(driver, daemon, cassandraTask, backupStorageDriver, null, null,
+            null);
+    }
+
+    /**
+     * Constructs a new UploadSnapshot that, once the snapshot is uploaded,
+     * starts commitlog archiving if the backup requests it and ships
+     * incremental backups to the backup until the next one.
+     *
+     * @param driver              The ExecutorDriver used to send task status.
+     * @param daemon              The CassandraDaemonProcess used clean the local snapshot.
+     * @param cassandraTask       The BackUploadTask that will be executed.
+     * @param backupStorageDriver The BackupStorageDriver used to upload the
+     *                            snapshot.
+     * @param commitLogArchiver   The CommitLogArchiver of the node, or null
+     *                            if commitlog archiving is not available.
+     * @param incrementalBackupShipper The IncrementalBackupShipper of the
+     *                            node, or null if incremental backups are
+     *                            not shipped.
+     * @param snapshotJanitor     The SnapshotJanitor of the node, which
+     *                            clears the snapshot if the upload fails,
+     *                            or null if snapshots are not tracked.
+     */
+    public UploadSnapshot(
+        ExecutorDriver driver,
+        CassandraDaemonProcess daemon,
+        BackupUploadTask cassandraTask,
+        BackupStorageDriver backupStorageDriver,
+        CommitLogArchiver commitLogArchiver,
+        IncrementalBackupShipper incrementalBackupShipper,
+        SnapshotJanitor snapshotJanitor) {
         this.daemon = daemon;
         this.driver = driver;
         this.cassandraTask = cassandraTask;
         this.backupStorageDriver = backupStorageDriver;
+        this.commitLogArchiver = commitLogArchiver;
+        this.incrementalBackupShipper = incrementalBackupShipper;
+        this.snapshotJanitor = snapshotJanitor;
         context = cassandraTask.getBackupContext();
     }
 
@@ -71,6 +111,9 @@ public class UploadSnapshot implements Runnable {
 
     @Override
     public void run() {
+        if (snapshotJanitor != null) {
+            snapshotJanitor.acquire(context);
+        }
         try {
             // Send TASK_RUNNING
             sendStatus(driver, Protos.TaskState.TASK_RUNNING,
@@ -81,12 +124,52 @@ public class UploadSnapshot implements Runnable {
 
             // Once we have uploaded all existing snapshots, let's clear on-disk snapshots
             daemon.clearSnapShot(context.getName());
+            if (snapshotJanitor != null) {
+                snapshotJanitor.cleared(context.getName());
+            }
+
+            // SSTables flushed after the snapshot are shipped to this backup.
+            if (context.isShipIncremental()) {
+                if (incrementalBackupShipper == null) {
+                    LOGGER.warn("Incremental backup shipping is not " +
+                        "available: {}", context.getName());
+                } else {
+                    incrementalBackupShipper.start(context.forBackground(),
+                        backupStorageDriver);
+                }
+            }
+
+            // Segments closed after the snapshot are archived next to it.
+            if (context.isArchiveCommitLog()) {
+                if (commitLogArchiver == null) {
+                    LOGGER.warn("Commitlog archiving is not available: {}",
+                        context.getName());
+                } else {
+                    commitLogArchiver.start(context.forBackground(),
+                        backupStorageDriver);
+                }
+            }
+
+            // Expired backups are deleted once this one is stored. The
+            // backup succeeded, so a failure to delete them is only logged.
+            try {
+                final long deleted = backupStorageDriver.prune(context);
+                LOGGER.info("Pruned expired backups: {} | deleted " +
+                    "objects = {}", context.getName(), deleted);
+            } catch (Exception e) {
+                LOGGER.error("Failed to prune expired backups", e);
+            }
 
             // Send TASK_FINISHED
             sendStatus(driver, Protos.TaskState.TASK_FINISHED,
                 "Finished uploading snapshots");
         } catch (Throwable t) {
             LOGGER.error("Upload snapshot failed", t);
+            // The snapshot is cleared by the janitor after a grace period,
+            // so a retried upload can still use it.
+            if (snapshotJanitor != null) {
+                snapshotJanitor.done(context.getName(), false);
+            }
             sendStatus(driver, Protos.TaskState.TASK_FAILED, t.getMessage());
         }
     }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 Mesosphere
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mesosphere.dcos.cassandra.executor.tasks;
+
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupVerifyTask;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreContext;
+import com.mesosphere.dcos.cassandra.executor.backup.BackupStorageDriver;
+import com.mesosphere.dcos.cassandra.executor.backup.TransferStats;
+import org.apache.mesos.ExecutorDriver;
+import org.apache.mesos.Protos;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+
+/**
+ * VerifyBackup implements BackupVerifyTask by delegating the verification
+ * of the node's backup to a BackupStorageDriver implementation. The backup
+ * is read from the external location but nothing is written to disk. The
+ * task finishes if every file of the backup matches its checksums and fails
+ * otherwise, so the scheduler can record the result for the node.
+ */
+public class VerifyBackup implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+        VerifyBackup.class);
+    private final ExecutorDriver driver;
+    private final RestoreContext context;
+    private final BackupVerifyTask cassandraTask;
+    private final BackupStorageDriver backupStorageDriver;
+
+    /**
+     * Constructs a new VerifyBackup.
+     *
+     * @param driver              The ExecutorDriver used to send task status.
+     * @param cassandraTask       The BackupVerifyTask that will be executed.
+     * @param backupStorageDriver The BackupStorageDriver used to read the
+     *                            backup.
+     */
+    public VerifyBackup(
+        ExecutorDriver driver,
+        BackupVerifyTask cassandraTask,
+        BackupStorageDriver backupStorageDriver) {
+        this.driver = driver;
+        this.cassandraTask = cassandraTask;
+        this.backupStorageDriver = backupStorageDriver;
+        context = cassandraTask.getRestoreContext();
+    }
+
+    private void sendStatus(ExecutorDriver driver,
+                            Protos.TaskState state,
+                            String message) {
+        Protos.TaskStatus status = cassandraTask.createStatus(state,
+            Optional.of(message)).getTaskStatus();
+        driver.sendStatusUpdate(status);
+    }
+
+    @Override
+    public void run() {
+        try {
+            // Send TASK_RUNNING
+            sendStatus(driver, Protos.TaskState.TASK_RUNNING,
+                "Started verifying backup");
+
+            final TransferStats stats = backupStorageDriver.verify(context);
+            if (stats.getFailedFiles() > 0) {
+                sendStatus(driver, Protos.TaskState.TASK_FAILED,
+                    String.format("%d of %d files failed verification",
+                        stats.getFailedFiles(),
+                        stats.getFiles() + stats.getFailedFiles()));
+                return;
+            }
+
+            // Send TASK_FINISHED
+            sendStatus(driver, Protos.TaskState.TASK_FINISHED,
+                String.format("Verified %d files, %d bytes",
+                    stats.getFiles(), stats.getBytes()));
+        } catch (Throwable t) {
+            LOGGER.error("Verify backup failed", t);
+            sendStatus(driver, Protos.TaskState.TASK_FAILED, t.getMessage());
+        }
+    }
+}
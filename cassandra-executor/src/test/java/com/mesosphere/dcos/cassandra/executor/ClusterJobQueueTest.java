@@ -0,0 +1,245 @@
+package com.mesosphere.dcos.cassandra.executor;
+
+import com.mesosphere.dcos.cassandra.common.tasks.CassandraData;
+import com.mesosphere.dcos.cassandra.common.tasks.CassandraTask;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupContext;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupSnapshotTask;
+import com.mesosphere.dcos.cassandra.common.tasks.cleanup.CleanupContext;
+import com.mesosphere.dcos.cassandra.common.tasks.cleanup.CleanupTask;
+import com.mesosphere.dcos.cassandra.common.tasks.repair.RepairContext;
+import com.mesosphere.dcos.cassandra.common.tasks.repair.RepairTask;
+import org.apache.mesos.ExecutorDriver;
+import org.apache.mesos.Protos;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * This class tests the ClusterJobQueue class.
+ */
+public class ClusterJobQueueTest {
+
+    private static class RecordingDriver implements ExecutorDriver {
+        private final List<Protos.TaskStatus> statuses = new ArrayList<>();
+
+        @Override
+        public Protos.Status start() {
+            return Protos.Status.DRIVER_RUNNING;
+        }
+
+        @Override
+        public Protos.Status stop() {
+            return Protos.Status.DRIVER_STOPPED;
+        }
+
+        @Override
+        public Protos.Status abort() {
+            return Protos.Status.DRIVER_ABORTED;
+        }
+
+        @Override
+        public Protos.Status join() {
+            return Protos.Status.DRIVER_STOPPED;
+        }
+
+        @Override
+        public Protos.Status run() {
+            return Protos.Status.DRIVER_STOPPED;
+        }
+
+        @Override
+        public synchronized Protos.Status sendStatusUpdate(
+            final Protos.TaskStatus status) {
+            statuses.add(status);
+            notifyAll();
+            return Protos.Status.DRIVER_RUNNING;
+        }
+
+        @Override
+        public Protos.Status sendFrameworkMessage(final byte[] data) {
+            return Protos.Status.DRIVER_RUNNING;
+        }
+
+        private synchronized List<String> awaitStates(final int count)
+            throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (statuses.size() < count &&
+                System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+            return statuses.stream().map(status ->
+                status.getTaskId().getValue() + ":" + status.getState())
+                .collect(Collectors.toList());
+        }
+    }
+
+    private ExecutorService executor;
+    private RecordingDriver driver;
+
+    private static Protos.TaskInfo taskInfo(final String name,
+                                            final CassandraData data) {
+        return Protos.TaskInfo.newBuilder()
+            .setName(name)
+            .setTaskId(Protos.TaskID.newBuilder().setValue(name))
+            .setSlaveId(Protos.SlaveID.newBuilder().setValue("agent"))
+            .setExecutor(Protos.ExecutorInfo.newBuilder()
+                .setExecutorId(Protos.ExecutorID.newBuilder()
+                    .setValue("executor"))
+                .setCommand(Protos.CommandInfo.newBuilder().setValue("")))
+            .setData(data.getBytes())
+            .build();
+    }
+
+    private static CassandraTask repair(final String name) {
+        return RepairTask.parse(taskInfo(name,
+            CassandraData.createRepairData("", new RepairContext(
+                Collections.emptyList(), Collections.emptyList(),
+                Collections.emptyList()))));
+    }
+
+    private static CassandraTask cleanup(final String name) {
+        return CleanupTask.parse(taskInfo(name,
+            CassandraData.createCleanupData("", new CleanupContext(
+                Collections.emptyList(), Collections.emptyList(),
+                Collections.emptyList()))));
+    }
+
+    private static CassandraTask snapshot(final String name) {
+        return BackupSnapshotTask.parse(taskInfo(name,
+            CassandraData.createBackupSnapshotData("", BackupContext.create(
+                "node-0", name, "", "", "", ""))));
+    }
+
+    private static Runnable await(final CountDownLatch latch,
+                                  final CassandraTask task,
+                                  final ExecutorDriver driver) {
+        return () -> {
+            try {
+                latch.await();
+                driver.sendStatusUpdate(task.createStatus(
+                    Protos.TaskState.TASK_FINISHED, Optional.empty())
+                    .getTaskStatus());
+            } catch (InterruptedException e) {
+                driver.sendStatusUpdate(task.createStatus(
+                    Protos.TaskState.TASK_FAILED, Optional.empty())
+                    .getTaskStatus());
+            }
+        };
+    }
+
+    @Before
+    public void beforeEach() {
+        executor = Executors.newCachedThreadPool();
+        driver = new RecordingDriver();
+    }
+
+    @After
+    public void afterEach() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        final Map<CassandraTask.TYPE, Integer> limits =
+            ClusterJobQueue.parseLimits("repair=1");
+        Assert.assertEquals(1, (int) limits.get(CassandraTask.TYPE.REPAIR));
+        Assert.assertEquals(2,
+            (int) limits.get(CassandraTask.TYPE.BACKUP_UPLOAD));
+
+        final ClusterJobQueue queue = new ClusterJobQueue(executor, 2,
+            limits);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final CassandraTask first = repair("repair-1");
+        final CassandraTask second = repair("repair-2");
+        final CassandraTask third = cleanup("cleanup-1");
+        queue.submit(first, driver, jobDriver ->
+            await(latch, first, jobDriver));
+        queue.submit(second, driver, jobDriver ->
+            await(latch, second, jobDriver));
+        queue.submit(third, driver, jobDriver ->
+            await(latch, third, jobDriver));
+
+        // The second repair waits for the first, but the cleanup starts.
+        Assert.assertEquals(2, queue.getRunning());
+        Assert.assertEquals(1, queue.getQueued());
+        final List<ClusterJobQueue.JobStatus> jobs = queue.getJobs();
+        Assert.assertEquals("cleanup-1", jobs.get(1).getName());
+        Assert.assertTrue(jobs.get(1).isRunning());
+        Assert.assertEquals("repair-2", jobs.get(2).getName());
+        Assert.assertFalse(jobs.get(2).isRunning());
+
+        latch.countDown();
+        Assert.assertEquals(3, driver.awaitStates(3).size());
+        Assert.assertTrue(ClusterJobQueue.priority(
+            CassandraTask.TYPE.BACKUP_SNAPSHOT) < ClusterJobQueue.priority(
+            CassandraTask.TYPE.REPAIR));
+    }
+
+    @Test
+    public void testSnapshotsDoNotWaitForRunningJobs() throws Exception {
+        final ClusterJobQueue queue = new ClusterJobQueue(executor, 1,
+            ClusterJobQueue.defaultLimits());
+        final CountDownLatch latch = new CountDownLatch(1);
+        final CassandraTask repair = repair("repair-1");
+        final CassandraTask cleanup = cleanup("cleanup-1");
+        final CassandraTask snapshot = snapshot("snapshot-1");
+        queue.submit(repair, driver, jobDriver ->
+            await(latch, repair, jobDriver));
+        queue.submit(cleanup, driver, jobDriver ->
+            await(latch, cleanup, jobDriver));
+        queue.submit(snapshot, driver, jobDriver ->
+            await(latch, snapshot, jobDriver));
+
+        // The snapshot starts beside the repair, and does not take the
+        // slot the cleanup waits for.
+        Assert.assertEquals(2, queue.getRunning());
+        Assert.assertEquals(1, queue.getQueued());
+        Assert.assertEquals("cleanup-1", queue.getJobs().get(2).getName());
+        Assert.assertFalse(queue.getJobs().get(2).isRunning());
+
+        latch.countDown();
+        Assert.assertEquals(3, driver.awaitStates(3).size());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final ClusterJobQueue queue = new ClusterJobQueue(executor, 1,
+            ClusterJobQueue.defaultLimits());
+        final CountDownLatch latch = new CountDownLatch(1);
+        final CassandraTask running = repair("repair-1");
+        final CassandraTask queued = cleanup("cleanup-1");
+        queue.submit(running, driver, jobDriver ->
+            await(latch, running, jobDriver));
+        queue.submit(queued, driver, jobDriver ->
+            await(latch, queued, jobDriver));
+
+        Assert.assertTrue(queue.cancel(
+            Protos.TaskID.newBuilder().setValue("cleanup-1").build()));
+        Assert.assertTrue(queue.cancel(
+            Protos.TaskID.newBuilder().setValue("repair-1").build()));
+        Assert.assertFalse(queue.cancel(
+            Protos.TaskID.newBuilder().setValue("unknown").build()));
+
+        // The failure the interrupted job reports is dropped.
+        Assert.assertEquals(
+            Arrays.asList("cleanup-1:TASK_KILLED", "repair-1:TASK_KILLED"),
+            driver.awaitStates(2));
+        Thread.sleep(100);
+        Assert.assertEquals(2, driver.awaitStates(2).size());
+        Assert.assertEquals(0, queue.getRunning());
+        Assert.assertEquals(2, queue.getCancelled());
+    }
+}
@@ -0,0 +1,40 @@
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.mesosphere.dcos.cassandra.executor.compress.LZ4CompressionDriver;
+import com.mesosphere.dcos.cassandra.executor.compress.NoCompressionDriver;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * This class tests the AzureStorageDriver class.
+ */
+public class AzureStorageDriverTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIsPageBlob() {
+        Assert.assertTrue(AzureStorageDriver.isPageBlob(
+            "azure://backups?blob_type=page"));
+        Assert.assertFalse(AzureStorageDriver.isPageBlob("azure://backups"));
+    }
+
+    @Test
+    public void testEstimateBlobSize() throws IOException {
+        final File file = folder.newFile();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(1000);
+        }
+        Assert.assertEquals(1000, AzureStorageDriver.estimateBlobSize(file,
+            new NoCompressionDriver()));
+        Assert.assertEquals(600, AzureStorageDriver.estimateBlobSize(file,
+            new LZ4CompressionDriver()));
+    }
+}
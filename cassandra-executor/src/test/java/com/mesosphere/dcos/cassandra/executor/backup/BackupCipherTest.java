@@ -0,0 +1,109 @@
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * This class tests the BackupCipher class.
+ */
+public class BackupCipherTest {
+
+    private static final byte[] DATA =
+        "compressed frame data".getBytes(StandardCharsets.UTF_8);
+
+    private ByteBuffer seal(BackupCipher cipher, long rawOffset)
+        throws IOException {
+        final ByteBuffer payload = ByteBuffer.allocateDirect(
+            DATA.length + BackupCipher.OVERHEAD);
+        payload.position(BackupCipher.NONCE_SIZE);
+        payload.put(DATA);
+        payload.position(0);
+        final int length = cipher.seal(payload, DATA.length, rawOffset, 100);
+        Assert.assertEquals(DATA.length + BackupCipher.OVERHEAD, length);
+        payload.limit(length);
+        return payload;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testSealAndOpen() throws IOException {
+        final BackupCipher cipher = BackupCipher.parse(
+            Base64.getEncoder().encodeToString(new byte[32]));
+        final ByteBuffer sealed = seal(cipher, 0);
+        // The frame is encrypted the same way every time it is encoded.
+        Assert.assertArrayEquals(bytes(sealed), bytes(seal(cipher, 0)));
+        Assert.assertFalse(Arrays.equals(bytes(sealed),
+            bytes(seal(cipher, 1))));
+
+        Assert.assertArrayEquals(DATA, bytes(cipher.open(sealed, 0, 100)));
+    }
+
+    @Test
+    public void testTamperedFrameIsRejected() throws IOException {
+        final BackupCipher cipher = new BackupCipher(new byte[16]);
+        final ByteBuffer moved = seal(cipher, 0);
+        try {
+            cipher.open(moved, 1000, 100);
+            Assert.fail("Expected a frame at another offset to fail");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("authentication"));
+        }
+
+        final ByteBuffer corrupt = seal(cipher, 0);
+        corrupt.put(BackupCipher.NONCE_SIZE + 1,
+            (byte) (corrupt.get(BackupCipher.NONCE_SIZE + 1) ^ 0xFF));
+        try {
+            cipher.open(corrupt, 0, 100);
+            Assert.fail("Expected a corrupt frame to fail");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("authentication"));
+        }
+
+        final byte[] key = new byte[16];
+        key[0] = 1;
+        final BackupCipher other = new BackupCipher(key);
+        Assert.assertNotEquals(cipher.getKeyId(), other.getKeyId());
+        try {
+            other.open(seal(cipher, 0), 0, 100);
+            Assert.fail("Expected a frame of another key to fail");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("authentication"));
+        }
+    }
+
+    @Test
+    public void testFrameIsBoundToObject() throws IOException {
+        final BackupCipher cipher = new BackupCipher(new byte[16]);
+        final BackupCipher first = cipher.forObject("backup/ks/cf/first");
+        final BackupCipher second = cipher.forObject("backup/ks/cf/second");
+        Assert.assertEquals(cipher.getKeyId(), first.getKeyId());
+        // Identical frames of different objects are sealed differently.
+        Assert.assertFalse(Arrays.equals(bytes(seal(first, 0)),
+            bytes(seal(second, 0))));
+
+        Assert.assertArrayEquals(DATA, bytes(cipher.forObject(
+            "backup/ks/cf/first").open(seal(first, 0), 0, 100)));
+        try {
+            second.open(seal(first, 0), 0, 100);
+            Assert.fail("Expected a frame of another object to fail");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("authentication"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidKeyLength() {
+        BackupCipher.parse(Base64.getEncoder().encodeToString(new byte[10]));
+    }
+}
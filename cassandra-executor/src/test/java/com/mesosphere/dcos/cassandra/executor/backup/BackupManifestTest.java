@@ -0,0 +1,70 @@
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * This class tests the BackupManifest class.
+ */
+public class BackupManifestTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSerializationRoundTrip() throws IOException {
+        final BackupManifest manifest = new BackupManifest("backup-1",
+            "node-0", true, Arrays.asList(
+            new BackupManifest.Component("ks/cf/la-1-big-Data.db", 1024,
+                "1a2b3c", "backup-0/node-0/ks/cf/la-1-big-Data.db", 600,
+                "snappy", Arrays.asList("00ff")),
+            new BackupManifest.Component("ks/cf/la-2-big-Data.db", 2048,
+                "4d5e6f", "backup-1/node-0/ks/cf/la-2-big-Data.db", 1200,
+                "snappy", Arrays.asList("11ee", "22dd"))));
+
+        final BackupManifest parsed = BackupManifest.parse(manifest.toBytes());
+
+        Assert.assertEquals("backup-1", parsed.getBackupName());
+        Assert.assertEquals("node-0", parsed.getNodeId());
+        Assert.assertTrue(parsed.isComplete());
+        Assert.assertEquals(manifest.getComponents(), parsed.getComponents());
+    }
+
+    @Test
+    public void testFindMatchesPathSizeAndChecksum() {
+        final BackupManifest.Component stored =
+            new BackupManifest.Component("ks/cf/la-1-big-Data.db", 1024,
+                "1a2b3c", "backup-0/node-0/ks/cf/la-1-big-Data.db", 600,
+                "snappy", Arrays.asList("00ff"));
+        final BackupManifest manifest = new BackupManifest("backup-0",
+            "node-0", true, Arrays.asList(stored));
+
+        Assert.assertEquals(stored, manifest.find(
+            BackupManifest.Component.local("ks/cf/la-1-big-Data.db", 1024,
+                "1a2b3c"))
+            .get());
+        Assert.assertFalse(manifest.find(
+            BackupManifest.Component.local("ks/cf/la-1-big-Data.db", 1024,
+                "ffffff")).isPresent());
+        Assert.assertFalse(manifest.find(
+            BackupManifest.Component.local("ks/cf/la-1-big-Data.db", 1025,
+                "1a2b3c")).isPresent());
+        Assert.assertFalse(manifest.find(
+            BackupManifest.Component.local("ks/cf/la-2-big-Data.db", 1024,
+                "1a2b3c")).isPresent());
+    }
+
+    @Test
+    public void testChecksum() throws IOException {
+        final File file = folder.newFile();
+        Files.write(file.toPath(), "123456789".getBytes("US-ASCII"));
+        Assert.assertEquals("cbf43926", BackupManifest.checksum(file));
+    }
+}
@@ -0,0 +1,60 @@
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * This class tests the BackupRetention class.
+ */
+public class BackupRetentionTest {
+
+    private static long time(String instant) {
+        return Instant.parse(instant).toEpochMilli();
+    }
+
+    @Test
+    public void testKeepAllWhenDisabled() {
+        final Map<String, Long> backups = new HashMap<>();
+        backups.put("b1", time("2016-06-01T00:00:00Z"));
+        final BackupRetention retention = new BackupRetention(0, 0);
+        Assert.assertFalse(retention.isEnabled());
+        Assert.assertTrue(retention.expired("b2", backups,
+            Collections.singletonList("b0")).isEmpty());
+    }
+
+    @Test
+    public void testKeepDailyAndWeekly() {
+        final Map<String, Long> backups = new HashMap<>();
+        // Wednesday and Tuesday of one week, Sunday and Monday of the week
+        // before, and a Monday two weeks before.
+        backups.put("wed-late", time("2016-06-15T20:00:00Z"));
+        backups.put("wed-early", time("2016-06-15T01:00:00Z"));
+        backups.put("tue", time("2016-06-14T12:00:00Z"));
+        backups.put("sun", time("2016-06-12T12:00:00Z"));
+        backups.put("mon", time("2016-06-06T12:00:00Z"));
+        backups.put("old", time("2016-05-30T12:00:00Z"));
+
+        final Set<String> expired = new BackupRetention(2, 2).expired(
+            "wed-late", backups, Arrays.asList("interrupted"));
+        Assert.assertEquals(new TreeSet<>(Arrays.asList("wed-early", "mon",
+            "old", "interrupted")), expired);
+    }
+
+    @Test
+    public void testCurrentNeverExpires() {
+        final Map<String, Long> backups = new HashMap<>();
+        backups.put("newer", time("2016-06-15T20:00:00Z"));
+        backups.put("current", time("2016-06-15T10:00:00Z"));
+        Assert.assertEquals(Collections.emptySet(),
+            new BackupRetention(1, 0).expired("current", backups,
+                Collections.singletonList("current")));
+    }
+}
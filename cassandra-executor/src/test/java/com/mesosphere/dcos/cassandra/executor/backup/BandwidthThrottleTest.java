@@ -0,0 +1,54 @@
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class tests the BandwidthThrottle class.
+ */
+public class BandwidthThrottleTest {
+
+    @Test
+    public void testUnlimitedDoesNotWait() {
+        Assert.assertSame(BandwidthThrottle.UNLIMITED,
+            BandwidthThrottle.ofMegabytes(0));
+        Assert.assertFalse(BandwidthThrottle.UNLIMITED.isLimited());
+        Assert.assertEquals(0,
+            BandwidthThrottle.UNLIMITED.acquire(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testLimitedWaitsForTokens() {
+        final BandwidthThrottle throttle = BandwidthThrottle.create(
+            BandwidthThrottle.BYTES_PER_MB);
+        Assert.assertTrue(throttle.isLimited());
+        throttle.acquire((int) BandwidthThrottle.BYTES_PER_MB / 4);
+        // The next transfer waits for the quarter second used by the first.
+        final long waited = throttle.acquire(1);
+        Assert.assertTrue(waited >= TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    @Test
+    public void testWrappedStreamsCountTransferredBytes() throws IOException {
+        final TransferStats stats = new TransferStats("node-0");
+        final byte[] data = new byte[10000];
+        final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (InputStream in = BandwidthThrottle.UNLIMITED.wrap(
+            new ByteArrayInputStream(data), stats);
+             OutputStream out = BandwidthThrottle.UNLIMITED.wrap(sink,
+                 stats)) {
+            IOUtils.copy(in, out);
+        }
+        Assert.assertArrayEquals(data, sink.toByteArray());
+        Assert.assertEquals(2 * data.length, stats.getTransferredBytes());
+        Assert.assertEquals(0, stats.getThrottledMillis());
+    }
+}
@@ -0,0 +1,23 @@
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * This class tests the BlockBlobPartWriter class.
+ */
+public class BlockBlobPartWriterTest {
+
+    @Test
+    public void testBlockIdsHaveTheSameLength() {
+        final String first = BlockBlobPartWriter.blockId(1, 0);
+        final String last = BlockBlobPartWriter.blockId(10000, 3);
+        Assert.assertEquals(first.length(), last.length());
+        Assert.assertNotEquals(first, BlockBlobPartWriter.blockId(1, 1));
+        Assert.assertEquals("00010000-0003", new String(
+            Base64.getDecoder().decode(last), StandardCharsets.US_ASCII));
+    }
+}
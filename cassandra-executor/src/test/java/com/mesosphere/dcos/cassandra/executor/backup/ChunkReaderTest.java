@@ -0,0 +1,63 @@
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * This class tests the ChunkReader class.
+ */
+public class ChunkReaderTest {
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final long WINDOW = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private byte[] read(File file, ChunkReader.Mode mode) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ChunkReader reader = ChunkReader.open(file, mode,
+            ByteBuffer.allocateDirect(CHUNK_SIZE), CHUNK_SIZE, WINDOW)) {
+            ByteBuffer chunk;
+            while ((chunk = reader.next()).hasRemaining()) {
+                Assert.assertTrue(chunk.isDirect());
+                Assert.assertTrue(chunk.remaining() <= CHUNK_SIZE);
+                final byte[] bytes = new byte[chunk.remaining()];
+                chunk.get(bytes);
+                out.write(bytes);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private void testMode(ChunkReader.Mode mode) throws IOException {
+        final Random random = new Random(0);
+        for (int size : new int[]{0, 1, CHUNK_SIZE, (int) WINDOW,
+            (int) WINDOW * 3 + 17}) {
+            final File file = folder.newFile();
+            final byte[] bytes = new byte[size];
+            random.nextBytes(bytes);
+            Files.write(file.toPath(), bytes);
+            Assert.assertArrayEquals(bytes, read(file, mode));
+        }
+    }
+
+    @Test
+    public void testChannel() throws IOException {
+        testMode(ChunkReader.Mode.CHANNEL);
+    }
+
+    @Test
+    public void testMapped() throws IOException {
+        testMode(ChunkReader.Mode.MAPPED);
+    }
+}
@@ -0,0 +1,147 @@
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupContext;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreContext;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * This class tests the CommitLogArchiver class.
+ */
+public class CommitLogArchiverTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File segment(File directory, String name, long closed)
+        throws IOException {
+        final File file = new File(directory, name);
+        Files.write(file.toPath(), new byte[1024]);
+        file.setLastModified(closed);
+        return file;
+    }
+
+    @Test
+    public void testObjectName() throws IOException {
+        final File segment = segment(folder.getRoot(),
+            "CommitLog-6-1.log", 1000);
+
+        final String name = CommitLogArchiver.objectName(segment);
+        Assert.assertEquals("1000-CommitLog-6-1.log", name);
+        Assert.assertEquals(Optional.of(1000L),
+            CommitLogArchiver.closedMillis(name));
+        Assert.assertEquals("CommitLog-6-1.log",
+            CommitLogArchiver.segmentName(name));
+        Assert.assertEquals(Optional.empty(),
+            CommitLogArchiver.closedMillis("CommitLog-6-1.log"));
+        Assert.assertEquals(Optional.empty(),
+            CommitLogArchiver.closedMillis("1000-target.json"));
+    }
+
+    @Test
+    public void testSelect() {
+        final List<String> names = Arrays.asList(
+            "3000-CommitLog-6-3.log",
+            "1000-CommitLog-6-1.log",
+            "4000-CommitLog-6-4.log",
+            "2000-CommitLog-6-2.log");
+
+        // The first segment closed after the point in time holds the last
+        // writes before it.
+        Assert.assertEquals(Arrays.asList(
+            "1000-CommitLog-6-1.log",
+            "2000-CommitLog-6-2.log",
+            "3000-CommitLog-6-3.log"),
+            CommitLogArchiver.select(names, 2500));
+        Assert.assertEquals(Collections.singletonList(
+            "1000-CommitLog-6-1.log"),
+            CommitLogArchiver.select(names, 500));
+        Assert.assertEquals(4, CommitLogArchiver.select(names, 9000).size());
+        Assert.assertEquals(Collections.emptyList(),
+            CommitLogArchiver.select(Collections.emptyList(), 9000));
+    }
+
+    @Test
+    public void testDropsOldestWithoutTarget() throws IOException {
+        final File archive = folder.newFolder("archive");
+        segment(archive, "CommitLog-6-1.log", 1000);
+        segment(archive, "CommitLog-6-2.log", 2000);
+        segment(archive, "CommitLog-6-3.log", 3000);
+        final CommitLogArchiver archiver = new CommitLogArchiver(
+            archive.toPath(), folder.newFolder("restore").toPath(), 2048,
+            () -> true);
+
+        archiver.run();
+        Assert.assertEquals(2, archiver.getPendingSegments());
+        Assert.assertEquals(1, archiver.getDroppedSegments());
+        Assert.assertFalse(new File(archive, "CommitLog-6-1.log").exists());
+        Assert.assertTrue(archiver.getLagMillis() > 0);
+    }
+
+    @Test
+    public void testArchiveAndRestore() throws Exception {
+        final File archive = folder.newFolder("archive");
+        final File restore = folder.newFolder("restore");
+        final File root = folder.newFolder("backups");
+        segment(archive, "CommitLog-6-1.log", 1000);
+        segment(archive, "CommitLog-6-2.log", 2000);
+        segment(archive, "CommitLog-6-3.log", 3000);
+        final BackupContext context = BackupContext.create("node-0",
+            "backup-1", root.toURI().toString(), "", "", "")
+            .mutable().setArchiveCommitLog(true).build();
+        final CommitLogArchiver archiver = new CommitLogArchiver(
+            archive.toPath(), restore.toPath(), 0, () -> false);
+        archiver.start(context, new FileStorageDriver());
+        archiver.run();
+        Assert.assertEquals(0, archiver.getPendingSegments());
+        Assert.assertEquals(3, archiver.getArchivedSegments());
+        Assert.assertEquals(3, new File(root, "_commitlog/node-0").list()
+            .length);
+
+        // The target is persisted, so a new archiver resumes archiving.
+        segment(archive, "CommitLog-6-4.log", 4000);
+        final CommitLogArchiver resumed = new CommitLogArchiver(
+            archive.toPath(), restore.toPath(), 0, () -> false);
+        resumed.run();
+        Assert.assertEquals(1, resumed.getArchivedSegments());
+
+        final RestoreContext restoreContext = RestoreContext.create("node-0",
+            "backup-1", root.toURI().toString(), "", "", "", 0, false, 0, 0,
+            1500);
+        CommitLogArchiver.prepareRestore(restore.toPath());
+        Assert.assertEquals(2, new FileStorageDriver().downloadCommitLog(
+            restoreContext, restore));
+        Assert.assertTrue(new File(restore, "CommitLog-6-1.log").isFile());
+        Assert.assertTrue(new File(restore, "CommitLog-6-2.log").isFile());
+        CommitLogArchiver.stageRestore(restore.toPath(), 1500);
+
+        final Path properties = folder.getRoot().toPath().resolve(
+            CommitLogArchiver.PROPERTIES_FILE);
+        resumed.writeProperties(properties);
+        final Properties written = new Properties();
+        written.load(Files.newBufferedReader(properties,
+            StandardCharsets.UTF_8));
+        Assert.assertEquals("1970:01:01 00:00:01",
+            written.getProperty("restore_point_in_time"));
+        Assert.assertEquals(restore.getPath(),
+            written.getProperty("restore_directories"));
+
+        // Once Cassandra has started the staged segments are cleared.
+        new CommitLogArchiver(archive.toPath(), restore.toPath(), 0,
+            () -> true).run();
+        Assert.assertEquals(0, restore.list().length);
+    }
+}
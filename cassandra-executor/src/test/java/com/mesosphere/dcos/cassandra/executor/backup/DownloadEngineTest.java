@@ -0,0 +1,334 @@
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xerial.snappy.SnappyOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * This class tests the DownloadEngine class.
+ */
+public class DownloadEngineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * RangeReader that reads the objects stored by a MemoryPartWriter.
+     */
+    static class MemoryRangeReader implements RangeReader {
+        final Map<String, byte[]> objects;
+
+        MemoryRangeReader(Map<String, byte[]> objects) {
+            this.objects = objects;
+        }
+
+        @Override
+        public void read(String key, long offset, ByteBuffer buffer)
+            throws IOException {
+            final byte[] object = objects.get(key);
+            if (offset + buffer.remaining() > object.length) {
+                throw new EOFException(key);
+            }
+            buffer.put(object, (int) offset, buffer.remaining());
+        }
+    }
+
+    private Map<String, byte[]> upload(Map<String, byte[]> files)
+        throws IOException {
+        return upload(files, null);
+    }
+
+    private Map<String, byte[]> upload(Map<String, byte[]> files,
+                                       BackupCipher cipher)
+        throws IOException {
+        final UploadEngineTest.MemoryPartWriter writer =
+            new UploadEngineTest.MemoryPartWriter();
+        final List<UploadEngine.FileUpload> uploads = new ArrayList<>();
+        for (Map.Entry<String, byte[]> entry : files.entrySet()) {
+            final File file = folder.newFile();
+            Files.write(file.toPath(), entry.getValue());
+            uploads.add(new UploadEngine.FileUpload(file, entry.getKey()));
+        }
+        UploadEngine.builder(writer)
+            .setConcurrentFiles(2)
+            .setConcurrentParts(2)
+            .setPartSize(4096)
+            .setChunkSize(1024)
+            .setReadMode(ChunkReader.Mode.CHANNEL)
+            .setCipher(cipher)
+            .build().upload("node-0", uploads);
+        return writer.objects;
+    }
+
+    private List<DownloadEngine.FileDownload> downloads(
+        Map<String, byte[]> objects) {
+        final List<DownloadEngine.FileDownload> downloads = new ArrayList<>();
+        for (Map.Entry<String, byte[]> entry : objects.entrySet()) {
+            downloads.add(new DownloadEngine.FileDownload(entry.getKey(),
+                entry.getValue().length,
+                new File(folder.getRoot(), "restored-" + entry.getKey())));
+        }
+        return downloads;
+    }
+
+    @Test
+    public void testDownloadRoundTrip() throws IOException {
+        final Map<String, byte[]> files = new TreeMap<>();
+        final Random random = new Random(0);
+        for (int i = 0; i < 8; i++) {
+            final byte[] bytes = new byte[i * 7000];
+            random.nextBytes(bytes);
+            files.put("key-" + i, bytes);
+        }
+        final Map<String, byte[]> objects = upload(files);
+
+        final DownloadEngine engine = DownloadEngine.builder(
+                new MemoryRangeReader(objects))
+            .setConcurrentFiles(2)
+            .setConcurrentParts(3)
+            .setPartBufferSize(PartEncoder.partBufferSize(4096, 1024))
+            .build();
+        final TransferStats stats = engine.download("node-0",
+            downloads(objects));
+
+        Assert.assertEquals(8, stats.getFiles());
+        Assert.assertEquals(0, stats.getFailedFiles());
+        for (Map.Entry<String, byte[]> entry : files.entrySet()) {
+            Assert.assertArrayEquals(entry.getValue(), Files.readAllBytes(
+                new File(folder.getRoot(), "restored-" + entry.getKey())
+                    .toPath()));
+        }
+    }
+
+    @Test
+    public void testPreIndexObjectIsRestored() throws IOException {
+        // Objects uploaded before the PartIndex are one Snappy stream.
+        final byte[] file = new byte[3 * 1024 * 1024 + 17];
+        new Random(3).nextBytes(file);
+        Arrays.fill(file, 0, 100000, (byte) 'a');
+        final ByteArrayOutputStream object = new ByteArrayOutputStream();
+        try (SnappyOutputStream out = new SnappyOutputStream(object)) {
+            out.write(file);
+        }
+        final Map<String, byte[]> objects = new TreeMap<>();
+        objects.put("legacy", object.toByteArray());
+        objects.put("empty", new byte[0]);
+
+        final DownloadEngine engine = DownloadEngine.builder(
+                new MemoryRangeReader(objects))
+            .setConcurrentFiles(2)
+            .setConcurrentParts(2)
+            .setPartBufferSize(PartEncoder.partBufferSize(4096, 1024))
+            .build();
+        final TransferStats stats = engine.download("node-0",
+            downloads(objects));
+
+        Assert.assertEquals(2, stats.getFiles());
+        Assert.assertEquals(0, stats.getFailedFiles());
+        Assert.assertArrayEquals(file, Files.readAllBytes(
+            new File(folder.getRoot(), "restored-legacy").toPath()));
+        Assert.assertEquals(0,
+            new File(folder.getRoot(), "restored-empty").length());
+        Assert.assertEquals(0, engine.verify("node-0",
+            downloads(objects)).getFailedFiles());
+    }
+
+    @Test
+    public void testCorruptPartFailsFile() throws IOException {
+        final Map<String, byte[]> files = new TreeMap<>();
+        final Random random = new Random(1);
+        for (String key : new String[]{"bad", "good"}) {
+            final byte[] bytes = new byte[20000];
+            random.nextBytes(bytes);
+            files.put(key, bytes);
+        }
+        final Map<String, byte[]> objects = upload(files);
+        objects.get("bad")[100] ^= 0xFF;
+
+        final DownloadEngine engine = DownloadEngine.builder(
+                new MemoryRangeReader(objects))
+            .setConcurrentFiles(2)
+            .setConcurrentParts(3)
+            .setPartBufferSize(PartEncoder.partBufferSize(4096, 1024))
+            .build();
+        final TransferStats stats = engine.download("node-0",
+            downloads(objects));
+
+        Assert.assertEquals(1, stats.getFiles());
+        Assert.assertEquals(1, stats.getFailedFiles());
+        Assert.assertTrue(DownloadEngine.progressFile(
+            new File(folder.getRoot(), "restored-bad")).exists());
+        Assert.assertArrayEquals(files.get("good"), Files.readAllBytes(
+            new File(folder.getRoot(), "restored-good").toPath()));
+    }
+
+    @Test
+    public void testFailedDownloadIsResumed() throws IOException {
+        final Map<String, byte[]> files = new TreeMap<>();
+        final byte[] bytes = new byte[20000];
+        new Random(2).nextBytes(bytes);
+        files.put("file", bytes);
+        final Map<String, byte[]> objects = upload(files);
+        final byte[] object = objects.get("file");
+        final int parts = PartIndex.parse(ByteBuffer.wrap(object))
+            .getEntries().size();
+        object[object.length - PartIndex.serializedSize(parts) - 1] ^= 0xFF;
+
+        final DownloadEngine engine = DownloadEngine.builder(
+                new MemoryRangeReader(objects))
+            .setConcurrentFiles(1)
+            .setConcurrentParts(1)
+            .setPartBufferSize(PartEncoder.partBufferSize(4096, 1024))
+            .build();
+        Assert.assertEquals(1, engine.download("node-0",
+            downloads(objects)).getFailedFiles());
+
+        object[object.length - PartIndex.serializedSize(parts) - 1] ^= 0xFF;
+        final TransferStats stats = engine.download("node-0",
+            downloads(objects));
+
+        final File restored = new File(folder.getRoot(), "restored-file");
+        Assert.assertEquals(0, stats.getFailedFiles());
+        Assert.assertEquals(parts - 1, stats.getResumedParts());
+        Assert.assertEquals(1, stats.getParts());
+        Assert.assertArrayEquals(bytes, Files.readAllBytes(restored.toPath()));
+        Assert.assertFalse(DownloadEngine.progressFile(restored).exists());
+    }
+
+    @Test
+    public void testEncryptedRoundTrip() throws IOException {
+        final BackupCipher cipher = new BackupCipher(new byte[32]);
+        final Map<String, byte[]> files = new TreeMap<>();
+        final byte[] bytes = new byte[30000];
+        new Random(4).nextBytes(bytes);
+        files.put("file", bytes);
+        final Map<String, byte[]> objects = upload(files, cipher);
+        final PartIndex index = PartIndex.parse(
+            ByteBuffer.wrap(objects.get("file")));
+        Assert.assertTrue(index.isEncrypted());
+        Assert.assertEquals(cipher.getKeyId(), index.getKeyId());
+        Assert.assertTrue(index.getEntries().size() > 1);
+
+        final DownloadEngine engine = DownloadEngine.builder(
+                new MemoryRangeReader(objects))
+            .setConcurrentFiles(1)
+            .setConcurrentParts(2)
+            .setPartBufferSize(PartEncoder.partBufferSize(4096, 1024))
+            .setCiphers(Arrays.asList(new BackupCipher(new byte[16]), cipher))
+            .build();
+        final TransferStats stats = engine.download("node-0",
+            downloads(objects));
+
+        Assert.assertEquals(1, stats.getFiles());
+        Assert.assertArrayEquals(bytes, Files.readAllBytes(
+            new File(folder.getRoot(), "restored-file").toPath()));
+
+        final DownloadEngine withoutKey = DownloadEngine.builder(
+                new MemoryRangeReader(objects))
+            .setConcurrentFiles(1)
+            .setConcurrentParts(2)
+            .setPartBufferSize(PartEncoder.partBufferSize(4096, 1024))
+            .setCiphers(Arrays.asList(new BackupCipher(new byte[16])))
+            .build();
+        Assert.assertEquals(1, withoutKey.verify("node-0",
+            downloads(objects)).getFailedFiles());
+    }
+
+    @Test
+    public void testEncryptedObjectCanNotBeMoved() throws IOException {
+        final BackupCipher cipher = new BackupCipher(new byte[32]);
+        final Map<String, byte[]> files = new TreeMap<>();
+        final byte[] bytes = new byte[30000];
+        new Random(5).nextBytes(bytes);
+        files.put("file", bytes);
+        final Map<String, byte[]> moved = new TreeMap<>();
+        moved.put("moved", upload(files, cipher).get("file"));
+
+        final DownloadEngine engine = DownloadEngine.builder(
+                new MemoryRangeReader(moved))
+            .setConcurrentFiles(1)
+            .setConcurrentParts(2)
+            .setPartBufferSize(PartEncoder.partBufferSize(4096, 1024))
+            .setCiphers(Arrays.asList(cipher))
+            .build();
+        Assert.assertEquals(1, engine.verify("node-0",
+            downloads(moved)).getFailedFiles());
+    }
+
+    @Test
+    public void testManifestMismatchFailsFile() throws IOException {
+        final Map<String, byte[]> files = new TreeMap<>();
+        files.put("file", new byte[10000]);
+        final Map<String, byte[]> objects = upload(files);
+        final File restored = new File(folder.getRoot(), "restored-file");
+
+        final DownloadEngine engine = DownloadEngine.builder(
+                new MemoryRangeReader(objects))
+            .setConcurrentFiles(1)
+            .setConcurrentParts(1)
+            .setPartBufferSize(PartEncoder.partBufferSize(4096, 1024))
+            .build();
+        final TransferStats stats = engine.download("node-0",
+            Arrays.asList(new DownloadEngine.FileDownload("file",
+                objects.get("file").length, restored, 10000,
+                Arrays.asList("00"))));
+
+        Assert.assertEquals(1, stats.getFailedFiles());
+        Assert.assertFalse(restored.exists());
+    }
+
+    @Test
+    public void testVerifyChecksWithoutWriting() throws IOException {
+        final Map<String, byte[]> files = new TreeMap<>();
+        final Random random = new Random(3);
+        for (String key : new String[]{"corrupt", "good", "mismatch"}) {
+            final byte[] bytes = new byte[20000];
+            random.nextBytes(bytes);
+            files.put(key, bytes);
+        }
+        final Map<String, byte[]> objects = upload(files);
+        objects.get("corrupt")[100] ^= 0xFF;
+        final List<DownloadEngine.FileDownload> downloads = new ArrayList<>();
+        for (Map.Entry<String, byte[]> entry : objects.entrySet()) {
+            final File file = folder.newFile("checksum-" + entry.getKey());
+            Files.write(file.toPath(), files.get(entry.getKey()));
+            final String checksum = entry.getKey().equals("mismatch") ?
+                "0" : BackupManifest.checksum(file);
+            downloads.add(new DownloadEngine.FileDownload(entry.getKey(),
+                entry.getValue().length,
+                new File(folder.getRoot(), "restored-" + entry.getKey()),
+                20000, new ArrayList<>(), checksum));
+        }
+
+        final DownloadEngine engine = DownloadEngine.builder(
+                new MemoryRangeReader(objects))
+            .setConcurrentFiles(2)
+            .setConcurrentParts(3)
+            .setPartBufferSize(PartEncoder.partBufferSize(4096, 1024))
+            .build();
+        final TransferStats stats = engine.verify("node-0", downloads);
+
+        Assert.assertEquals(1, stats.getFiles());
+        Assert.assertEquals(2, stats.getFailedFiles());
+        Assert.assertEquals(20000, stats.getBytes());
+        for (String key : files.keySet()) {
+            Assert.assertFalse(new File(folder.getRoot(), "restored-" + key)
+                .exists());
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupContext;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreContext;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * This class tests the FileStorageDriver class.
+ */
+public class FileStorageDriverTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private byte[] snapshotFile(File data, String backupName, String name)
+        throws IOException {
+        return snapshotFile(data, "ks/cf", backupName, name);
+    }
+
+    private byte[] snapshotFile(File data, String table, String backupName,
+                                String name) throws IOException {
+        final File snapshot = new File(data,
+            table + "/snapshots/" + backupName);
+        snapshot.mkdirs();
+        final byte[] bytes = new byte[100000];
+        new Random(name.hashCode()).nextBytes(bytes);
+        Files.write(new File(snapshot, name).toPath(), bytes);
+        return bytes;
+    }
+
+    private BackupContext backup(File data, File root, String name,
+                                 boolean incremental) {
+        return BackupContext.create("node-0", name,
+            root.toURI().toString(), data.getAbsolutePath(), "", "")
+            .mutable().setIncremental(incremental).setCluster("cassandra")
+            .build();
+    }
+
+    @Test
+    public void testUploadAndDownload() throws Exception {
+        final File data = folder.newFolder("data");
+        final File root = folder.newFolder("backups");
+        final byte[] bytes = snapshotFile(data, "backup-1",
+            "la-1-big-Data.db");
+
+        final FileStorageDriver driver = new FileStorageDriver();
+        driver.upload(backup(data, root, "backup-1", false));
+
+        final Path stored = root.toPath().resolve(
+            "backup-1/node-0/ks/cf/la-1-big-Data.db");
+        Assert.assertArrayEquals(bytes, Files.readAllBytes(stored));
+        Assert.assertFalse(new File(data,
+            "ks/cf/snapshots/backup-1/la-1-big-Data.db").exists());
+        final BackupManifest manifest = new FileManifestStore(root.toPath())
+            .read("backup-1/_manifests/node-0.json").get();
+        Assert.assertTrue(manifest.isComplete());
+        Assert.assertEquals(1, manifest.getComponents().size());
+        Assert.assertEquals("ks/cf/la-1-big-Data.db",
+            manifest.getComponents().get(0).getPath());
+        Assert.assertNull(manifest.getComponents().get(0).getCodec());
+        Assert.assertTrue(new FileManifestStore(root.toPath())
+            .read("_manifests/node-0.json").isPresent());
+
+        final File restore = folder.newFolder("restore");
+        driver.download(RestoreContext.create("node-0", "backup-1",
+            root.toURI().toString(), restore.getAbsolutePath(), "", "", 0));
+        Assert.assertArrayEquals(bytes, Files.readAllBytes(new File(restore,
+            "backup-1/node-0/ks/cf/la-1-big-Data.db").toPath()));
+    }
+
+    @Test
+    public void testIncrementalReferencesPreviousBackup() throws Exception {
+        final File data = folder.newFolder("data");
+        final File root = folder.newFolder("backups");
+        final FileStorageDriver driver = new FileStorageDriver();
+        snapshotFile(data, "backup-1", "la-1-big-Data.db");
+        driver.upload(backup(data, root, "backup-1", true));
+
+        snapshotFile(data, "backup-2", "la-1-big-Data.db");
+        snapshotFile(data, "backup-2", "la-2-big-Data.db");
+        driver.upload(backup(data, root, "backup-2", true));
+
+        Assert.assertFalse(root.toPath().resolve(
+            "backup-2/node-0/ks/cf/la-1-big-Data.db").toFile().exists());
+        final BackupManifest manifest = new FileManifestStore(root.toPath())
+            .read("backup-2/_manifests/node-0.json").get();
+        Assert.assertEquals(2, manifest.getComponents().size());
+        for (BackupManifest.Component component :
+            manifest.getComponents()) {
+            Assert.assertEquals(component.getPath().endsWith("la-1-big-Data.db") ?
+                    "backup-1/node-0/ks/cf/la-1-big-Data.db" :
+                    "backup-2/node-0/ks/cf/la-2-big-Data.db",
+                component.getKey());
+        }
+    }
+
+    @Test
+    public void testSelectedTables() throws Exception {
+        final File data = folder.newFolder("data");
+        final File root = folder.newFolder("backups");
+        final String other = "ks/other-0123456789abcdef0123456789abcdef";
+        snapshotFile(data, "backup-1", "la-1-big-Data.db");
+        snapshotFile(data, other, "backup-1", "la-1-big-Data.db");
+        snapshotFile(data, "ks2/cf", "backup-1", "la-1-big-Data.db");
+
+        final FileStorageDriver driver = new FileStorageDriver();
+        driver.upload(BackupContext.create("node-0", "backup-1",
+            root.toURI().toString(), data.getAbsolutePath(), "", "")
+            .mutable()
+            .setKeySpaces(Arrays.asList("ks"))
+            .setColumnFamilies(Arrays.asList("cf", "other"))
+            .build());
+
+        final BackupManifest manifest = new FileManifestStore(root.toPath())
+            .read("backup-1/_manifests/node-0.json").get();
+        Assert.assertEquals(2, manifest.getComponents().size());
+        Assert.assertTrue(new File(data,
+            "ks2/cf/snapshots/backup-1/la-1-big-Data.db").exists());
+
+        final File restore = folder.newFolder("restore");
+        driver.download(RestoreContext.create("node-0", "backup-1",
+            root.toURI().toString(), restore.getAbsolutePath(), "", "", 0,
+            false, 0, 0, 0, false, Collections.emptyList(),
+            Arrays.asList("other")));
+        Assert.assertTrue(new File(restore,
+            "backup-1/node-0/" + other + "/la-1-big-Data.db").exists());
+        Assert.assertFalse(new File(restore,
+            "backup-1/node-0/ks/cf/la-1-big-Data.db").exists());
+    }
+
+    @Test
+    public void testPruneKeepsReferencedFiles() throws Exception {
+        final File data = folder.newFolder("data");
+        final File root = folder.newFolder("backups");
+        final FileStorageDriver driver = new FileStorageDriver();
+        final long now = System.currentTimeMillis();
+        final long day = 24L * 60 * 60 * 1000;
+        snapshotFile(data, "backup-1", "la-0-big-Data.db");
+        snapshotFile(data, "backup-1", "la-1-big-Data.db");
+        driver.upload(backup(data, root, "backup-1", true));
+        setManifestTime(root, "backup-1", now - 3 * day);
+        snapshotFile(data, "backup-2", "la-1-big-Data.db");
+        snapshotFile(data, "backup-2", "la-2-big-Data.db");
+        driver.upload(backup(data, root, "backup-2", true));
+        setManifestTime(root, "backup-2", now - 2 * day);
+        snapshotFile(data, "backup-3", "la-1-big-Data.db");
+        snapshotFile(data, "backup-3", "la-2-big-Data.db");
+        final BackupContext third = backup(data, root, "backup-3", true)
+            .withRetention(1, 0);
+        driver.upload(third);
+        setManifestTime(root, "backup-3", now - 60 * 60 * 1000);
+
+        // backup-3 references files of both expired backups.
+        Assert.assertEquals(1, driver.prune(third));
+        final Path nodeDirectory = root.toPath().resolve("backup-1/node-0");
+        Assert.assertFalse(nodeDirectory.resolve("ks/cf/la-0-big-Data.db")
+            .toFile().exists());
+        Assert.assertTrue(nodeDirectory.resolve("ks/cf/la-1-big-Data.db")
+            .toFile().exists());
+        final BackupManifest expired = new FileManifestStore(root.toPath())
+            .read("backup-2/_manifests/node-0.json").get();
+        Assert.assertFalse(expired.isComplete());
+        Assert.assertEquals(1, expired.getComponents().size());
+
+        // A full backup references nothing, so the rest is deleted.
+        snapshotFile(data, "backup-4", "la-1-big-Data.db");
+        final BackupContext fourth = backup(data, root, "backup-4", false)
+            .withRetention(1, 0);
+        driver.upload(fourth);
+        driver.prune(fourth);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("backup-4",
+            "_manifests")), new HashSet<>(Arrays.asList(root.list())));
+    }
+
+    @Test
+    public void testPruneKeepsShippedFilesOfKeptBackups() throws Exception {
+        final File data = folder.newFolder("data");
+        final File root = folder.newFolder("backups");
+        final FileStorageDriver driver = new FileStorageDriver();
+        final long now = System.currentTimeMillis();
+        final long day = 24L * 60 * 60 * 1000;
+        snapshotFile(data, "backup-1", "la-1-big-Data.db");
+        final BackupContext first = backup(data, root, "backup-1", true);
+        driver.upload(first);
+        setManifestTime(root, "backup-1", now - 3 * day);
+        // The next backup references the file shipped to the first.
+        final byte[] bytes = snapshotFile(data, "backup-2",
+            "la-2-big-Data.db");
+        final File shipped = folder.newFile("la-2-big-Data.db");
+        Files.write(shipped.toPath(), bytes);
+        driver.uploadIncremental(first, Collections.singletonMap(
+            "ks/cf/la-2-big-Data.db", shipped));
+        setManifestTime(root, "backup-1", now - 3 * day);
+        final BackupContext second = backup(data, root, "backup-2", true)
+            .withRetention(1, 0);
+        driver.upload(second);
+        Assert.assertFalse(root.toPath().resolve(
+            "backup-2/node-0/ks/cf/la-2-big-Data.db").toFile().exists());
+
+        Assert.assertEquals(2, driver.prune(second));
+        Assert.assertTrue(root.toPath().resolve(
+            "backup-1/node-0/ks/cf/la-2-big-Data.db").toFile().exists());
+        Assert.assertFalse(root.toPath().resolve(driver
+            .getIncrementalManifestKey("backup-1", "node-0")).toFile()
+            .exists());
+    }
+
+    @Test
+    public void testPruneOnlyDeletesBackupsOfCluster() throws Exception {
+        final File data = folder.newFolder("data");
+        final File root = folder.newFolder("backups");
+        final FileStorageDriver driver = new FileStorageDriver();
+        final long now = System.currentTimeMillis();
+        final long day = 24L * 60 * 60 * 1000;
+        snapshotFile(data, "backup-1", "la-1-big-Data.db");
+        driver.upload(backup(data, root, "backup-1", false)
+            .withCluster("other"));
+        setManifestTime(root, "backup-1", now - 3 * day);
+        final Path unmanaged = root.toPath().resolve(
+            "backup-2/node-0/ks/cf/la-2-big-Data.db");
+        Files.createDirectories(unmanaged.getParent());
+        Files.write(unmanaged, new byte[100]);
+        Files.setLastModifiedTime(unmanaged,
+            FileTime.fromMillis(now - 2 * day));
+        snapshotFile(data, "backup-3", "la-3-big-Data.db");
+        final BackupContext third = backup(data, root, "backup-3", false)
+            .withRetention(1, 0);
+        driver.upload(third);
+
+        // Neither the backup of the other cluster nor the backup without a
+        // manifest expires.
+        Assert.assertEquals(0, driver.prune(third));
+        Assert.assertTrue(root.toPath().resolve(
+            "backup-1/node-0/ks/cf/la-1-big-Data.db").toFile().exists());
+        Assert.assertTrue(unmanaged.toFile().exists());
+        Assert.assertEquals("other", new FileManifestStore(root.toPath())
+            .read("backup-1/_manifests/node-0.json").get().getCluster());
+    }
+
+    private void setManifestTime(File root, String backupName, long time)
+        throws IOException {
+        Files.setLastModifiedTime(root.toPath().resolve(backupName +
+            "/_manifests/node-0.json"), FileTime.fromMillis(time));
+    }
+
+    @Test
+    public void testTransferCopiesOrLinks() throws IOException {
+        final Path source = folder.newFile().toPath();
+        final byte[] bytes = new byte[3 * 1024 * 1024 + 17];
+        new Random(0).nextBytes(bytes);
+        Files.write(source, bytes);
+        final TransferStats stats = new TransferStats("node-0");
+
+        final Path copy = folder.getRoot().toPath().resolve("copy/file");
+        Assert.assertFalse(FileStorageDriver.transfer(source, copy, false,
+            BandwidthThrottle.UNLIMITED, stats));
+        Assert.assertArrayEquals(bytes, Files.readAllBytes(copy));
+        Assert.assertEquals(bytes.length, stats.getTransferredBytes());
+
+        final Path link = folder.getRoot().toPath().resolve("link/file");
+        Assert.assertTrue(FileStorageDriver.transfer(source, link, true,
+            BandwidthThrottle.UNLIMITED, stats));
+        Assert.assertTrue(Files.isSameFile(source, link));
+        Assert.assertEquals(bytes.length, stats.getTransferredBytes());
+        Assert.assertFalse(Files.exists(link.resolveSibling("file.tmp")));
+    }
+
+    @Test
+    public void testGetRoot() throws URISyntaxException {
+        final FileStorageDriver driver = new FileStorageDriver();
+        Assert.assertEquals("/mnt/backups", driver.getRoot(
+            BackupContext.create("node-0", "backup-1",
+                "file:///mnt/backups", "", "", "")).toString());
+        Assert.assertEquals("_manifests/node-0.json",
+            driver.getManifestKey("", "node-0"));
+        Assert.assertEquals("backup-1/_manifests/node-0.json",
+            driver.getManifestKey("backup-1", "node-0"));
+    }
+}
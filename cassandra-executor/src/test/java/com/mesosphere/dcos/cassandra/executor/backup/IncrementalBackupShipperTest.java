@@ -0,0 +1,253 @@
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupContext;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreContext;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+
+/**
+ * This class tests the IncrementalBackupShipper class.
+ */
+public class IncrementalBackupShipperTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private void write(File directory, String... names) throws IOException {
+        directory.mkdirs();
+        for (String name : names) {
+            Files.write(new File(directory, name).toPath(),
+                name.getBytes("UTF-8"));
+        }
+    }
+
+    @Test
+    public void testShipsIntoIncrementalManifest() throws Exception {
+        final File data = folder.newFolder("data");
+        final File root = folder.newFolder("backups");
+        final FileStorageDriver driver = new FileStorageDriver();
+        final FileManifestStore manifests = new FileManifestStore(
+            root.toPath());
+        final BackupManifest snapshot = new BackupManifest("backup-1",
+            "node-0", true, Collections.emptyList());
+        manifests.write(driver.getManifestKey("backup-1", "node-0"),
+            snapshot);
+        manifests.write(driver.getManifestKey("", "node-0"), snapshot);
+        final File backups = new File(data, "ks/cf-1234/backups");
+        write(backups, "la-1-big-Data.db", "la-1-big-Index.db",
+            "la-2-big-Data.db", "la-2-big-Index.db", "la-3-big-Data.db");
+
+        // At most two SSTables fit in a batch.
+        final IncrementalBackupShipper shipper = new IncrementalBackupShipper(
+            folder.newFolder("shipper").toPath(), 4, Long.MAX_VALUE, 1000);
+        shipper.start(BackupContext.create("node-0", "backup-1",
+            root.toURI().toString(), data.getAbsolutePath(), "", ""), driver);
+        try (WatchService watcher = FileSystems.getDefault()
+            .newWatchService()) {
+            shipper.scan(watcher, 0);
+            Assert.assertEquals(0, shipper.ship(500));
+            Assert.assertEquals(5, shipper.ship(1000));
+        }
+        Assert.assertEquals(0, backups.list().length);
+        Assert.assertEquals(5, shipper.getShippedFiles());
+        Assert.assertTrue(new File(root,
+            "backup-1/node-0/ks/cf-1234/la-3-big-Data.db").isFile());
+
+        // The manifests of the backup are not changed.
+        Assert.assertEquals(snapshot.toString(), manifests.read(
+            driver.getManifestKey("backup-1", "node-0")).get().toString());
+        Assert.assertEquals(snapshot.toString(), manifests.read(
+            driver.getManifestKey("", "node-0")).get().toString());
+        final BackupManifest incremental = manifests.read(
+            driver.getIncrementalManifestKey("backup-1", "node-0")).get();
+        Assert.assertEquals(snapshot.digest(), incremental.getBase());
+        Assert.assertEquals(5, incremental.getComponents().size());
+
+        // Shipped files are only restored when the restore asks for them.
+        final File snapshotOnly = folder.newFolder("snapshot-only");
+        driver.download(RestoreContext.create("node-0", "backup-1",
+            root.toURI().toString(), snapshotOnly.getAbsolutePath(), "", "",
+            0, false, 0, 0, 0, false, Collections.emptyList(),
+            Collections.emptyList()));
+        Assert.assertFalse(new File(snapshotOnly,
+            "backup-1/node-0/ks/cf-1234/la-3-big-Data.db").exists());
+        final File withIncremental = folder.newFolder("with-incremental");
+        driver.download(RestoreContext.create("node-0", "backup-1",
+            root.toURI().toString(), withIncremental.getAbsolutePath(), "",
+            "", 0, false, 0, 0, 0, true, Collections.emptyList(),
+            Collections.emptyList()));
+        Assert.assertTrue(new File(withIncremental,
+            "backup-1/node-0/ks/cf-1234/la-3-big-Data.db").isFile());
+    }
+
+    @Test
+    public void testIgnoresIncrementalManifestOfOlderUpload()
+        throws Exception {
+        final File data = folder.newFolder("data");
+        final File root = folder.newFolder("backups");
+        final FileStorageDriver driver = new FileStorageDriver();
+        final BackupContext context = snapshot(data, root);
+        final File backups = new File(data, "ks/cf-1234/backups");
+        write(backups, "la-1-big-Data.db");
+        final IncrementalBackupShipper shipper = new IncrementalBackupShipper(
+            folder.newFolder("shipper").toPath(), 4, Long.MAX_VALUE, 0);
+        shipper.start(context, driver);
+        try (WatchService watcher = FileSystems.getDefault()
+            .newWatchService()) {
+            shipper.scan(watcher, 0);
+            Assert.assertEquals(1, shipper.ship(0));
+        }
+
+        // The backup is uploaded again, so the files shipped to the older
+        // upload are not part of it.
+        final FileManifestStore manifests = new FileManifestStore(
+            root.toPath());
+        manifests.write(driver.getManifestKey("backup-1", "node-0"),
+            new BackupManifest("backup-1", "node-0", true,
+                Collections.singletonList(BackupManifest.Component.local(
+                    "ks/cf-1234/la-0-big-Data.db", 1, "0"))));
+        write(backups, "la-2-big-Data.db");
+        try (WatchService watcher = FileSystems.getDefault()
+            .newWatchService()) {
+            shipper.scan(watcher, 0);
+            Assert.assertEquals(1, shipper.ship(0));
+        }
+        final BackupManifest incremental = manifests.read(
+            driver.getIncrementalManifestKey("backup-1", "node-0")).get();
+        Assert.assertEquals(1, incremental.getComponents().size());
+        Assert.assertEquals("ks/cf-1234/la-2-big-Data.db",
+            incremental.getComponents().get(0).getPath());
+    }
+
+    @Test
+    public void testKeepsFilesWhenShippingFails() throws Exception {
+        final File data = folder.newFolder("data");
+        final File root = folder.newFolder("backups");
+        final File backups = new File(data, "ks/cf-1234/backups");
+        write(backups, "la-1-big-Data.db");
+
+        // The backup has no manifest, so the batch can not be added to it.
+        final IncrementalBackupShipper shipper = new IncrementalBackupShipper(
+            folder.newFolder("shipper").toPath(), 4, Long.MAX_VALUE, 0);
+        shipper.start(BackupContext.create("node-0", "backup-1",
+            root.toURI().toString(), data.getAbsolutePath(), "", ""), new FileStorageDriver());
+        try (WatchService watcher = FileSystems.getDefault()
+            .newWatchService()) {
+            shipper.scan(watcher, 0);
+            Assert.assertEquals(0, shipper.ship(0));
+        }
+        Assert.assertEquals(1, shipper.getFailedBatches());
+        Assert.assertEquals(1, shipper.getPendingDirectories());
+        Assert.assertTrue(new File(backups, "la-1-big-Data.db").isFile());
+    }
+
+    /**
+     * Deletes the table of a backups directory just before it is watched,
+     * as if the table was dropped after it was scanned.
+     */
+    private static class DroppingShipper extends IncrementalBackupShipper {
+        private final File dropped;
+
+        DroppingShipper(File directory, File dropped) {
+            super(directory.toPath(), 4, Long.MAX_VALUE, 0);
+            this.dropped = dropped;
+        }
+
+        @Override
+        WatchKey watch(WatchService watcher, Path backups) throws IOException {
+            if (backups.toFile().equals(dropped)) {
+                for (File file : dropped.listFiles()) {
+                    file.delete();
+                }
+                dropped.delete();
+                dropped.getParentFile().delete();
+            }
+            return super.watch(watcher, backups);
+        }
+    }
+
+    private BackupContext snapshot(File data, File root) throws IOException {
+        final FileStorageDriver driver = new FileStorageDriver();
+        final FileManifestStore manifests = new FileManifestStore(
+            root.toPath());
+        final BackupManifest snapshot = new BackupManifest("backup-1",
+            "node-0", true, Collections.emptyList());
+        manifests.write(driver.getManifestKey("backup-1", "node-0"),
+            snapshot);
+        manifests.write(driver.getManifestKey("", "node-0"), snapshot);
+        return BackupContext.create("node-0", "backup-1",
+            root.toURI().toString(), data.getAbsolutePath(), "", "");
+    }
+
+    @Test
+    public void testScanSkipsDroppedTable() throws Exception {
+        final File data = folder.newFolder("data");
+        final File root = folder.newFolder("backups");
+        final File dropped = new File(data, "ks/cf-1/backups");
+        final File kept = new File(data, "ks/cf-2/backups");
+        write(dropped, "la-1-big-Data.db");
+        write(kept, "la-2-big-Data.db");
+
+        final IncrementalBackupShipper shipper = new DroppingShipper(
+            folder.newFolder("shipper"), dropped);
+        shipper.start(snapshot(data, root), new FileStorageDriver());
+        try (WatchService watcher = FileSystems.getDefault()
+            .newWatchService()) {
+            shipper.scan(watcher, 0);
+            Assert.assertEquals(1, shipper.ship(0));
+        }
+        Assert.assertEquals(0, kept.list().length);
+        Assert.assertTrue(new File(root,
+            "backup-1/node-0/ks/cf-2/la-2-big-Data.db").isFile());
+    }
+
+    @Test
+    public void testKeepsRunningWhenTableIsDropped() throws Exception {
+        final File data = folder.newFolder("data");
+        final File root = folder.newFolder("backups");
+        final File dropped = new File(data, "ks/cf-1/backups");
+        final File kept = new File(data, "ks/cf-2/backups");
+        write(dropped, "la-1-big-Data.db");
+        write(kept, "la-2-big-Data.db");
+
+        final IncrementalBackupShipper shipper = new DroppingShipper(
+            folder.newFolder("shipper"), dropped);
+        shipper.start(snapshot(data, root), new FileStorageDriver());
+        final Thread thread = new Thread(shipper);
+        thread.start();
+        try {
+            waitForShippedFiles(shipper, 1);
+            // Files linked later are still shipped.
+            write(kept, "la-3-big-Data.db");
+            waitForShippedFiles(shipper, 2);
+            Assert.assertTrue(thread.isAlive());
+        } finally {
+            thread.interrupt();
+            thread.join(10000);
+        }
+        Assert.assertTrue(new File(root,
+            "backup-1/node-0/ks/cf-2/la-3-big-Data.db").isFile());
+    }
+
+    private static void waitForShippedFiles(IncrementalBackupShipper shipper,
+                                            long files)
+        throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 30000;
+        while (shipper.getShippedFiles() < files &&
+            System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(files, shipper.getShippedFiles());
+    }
+}
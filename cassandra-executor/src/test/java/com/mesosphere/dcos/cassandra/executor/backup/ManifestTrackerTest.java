@@ -0,0 +1,151 @@
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class tests the ManifestTracker class.
+ */
+public class ManifestTrackerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * ManifestStore that keeps the manifests in memory.
+     */
+    static class MemoryManifestStore implements ManifestStore {
+        final Map<String, byte[]> manifests = new ConcurrentHashMap<>();
+
+        @Override
+        public Optional<BackupManifest> read(String key) throws IOException {
+            final byte[] bytes = manifests.get(key);
+            return (bytes == null) ? Optional.empty() :
+                Optional.of(BackupManifest.parse(bytes));
+        }
+
+        @Override
+        public void write(String key, BackupManifest manifest)
+            throws IOException {
+            manifests.put(key, manifest.toBytes());
+        }
+    }
+
+    private List<UploadEngine.FileUpload> snapshot(String... names)
+        throws IOException {
+        final List<UploadEngine.FileUpload> uploads = new ArrayList<>();
+        for (String name : names) {
+            final File file = new File(folder.getRoot(), name);
+            if (!file.exists()) {
+                final byte[] bytes = new byte[10000];
+                new Random(name.hashCode()).nextBytes(bytes);
+                Files.write(file.toPath(), bytes);
+            }
+            uploads.add(new UploadEngine.FileUpload(file, "node-0/ks/cf/" +
+                name));
+        }
+        return uploads;
+    }
+
+    @Test
+    public void testRetryResumesFromCheckpoint() throws IOException {
+        final MemoryManifestStore store = new MemoryManifestStore();
+        final AtomicBoolean fail = new AtomicBoolean(true);
+        final UploadEngineTest.MemoryPartWriter writer =
+            new UploadEngineTest.MemoryPartWriter() {
+                @Override
+                public String writePart(String key, String uploadId,
+                                        int partNumber, ByteBuffer data,
+                                        byte[] md5) throws IOException {
+                    if (fail.get() && key.endsWith("bad")) {
+                        throw new IllegalStateException("injected");
+                    }
+                    return super.writePart(key, uploadId, partNumber, data,
+                        md5);
+                }
+            };
+        final UploadEngine engine = UploadEngine.builder(writer)
+            .setConcurrentFiles(2)
+            .setConcurrentParts(2)
+            .setPartSize(4096)
+            .setChunkSize(1024)
+            .build();
+
+        final ManifestTracker first = new ManifestTracker(store, "manifest",
+            "backup-0", "node-0", Long.MAX_VALUE);
+        final List<UploadEngine.FileUpload> selected = first.select(
+            snapshot("good", "bad"), "node-0", Optional.empty());
+        Assert.assertEquals(2, selected.size());
+        Assert.assertEquals(1, engine.upload("node-0", selected,
+            first::uploaded).getFailedFiles());
+        first.checkpoint();
+        Assert.assertFalse(store.read("manifest").get().isComplete());
+
+        // The uploaded file was deleted, only the failed file is retried.
+        Assert.assertFalse(new File(folder.getRoot(), "good").exists());
+        final ManifestTracker second = new ManifestTracker(store, "manifest",
+            "backup-0", "node-0", Long.MAX_VALUE);
+        final List<UploadEngine.FileUpload> retried = second.select(
+            snapshot("bad"), "node-0", Optional.empty());
+        Assert.assertEquals(1, retried.size());
+        fail.set(false);
+        Assert.assertEquals(0, engine.upload("node-0", retried,
+            second::uploaded).getFailedFiles());
+
+        final BackupManifest manifest = second.complete();
+        Assert.assertTrue(manifest.isComplete());
+        Assert.assertEquals(2, manifest.getComponents().size());
+        for (String path : Arrays.asList("ks/cf/good", "ks/cf/bad")) {
+            final BackupManifest.Component component = manifest.getComponents()
+                .stream().filter(c -> c.getPath().equals(path)).findFirst()
+                .get();
+            Assert.assertEquals("node-0/" + path, component.getKey());
+            Assert.assertEquals(10000, component.getSize());
+            Assert.assertFalse(component.getParts().isEmpty());
+            Assert.assertTrue(writer.objects.containsKey(component.getKey()));
+        }
+        Assert.assertTrue(store.read("manifest").get().isComplete());
+    }
+
+    @Test
+    public void testIncrementalReferencesPreviousManifest()
+        throws IOException {
+        final List<UploadEngine.FileUpload> uploads = snapshot("old", "new");
+        final File old = uploads.get(0).getFile();
+        final BackupManifest.Component stored = BackupManifest.Component
+            .local("ks/cf/old", old.length(), BackupManifest.checksum(old));
+        final BackupManifest previous = new BackupManifest("backup-0",
+            "node-0", true, Arrays.asList(new BackupManifest.Component(
+            stored.getPath(), stored.getSize(), stored.getChecksum(),
+            "backup-0/node-0/ks/cf/old", 100, "snappy",
+            Arrays.asList("00"))));
+        final ManifestTracker tracker = new ManifestTracker(
+            new MemoryManifestStore(), "manifest", "backup-1", "node-0",
+            Long.MAX_VALUE);
+
+        final List<UploadEngine.FileUpload> selected = tracker.select(
+            uploads, "node-0", Optional.of(previous));
+
+        Assert.assertEquals(Arrays.asList(uploads.get(1)), selected);
+        try {
+            tracker.complete();
+            Assert.fail("Expected pending files to prevent completion");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
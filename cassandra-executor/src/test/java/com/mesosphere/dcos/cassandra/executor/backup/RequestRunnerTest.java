@@ -0,0 +1,110 @@
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class tests the RequestRunner class.
+ */
+public class RequestRunnerTest {
+
+    private static final RetryPolicy FAST = new RetryPolicy(3, 1, 5, true);
+
+    @Test
+    public void testRetry() throws Exception {
+        final TransferStats stats = new TransferStats("node-0");
+        final AtomicInteger calls = new AtomicInteger();
+        try (RequestRunner runner = new RequestRunner(FAST, stats)) {
+            final String response = runner.execute("retry", hedge -> {
+                if (calls.incrementAndGet() < 3) {
+                    throw new IOException("injected");
+                }
+                return "done";
+            });
+            Assert.assertEquals("done", response);
+        }
+        Assert.assertEquals(3, calls.get());
+        Assert.assertEquals(2, stats.getRetries());
+
+        calls.set(0);
+        try (RequestRunner runner = new RequestRunner(FAST, stats)) {
+            runner.execute("exhausted", hedge -> {
+                calls.incrementAndGet();
+                throw new IOException("injected");
+            });
+            Assert.fail("Expected the last failure");
+        } catch (IOException e) {
+            Assert.assertEquals("injected", e.getMessage());
+        }
+        Assert.assertEquals(FAST.getMaxAttempts(), calls.get());
+
+        calls.set(0);
+        try (RequestRunner runner = new RequestRunner(FAST, stats)) {
+            runner.execute("eof", hedge -> {
+                calls.incrementAndGet();
+                throw new EOFException("truncated");
+            });
+            Assert.fail("Expected the EOFException");
+        } catch (EOFException e) {
+            Assert.assertEquals(1, calls.get());
+        }
+    }
+
+    @Test
+    public void testHedge() throws Exception {
+        final TransferStats stats = new TransferStats("node-0");
+        final AtomicInteger settled = new AtomicInteger();
+        final CountDownLatch slow = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        try (RequestRunner runner = new RequestRunner(FAST, stats)) {
+            Assert.assertEquals(-1, runner.hedgeDelayMs());
+            for (int i = 0; i < RequestRunner.MIN_LATENCY_SAMPLES; i++) {
+                runner.executeHedged("warm up", hedge -> "fast",
+                    settled::incrementAndGet);
+            }
+            Assert.assertEquals(RequestRunner.MIN_LATENCY_SAMPLES,
+                settled.get());
+            Assert.assertEquals(RequestRunner.MIN_HEDGE_DELAY_MS,
+                runner.hedgeDelayMs());
+
+            settled.set(0);
+            final String response = runner.executeHedged("slow", hedge -> {
+                if (hedge) {
+                    return "hedge";
+                }
+                try {
+                    slow.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "slow";
+            }, () -> {
+                settled.incrementAndGet();
+                done.countDown();
+            });
+            Assert.assertEquals("hedge", response);
+            Assert.assertEquals(1, stats.getHedges());
+            Assert.assertEquals(1, stats.getHedgeWins());
+            // The slow request still holds the buffer.
+            Assert.assertEquals(0, settled.get());
+            slow.countDown();
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1, settled.get());
+        }
+
+        try (RequestRunner runner = new RequestRunner(RetryPolicy.NONE,
+            stats)) {
+            for (int i = 0; i < RequestRunner.MIN_LATENCY_SAMPLES; i++) {
+                runner.executeHedged("unhedged", hedge -> "fast", () -> {
+                });
+            }
+            Assert.assertEquals(-1, runner.hedgeDelayMs());
+        }
+    }
+}
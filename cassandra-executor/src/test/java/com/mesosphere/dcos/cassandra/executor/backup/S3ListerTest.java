@@ -0,0 +1,147 @@
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * This class tests the S3Lister class.
+ */
+public class S3ListerTest {
+
+    /**
+     * Lists keys like S3: pages hold at most max keys entries, and only
+     * delimited listings return a next marker.
+     */
+    private static class FakeS3Client extends AmazonS3Client {
+        private final TreeSet<String> keys = new TreeSet<>();
+        private final AtomicInteger requests = new AtomicInteger();
+
+        @Override
+        public ObjectListing listObjects(ListObjectsRequest request) {
+            requests.incrementAndGet();
+            final ObjectListing listing = new ObjectListing();
+            listing.setPrefix(request.getPrefix());
+            final List<String> prefixes = new ArrayList<>();
+            final String start = (request.getMarker() == null) ?
+                request.getPrefix() : request.getMarker();
+            String last = null;
+            for (String key : keys.tailSet(start, false)) {
+                if (!key.startsWith(request.getPrefix())) {
+                    break;
+                }
+                final String entry;
+                final int index = (request.getDelimiter() == null) ? -1 :
+                    key.indexOf(request.getDelimiter(),
+                        request.getPrefix().length());
+                if (index >= 0) {
+                    entry = key.substring(0, index + 1);
+                    if (entry.equals(last) ||
+                        (request.getMarker() != null &&
+                            entry.compareTo(request.getMarker()) <= 0)) {
+                        continue;
+                    }
+                } else {
+                    entry = key;
+                }
+                if (listing.getObjectSummaries().size() + prefixes.size() ==
+                    request.getMaxKeys()) {
+                    listing.setTruncated(true);
+                    if (request.getDelimiter() != null) {
+                        listing.setNextMarker(last);
+                    }
+                    break;
+                }
+                if (index >= 0) {
+                    prefixes.add(entry);
+                } else {
+                    final S3ObjectSummary summary = new S3ObjectSummary();
+                    summary.setKey(key);
+                    summary.setSize(key.length());
+                    listing.getObjectSummaries().add(summary);
+                }
+                last = entry;
+            }
+            listing.setCommonPrefixes(prefixes);
+            return listing;
+        }
+    }
+
+    private FakeS3Client client(final int tables, final int files) {
+        final FakeS3Client client = new FakeS3Client();
+        client.keys.add("backup/node-1/ks0/cf0/la-1-big-Data.db");
+        client.keys.add("backup/node-0/schema.cql");
+        for (int table = 0; table < tables; table++) {
+            for (int file = 0; file < files; file++) {
+                client.keys.add(String.format(
+                    "backup/node-0/ks%d/cf%d/la-%d-big-Data.db",
+                    table % 2, table, file));
+            }
+        }
+        return client;
+    }
+
+    @Test
+    public void testListAdvancesMarker() {
+        final FakeS3Client client = client(3, 10);
+        final List<S3ObjectSummary> objects = new S3Lister(client, "bucket",
+            1, 7).list("backup/node-0/");
+        Assert.assertEquals(31, objects.size());
+        Assert.assertEquals(5, client.requests.get());
+        Assert.assertEquals(31, new TreeSet<>(objects.stream()
+            .map(S3ObjectSummary::getKey)
+            .collect(Collectors.toList())).size());
+    }
+
+    @Test
+    public void testListByPrefixReturnsBatchPerTable() throws Exception {
+        final FakeS3Client client = client(5, 4);
+        final List<List<S3ObjectSummary>> batches = new ArrayList<>();
+        try (S3Lister.Listing listing = new S3Lister(client, "bucket", 4, 3)
+            .listByPrefix("backup/node-0/")) {
+            Optional<List<S3ObjectSummary>> batch;
+            while ((batch = listing.next()).isPresent()) {
+                batches.add(batch.get());
+            }
+            Assert.assertFalse(listing.next().isPresent());
+        }
+
+        Assert.assertEquals(6, batches.size());
+        int objects = 0;
+        for (List<S3ObjectSummary> batch : batches) {
+            objects += batch.size();
+            final String first = batch.get(0).getKey();
+            final String directory = first.substring(0,
+                first.lastIndexOf('/') + 1);
+            for (S3ObjectSummary object : batch) {
+                Assert.assertTrue(object.getKey().startsWith(directory));
+                Assert.assertTrue(object.getKey().startsWith(
+                    "backup/node-0/"));
+            }
+        }
+        Assert.assertEquals(21, objects);
+    }
+
+    @Test
+    public void testNextMarkerWithoutDelimiter() {
+        final ObjectListing page = new ObjectListing();
+        final S3ObjectSummary summary = new S3ObjectSummary();
+        summary.setKey("backup/node-0/ks/cf/la-9-big-Data.db");
+        page.getObjectSummaries().add(summary);
+        page.setTruncated(true);
+        Assert.assertEquals("backup/node-0/ks/cf/la-9-big-Data.db",
+            S3Lister.nextMarker(page));
+        page.setNextMarker("backup/node-0/ks/");
+        Assert.assertEquals("backup/node-0/ks/", S3Lister.nextMarker(page));
+    }
+}
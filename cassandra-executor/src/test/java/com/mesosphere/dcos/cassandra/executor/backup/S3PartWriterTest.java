@@ -0,0 +1,120 @@
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import org.apache.commons.codec.binary.Hex;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class tests the S3PartWriter class.
+ */
+public class S3PartWriterTest {
+
+    private static final RetryPolicy FAST = new RetryPolicy(3, 1, 5, false);
+
+    /**
+     * Stores uploaded parts and answers with the MD5 of their content as
+     * the ETag, except for the first wrongTags uploads, which are answered
+     * with a wrong ETag.
+     */
+    private static class FakeS3Client extends AmazonS3Client {
+        private final List<byte[]> uploads = new ArrayList<>();
+        private int wrongTags;
+
+        FakeS3Client(final int wrongTags) {
+            this.wrongTags = wrongTags;
+        }
+
+        @Override
+        public UploadPartResult uploadPart(UploadPartRequest request) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (InputStream in = request.getInputStream()) {
+                final byte[] buffer = new byte[1024];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            final byte[] bytes = out.toByteArray();
+            uploads.add(bytes);
+            final UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag((wrongTags-- > 0) ?
+                "\"00000000000000000000000000000000\"" :
+                "\"" + md5Hex(bytes) + "\"");
+            return result;
+        }
+    }
+
+    private static String md5Hex(final byte[] bytes) {
+        return new String(Hex.encodeHex(PartEncoder.md5().digest(bytes)));
+    }
+
+    private static ByteBuffer part(final byte[] bytes) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void testWritePartReturnsETag() throws IOException {
+        final byte[] bytes = "part".getBytes(StandardCharsets.UTF_8);
+        final FakeS3Client client = new FakeS3Client(0);
+        final S3PartWriter writer = new S3PartWriter(client, "bucket");
+
+        final String tag = writer.writePart("key", "upload", 1,
+            part(bytes), PartEncoder.md5().digest(bytes));
+
+        Assert.assertEquals(md5Hex(bytes), tag);
+        Assert.assertEquals(1, client.uploads.size());
+    }
+
+    @Test
+    public void testWrongETagIsRetryable() {
+        final byte[] bytes = "part".getBytes(StandardCharsets.UTF_8);
+        final S3PartWriter writer = new S3PartWriter(new FakeS3Client(1),
+            "bucket");
+        try {
+            writer.writePart("key", "upload", 1, part(bytes),
+                PartEncoder.md5().digest(bytes));
+            Assert.fail("Expected the wrong ETag to fail the part");
+        } catch (IOException e) {
+            Assert.assertTrue(RetryPolicy.isRetryable(e));
+        }
+    }
+
+    @Test
+    public void testWrongETagResendsPart() throws IOException {
+        final byte[] bytes = "part".getBytes(StandardCharsets.UTF_8);
+        final byte[] md5 = PartEncoder.md5().digest(bytes);
+        final ByteBuffer data = part(bytes);
+        final FakeS3Client client = new FakeS3Client(1);
+        final S3PartWriter writer = new S3PartWriter(client, "bucket");
+        final TransferStats stats = new TransferStats("node-0");
+
+        final String tag;
+        try (RequestRunner runner = new RequestRunner(FAST, stats)) {
+            tag = runner.execute("upload part", hedge ->
+                writer.writePart("key", "upload", 1, data, md5));
+        }
+
+        Assert.assertEquals(md5Hex(bytes), tag);
+        Assert.assertEquals(1, stats.getRetries());
+        // The whole part was sent again.
+        Assert.assertEquals(2, client.uploads.size());
+        Assert.assertArrayEquals(bytes, client.uploads.get(1));
+    }
+}
@@ -123,4 +123,29 @@ public class S3StorageDriverTest {
                 "secret-key");
         Assert.assertEquals(endpoint, s3StorageDriver.getEndpoint(backupContext));
     }
+
+    @Test
+    public void testGetManifestKeys() throws URISyntaxException {
+        String backupName = "backup-name";
+        BackupContext backupContext = BackupContext.create(
+                "node-0",
+                backupName,
+                "s3://cassandrabackup/backups",
+                "local-location",
+                "account-id",
+                "secret-key")
+                .mutable().setIncremental(true).build();
+        Assert.assertEquals("backups/_manifests/node-0.json",
+                s3StorageDriver.getManifestKey(
+                        s3StorageDriver.getBaseKey(backupContext), "node-0"));
+        Assert.assertEquals("backups/" + backupName + "/_manifests/node-0.json",
+                s3StorageDriver.getManifestKey(
+                        s3StorageDriver.getPrefixKey(backupContext), "node-0"));
+        Assert.assertEquals("_manifests/node-0.json",
+                s3StorageDriver.getManifestKey("", "node-0"));
+        Assert.assertEquals("backups/" + backupName +
+                        "/_manifests/node-0.incremental.json",
+                s3StorageDriver.getIncrementalManifestKey(
+                        s3StorageDriver.getPrefixKey(backupContext), "node-0"));
+    }
 }
@@ -0,0 +1,88 @@
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * This class tests the SSTableFiles class.
+ */
+public class SSTableFilesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private void write(File directory, String... names) throws IOException {
+        for (String name : names) {
+            Files.write(new File(directory, name).toPath(),
+                name.getBytes("UTF-8"));
+        }
+    }
+
+    @Test
+    public void testGeneration() {
+        Assert.assertEquals(Optional.of(12),
+            SSTableFiles.generation("la-12-big-Data.db"));
+        Assert.assertEquals(Optional.of(3),
+            SSTableFiles.generation("ks-cf-ka-3-Index.db"));
+        Assert.assertEquals(Optional.empty(),
+            SSTableFiles.generation("manifest.json"));
+    }
+
+    @Test
+    public void testTableName() {
+        Assert.assertEquals("users", SSTableFiles.tableName(
+            "users-5a1c395e4a2b11e6b2b0e10b5a1c395e"));
+        Assert.assertEquals("users", SSTableFiles.tableName("users"));
+        Assert.assertEquals("user-events", SSTableFiles.tableName(
+            "user-events"));
+    }
+
+    @Test
+    public void testFindTableDirectory() throws IOException {
+        final File keyspace = folder.newFolder("ks");
+        final File table = new File(keyspace,
+            "users-5a1c395e4a2b11e6b2b0e10b5a1c395e");
+        table.mkdirs();
+        new File(keyspace, "events-5a1c395e4a2b11e6b2b0e10b5a1c395e")
+            .mkdirs();
+
+        Assert.assertEquals(table,
+            SSTableFiles.findTableDirectory(keyspace, "users"));
+        try {
+            SSTableFiles.findTableDirectory(keyspace, "missing");
+            Assert.fail("Expected IOException");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testMoveSSTablesRenumbersGenerations() throws IOException {
+        final File source = folder.newFolder("source");
+        final File target = folder.newFolder("target");
+        write(target, "la-1-big-Data.db", "la-1-big-Index.db",
+            "la-4-big-Data.db");
+        write(source, "la-1-big-Data.db", "la-1-big-Index.db",
+            "la-2-big-Data.db", "manifest.json");
+
+        Assert.assertEquals(2, SSTableFiles.moveSSTables(source, target));
+
+        final String[] moved = target.list();
+        Arrays.sort(moved);
+        Assert.assertArrayEquals(new String[]{"la-1-big-Data.db",
+            "la-1-big-Index.db", "la-4-big-Data.db", "la-5-big-Data.db",
+            "la-5-big-Index.db", "la-6-big-Data.db"}, moved);
+        Assert.assertEquals("la-1-big-Index.db", new String(
+            Files.readAllBytes(new File(target, "la-5-big-Index.db")
+                .toPath()), "UTF-8"));
+        Assert.assertArrayEquals(new String[]{"manifest.json"},
+            source.list());
+    }
+}
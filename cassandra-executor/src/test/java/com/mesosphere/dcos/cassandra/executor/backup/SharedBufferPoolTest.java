@@ -0,0 +1,83 @@
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This class tests the SharedBufferPool class.
+ */
+public class SharedBufferPoolTest {
+
+    private static final int KB = 1024;
+
+    @Test
+    public void testClosedReservationBuffersAreReused() throws Exception {
+        final SharedBufferPool pool = new SharedBufferPool(64 * KB);
+        final SharedBufferPool.Reservation first = pool.reserve(2, KB, 4,
+            8 * KB);
+        Assert.assertEquals(2, first.getChunkPool().getCount());
+        Assert.assertEquals(4, first.getPartPool().getCount());
+        Assert.assertEquals(34 * KB, pool.getReserved());
+        first.close();
+        Assert.assertEquals(0, pool.getReserved());
+
+        final SharedBufferPool.Reservation second = pool.reserve(2, KB, 4,
+            8 * KB);
+        Assert.assertEquals(34 * KB, pool.getAllocated());
+        second.close();
+    }
+
+    @Test
+    public void testReservationIsReducedToCapacity() throws Exception {
+        final SharedBufferPool pool = new SharedBufferPool(20 * KB);
+        final SharedBufferPool.Reservation reservation = pool.reserve(4, KB,
+            8, 4 * KB);
+        Assert.assertEquals(4, reservation.getChunkPool().getCount());
+        Assert.assertEquals(4, reservation.getPartPool().getCount());
+        Assert.assertTrue(pool.getReserved() <= pool.getCapacity());
+        reservation.close();
+    }
+
+    @Test
+    public void testReserveWaitsForClose() throws Exception {
+        final SharedBufferPool pool = new SharedBufferPool(16 * KB);
+        final SharedBufferPool.Reservation first = pool.reserve(1, KB, 1,
+            8 * KB);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<SharedBufferPool.Reservation> second =
+                executor.submit(() -> pool.reserve(1, KB, 1, 8 * KB));
+            try {
+                second.get(200, TimeUnit.MILLISECONDS);
+                Assert.fail("Reservation exceeded the capacity of the pool");
+            } catch (TimeoutException expected) {
+            }
+            first.close();
+            second.get(5, TimeUnit.SECONDS).close();
+            Assert.assertEquals(0, pool.getReserved());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBufferInUseIsReturnedOnRelease() throws Exception {
+        final SharedBufferPool pool = new SharedBufferPool(16 * KB);
+        final SharedBufferPool.Reservation reservation = pool.reserve(1, KB,
+            2, 4 * KB);
+        final ByteBuffer buffer = reservation.getPartPool().acquire();
+        reservation.close();
+        Assert.assertEquals(4 * KB, pool.getReserved());
+        Assert.assertTrue(reservation.getPartPool().release(buffer));
+        Assert.assertEquals(0, pool.getReserved());
+        Assert.assertFalse(reservation.getPartPool().release(buffer));
+        Assert.assertEquals(0, pool.getReserved());
+    }
+}
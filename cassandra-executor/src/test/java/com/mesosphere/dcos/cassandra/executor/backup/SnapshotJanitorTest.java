@@ -0,0 +1,123 @@
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupContext;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class tests the SnapshotJanitor class.
+ */
+public class SnapshotJanitorTest {
+
+    private static final long GRACE_MS = 1000;
+    private static final long MAX_AGE_MS = 100000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> cleared = new ArrayList<>();
+
+    private BackupContext context(File data, String name) {
+        return BackupContext.create("node-0", name, "file:///backups",
+            data.getAbsolutePath(), "", "");
+    }
+
+    private File snapshot(File data, String name) throws IOException {
+        final File table = new File(data, "ks/table-1");
+        final File directory = new File(table, "snapshots/" + name);
+        directory.mkdirs();
+        // One SSTable is still live, the other was compacted away.
+        final File live = new File(table, "ks-table-ka-1-Data.db");
+        Files.write(live.toPath(), new byte[100]);
+        Files.createLink(new File(directory, live.getName()).toPath(),
+            live.toPath());
+        Files.write(new File(directory, "ks-table-ka-2-Data.db").toPath(),
+            new byte[1000]);
+        return directory;
+    }
+
+    private SnapshotJanitor janitor(File data) {
+        return new SnapshotJanitor(folder.getRoot().toPath().resolve(
+            "janitor"), GRACE_MS, MAX_AGE_MS, () -> true, name -> {
+            cleared.add(name);
+            for (File directory : SnapshotJanitor.snapshotDirectories(
+                new SnapshotJanitor.Snapshot(name, data.getAbsolutePath(),
+                    0, -1))) {
+                for (File file : directory.listFiles()) {
+                    file.delete();
+                }
+                directory.delete();
+            }
+        });
+    }
+
+    @Test
+    public void testFailedBackupIsCleared() throws IOException {
+        final File data = folder.newFolder("data");
+        final File directory = snapshot(data, "backup-1");
+        final SnapshotJanitor janitor = janitor(data);
+
+        janitor.track(context(data, "backup-1"));
+        Assert.assertEquals(0,
+            janitor.collect(System.currentTimeMillis() + MAX_AGE_MS));
+        janitor.done("backup-1", false);
+        Assert.assertEquals(0, janitor.collect(System.currentTimeMillis()));
+        Assert.assertTrue(directory.isDirectory());
+
+        // Only the SSTable that is not live takes space.
+        Assert.assertEquals(1000,
+            janitor.collect(System.currentTimeMillis() + GRACE_MS));
+        Assert.assertFalse(directory.exists());
+        Assert.assertEquals(1, cleared.size());
+        Assert.assertEquals(0, janitor.getTrackedSnapshots());
+        Assert.assertEquals(1000, janitor.getReclaimedBytes());
+    }
+
+    @Test
+    public void testOwnedSnapshotIsKept() throws IOException {
+        final File data = folder.newFolder("data");
+        snapshot(data, "backup-1");
+        snapshot(data, "backup-2");
+        SnapshotJanitor janitor = janitor(data);
+
+        janitor.track(context(data, "backup-1"));
+        janitor.done("backup-1", true);
+        // A newer backup releases the snapshot of the previous one.
+        janitor.track(context(data, "backup-2"));
+        janitor.done("backup-2", true);
+
+        // The tracked snapshots survive a restart.
+        janitor = janitor(data);
+        Assert.assertEquals(2, janitor.getTrackedSnapshots());
+        janitor.acquire(context(data, "backup-2"));
+        janitor.collect(System.currentTimeMillis() + MAX_AGE_MS);
+        Assert.assertEquals(1, cleared.size());
+        Assert.assertEquals("backup-1", cleared.get(0));
+
+        janitor.cleared("backup-2");
+        Assert.assertEquals(0, janitor.getTrackedSnapshots());
+    }
+
+    @Test
+    public void testStoppedBackupIsCleared() throws IOException {
+        final File data = folder.newFolder("data");
+        snapshot(data, "backup-1");
+        final SnapshotJanitor janitor = janitor(data);
+
+        janitor.track(context(data, "backup-1"));
+        janitor.done("backup-1", true);
+        Assert.assertEquals(0,
+            janitor.collect(System.currentTimeMillis() + GRACE_MS));
+        Assert.assertEquals(1000,
+            janitor.collect(System.currentTimeMillis() + MAX_AGE_MS));
+        Assert.assertEquals(1, janitor.getClearedSnapshots());
+    }
+}
@@ -0,0 +1,350 @@
+package com.mesosphere.dcos.cassandra.executor.backup;
+
+import com.mesosphere.dcos.cassandra.executor.compress.CompressionDrivers;
+import com.mesosphere.dcos.cassandra.executor.compress.NoCompressionDriver;
+import org.apache.commons.codec.binary.Hex;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class tests the UploadEngine class.
+ */
+public class UploadEngineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * PartWriter that keeps the parts of each object in memory.
+     */
+    static class MemoryPartWriter implements PartWriter {
+        final Map<String, Map<Integer, byte[]>> uploads =
+            new ConcurrentHashMap<>();
+        final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+        final AtomicInteger aborted = new AtomicInteger();
+
+        @Override
+        public String initiate(String key) {
+            uploads.put(key, new TreeMap<>());
+            return key;
+        }
+
+        @Override
+        public String writePart(String key, String uploadId, int partNumber,
+                                ByteBuffer data, byte[] md5)
+            throws IOException {
+            final byte[] bytes = new byte[data.remaining()];
+            data.duplicate().get(bytes);
+            final Map<Integer, byte[]> parts = uploads.get(uploadId);
+            synchronized (parts) {
+                parts.put(partNumber, bytes);
+            }
+            return new String(Hex.encodeHex(md5));
+        }
+
+        @Override
+        public Optional<String> findUpload(String key) {
+            return uploads.containsKey(key) ? Optional.of(key) :
+                Optional.empty();
+        }
+
+        @Override
+        public Map<Integer, String> listParts(String key, String uploadId) {
+            final Map<Integer, String> tags = new TreeMap<>();
+            final Map<Integer, byte[]> parts = uploads.get(uploadId);
+            synchronized (parts) {
+                for (Map.Entry<Integer, byte[]> part : parts.entrySet()) {
+                    tags.put(part.getKey(), new String(Hex.encodeHex(
+                        PartEncoder.md5().digest(part.getValue()))));
+                }
+            }
+            return tags;
+        }
+
+        @Override
+        public void complete(String key, String uploadId, List<String> tags)
+            throws IOException {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (byte[] part : uploads.remove(uploadId).values()) {
+                out.write(part);
+            }
+            objects.put(key, out.toByteArray());
+        }
+
+        @Override
+        public void abort(String key, String uploadId) {
+            uploads.remove(uploadId);
+            aborted.incrementAndGet();
+        }
+    }
+
+    private File createFile(String name, int size, long seed)
+        throws IOException {
+        final byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        final File file = folder.newFile(name);
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+
+    private byte[] decode(byte[] object) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(object.length);
+        buffer.put(object);
+        buffer.flip();
+        final PartIndex index = PartIndex.parse(buffer);
+        final ByteBuffer chunk = ByteBuffer.allocateDirect(
+            PartEncoder.DEFAULT_CHUNK_SIZE);
+        final File file = folder.newFile();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.WRITE)) {
+            for (PartIndex.Entry entry : index.getEntries()) {
+                final ByteBuffer part = buffer.duplicate();
+                part.position((int) entry.getObjectOffset());
+                part.limit(part.position() + entry.getLength());
+                PartDecoder.verify(entry, part);
+                PartDecoder.decode(entry, part, chunk, channel,
+                    CompressionDrivers.forId(index.getCodec()));
+            }
+        }
+        Assert.assertEquals(file.length(), index.getRawSize());
+        return Files.readAllBytes(file.toPath());
+    }
+
+    @Test
+    public void testUploadManyFilesWithSmallPool() throws IOException {
+        final MemoryPartWriter writer = new MemoryPartWriter();
+        final UploadEngine engine = UploadEngine.builder(writer)
+            .setConcurrentFiles(2)
+            .setConcurrentParts(2)
+            .setPartSize(1024)
+            .build();
+        final List<UploadEngine.FileUpload> uploads = new ArrayList<>();
+        final Map<String, byte[]> expected = new TreeMap<>();
+        for (int i = 0; i < 10; i++) {
+            final File file = createFile("file-" + i, i * 3000, i);
+            expected.put("key-" + i, Files.readAllBytes(file.toPath()));
+            uploads.add(new UploadEngine.FileUpload(file, "key-" + i));
+        }
+
+        final TransferStats stats = engine.upload("node-0", uploads);
+
+        Assert.assertEquals(10, stats.getFiles());
+        Assert.assertEquals(0, stats.getFailedFiles());
+        Assert.assertEquals(expected.size(), writer.objects.size());
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            final byte[] uploaded = decode(
+                writer.objects.get(entry.getKey()));
+            Assert.assertArrayEquals(entry.getValue(), uploaded);
+        }
+        for (UploadEngine.FileUpload upload : uploads) {
+            Assert.assertFalse(upload.getFile().exists());
+        }
+    }
+
+    @Test
+    public void testOversizedIndexReleasesPartOnce() throws IOException {
+        // Enough single frame parts that the index exceeds INDEX_RESERVE.
+        final int partSize = 64;
+        final File file = createFile("many-parts", 2000 * partSize, 7);
+        final BufferPool pool = new BufferPool(1,
+            PartEncoder.partBufferSize(partSize, partSize));
+        final AtomicInteger outstanding = new AtomicInteger();
+        final List<ByteBuffer> parts = new ArrayList<>();
+        final PartEncoder.PartHandler handler = new PartEncoder.PartHandler() {
+            @Override
+            public ByteBuffer acquire() throws IOException {
+                try {
+                    final ByteBuffer buffer = pool.acquire();
+                    outstanding.incrementAndGet();
+                    return buffer;
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            @Override
+            public void release(ByteBuffer buffer) {
+                if (pool.release(buffer)) {
+                    outstanding.decrementAndGet();
+                }
+            }
+
+            @Override
+            public void accept(int partNumber, ByteBuffer part, byte[] md5) {
+                final ByteBuffer copy = ByteBuffer.allocate(part.remaining());
+                copy.put(part.duplicate()).flip();
+                parts.add(copy);
+                release(part);
+            }
+        };
+
+        final PartIndex index;
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.READ)) {
+            index = new PartEncoder(partSize, partSize).encode(channel,
+                ByteBuffer.allocateDirect(partSize),
+                CompressionDrivers.forId(NoCompressionDriver.ID), handler);
+        }
+
+        Assert.assertTrue(index.getSerializedSize() >
+            PartEncoder.INDEX_RESERVE);
+        Assert.assertEquals(index.getEntries().size(), parts.size());
+        Assert.assertEquals(0, outstanding.get());
+        Assert.assertEquals(1, pool.getAvailable());
+        Assert.assertEquals(index.getEntries().size(), PartIndex.parse(
+            parts.get(parts.size() - 1)).getEntries().size());
+    }
+
+    @Test
+    public void testMappedUpload() throws IOException {
+        final MemoryPartWriter writer = new MemoryPartWriter();
+        final UploadEngine engine = UploadEngine.builder(writer)
+            .setConcurrentFiles(2)
+            .setConcurrentParts(2)
+            .setPartSize(1024)
+            .setChunkSize(1024)
+            .setReadMode(ChunkReader.Mode.MAPPED)
+            .build();
+        final File file = createFile("mapped", 20000, 2);
+        final byte[] expected = Files.readAllBytes(file.toPath());
+
+        final TransferStats stats = engine.upload("node-0",
+            Arrays.asList(new UploadEngine.FileUpload(file, "mapped")));
+
+        Assert.assertEquals(1, stats.getFiles());
+        Assert.assertArrayEquals(expected,
+            decode(writer.objects.get("mapped")));
+    }
+
+    @Test
+    public void testFailedPartIsResumed() throws IOException {
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger written = new AtomicInteger();
+        final MemoryPartWriter writer = new MemoryPartWriter() {
+            @Override
+            public String writePart(String key, String uploadId,
+                                    int partNumber, ByteBuffer data,
+                                    byte[] md5) throws IOException {
+                if (key.equals("bad") && partNumber == 2 &&
+                    failures.getAndIncrement() == 0) {
+                    throw new IllegalStateException("injected");
+                }
+                if (key.equals("bad")) {
+                    written.incrementAndGet();
+                }
+                return super.writePart(key, uploadId, partNumber, data, md5);
+            }
+        };
+        final UploadEngine engine = UploadEngine.builder(writer)
+            .setConcurrentFiles(2)
+            .setConcurrentParts(1)
+            .setPartSize(1024)
+            .setChunkSize(1024)
+            .build();
+        final File bad = createFile("bad", 20000, 1);
+        final byte[] expected = Files.readAllBytes(bad.toPath());
+
+        final TransferStats stats = engine.upload("node-0",
+            Arrays.asList(new UploadEngine.FileUpload(bad, "bad")));
+
+        Assert.assertEquals(1, stats.getFiles());
+        Assert.assertEquals(0, stats.getFailedFiles());
+        Assert.assertTrue(stats.getResumedParts() >= 1);
+        Assert.assertEquals(0, writer.aborted.get());
+        final PartIndex index = PartIndex.parse(
+            ByteBuffer.wrap(writer.objects.get("bad")));
+        // Every part written before the failure was resumed, not rewritten.
+        Assert.assertEquals(index.getEntries().size(), written.get());
+        Assert.assertArrayEquals(expected, decode(writer.objects.get("bad")));
+    }
+
+    @Test
+    public void testFailedPartIsRetried() throws IOException {
+        final AtomicInteger failures = new AtomicInteger();
+        final MemoryPartWriter writer = new MemoryPartWriter() {
+            @Override
+            public String writePart(String key, String uploadId,
+                                    int partNumber, ByteBuffer data,
+                                    byte[] md5) throws IOException {
+                if (partNumber == 2 && failures.getAndIncrement() == 0) {
+                    throw new IOException("injected");
+                }
+                return super.writePart(key, uploadId, partNumber, data, md5);
+            }
+        };
+        final UploadEngine engine = UploadEngine.builder(writer)
+            .setConcurrentFiles(1)
+            .setConcurrentParts(1)
+            .setPartSize(1024)
+            .setChunkSize(1024)
+            .setReadMode(ChunkReader.Mode.CHANNEL)
+            .setRetryPolicy(new RetryPolicy(3, 1, 5, true))
+            .build();
+        final File file = createFile("retried", 20000, 1);
+        final byte[] expected = Files.readAllBytes(file.toPath());
+
+        final TransferStats stats = engine.upload("node-0",
+            Arrays.asList(new UploadEngine.FileUpload(file, "retried")));
+
+        Assert.assertEquals(1, stats.getFiles());
+        Assert.assertEquals(1, stats.getRetries());
+        // The part was retried on its own, so the file was not restarted.
+        Assert.assertEquals(0, stats.getResumedParts());
+        Assert.assertArrayEquals(expected,
+            decode(writer.objects.get("retried")));
+    }
+
+    @Test
+    public void testFailedFileKeepsUpload() throws IOException {
+        final MemoryPartWriter writer = new MemoryPartWriter() {
+            @Override
+            public String writePart(String key, String uploadId,
+                                    int partNumber, ByteBuffer data,
+                                    byte[] md5) throws IOException {
+                if (key.equals("bad") && partNumber == 2) {
+                    throw new IllegalStateException("injected");
+                }
+                return super.writePart(key, uploadId, partNumber, data, md5);
+            }
+        };
+        final UploadEngine engine = UploadEngine.builder(writer)
+            .setConcurrentFiles(2)
+            .setConcurrentParts(2)
+            .setPartSize(1024)
+            .build();
+        final List<UploadEngine.FileUpload> uploads = new ArrayList<>();
+        final File bad = createFile("bad", 20000, 1);
+        final File good = createFile("good", 20000, 2);
+        uploads.add(new UploadEngine.FileUpload(bad, "bad"));
+        uploads.add(new UploadEngine.FileUpload(good, "good"));
+
+        final TransferStats stats = engine.upload("node-0", uploads);
+
+        Assert.assertEquals(1, stats.getFiles());
+        Assert.assertEquals(1, stats.getFailedFiles());
+        Assert.assertEquals(0, writer.aborted.get());
+        Assert.assertTrue(writer.uploads.containsKey("bad"));
+        Assert.assertTrue(bad.exists());
+        Assert.assertFalse(good.exists());
+        Assert.assertTrue(writer.objects.containsKey("good"));
+    }
+}
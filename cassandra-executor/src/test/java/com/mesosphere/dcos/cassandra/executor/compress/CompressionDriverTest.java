@@ -0,0 +1,107 @@
+package com.mesosphere.dcos.cassandra.executor.compress;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class tests the CompressionDriver implementations and the
+ * CompressionPolicy class.
+ */
+public class CompressionDriverTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final List<String> CODECS = Arrays.asList("none",
+        "snappy", "lz4", "zstd", "zstd:9");
+
+    private static byte[] data() {
+        final byte[] bytes = new byte[100000];
+        new Random(0).nextBytes(bytes);
+        Arrays.fill(bytes, 50000, bytes.length, (byte) 7);
+        return bytes;
+    }
+
+    @Test
+    public void testBlockRoundTrip() throws IOException {
+        final byte[] bytes = data();
+        for (String codec : CODECS) {
+            final CompressionDriver driver = CompressionDrivers.create(codec);
+            final ByteBuffer source = ByteBuffer.allocateDirect(bytes.length);
+            source.put(bytes).flip();
+            final ByteBuffer compressed = ByteBuffer.allocateDirect(
+                driver.maxCompressedLength(bytes.length));
+            final int length = driver.compress(source, compressed);
+            Assert.assertFalse(source.hasRemaining());
+            Assert.assertEquals(length, compressed.position());
+            compressed.flip();
+
+            final ByteBuffer raw = ByteBuffer.allocateDirect(bytes.length);
+            driver.decompress(compressed, raw, bytes.length);
+            Assert.assertFalse(raw.hasRemaining());
+            raw.flip();
+            final byte[] decoded = new byte[bytes.length];
+            raw.get(decoded);
+            Assert.assertArrayEquals(codec, bytes, decoded);
+            Assert.assertEquals(driver.getClass(),
+                CompressionDrivers.forId(driver.getId()).getClass());
+        }
+    }
+
+    @Test
+    public void testStreamRoundTrip() throws IOException {
+        final byte[] bytes = data();
+        for (String codec : CODECS) {
+            final CompressionDriver driver = CompressionDrivers.create(codec);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (OutputStream compress = driver.compress(out)) {
+                compress.write(bytes);
+            }
+            try (InputStream in = driver.decompress(
+                new ByteArrayInputStream(out.toByteArray()))) {
+                Assert.assertArrayEquals(codec, bytes, IOUtils.toByteArray(in));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCodec() {
+        CompressionPolicy.parse("gzip");
+    }
+
+    @Test
+    public void testAdaptivePolicySkipsCompressedData() throws IOException {
+        final File compressed = folder.newFile("la-1-big-Data.db");
+        folder.newFile("la-1-big-CompressionInfo.db");
+        final File uncompressed = folder.newFile("la-2-big-Data.db");
+        final File index = folder.newFile("la-1-big-Index.db");
+
+        final CompressionPolicy adaptive = CompressionPolicy.parse(null);
+        Assert.assertTrue(adaptive.isAdaptive());
+        Assert.assertEquals(NoCompressionDriver.NAME,
+            adaptive.select(compressed).getName());
+        Assert.assertEquals(LZ4CompressionDriver.NAME,
+            adaptive.select(uncompressed).getName());
+        Assert.assertEquals(LZ4CompressionDriver.NAME,
+            adaptive.select(index).getName());
+
+        final CompressionPolicy zstd = CompressionPolicy.parse("zstd:6");
+        Assert.assertFalse(zstd.isAdaptive());
+        Assert.assertEquals(6,
+            ((ZstdCompressionDriver) zstd.select(compressed)).getLevel());
+    }
+}
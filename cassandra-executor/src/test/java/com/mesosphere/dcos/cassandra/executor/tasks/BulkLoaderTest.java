@@ -0,0 +1,75 @@
+package com.mesosphere.dcos.cassandra.executor.tasks;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class tests the BulkLoader class.
+ */
+public class BulkLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File loader() throws IOException {
+        // Writes more output than a pipe buffer holds before it exits, and
+        // fails for tables named bad.
+        final File script = folder.newFile("sstableloader");
+        Files.write(script.toPath(), ("#!/bin/sh\n" +
+            "for i in $(seq 1 2000); do\n" +
+            "  echo \"progress: [/127.0.0.1]0:1/1 $i% total: $i%\"\n" +
+            "done\n" +
+            "echo \"loaded $@\" 1>&2\n" +
+            "case \"$1$2$3$4$5$6$7$8\" in *bad) exit 3;; esac\n")
+            .getBytes("UTF-8"));
+        script.setExecutable(true);
+        return script;
+    }
+
+    @Test
+    public void testCommand() {
+        final BulkLoader.Table table = new BulkLoader.Table("ks", "cf",
+            new File("/restore/ks/cf"));
+        Assert.assertEquals(Arrays.asList("sstableloader", "-d",
+            "10.0.0.1", "-f", "cassandra.yaml", "/restore/ks/cf"),
+            new BulkLoader("sstableloader", "cassandra.yaml", "10.0.0.1",
+                2, 0).command(table));
+        Assert.assertEquals(Arrays.asList("sstableloader", "-d",
+            "10.0.0.1", "-f", "cassandra.yaml", "--throttle", "40",
+            "/restore/ks/cf"),
+            new BulkLoader("sstableloader", "cassandra.yaml", "10.0.0.1",
+                2, 40).command(table));
+    }
+
+    @Test
+    public void testThrottleMbits() {
+        Assert.assertEquals(0, BulkLoader.throttleMbits(0, 2));
+        Assert.assertEquals(40, BulkLoader.throttleMbits(10, 2));
+        Assert.assertEquals(1, BulkLoader.throttleMbits(1, 16));
+    }
+
+    @Test
+    public void testLoadReportsEachTable() throws Exception {
+        final BulkLoader loader = new BulkLoader(
+            loader().getAbsolutePath(), "cassandra.yaml", "127.0.0.1", 2, 0);
+        final List<BulkLoader.Result> results = loader.load(Arrays.asList(
+            new BulkLoader.Table("ks", "good", folder.newFolder("good")),
+            new BulkLoader.Table("ks", "bad", folder.newFolder("bad")),
+            new BulkLoader.Table("ks", "other", folder.newFolder("other"))));
+
+        Assert.assertEquals(3, results.size());
+        Assert.assertTrue(results.get(0).isSuccess());
+        Assert.assertEquals(3, results.get(1).getExitCode());
+        Assert.assertEquals("bad", results.get(1).getTable().getName());
+        Assert.assertTrue(results.get(1).getOutput().contains("loaded"));
+        Assert.assertTrue(results.get(2).isSuccess());
+    }
+}
@@ -0,0 +1,162 @@
+package com.mesosphere.dcos.cassandra.executor.tasks;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class tests the RestorePipeline class.
+ */
+public class RestorePipelineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File download(final File file, final int size)
+        throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), new byte[size]);
+        return file;
+    }
+
+    private static List<String> list(final File directory) {
+        final List<String> paths = new ArrayList<>();
+        for (File keyspace : directory.listFiles()) {
+            for (File columnFamily : keyspace.listFiles()) {
+                for (File file : columnFamily.listFiles()) {
+                    paths.add(keyspace.getName() + "/" +
+                        columnFamily.getName() + "/" + file.getName());
+                }
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    @Test
+    public void testLoadsCompleteSSTablesUnderLimit() throws Exception {
+        final File node = folder.newFolder("node-0");
+        final File table = new File(node, "ks/cf");
+        final List<List<String>> batches = new ArrayList<>();
+        final AtomicLong maxUsed = new AtomicLong();
+        final RestorePipeline[] holder = new RestorePipeline[1];
+        final RestorePipeline pipeline = new RestorePipeline(100,
+            new File(folder.getRoot(), "staging"), directory -> {
+            maxUsed.set(Math.max(maxUsed.get(), holder[0].getUsedBytes()));
+            synchronized (batches) {
+                batches.add(list(directory));
+            }
+        });
+        holder[0] = pipeline;
+
+        for (int generation = 1; generation <= 4; generation++) {
+            final File data = new File(table,
+                "la-" + generation + "-big-Data.db");
+            final File index = new File(table,
+                "la-" + generation + "-big-Index.db");
+            pipeline.admit(data, 40);
+            pipeline.admit(index, 10);
+            Assert.assertTrue(pipeline.getUsedBytes() <= 100);
+            pipeline.downloaded(download(index, 10));
+            pipeline.downloaded(download(data, 40));
+        }
+        final File manifest = new File(table, "manifest.json");
+        pipeline.admit(manifest, 5);
+        pipeline.downloaded(download(manifest, 5));
+        pipeline.finish();
+
+        final List<String> loaded = new ArrayList<>();
+        for (List<String> batch : batches) {
+            Assert.assertFalse(batch.isEmpty());
+            loaded.addAll(batch);
+        }
+        Collections.sort(loaded);
+        Assert.assertEquals(8, loaded.size());
+        Assert.assertEquals("ks/cf/la-1-big-Data.db", loaded.get(0));
+        Assert.assertTrue(maxUsed.get() <= 100);
+        Assert.assertEquals(0, pipeline.getUsedBytes());
+        Assert.assertEquals(0, table.listFiles().length);
+        Assert.assertFalse(new File(folder.getRoot(), "staging").exists());
+    }
+
+    @Test
+    public void testAdmitsSSTableLargerThanLimit() throws Exception {
+        final File table = new File(folder.newFolder("node-0"), "ks/cf");
+        final List<String> loaded = new ArrayList<>();
+        final RestorePipeline pipeline = new RestorePipeline(10,
+            new File(folder.getRoot(), "staging"),
+            directory -> loaded.addAll(list(directory)));
+
+        final File data = new File(table, "la-1-big-Data.db");
+        final File index = new File(table, "la-1-big-Index.db");
+        pipeline.admit(data, 40);
+        pipeline.admit(index, 10);
+        Assert.assertEquals(50, pipeline.getUsedBytes());
+        pipeline.downloaded(download(data, 40));
+        pipeline.downloaded(download(index, 10));
+        pipeline.finish();
+
+        Assert.assertEquals(2, loaded.size());
+    }
+
+    @Test
+    public void testFailedDownloadSkipsSSTable() throws Exception {
+        final File table = new File(folder.newFolder("node-0"), "ks/cf");
+        final List<String> loaded = new ArrayList<>();
+        final RestorePipeline pipeline = new RestorePipeline(100,
+            new File(folder.getRoot(), "staging"),
+            directory -> loaded.addAll(list(directory)));
+
+        final File data1 = new File(table, "la-1-big-Data.db");
+        final File data2 = new File(table, "la-2-big-Data.db");
+        final File index2 = new File(table, "la-2-big-Index.db");
+        pipeline.admit(data1, 10);
+        pipeline.admit(data2, 10);
+        pipeline.admit(index2, 10);
+        pipeline.downloaded(download(data1, 10));
+        pipeline.downloaded(download(data2, 10));
+        pipeline.failed(index2);
+        try {
+            pipeline.finish();
+            Assert.fail("Expected the failed download to be reported");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("1 files"));
+        }
+
+        Assert.assertEquals(Collections.singletonList(
+            "ks/cf/la-1-big-Data.db"), loaded);
+        Assert.assertFalse(data2.exists());
+    }
+
+    @Test
+    public void testLoaderFailureIsReported() throws Exception {
+        final File table = new File(folder.newFolder("node-0"), "ks/cf");
+        final RestorePipeline pipeline = new RestorePipeline(10,
+            new File(folder.getRoot(), "staging"), directory -> {
+            throw new IOException("sstableloader failed");
+        });
+
+        for (int generation = 1; generation <= 3; generation++) {
+            final File data = new File(table,
+                "la-" + generation + "-big-Data.db");
+            pipeline.admit(data, 10);
+            pipeline.downloaded(download(data, 10));
+        }
+        try {
+            pipeline.finish();
+            Assert.fail("Expected the load failure to be reported");
+        } catch (IOException e) {
+            Assert.assertEquals("sstableloader failed",
+                e.getCause().getMessage());
+        }
+    }
+}
@@ -13,7 +13,10 @@ import com.mesosphere.dcos.cassandra.scheduler.offer.PersistentOperationRecorder
 import com.mesosphere.dcos.cassandra.scheduler.plan.CassandraStage;
 import com.mesosphere.dcos.cassandra.scheduler.plan.DeploymentManager;
 import com.mesosphere.dcos.cassandra.scheduler.plan.backup.BackupManager;
+import com.mesosphere.dcos.cassandra.scheduler.plan.backup.BackupSnapshotBlock;
+import com.mesosphere.dcos.cassandra.scheduler.plan.backup.BackupSnapshotPhase;
 import com.mesosphere.dcos.cassandra.scheduler.plan.backup.RestoreManager;
+import com.mesosphere.dcos.cassandra.scheduler.plan.backup.VerifyManager;
 import com.mesosphere.dcos.cassandra.scheduler.plan.cleanup.CleanupManager;
 import com.mesosphere.dcos.cassandra.scheduler.plan.repair.RepairManager;
 import com.mesosphere.dcos.cassandra.scheduler.seeds.SeedsManager;
@@ -29,6 +32,7 @@ import org.apache.mesos.reconciliation.Reconciler;
 import org.apache.mesos.scheduler.SchedulerDriverFactory;
 import org.apache.mesos.scheduler.plan.Block;
 import org.apache.mesos.scheduler.plan.DefaultStageScheduler;
+import org.apache.mesos.scheduler.plan.Phase;
 import org.apache.mesos.scheduler.plan.StageManager;
 import org.apache.mesos.scheduler.plan.StageScheduler;
 import org.apache.mesos.state.StateStore;
@@ -51,6 +55,7 @@ public class CassandraScheduler implements Scheduler, Managed {
     private final StageManager stageManager;
     private final StageScheduler planScheduler;
     private final CassandraRepairScheduler repairScheduler;
+    private final CassandraSnapshotScheduler snapshotScheduler;
     private final OfferAccepter offerAccepter;
     private final PersistentOfferRequirementProvider offerRequirementProvider;
     private final CassandraTasks cassandraTasks;
@@ -59,6 +64,7 @@ public class CassandraScheduler implements Scheduler, Managed {
     private final SchedulerClient client;
     private final BackupManager backup;
     private final RestoreManager restore;
+    private final VerifyManager verify;
     private final CleanupManager cleanup;
     private final RepairManager repair;
     private final SeedsManager seeds;
@@ -78,6 +84,7 @@ public class CassandraScheduler implements Scheduler, Managed {
             final EventBus eventBus,
             final BackupManager backup,
             final RestoreManager restore,
+            final VerifyManager verify,
             final CleanupManager cleanup,
             final RepairManager repair,
             final SeedsManager seeds,
@@ -95,11 +102,14 @@ public class CassandraScheduler implements Scheduler, Managed {
         planScheduler = new DefaultStageScheduler(offerAccepter);
         repairScheduler = new CassandraRepairScheduler(offerRequirementProvider,
                 offerAccepter, cassandraTasks);
+        snapshotScheduler = new CassandraSnapshotScheduler(offerAccepter,
+                cassandraTasks);
         this.client = client;
         this.stageManager = stageManager;
         this.reconciler = reconciler;
         this.backup = backup;
         this.restore = restore;
+        this.verify = verify;
         this.cleanup = cleanup;
         this.repair = repair;
         this.seeds = seeds;
@@ -146,6 +156,7 @@ public class CassandraScheduler implements Scheduler, Managed {
                     ),
                     backup,
                     restore,
+                    verify,
                     cleanup,
                     repair));
             reconciler.start(cassandraTasks.getTaskStatuses());
@@ -183,9 +194,17 @@ public class CassandraScheduler implements Scheduler, Managed {
                 LOGGER.info("Current plan {} interrupted.",
                         (stageManager.isInterrupted()) ? "is" : "is not");
             }
-            acceptedOffers.addAll(
-                    planScheduler.resourceOffers(driver, offers,
-                            currentBlock));
+            final Optional<BackupSnapshotPhase> snapshotPhase =
+                    getSnapshotPhase(currentBlock);
+            if (snapshotPhase.isPresent()) {
+                acceptedOffers.addAll(
+                        snapshotScheduler.resourceOffers(driver, offers,
+                                snapshotPhase.get()));
+            } else {
+                acceptedOffers.addAll(
+                        planScheduler.resourceOffers(driver, offers,
+                                currentBlock));
+            }
 
             // Perform any required repairs
             final List<Protos.Offer> unacceptedOffers = filterAcceptedOffers(
@@ -211,6 +230,20 @@ public class CassandraScheduler implements Scheduler, Managed {
         }
     }
 
+    private Optional<BackupSnapshotPhase> getSnapshotPhase(
+            final Block currentBlock) {
+        if (!(currentBlock instanceof BackupSnapshotBlock)) {
+            return Optional.empty();
+        }
+        for (Phase phase : backup.getPhases()) {
+            if (phase instanceof BackupSnapshotPhase &&
+                    phase.getBlock(currentBlock.getId()) != null) {
+                return Optional.of((BackupSnapshotPhase) phase);
+            }
+        }
+        return Optional.empty();
+    }
+
     private ResourceCleanerScheduler getCleanerScheduler() {
         try {
             ResourceCleaner cleaner = new ResourceCleaner(cassandraTasks.getStateStore());
@@ -246,6 +279,7 @@ public class CassandraScheduler implements Scheduler, Managed {
         } catch (Exception ex) {
             LOGGER.error("Error updating Stage Manager with status: {} reason: {}", status, ex);
         }
+        snapshotScheduler.update(status);
     }
 
     @Override
@@ -0,0 +1,237 @@
+package com.mesosphere.dcos.cassandra.scheduler;
+
+import com.mesosphere.dcos.cassandra.common.tasks.CassandraDaemonTask;
+import com.mesosphere.dcos.cassandra.common.tasks.CassandraTask;
+import com.mesosphere.dcos.cassandra.scheduler.plan.backup.BackupSnapshotBlock;
+import com.mesosphere.dcos.cassandra.scheduler.plan.backup.BackupSnapshotPhase;
+import com.mesosphere.dcos.cassandra.scheduler.tasks.CassandraTasks;
+import org.apache.mesos.Protos;
+import org.apache.mesos.SchedulerDriver;
+import org.apache.mesos.offer.OfferAccepter;
+import org.apache.mesos.offer.OfferEvaluator;
+import org.apache.mesos.offer.OfferRecommendation;
+import org.apache.mesos.offer.OfferRequirement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * CassandraSnapshotScheduler launches the snapshot tasks of a backup on all
+ * nodes in the same offer cycle. The default StageScheduler only launches
+ * the current block of a phase, so the nodes would snapshot one after
+ * another, and the snapshots of a backup would be taken minutes apart.
+ * Instead, the snapshot tasks are held behind a barrier until every node has
+ * a matching offer, and they are then launched together. Each snapshot task
+ * is only matched against the offers of its node's agent, and an offer is
+ * matched to at most one task. If the barrier is not released within the
+ * timeout, e.g. because a node is down, the tasks are launched as offers
+ * arrive, and the timeout is reported in the status of every snapshot
+ * block. When every snapshot has finished, the skew between the nodes is
+ * logged.
+ */
+public class CassandraSnapshotScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+            CassandraSnapshotScheduler.class);
+
+    public static final long DEFAULT_BARRIER_TIMEOUT_MS =
+            TimeUnit.MINUTES.toMillis(5);
+
+    private final OfferAccepter offerAccepter;
+    private final OfferEvaluator offerEvaluator;
+    private final CassandraTasks cassandraTasks;
+    private final long barrierTimeoutMs;
+    private final Map<String, Long> started = new HashMap<>();
+    private final Map<String, Long> finished = new HashMap<>();
+    private BackupSnapshotPhase phase = null;
+    private long waitingSinceMs = -1;
+    private boolean released = false;
+    private boolean reported = false;
+
+    public CassandraSnapshotScheduler(
+            final OfferAccepter offerAccepter,
+            final OfferEvaluator offerEvaluator,
+            final CassandraTasks cassandraTasks,
+            final long barrierTimeoutMs) {
+        this.offerAccepter = offerAccepter;
+        this.offerEvaluator = offerEvaluator;
+        this.cassandraTasks = cassandraTasks;
+        this.barrierTimeoutMs = barrierTimeoutMs;
+    }
+
+    public CassandraSnapshotScheduler(
+            final OfferAccepter offerAccepter,
+            final CassandraTasks cassandraTasks) {
+        this(offerAccepter, new OfferEvaluator(), cassandraTasks,
+                DEFAULT_BARRIER_TIMEOUT_MS);
+    }
+
+    public synchronized List<Protos.OfferID> resourceOffers(
+            final SchedulerDriver driver,
+            final List<Protos.Offer> offers,
+            final BackupSnapshotPhase phase) {
+        if (this.phase == null || !this.phase.getId().equals(phase.getId())) {
+            reset(phase);
+        }
+
+        // Blocks that were launched before a failover are not held back.
+        boolean launched = false;
+        final Map<BackupSnapshotBlock, OfferRequirement> pending =
+                new LinkedHashMap<>();
+        for (BackupSnapshotBlock block : phase.getSnapshotBlocks()) {
+            if (block.isComplete()) {
+                continue;
+            }
+            final OfferRequirement requirement = block.start();
+            if (requirement != null) {
+                pending.put(block, requirement);
+            } else if (block.isInProgress()) {
+                launched = true;
+            }
+        }
+        if (pending.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // An offer is matched to at most one block, so two blocks never
+        // accept the same offer.
+        final Map<BackupSnapshotBlock, List<OfferRecommendation>> matched =
+                new HashMap<>();
+        final Set<Protos.OfferID> claimed = new HashSet<>();
+        for (Map.Entry<BackupSnapshotBlock, OfferRequirement> entry :
+                pending.entrySet()) {
+            final List<Protos.Offer> candidates =
+                    getAgentOffers(entry.getKey(), offers).stream()
+                            .filter(offer -> !claimed.contains(offer.getId()))
+                            .collect(Collectors.toList());
+            final List<OfferRecommendation> recommendations =
+                    offerEvaluator.evaluate(entry.getValue(), candidates);
+            if (!recommendations.isEmpty()) {
+                matched.put(entry.getKey(), recommendations);
+                recommendations.forEach(recommendation ->
+                        claimed.add(recommendation.getOffer().getId()));
+            }
+        }
+
+        final boolean barrier = !released && !launched;
+        if (barrier && matched.size() < pending.size()) {
+            final long now = System.currentTimeMillis();
+            if (waitingSinceMs < 0) {
+                waitingSinceMs = now;
+            }
+            if (now - waitingSinceMs < barrierTimeoutMs) {
+                LOGGER.info("Holding snapshot barrier: backup = {}, " +
+                                "matched nodes = {}, pending nodes = {}",
+                        phase.getBackupName(), matched.size(), pending.size());
+                pending.keySet().forEach(block ->
+                        block.updateOfferStatus(false));
+                return Collections.emptyList();
+            }
+            final String reason = String.format("Snapshot barrier timed " +
+                            "out after %d ms with %d of %d nodes matched, " +
+                            "snapshots are launched as offers arrive",
+                    now - waitingSinceMs, matched.size(), pending.size());
+            LOGGER.warn("{}: backup = {}", reason, phase.getBackupName());
+            phase.getSnapshotBlocks().forEach(block ->
+                    block.setBarrierTimedOut(reason));
+        }
+        released = true;
+
+        final List<Protos.OfferID> acceptedOffers = new ArrayList<>();
+        for (BackupSnapshotBlock block : pending.keySet()) {
+            final List<OfferRecommendation> recommendations =
+                    matched.get(block);
+            final List<Protos.OfferID> accepted = (recommendations == null) ?
+                    Collections.emptyList() :
+                    offerAccepter.accept(driver, recommendations);
+            block.updateOfferStatus(!accepted.isEmpty());
+            acceptedOffers.addAll(accepted);
+        }
+        if (barrier) {
+            LOGGER.info("Released snapshot barrier: backup = {}, " +
+                            "launched nodes = {}, waited ms = {}",
+                    phase.getBackupName(), matched.size(),
+                    (waitingSinceMs < 0) ? 0 :
+                            System.currentTimeMillis() - waitingSinceMs);
+        }
+        return acceptedOffers;
+    }
+
+    /**
+     * Records the start and finish times of the snapshot tasks of the phase
+     * the scheduler is launching. The skew is logged once every snapshot
+     * has finished.
+     *
+     * @param status The status of a task.
+     */
+    public synchronized void update(final Protos.TaskStatus status) {
+        if (phase == null || reported) {
+            return;
+        }
+        final Optional<String> name = getBlockName(status.getTaskId());
+        if (!name.isPresent()) {
+            return;
+        }
+        final long timestamp = status.hasTimestamp() ?
+                (long) (status.getTimestamp() * 1000) :
+                System.currentTimeMillis();
+        if (Protos.TaskState.TASK_RUNNING.equals(status.getState())) {
+            started.putIfAbsent(name.get(), timestamp);
+        } else if (Protos.TaskState.TASK_FINISHED.equals(status.getState())) {
+            finished.putIfAbsent(name.get(), timestamp);
+        }
+
+        if (finished.size() >= phase.getSnapshotBlocks().size()) {
+            reported = true;
+            LOGGER.info("Snapshot skew: backup = {}, nodes = {}, " +
+                            "start skew ms = {}, finish skew ms = {}",
+                    phase.getBackupName(), finished.size(),
+                    getSkew(started.values()), getSkew(finished.values()));
+        }
+    }
+
+    private void reset(final BackupSnapshotPhase phase) {
+        this.phase = phase;
+        this.waitingSinceMs = -1;
+        this.released = false;
+        this.reported = false;
+        started.clear();
+        finished.clear();
+    }
+
+    private List<Protos.Offer> getAgentOffers(
+            final BackupSnapshotBlock block,
+            final List<Protos.Offer> offers) {
+        final CassandraDaemonTask daemon =
+                cassandraTasks.getDaemons().get(block.getDaemon());
+        // A snapshot can only be taken on the agent of its daemon.
+        if (daemon == null || daemon.getSlaveId().isEmpty()) {
+            return Collections.emptyList();
+        }
+        return offers.stream()
+                .filter(offer -> offer.getSlaveId().getValue().equals(
+                        daemon.getSlaveId()))
+                .collect(Collectors.toList());
+    }
+
+    private Optional<String> getBlockName(final Protos.TaskID taskId) {
+        for (BackupSnapshotBlock block : phase.getSnapshotBlocks()) {
+            final Optional<CassandraTask> task =
+                    cassandraTasks.get(block.getName());
+            if (task.isPresent() &&
+                    task.get().getId().equals(taskId.getValue())) {
+                return Optional.of(block.getName());
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static long getSkew(final Collection<Long> timestamps) {
+        if (timestamps.isEmpty()) {
+            return 0;
+        }
+        return Collections.max(timestamps) - Collections.min(timestamps);
+    }
+}
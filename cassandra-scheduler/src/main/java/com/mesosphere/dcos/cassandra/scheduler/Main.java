@@ -87,6 +87,8 @@ public class Main extends Application<MutableSchedulerConfiguration> {
       injector.getInstance(StageResource.class));
     environment.jersey().register(
       injector.getInstance(RestoreResource.class));
+    environment.jersey().register(
+      injector.getInstance(VerifyResource.class));
     environment.jersey().register(
       injector.getInstance(CleanupResource.class));
     environment.jersey().register(
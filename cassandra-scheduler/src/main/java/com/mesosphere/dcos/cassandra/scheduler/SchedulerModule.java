@@ -23,6 +23,7 @@ import com.mesosphere.dcos.cassandra.scheduler.plan.CassandraPhaseStrategies;
 import com.mesosphere.dcos.cassandra.scheduler.plan.CassandraStageManager;
 import com.mesosphere.dcos.cassandra.scheduler.plan.backup.BackupManager;
 import com.mesosphere.dcos.cassandra.scheduler.plan.backup.RestoreManager;
+import com.mesosphere.dcos.cassandra.scheduler.plan.backup.VerifyManager;
 import com.mesosphere.dcos.cassandra.scheduler.plan.cleanup.CleanupManager;
 import com.mesosphere.dcos.cassandra.scheduler.plan.repair.RepairManager;
 import com.mesosphere.dcos.cassandra.scheduler.seeds.DataCenterInfo;
@@ -200,6 +201,7 @@ public class SchedulerModule extends AbstractModule {
         bind(ClusterTaskOfferRequirementProvider.class);
         bind(Reconciler.class).to(DefaultReconciler.class).asEagerSingleton();
         bind(RestoreManager.class).asEagerSingleton();
+        bind(VerifyManager.class).asEagerSingleton();
         bind(CleanupManager.class).asEagerSingleton();
         bind(RepairManager.class).asEagerSingleton();
         bind(SeedsManager.class).asEagerSingleton();
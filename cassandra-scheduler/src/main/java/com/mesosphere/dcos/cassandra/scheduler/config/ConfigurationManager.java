@@ -99,8 +99,9 @@ public class ConfigurationManager implements Managed {
     }
 
     public CassandraDaemonTask updateConfig(final CassandraDaemonTask task) throws ConfigStoreException {
-        CassandraConfig cassandraConfig = getTargetConfig().getCassandraConfig();
-        return task.updateConfig(cassandraConfig, getTargetConfigName());
+        final CassandraSchedulerConfiguration targetConfig = getTargetConfig();
+        return task.updateConfig(targetConfig.getCassandraConfig(),
+            targetConfig.getExecutorConfig(), getTargetConfigName());
     }
 
     public CassandraSchedulerConfiguration getTargetConfig() throws ConfigStoreException {
@@ -3,6 +3,7 @@ package com.mesosphere.dcos.cassandra.scheduler.plan;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import com.mesosphere.dcos.cassandra.scheduler.plan.backup.BackupSnapshotPhase;
+import com.mesosphere.dcos.cassandra.scheduler.plan.backup.BackupVerifyPhase;
 import com.mesosphere.dcos.cassandra.scheduler.plan.backup.DownloadSnapshotPhase;
 import com.mesosphere.dcos.cassandra.scheduler.plan.backup.RestoreSnapshotPhase;
 import com.mesosphere.dcos.cassandra.scheduler.plan.backup.UploadBackupPhase;
@@ -37,7 +38,8 @@ public class CassandraPhaseStrategies implements PhaseStrategyFactory {
         } else if (phase instanceof BackupSnapshotPhase ||
                 phase instanceof UploadBackupPhase ||
                 phase instanceof DownloadSnapshotPhase ||
-                phase instanceof RestoreSnapshotPhase) {
+                phase instanceof RestoreSnapshotPhase ||
+                phase instanceof BackupVerifyPhase) {
             return new DefaultInstallStrategy(phase);
         } else {
             try {
@@ -5,6 +5,7 @@ import com.mesosphere.dcos.cassandra.scheduler.config.ConfigurationManager;
 import com.mesosphere.dcos.cassandra.scheduler.config.DefaultConfigurationManager;
 import com.mesosphere.dcos.cassandra.scheduler.plan.backup.BackupManager;
 import com.mesosphere.dcos.cassandra.scheduler.plan.backup.RestoreManager;
+import com.mesosphere.dcos.cassandra.scheduler.plan.backup.VerifyManager;
 import com.mesosphere.dcos.cassandra.scheduler.plan.cleanup.CleanupManager;
 import com.mesosphere.dcos.cassandra.scheduler.plan.repair.RepairManager;
 import org.apache.mesos.scheduler.plan.Phase;
@@ -25,6 +26,7 @@ public class CassandraStage implements Stage {
             final DeploymentManager deployment,
             final BackupManager backup,
             final RestoreManager restore,
+            final VerifyManager verify,
             final CleanupManager cleanup,
             final RepairManager repair) {
 
@@ -33,6 +35,7 @@ public class CassandraStage implements Stage {
                 deployment,
                 backup,
                 restore,
+                verify,
                 cleanup,
                 repair
         );
@@ -41,6 +44,7 @@ public class CassandraStage implements Stage {
     private final DeploymentManager deployment;
     private final BackupManager backup;
     private final RestoreManager restore;
+    private final VerifyManager verify;
     private final DefaultConfigurationManager defaultConfigurationManager;
     private final CleanupManager cleanup;
     private final RepairManager repair;
@@ -50,12 +54,14 @@ public class CassandraStage implements Stage {
             final DeploymentManager deployment,
             final BackupManager backup,
             final RestoreManager restore,
+            final VerifyManager verify,
             final CleanupManager cleanup,
             final RepairManager repair) {
         this.defaultConfigurationManager = defaultConfigurationManager;
         this.deployment = deployment;
         this.backup = backup;
         this.restore = restore;
+        this.verify = verify;
         this.cleanup = cleanup;
         this.repair = repair;
     }
@@ -67,6 +73,7 @@ public class CassandraStage implements Stage {
                 .addAll(backup.getPhases())
                 .addAll(cleanup.getPhases())
                 .addAll(restore.getPhases())
+                .addAll(verify.getPhases())
                 .addAll(repair.getPhases())
                 .build();
     }
@@ -89,6 +96,7 @@ public class CassandraStage implements Stage {
         return deployment.isComplete() &&
                 (backup.inProgress() ? backup.isComplete() : true) &&
                 (restore.inProgress() ? restore.isComplete() : true) &&
+                (verify.inProgress() ? verify.isComplete() : true) &&
                 (cleanup.inProgress() ? cleanup.isComplete() : true) &&
                 (repair.inProgress() ? repair.isComplete() : true);
 
@@ -103,6 +111,10 @@ public class CassandraStage implements Stage {
             restore.stopRestore();
         }
 
+        if (verify.isComplete()) {
+            verify.stopVerify();
+        }
+
         if (cleanup.isComplete()) {
             cleanup.stopCleanup();
         }
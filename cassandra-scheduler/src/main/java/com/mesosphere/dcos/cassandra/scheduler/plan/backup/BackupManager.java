@@ -1,8 +1,11 @@
 package com.mesosphere.dcos.cassandra.scheduler.plan.backup;
 
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.mesosphere.dcos.cassandra.common.config.ClusterTaskConfig;
 import com.mesosphere.dcos.cassandra.common.serialization.SerializationException;
 import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupContext;
+import com.mesosphere.dcos.cassandra.scheduler.config.ServiceConfig;
 import com.mesosphere.dcos.cassandra.scheduler.offer.ClusterTaskOfferRequirementProvider;
 import com.mesosphere.dcos.cassandra.scheduler.persistence.PersistenceException;
 import com.mesosphere.dcos.cassandra.scheduler.tasks.CassandraTasks;
@@ -28,6 +31,8 @@ public class BackupManager {
 
     private final CassandraTasks cassandraTasks;
     private final ClusterTaskOfferRequirementProvider provider;
+    private final ClusterTaskConfig clusterTaskConfig;
+    private final ServiceConfig identity;
     private volatile BackupSnapshotPhase backup = null;
     private volatile UploadBackupPhase upload = null;
     private volatile BackupContext backupContext = null;
@@ -37,8 +42,12 @@ public class BackupManager {
     public BackupManager(
             CassandraTasks cassandraTasks,
             ClusterTaskOfferRequirementProvider provider,
+            ClusterTaskConfig clusterTaskConfig,
+            @Named("ConfiguredIdentity") ServiceConfig identity,
             StateStore stateStore) {
         this.provider = provider;
+        this.clusterTaskConfig = clusterTaskConfig;
+        this.identity = identity;
         this.cassandraTasks = cassandraTasks;
         this.stateStore = stateStore;
 
@@ -53,9 +62,10 @@ public class BackupManager {
                         cassandraTasks,
                         provider);
                 this.upload = new UploadBackupPhase(
-                        backupContext,
+                        forUpload(backupContext),
                         cassandraTasks,
-                        provider);
+                        provider,
+                        clusterTaskConfig.getBackupBandwidthLimitMb());
                 this.backupContext = backupContext;
             }
         } catch (SerializationException e) {
@@ -65,6 +75,18 @@ public class BackupManager {
         }
     }
 
+    /**
+     * Gets the context of the upload with the configured retention, so each
+     * node deletes its expired backups once it has uploaded the new one.
+     * The name of the service is recorded in the manifests, so a node only
+     * deletes the backups of this service.
+     */
+    private BackupContext forUpload(BackupContext context) {
+        return context.withRetention(
+                clusterTaskConfig.getBackupKeepDaily(),
+                clusterTaskConfig.getBackupKeepWeekly())
+                .withCluster(identity.getName());
+    }
 
     public void startBackup(BackupContext context) {
         LOGGER.info("Starting backup");
@@ -85,9 +107,10 @@ public class BackupManager {
                         cassandraTasks,
                         provider);
                 this.upload = new UploadBackupPhase(
-                        context,
+                        forUpload(context),
                         cassandraTasks,
-                        provider);
+                        provider,
+                        clusterTaskConfig.getBackupBandwidthLimitMb());
                 backupContext = context;
             } catch (SerializationException | PersistenceException e) {
                 LOGGER.error(
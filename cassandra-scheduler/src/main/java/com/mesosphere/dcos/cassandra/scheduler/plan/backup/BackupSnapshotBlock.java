@@ -27,6 +27,8 @@ public class BackupSnapshotBlock extends AbstractClusterTaskBlock<BackupContext>
                 context);
     }
 
+    private volatile String barrierTimeout = null;
+
     public BackupSnapshotBlock(
             final String daemon,
             final CassandraTasks cassandraTasks,
@@ -53,4 +55,25 @@ public class BackupSnapshotBlock extends AbstractClusterTaskBlock<BackupContext>
     public String getName() {
         return BackupSnapshotTask.nameForDaemon(getDaemon());
     }
+
+    /**
+     * Records that the snapshot barrier of the backup timed out, so this
+     * node's snapshot may not be taken at the same time as the others.
+     *
+     * @param reason The reason, which is reported in the block's message.
+     */
+    public void setBarrierTimedOut(final String reason) {
+        this.barrierTimeout = reason;
+    }
+
+    public boolean isBarrierTimedOut() {
+        return barrierTimeout != null;
+    }
+
+    @Override
+    public String getMessage() {
+        return isBarrierTimedOut() ?
+                super.getMessage() + ", " + barrierTimeout :
+                super.getMessage();
+    }
 }
@@ -14,6 +14,9 @@ import java.util.stream.Collectors;
 
 /**
  * During snapshot phase, data will be snapshotted across all cassandra nodes.
+ * The blocks of the phase are launched together by the
+ * CassandraSnapshotScheduler, so every node flushes and snapshots at the
+ * same time.
  */
 public class BackupSnapshotPhase extends AbstractClusterTaskPhase<BackupSnapshotBlock, BackupContext> {
     public BackupSnapshotPhase(
@@ -35,6 +38,14 @@ public class BackupSnapshotPhase extends AbstractClusterTaskPhase<BackupSnapshot
         )).collect(Collectors.toList());
     }
 
+    public List<BackupSnapshotBlock> getSnapshotBlocks() {
+        return blocks;
+    }
+
+    public String getBackupName() {
+        return context.getName();
+    }
+
     @Override
     public String getName() {
         return "Snapshot";
@@ -0,0 +1,104 @@
+package com.mesosphere.dcos.cassandra.scheduler.plan.backup;
+
+import com.mesosphere.dcos.cassandra.common.tasks.CassandraDaemonTask;
+import com.mesosphere.dcos.cassandra.common.tasks.CassandraTask;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupVerifyTask;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreContext;
+import com.mesosphere.dcos.cassandra.scheduler.offer.CassandraOfferRequirementProvider;
+import com.mesosphere.dcos.cassandra.scheduler.persistence.PersistenceException;
+import com.mesosphere.dcos.cassandra.scheduler.plan.AbstractClusterTaskBlock;
+import com.mesosphere.dcos.cassandra.scheduler.tasks.CassandraTasks;
+import org.apache.mesos.Protos;
+import org.apache.mesos.scheduler.plan.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+
+/**
+ * BackupVerifyBlock verifies the backup of a single node. Unlike other
+ * cluster task blocks, a failed task is a result rather than an error: the
+ * block records that the node's backup did not verify and completes instead
+ * of launching the task again. Tasks that are lost or killed are still
+ * relaunched.
+ */
+public class BackupVerifyBlock extends AbstractClusterTaskBlock<RestoreContext> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+            BackupVerifyBlock.class);
+
+    private final RestoreContext context;
+    private volatile VerifyManager manager;
+
+    public static BackupVerifyBlock create(
+            final String daemon,
+            final CassandraTasks cassandraTasks,
+            final CassandraOfferRequirementProvider provider,
+            final RestoreContext context) {
+        return new BackupVerifyBlock(daemon, cassandraTasks, provider,
+                context);
+    }
+
+    @Override
+    protected Optional<CassandraTask> getOrCreateTask(RestoreContext context)
+            throws PersistenceException {
+        CassandraDaemonTask daemonTask =
+                cassandraTasks.getDaemons().get(getDaemon());
+        if (daemonTask == null) {
+            LOGGER.warn("Cassandra Daemon for backup does not exist");
+            setStatus(Status.Complete);
+            return Optional.empty();
+        }
+        return Optional.of(cassandraTasks.getOrCreateBackupVerify(
+                daemonTask,
+                context));
+    }
+
+    public BackupVerifyBlock(
+            final String daemon,
+            final CassandraTasks cassandraTasks,
+            final CassandraOfferRequirementProvider provider,
+            final RestoreContext context) {
+        super(daemon, cassandraTasks, provider, context);
+        this.context = context;
+    }
+
+    void setManager(final VerifyManager manager) {
+        this.manager = manager;
+    }
+
+    @Override
+    public void update(Protos.TaskStatus status) {
+        final Optional<CassandraTask> task = cassandraTasks.get(getName());
+        final boolean own = task.isPresent() &&
+                task.get().getId().equals(status.getTaskId().getValue());
+        if (!isComplete() && own &&
+                Protos.TaskState.TASK_FAILED.equals(status.getState())) {
+            try {
+                cassandraTasks.update(status);
+            } catch (Exception ex) {
+                LOGGER.error(String.format("Failed to update task %s",
+                        getName()), ex);
+            }
+            record(false, status.getMessage());
+            setStatus(Status.Complete);
+            return;
+        }
+        super.update(status);
+        if (own && isComplete() &&
+                Protos.TaskState.TASK_FINISHED.equals(status.getState())) {
+            record(true, status.getMessage());
+        }
+    }
+
+    private void record(final boolean verified, final String message) {
+        if (manager != null) {
+            manager.record(BackupVerifyResult.create(context.getName(),
+                    getDaemon(), verified, message));
+        }
+    }
+
+    @Override
+    public String getName() {
+        return BackupVerifyTask.nameForDaemon(getDaemon());
+    }
+}
@@ -0,0 +1,51 @@
+package com.mesosphere.dcos.cassandra.scheduler.plan.backup;
+
+import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreContext;
+import com.mesosphere.dcos.cassandra.scheduler.offer.ClusterTaskOfferRequirementProvider;
+import com.mesosphere.dcos.cassandra.scheduler.plan.AbstractClusterTaskPhase;
+import com.mesosphere.dcos.cassandra.scheduler.tasks.CassandraTasks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * During the verify phase, the backup of every cassandra node is read from
+ * the external location and checked against its checksums, without being
+ * written to disk.
+ */
+public class BackupVerifyPhase extends AbstractClusterTaskPhase<BackupVerifyBlock, RestoreContext> {
+    private final VerifyManager manager;
+
+    public BackupVerifyPhase(
+            RestoreContext context,
+            CassandraTasks cassandraTasks,
+            ClusterTaskOfferRequirementProvider provider,
+            VerifyManager manager) {
+        super(context, cassandraTasks, provider);
+        this.manager = manager;
+        // Blocks are created by the super constructor, before the manager
+        // is assigned.
+        for (BackupVerifyBlock block : blocks) {
+            block.setManager(manager);
+        }
+    }
+
+    protected List<BackupVerifyBlock> createBlocks() {
+        final List<String> daemons =
+                new ArrayList<>(cassandraTasks.getDaemons().keySet());
+        Collections.sort(daemons);
+        return daemons.stream().map(daemon -> BackupVerifyBlock.create(
+                daemon,
+                cassandraTasks,
+                provider,
+                context
+        )).collect(Collectors.toList());
+    }
+
+    @Override
+    public String getName() {
+        return "Verify";
+    }
+}
@@ -0,0 +1,80 @@
+package com.mesosphere.dcos.cassandra.scheduler.plan.backup;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.mesosphere.dcos.cassandra.common.util.JsonUtils;
+
+import java.util.Objects;
+
+/**
+ * BackupVerifyResult is the outcome of verifying the backup of a single
+ * node. A node's backup is verified if every object of the backup was read
+ * and matched the checksums recorded when it was uploaded.
+ */
+public class BackupVerifyResult {
+
+    @JsonCreator
+    public static BackupVerifyResult create(
+            @JsonProperty("backup_name") final String backupName,
+            @JsonProperty("node") final String node,
+            @JsonProperty("verified") final boolean verified,
+            @JsonProperty("message") final String message) {
+        return new BackupVerifyResult(backupName, node, verified, message);
+    }
+
+    @JsonProperty("backup_name")
+    private final String backupName;
+    @JsonProperty("node")
+    private final String node;
+    @JsonProperty("verified")
+    private final boolean verified;
+    @JsonProperty("message")
+    private final String message;
+
+    public BackupVerifyResult(final String backupName,
+                              final String node,
+                              final boolean verified,
+                              final String message) {
+        this.backupName = backupName;
+        this.node = node;
+        this.verified = verified;
+        this.message = message;
+    }
+
+    public String getBackupName() {
+        return backupName;
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public boolean isVerified() {
+        return verified;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BackupVerifyResult)) return false;
+        BackupVerifyResult that = (BackupVerifyResult) o;
+        return verified == that.verified &&
+                Objects.equals(backupName, that.backupName) &&
+                Objects.equals(node, that.node) &&
+                Objects.equals(message, that.message);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(backupName, node, verified, message);
+    }
+
+    @Override
+    public String toString() {
+        return JsonUtils.toJsonString(this);
+    }
+}
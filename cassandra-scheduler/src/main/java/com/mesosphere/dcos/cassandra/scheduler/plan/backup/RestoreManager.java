@@ -127,14 +127,19 @@ public class RestoreManager {
 
         return (context != null &&
                 download != null && download.isComplete() &&
-                restore != null && restore.isComplete());
+                (context.isPipelined() ||
+                        (restore != null && restore.isComplete())));
     }
 
     public List<Phase> getPhases() {
         if (context == null) {
             return Collections.emptyList();
         } else {
-            return Arrays.asList(download, restore);
+            // A pipelined restore loads the SSTables while they are
+            // downloaded, so it has no restore phase.
+            return context.isPipelined() ?
+                    Collections.singletonList(download) :
+                    Arrays.asList(download, restore);
         }
     }
 }
@@ -14,16 +14,73 @@ import java.util.stream.Collectors;
 
 /**
  * During UploadBackupPhase, snapshotted data will be uploaded to external location.
+ * <p>
+ * When the cluster has a backup bandwidth budget, it bounds the total
+ * egress of the backup. The blocks of the phase run one node at a time, so
+ * each node's upload is limited to at most the budget. Incremental backup
+ * shipping and commitlog archiving continue on every node at once after its
+ * upload, so when the backup enables them, the uploads get half of the
+ * budget, and the other half is divided among the background uploads of
+ * all nodes, with at least 1 MB/s each.
  */
 public class UploadBackupPhase extends AbstractClusterTaskPhase<UploadBackupBlock, BackupContext> {
     private static final Logger LOGGER =
             LoggerFactory.getLogger(UploadBackupPhase.class);
 
+    /**
+     * Gets the context of the upload for a bandwidth budget.
+     *
+     * @param context  The context of the backup.
+     * @param budgetMb The total bandwidth of all uploads in MB/s, or 0 if it
+     *                 is unlimited.
+     * @param nodes    The number of nodes that upload the backup.
+     * @return The context with its per-node bandwidth limit reduced to the
+     * share of the budget for uploads if it is unlimited or larger, and its
+     * background bandwidth limit set to the share of each background upload.
+     */
+    public static BackupContext allocate(BackupContext context,
+                                         int budgetMb,
+                                         int nodes) {
+        if (budgetMb <= 0) {
+            return context;
+        }
+        final int streams = (context.isShipIncremental() ? 1 : 0) +
+                (context.isArchiveCommitLog() ? 1 : 0);
+        final int uploadMb = (streams > 0) ? Math.max(1, budgetMb / 2) :
+                budgetMb;
+        final int limitMb = context.getBandwidthLimitMb();
+        BackupContext allocated = (limitMb <= 0 || limitMb > uploadMb) ?
+                context.withBandwidthLimitMb(uploadMb) : context;
+        if (streams > 0) {
+            final int backgroundMb = Math.max(1,
+                    (budgetMb - uploadMb) / (Math.max(1, nodes) * streams));
+            allocated = allocated.mutable()
+                    .setBackgroundBandwidthLimitMb(
+                            (limitMb <= 0 || limitMb > backgroundMb) ?
+                                    backgroundMb : limitMb)
+                    .build();
+        }
+        return allocated;
+    }
+
+    public UploadBackupPhase(
+            BackupContext context,
+            CassandraTasks cassandraTasks,
+            ClusterTaskOfferRequirementProvider provider,
+            int bandwidthBudgetMb) {
+        super(allocate(context, bandwidthBudgetMb,
+                cassandraTasks.getDaemons().size()), cassandraTasks, provider);
+        LOGGER.info("Backup bandwidth: budget = {} MB/s, per node = {} MB/s, " +
+                        "per background upload = {} MB/s", bandwidthBudgetMb,
+                this.context.getBandwidthLimitMb(),
+                this.context.getBackgroundBandwidthLimitMb());
+    }
+
     public UploadBackupPhase(
             BackupContext context,
             CassandraTasks cassandraTasks,
             ClusterTaskOfferRequirementProvider provider) {
-        super(context, cassandraTasks, provider);
+        this(context, cassandraTasks, provider, 0);
     }
 
     protected List<UploadBackupBlock> createBlocks() {
@@ -0,0 +1,186 @@
+package com.mesosphere.dcos.cassandra.scheduler.plan.backup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.inject.Inject;
+import com.mesosphere.dcos.cassandra.common.serialization.SerializationException;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreContext;
+import com.mesosphere.dcos.cassandra.common.util.JsonUtils;
+import com.mesosphere.dcos.cassandra.scheduler.offer.ClusterTaskOfferRequirementProvider;
+import com.mesosphere.dcos.cassandra.scheduler.persistence.PersistenceException;
+import com.mesosphere.dcos.cassandra.scheduler.tasks.CassandraTasks;
+import org.apache.mesos.scheduler.plan.Phase;
+import org.apache.mesos.state.StateStore;
+import org.apache.mesos.state.StateStoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * VerifyManager runs the verification of a backup on every node and records
+ * the result for each node. The results are kept after the verification
+ * completes, until the next verification is started, so a backup can be
+ * marked as verified.
+ */
+public class VerifyManager {
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+            VerifyManager.class);
+
+    public static final String VERIFY_KEY = "verify";
+    public static final String VERIFY_RESULTS_KEY = "verify_results";
+
+    private CassandraTasks cassandraTasks;
+    private final ClusterTaskOfferRequirementProvider provider;
+    private volatile RestoreContext context = null;
+    private volatile BackupVerifyPhase verify = null;
+    private final Map<String, BackupVerifyResult> results = new TreeMap<>();
+    private StateStore stateStore;
+
+    @Inject
+    public VerifyManager(
+            final CassandraTasks cassandraTasks,
+            final ClusterTaskOfferRequirementProvider provider,
+            StateStore stateStore) {
+        this.provider = provider;
+        this.cassandraTasks = cassandraTasks;
+        this.stateStore = stateStore;
+        // Load VerifyManager from state store
+        try {
+            results.putAll(JsonUtils.MAPPER.readValue(
+                    stateStore.fetchProperty(VERIFY_RESULTS_KEY),
+                    new TypeReference<Map<String, BackupVerifyResult>>() {
+                    }));
+        } catch (StateStoreException e) {
+            LOGGER.warn("No verify results found.");
+        } catch (IOException e) {
+            LOGGER.error("Error loading verify results from persistence store. Reason: ", e);
+        }
+        try {
+            RestoreContext context = RestoreContext.JSON_SERIALIZER.deserialize(stateStore.fetchProperty(VERIFY_KEY));
+            // Recovering from failure
+            if (context != null) {
+                this.verify = new BackupVerifyPhase(
+                        context,
+                        cassandraTasks,
+                        provider,
+                        this);
+                this.context = context;
+            }
+        } catch (SerializationException e) {
+            LOGGER.error("Error loading verify context from persistence store. Reason: ", e);
+        } catch (StateStoreException e) {
+            LOGGER.warn("No verify context found.");
+        }
+    }
+
+    public void startVerify(RestoreContext context) {
+
+        if (canStartVerify()) {
+            LOGGER.info("Starting verify");
+            try {
+                for (String name :
+                        cassandraTasks.getBackupVerifyTasks().keySet()) {
+                    cassandraTasks.remove(name);
+                }
+                synchronized (results) {
+                    results.clear();
+                    storeResults();
+                }
+                stateStore.storeProperty(VERIFY_KEY, RestoreContext.JSON_SERIALIZER.serialize(context));
+                this.verify = new BackupVerifyPhase(
+                        context,
+                        cassandraTasks,
+                        provider,
+                        this);
+                //this volatile signals that verify is started
+                this.context = context;
+            } catch (IOException e) {
+                LOGGER.error(
+                        "Error storing verify context into persistence store. Reason: ",
+                        e);
+                this.context = null;
+            }
+        } else {
+
+            LOGGER.warn("Verify already in progress: context = ", this.context);
+        }
+    }
+
+    public void stopVerify() {
+        LOGGER.info("Stopping verify");
+        try {
+            stateStore.clearProperty(VERIFY_KEY);
+            cassandraTasks.remove(cassandraTasks.getBackupVerifyTasks().keySet());
+        } catch (PersistenceException e) {
+            LOGGER.error(
+                    "Error deleting verify context from persistence store. Reason: {}",
+                    e);
+        }
+        this.context = null;
+        this.verify = null;
+    }
+
+    /**
+     * Records the result of verifying the backup of a node.
+     *
+     * @param result The result of the node's verification.
+     */
+    public void record(BackupVerifyResult result) {
+        LOGGER.info("Recording verify result: {}", result);
+        synchronized (results) {
+            results.put(result.getNode(), result);
+            try {
+                storeResults();
+            } catch (IOException e) {
+                LOGGER.error(
+                        "Error storing verify results into persistence store. Reason: ",
+                        e);
+            }
+        }
+    }
+
+    /**
+     * Gets the results of the last verification.
+     *
+     * @return The result of each node whose verification has completed,
+     * ordered by node.
+     */
+    public List<BackupVerifyResult> getResults() {
+        synchronized (results) {
+            return new ArrayList<>(results.values());
+        }
+    }
+
+    public boolean canStartVerify() {
+        // If context is null, then we can start verify; otherwise, not.
+        return context == null || isComplete();
+    }
+
+    public boolean inProgress() {
+
+        return (context != null && !isComplete());
+    }
+
+    public boolean isComplete() {
+
+        return (context != null && verify != null && verify.isComplete());
+    }
+
+    public List<Phase> getPhases() {
+        if (context == null) {
+            return Collections.emptyList();
+        } else {
+            return Collections.singletonList(verify);
+        }
+    }
+
+    private void storeResults() throws IOException {
+        stateStore.storeProperty(VERIFY_RESULTS_KEY,
+                JsonUtils.MAPPER.writeValueAsBytes(results));
+    }
+}
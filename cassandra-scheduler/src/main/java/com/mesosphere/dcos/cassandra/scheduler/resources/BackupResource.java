@@ -69,6 +69,10 @@ public class BackupResource {
         if (isAzure(request.getExternalLocation())) {
             accountId = request.getAzureAccount();
             secretKey = request.getAzureKey();
+        } else if (isFile(request.getExternalLocation())) {
+            // A file system location does not require credentials.
+            accountId = "";
+            secretKey = "";
         } else {
             accountId = request.getS3AccessKey();
             secretKey = request.getS3SecretKey();
@@ -80,10 +84,23 @@ public class BackupResource {
                 request.getExternalLocation(),
                 "",
                 accountId,
-                secretKey);
+                secretKey)
+                .mutable()
+                .setIncremental(request.isIncremental())
+                .setCompression(request.getCompression())
+                .setBandwidthLimitMb(request.getBandwidthLimitMb())
+                .setArchiveCommitLog(request.isArchiveCommitLog())
+                .setShipIncremental(request.isShipIncremental())
+                .setKeySpaces(request.getKeySpaces())
+                .setColumnFamilies(request.getColumnFamilies())
+                .build();
   }
 
   private static boolean isAzure(String externalLocation) {
     return StringUtils.isNotEmpty(externalLocation) && externalLocation.startsWith("azure:");
   }
+
+  private static boolean isFile(String externalLocation) {
+    return StringUtils.isNotEmpty(externalLocation) && externalLocation.startsWith("file:");
+  }
 }
@@ -4,6 +4,9 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.validator.constraints.NotEmpty;
 
+import java.util.Collections;
+import java.util.List;
+
 public class BackupRestoreRequest {
   @JsonProperty("backup_name")
   @NotEmpty
@@ -25,6 +28,42 @@ public class BackupRestoreRequest {
   @JsonProperty("azure_key")
   private String azureKey;
 
+  @JsonProperty("incremental")
+  private boolean incremental;
+
+  @JsonProperty("compression")
+  private String compression;
+
+  @JsonProperty("bandwidth_limit_mb")
+  private int bandwidthLimitMb;
+
+  @JsonProperty("same_topology")
+  private boolean sameTopology;
+
+  @JsonProperty("loader_concurrency")
+  private int loaderConcurrency;
+
+  @JsonProperty("disk_limit_mb")
+  private int diskLimitMb;
+
+  @JsonProperty("archive_commit_log")
+  private boolean archiveCommitLog;
+
+  @JsonProperty("point_in_time_ms")
+  private long pointInTimeMs;
+
+  @JsonProperty("ship_incremental")
+  private boolean shipIncremental;
+
+  @JsonProperty("include_incremental")
+  private boolean includeIncremental;
+
+  @JsonProperty("key_spaces")
+  private List<String> keySpaces = Collections.emptyList();
+
+  @JsonProperty("column_families")
+  private List<String> columnFamilies = Collections.emptyList();
+
   public String getName() {
     return name;
   }
@@ -73,9 +112,133 @@ public class BackupRestoreRequest {
     this.azureKey = azureKey;
   }
 
+  public boolean isIncremental() {
+    return incremental;
+  }
+
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
+  }
+
+  public String getCompression() {
+    return compression;
+  }
+
+  public void setCompression(String compression) {
+    this.compression = compression;
+  }
+
+  public int getBandwidthLimitMb() {
+    return bandwidthLimitMb;
+  }
+
+  public void setBandwidthLimitMb(int bandwidthLimitMb) {
+    this.bandwidthLimitMb = bandwidthLimitMb;
+  }
+
+  public boolean isSameTopology() {
+    return sameTopology;
+  }
+
+  public void setSameTopology(boolean sameTopology) {
+    this.sameTopology = sameTopology;
+  }
+
+  public int getLoaderConcurrency() {
+    return loaderConcurrency;
+  }
+
+  public void setLoaderConcurrency(int loaderConcurrency) {
+    this.loaderConcurrency = loaderConcurrency;
+  }
+
+  public int getDiskLimitMb() {
+    return diskLimitMb;
+  }
+
+  public void setDiskLimitMb(int diskLimitMb) {
+    this.diskLimitMb = diskLimitMb;
+  }
+
+  public boolean isArchiveCommitLog() {
+    return archiveCommitLog;
+  }
+
+  public void setArchiveCommitLog(boolean archiveCommitLog) {
+    this.archiveCommitLog = archiveCommitLog;
+  }
+
+  public long getPointInTimeMs() {
+    return pointInTimeMs;
+  }
+
+  public void setPointInTimeMs(long pointInTimeMs) {
+    this.pointInTimeMs = pointInTimeMs;
+  }
+
+  public boolean isShipIncremental() {
+    return shipIncremental;
+  }
+
+  public void setShipIncremental(boolean shipIncremental) {
+    this.shipIncremental = shipIncremental;
+  }
+
+  public boolean isIncludeIncremental() {
+    return includeIncremental;
+  }
+
+  public void setIncludeIncremental(boolean includeIncremental) {
+    this.includeIncremental = includeIncremental;
+  }
+
+  public List<String> getKeySpaces() {
+    return keySpaces;
+  }
+
+  public void setKeySpaces(List<String> keySpaces) {
+    this.keySpaces = (keySpaces == null) ? Collections.emptyList() : keySpaces;
+  }
+
+  public List<String> getColumnFamilies() {
+    return columnFamilies;
+  }
+
+  public void setColumnFamilies(List<String> columnFamilies) {
+    this.columnFamilies = (columnFamilies == null) ?
+            Collections.emptyList() : columnFamilies;
+  }
+
   public boolean isValid() {
     return (StringUtils.isNotBlank(name) && externalLocation != null)
-            && (isValidS3Request() || isValidAzureRequest());
+            && (isValidS3Request() || isValidAzureRequest()
+                || isValidFileRequest())
+            && isValidCompression()
+            && bandwidthLimitMb >= 0
+            && loaderConcurrency >= 0
+            && diskLimitMb >= 0
+            && pointInTimeMs >= 0
+            && isValidIncremental()
+            && isValidSelection();
+  }
+
+  private boolean isValidIncremental() {
+    // Shipped SSTables are recorded next to the backup's manifest, and
+    // Azure backups have none.
+    return !(shipIncremental || includeIncremental)
+            || !externalLocation.startsWith("azure:");
+  }
+
+  private boolean isValidSelection() {
+    // Column families are only selected within explicitly selected key
+    // spaces, as with nodetool snapshot.
+    return keySpaces != null && columnFamilies != null
+            && (columnFamilies.isEmpty() || !keySpaces.isEmpty());
+  }
+
+  private boolean isValidCompression() {
+    return compression == null
+            || compression.matches("(adaptive:)?(none|snappy|lz4|zstd(:\\d+)?)");
   }
 
   private boolean isValidS3Request() {
@@ -94,6 +257,10 @@ public class BackupRestoreRequest {
     return azureAccount != null && azureKey != null && externalLocation.startsWith("azure:");
   }
 
+  private boolean isValidFileRequest() {
+    return externalLocation.startsWith("file:");
+  }
+
   @Override
   public String toString() {
     return "BackupRestoreRequest{" +
@@ -103,6 +270,18 @@ public class BackupRestoreRequest {
             ", s3SecretKey='" + s3SecretKey + '\'' +
             ", azureAccount='" + azureAccount + '\'' +
             ", azureKey='" + azureKey + '\'' +
+            ", incremental=" + incremental +
+            ", compression='" + compression + '\'' +
+            ", bandwidthLimitMb=" + bandwidthLimitMb +
+            ", sameTopology=" + sameTopology +
+            ", loaderConcurrency=" + loaderConcurrency +
+            ", diskLimitMb=" + diskLimitMb +
+            ", archiveCommitLog=" + archiveCommitLog +
+            ", pointInTimeMs=" + pointInTimeMs +
+            ", shipIncremental=" + shipIncremental +
+            ", includeIncremental=" + includeIncremental +
+            ", keySpaces=" + keySpaces +
+            ", columnFamilies=" + columnFamilies +
             '}';
   }
 }
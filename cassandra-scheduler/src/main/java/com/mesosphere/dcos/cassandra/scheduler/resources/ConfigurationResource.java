@@ -37,7 +37,8 @@ public class ConfigurationResource {
     @Path("/executor")
     @Counted
     public ExecutorConfig getExecutorConfig() throws ConfigStoreException {
-        return ((CassandraSchedulerConfiguration)configurationManager.getTargetConfig()).getExecutorConfig();
+        return ((CassandraSchedulerConfiguration)configurationManager.getTargetConfig()).getExecutorConfig()
+                .redacted();
     }
 
     @GET
@@ -62,6 +62,10 @@ public class RestoreResource {
         if (isAzure(request.getExternalLocation())) {
             accountId = request.getAzureAccount();
             secretKey = request.getAzureKey();
+        } else if (isFile(request.getExternalLocation())) {
+            // A file system location does not require credentials.
+            accountId = "";
+            secretKey = "";
         } else {
             accountId = request.getS3AccessKey();
             secretKey = request.getS3SecretKey();
@@ -73,10 +77,22 @@ public class RestoreResource {
                 request.getExternalLocation(),
                 "",
                 accountId,
-                secretKey);
+                secretKey,
+                request.getBandwidthLimitMb(),
+                request.isSameTopology(),
+                request.getLoaderConcurrency(),
+                request.getDiskLimitMb(),
+                request.getPointInTimeMs(),
+                request.isIncludeIncremental(),
+                request.getKeySpaces(),
+                request.getColumnFamilies());
     }
 
     private static boolean isAzure(String externalLocation) {
       return StringUtils.isNotEmpty(externalLocation) && externalLocation.startsWith("azure:");
     }
+
+    private static boolean isFile(String externalLocation) {
+      return StringUtils.isNotEmpty(externalLocation) && externalLocation.startsWith("file:");
+    }
 }
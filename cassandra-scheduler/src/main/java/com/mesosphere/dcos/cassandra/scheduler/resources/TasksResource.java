@@ -21,6 +21,7 @@ import com.google.inject.Inject;
 import com.google.protobuf.TextFormat;
 import com.mesosphere.dcos.cassandra.common.tasks.CassandraContainer;
 import com.mesosphere.dcos.cassandra.common.tasks.CassandraDaemonTask;
+import com.mesosphere.dcos.cassandra.common.tasks.CassandraTaskExecutor;
 import com.mesosphere.dcos.cassandra.scheduler.client.SchedulerClient;
 import com.mesosphere.dcos.cassandra.scheduler.config.ConfigurationManager;
 import com.mesosphere.dcos.cassandra.scheduler.config.ServiceConfig;
@@ -159,7 +160,8 @@ public class TasksResource {
             CassandraDaemonTask task = taskOption.get();
             final CassandraContainer movedContainer = tasks.moveCassandraContainer(task);
             LOGGER.info("Moved container ExecutorInfo: {}",
-                    TextFormat.shortDebugString(movedContainer.getExecutorInfo()));
+                    TextFormat.shortDebugString(CassandraTaskExecutor.redact(
+                            movedContainer.getExecutorInfo())));
             if (!task.isTerminated()) {
                 client.shutdown(task.getHostname(),
                     task.getExecutor().getApiPort());
@@ -0,0 +1,73 @@
+package com.mesosphere.dcos.cassandra.scheduler.resources;
+
+import com.codahale.metrics.annotation.Timed;
+import com.google.inject.Inject;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreContext;
+import com.mesosphere.dcos.cassandra.scheduler.plan.backup.BackupVerifyResult;
+import com.mesosphere.dcos.cassandra.scheduler.plan.backup.VerifyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.List;
+
+/**
+ * VerifyResource starts the verification of a backup on every node and
+ * reports the result of each node. The request identifies the backup in the
+ * same way as a restore request.
+ */
+@Path("/v1/backup/verify")
+public class VerifyResource {
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(VerifyResource.class);
+
+    private final VerifyManager manager;
+
+    @Inject
+    public VerifyResource(final VerifyManager manager) {
+        this.manager = manager;
+    }
+
+    @PUT
+    @Timed
+    @Path("/start")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response start(BackupRestoreRequest request) {
+        LOGGER.info("Processing verify request: request = {}", request);
+        try {
+            if (!request.isValid()) {
+                return Response.status(Response.Status.BAD_REQUEST).build();
+            } else if (manager.canStartVerify()) {
+                final RestoreContext context = RestoreResource.from(request);
+                manager.startVerify(context);
+                LOGGER.info("Started verify: context = {}", context);
+                return Response.accepted().build();
+            } else {
+                // Send error back
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(ErrorResponse.fromString(
+                                "Verify already in progress."))
+                        .build();
+            }
+        } catch (Throwable throwable) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(ErrorResponse.fromThrowable(throwable))
+                    .build();
+        }
+    }
+
+    @GET
+    @Timed
+    @Path("/status")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<BackupVerifyResult> status() {
+        return manager.getResults();
+    }
+}
@@ -78,7 +78,8 @@ public class CassandraTasks implements Managed, TaskStatusProvider {
                         LOGGER.info("Loaded task: {}", cassandraTask.getName());
                         builder.put(cassandraTask.getName(), cassandraTask);
                     } catch (IOException e) {
-                        LOGGER.error("Error parsing task: {}. Reason: {}", TextFormat.shortDebugString(taskInfo), e);
+                        LOGGER.error("Error parsing task: {}. Reason: {}", TextFormat.shortDebugString(
+                                CassandraTaskExecutor.redact(taskInfo)), e);
                         throw new RuntimeException(e);
                     }
                 }
@@ -154,6 +155,14 @@ public class CassandraTasks implements Managed, TaskStatusProvider {
                         (RestoreSnapshotTask) entry.getValue())));
     }
 
+    public Map<String, BackupVerifyTask> getBackupVerifyTasks() {
+        refreshTasks();
+        return tasks.entrySet().stream().filter(entry -> entry.getValue()
+                .getType() == CassandraTask.TYPE.BACKUP_VERIFY).collect
+                (Collectors.toMap(entry -> entry.getKey(), entry -> (
+                        (BackupVerifyTask) entry.getValue())));
+    }
+
     public Map<String, CleanupTask> getCleanupTasks() {
         refreshTasks();
         return tasks.entrySet().stream().filter(entry -> entry.getValue()
@@ -234,7 +243,8 @@ public class CassandraTasks implements Managed, TaskStatusProvider {
         try {
             Optional<Protos.TaskInfo> info = Optional.of(stateStore.fetchTask(templateTaskName));
             LOGGER.info("Fetched template task for daemon '{}': {}",
-                    daemon.getName(), TextFormat.shortDebugString(info.get()));
+                    daemon.getName(), TextFormat.shortDebugString(
+                            CassandraTaskExecutor.redact(info.get())));
             return info;
         } catch (Exception e) {
             LOGGER.warn(String.format(
@@ -297,6 +307,19 @@ public class CassandraTasks implements Managed, TaskStatusProvider {
         }
     }
 
+    public BackupVerifyTask createBackupVerifyTask(
+            CassandraDaemonTask daemon,
+            RestoreContext context) throws PersistenceException {
+
+        Optional<Protos.TaskInfo> template = getTemplate(daemon);
+
+        if (template.isPresent()) {
+            return BackupVerifyTask.create(template.get(), daemon, context);
+        } else {
+            throw new PersistenceException("Failed to retrieve ClusterTask Template.");
+        }
+    }
+
     public CleanupTask createCleanupTask(
             CassandraDaemonTask daemon,
             CleanupContext context) throws PersistenceException {
@@ -386,6 +409,19 @@ public class CassandraTasks implements Managed, TaskStatusProvider {
         }
     }
 
+    public BackupVerifyTask getOrCreateBackupVerify(
+            CassandraDaemonTask daemon,
+            RestoreContext context) throws PersistenceException {
+
+        String name = BackupVerifyTask.nameForDaemon(daemon);
+        Map<String, BackupVerifyTask> verifies = getBackupVerifyTasks();
+        if (verifies.containsKey(name)) {
+            return verifies.get(name);
+        } else {
+            return createBackupVerifyTask(daemon, context);
+        }
+    }
+
     public CleanupTask getOrCreateCleanup(
             CassandraDaemonTask daemon,
             CleanupContext context) throws PersistenceException {
@@ -16,6 +16,7 @@ import com.mesosphere.dcos.cassandra.scheduler.plan.CassandraPhaseStrategies;
 import com.mesosphere.dcos.cassandra.scheduler.plan.CassandraStageManager;
 import com.mesosphere.dcos.cassandra.scheduler.plan.backup.BackupManager;
 import com.mesosphere.dcos.cassandra.scheduler.plan.backup.RestoreManager;
+import com.mesosphere.dcos.cassandra.scheduler.plan.backup.VerifyManager;
 import com.mesosphere.dcos.cassandra.scheduler.plan.cleanup.CleanupManager;
 import com.mesosphere.dcos.cassandra.scheduler.plan.repair.RepairManager;
 import com.mesosphere.dcos.cassandra.scheduler.seeds.SeedsManager;
@@ -67,6 +68,7 @@ public class CassandraSchedulerTest {
     private SchedulerClient client;
     private BackupManager backup;
     private RestoreManager restore;
+    private VerifyManager verify;
     private CleanupManager cleanup;
     private RepairManager repair;
     private SeedsManager seeds;
@@ -98,6 +100,7 @@ public class CassandraSchedulerTest {
         Mockito.when(client.shutdown(Mockito.anyString(), Mockito.anyInt())).thenReturn(csb);
         backup = Mockito.mock(BackupManager.class);
         restore = Mockito.mock(RestoreManager.class);
+        verify = Mockito.mock(VerifyManager.class);
         cleanup = Mockito.mock(CleanupManager.class);
         repair = Mockito.mock(RepairManager.class);
         seeds = Mockito.mock(SeedsManager.class);
@@ -159,6 +162,7 @@ public class CassandraSchedulerTest {
                 eventBus,
                 backup,
                 restore,
+                verify,
                 cleanup,
                 repair,
                 seeds,
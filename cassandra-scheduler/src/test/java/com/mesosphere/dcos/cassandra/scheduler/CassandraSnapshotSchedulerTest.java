@@ -0,0 +1,192 @@
+package com.mesosphere.dcos.cassandra.scheduler;
+
+import com.mesosphere.dcos.cassandra.common.tasks.CassandraDaemonTask;
+import com.mesosphere.dcos.cassandra.scheduler.plan.backup.BackupSnapshotBlock;
+import com.mesosphere.dcos.cassandra.scheduler.plan.backup.BackupSnapshotPhase;
+import com.mesosphere.dcos.cassandra.scheduler.tasks.CassandraTasks;
+import org.apache.mesos.Protos;
+import org.apache.mesos.SchedulerDriver;
+import org.apache.mesos.offer.OfferAccepter;
+import org.apache.mesos.offer.OfferEvaluator;
+import org.apache.mesos.offer.OfferRecommendation;
+import org.apache.mesos.offer.OfferRequirement;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+public class CassandraSnapshotSchedulerTest {
+    private static final long TIMEOUT_MS = 60000;
+
+    @Mock
+    private OfferAccepter offerAccepter;
+    @Mock
+    private OfferEvaluator offerEvaluator;
+    @Mock
+    private CassandraTasks cassandraTasks;
+    @Mock
+    private SchedulerDriver driver;
+    @Mock
+    private BackupSnapshotPhase phase;
+
+    private final Map<String, CassandraDaemonTask> daemons = new HashMap<>();
+
+    @Before
+    public void beforeEach() {
+        MockitoAnnotations.initMocks(this);
+        daemons.clear();
+        Mockito.when(cassandraTasks.getDaemons()).thenReturn(daemons);
+        Mockito.when(cassandraTasks.get(Mockito.anyString()))
+                .thenReturn(Optional.empty());
+        Mockito.when(phase.getId()).thenReturn(UUID.randomUUID());
+        Mockito.when(phase.getBackupName()).thenReturn("backup");
+        // Each requirement matches the first offer it is evaluated against.
+        Mockito.when(offerEvaluator.evaluate(Mockito.any(), Mockito.any()))
+                .thenAnswer(invocation -> {
+                    final List<Protos.Offer> offers =
+                            (List<Protos.Offer>) invocation.getArguments()[1];
+                    return offers.isEmpty() ?
+                            Collections.emptyList() :
+                            Arrays.asList(recommendation(offers.get(0)));
+                });
+        Mockito.when(offerAccepter.accept(Mockito.any(), Mockito.any()))
+                .thenAnswer(invocation -> {
+                    final List<OfferRecommendation> recommendations =
+                            (List<OfferRecommendation>) invocation.getArguments()[1];
+                    return recommendations.stream()
+                            .map(recommendation -> recommendation.getOffer().getId())
+                            .collect(Collectors.toList());
+                });
+    }
+
+    private static OfferRecommendation recommendation(final Protos.Offer offer) {
+        final OfferRecommendation recommendation =
+                Mockito.mock(OfferRecommendation.class);
+        Mockito.when(recommendation.getOffer()).thenReturn(offer);
+        return recommendation;
+    }
+
+    private static Protos.Offer offer(final String id, final String slaveId) {
+        return Protos.Offer.newBuilder()
+                .setId(Protos.OfferID.newBuilder().setValue(id))
+                .setFrameworkId(Protos.FrameworkID.newBuilder().setValue("framework"))
+                .setSlaveId(Protos.SlaveID.newBuilder().setValue(slaveId))
+                .setHostname(slaveId)
+                .build();
+    }
+
+    private BackupSnapshotBlock block(final String daemon, final String slaveId) {
+        final CassandraDaemonTask daemonTask = Mockito.mock(CassandraDaemonTask.class);
+        Mockito.when(daemonTask.getSlaveId()).thenReturn(slaveId);
+        daemons.put(daemon, daemonTask);
+
+        final BackupSnapshotBlock block = Mockito.mock(BackupSnapshotBlock.class);
+        Mockito.when(block.getDaemon()).thenReturn(daemon);
+        Mockito.when(block.getName()).thenReturn("snapshot-" + daemon);
+        Mockito.when(block.start()).thenReturn(Mockito.mock(OfferRequirement.class));
+        return block;
+    }
+
+    private CassandraSnapshotScheduler scheduler(final long timeoutMs) {
+        return new CassandraSnapshotScheduler(offerAccepter, offerEvaluator,
+                cassandraTasks, timeoutMs);
+    }
+
+    private static List<String> ids(final List<Protos.OfferID> offerIds) {
+        return offerIds.stream()
+                .map(Protos.OfferID::getValue)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testBarrierHoldsUntilAllNodesMatch() {
+        final BackupSnapshotBlock block0 = block("node-0", "slave-0");
+        final BackupSnapshotBlock block1 = block("node-1", "slave-1");
+        Mockito.when(phase.getSnapshotBlocks())
+                .thenReturn(Arrays.asList(block0, block1));
+        final CassandraSnapshotScheduler scheduler = scheduler(TIMEOUT_MS);
+
+        Assert.assertTrue(scheduler.resourceOffers(driver,
+                Arrays.asList(offer("offer-0", "slave-0")), phase).isEmpty());
+        Mockito.verify(offerAccepter, Mockito.never())
+                .accept(Mockito.any(), Mockito.any());
+        Mockito.verify(block0).updateOfferStatus(false);
+        Mockito.verify(block0, Mockito.never()).setBarrierTimedOut(Mockito.any());
+
+        Assert.assertEquals(Arrays.asList("offer-0", "offer-1"),
+                ids(scheduler.resourceOffers(driver, Arrays.asList(
+                        offer("offer-0", "slave-0"),
+                        offer("offer-1", "slave-1")), phase)));
+        Mockito.verify(block0).updateOfferStatus(true);
+        Mockito.verify(block1).updateOfferStatus(true);
+    }
+
+    @Test
+    public void testBarrierTimeoutIsReported() {
+        final BackupSnapshotBlock block0 = block("node-0", "slave-0");
+        final BackupSnapshotBlock block1 = block("node-1", "slave-1");
+        Mockito.when(phase.getSnapshotBlocks())
+                .thenReturn(Arrays.asList(block0, block1));
+        final CassandraSnapshotScheduler scheduler = scheduler(0);
+
+        Assert.assertEquals(Arrays.asList("offer-0"),
+                ids(scheduler.resourceOffers(driver,
+                        Arrays.asList(offer("offer-0", "slave-0")), phase)));
+        Mockito.verify(block0).setBarrierTimedOut(Mockito.contains("1 of 2"));
+        Mockito.verify(block1).setBarrierTimedOut(Mockito.contains("1 of 2"));
+        Mockito.verify(block0).updateOfferStatus(true);
+        Mockito.verify(block1).updateOfferStatus(false);
+    }
+
+    @Test
+    public void testOfferIsMatchedToOneBlock() {
+        // Both daemons report the same agent, so both blocks are evaluated
+        // against the same offer.
+        final BackupSnapshotBlock block0 = block("node-0", "slave-0");
+        final BackupSnapshotBlock block1 = block("node-1", "slave-0");
+        Mockito.when(phase.getSnapshotBlocks())
+                .thenReturn(Arrays.asList(block0, block1));
+        final CassandraSnapshotScheduler scheduler = scheduler(0);
+
+        Assert.assertEquals(Arrays.asList("offer-0"),
+                ids(scheduler.resourceOffers(driver,
+                        Arrays.asList(offer("offer-0", "slave-0")), phase)));
+        Mockito.verify(offerAccepter, Mockito.times(1))
+                .accept(Mockito.any(), Mockito.any());
+        Mockito.verify(block0).updateOfferStatus(true);
+        Mockito.verify(block1).updateOfferStatus(false);
+    }
+
+    @Test
+    public void testUnknownAgentGetsNoOffers() {
+        final BackupSnapshotBlock block0 = block("node-0", "");
+        Mockito.when(phase.getSnapshotBlocks())
+                .thenReturn(Arrays.asList(block0));
+        final CassandraSnapshotScheduler scheduler = scheduler(0);
+
+        Assert.assertTrue(scheduler.resourceOffers(driver,
+                Arrays.asList(offer("offer-0", "slave-0")), phase).isEmpty());
+        Mockito.verify(offerEvaluator).evaluate(Mockito.any(),
+                Mockito.eq(Collections.emptyList()));
+        Mockito.verify(block0).updateOfferStatus(false);
+    }
+
+    @Test
+    public void testCompleteBlocksAreSkipped() {
+        final BackupSnapshotBlock block0 = block("node-0", "slave-0");
+        Mockito.when(block0.isComplete()).thenReturn(true);
+        Mockito.when(phase.getSnapshotBlocks())
+                .thenReturn(Arrays.asList(block0));
+        final CassandraSnapshotScheduler scheduler = scheduler(TIMEOUT_MS);
+
+        Assert.assertTrue(scheduler.resourceOffers(driver,
+                Arrays.asList(offer("offer-0", "slave-0")), phase).isEmpty());
+        Mockito.verify(block0, Mockito.never()).start();
+    }
+}
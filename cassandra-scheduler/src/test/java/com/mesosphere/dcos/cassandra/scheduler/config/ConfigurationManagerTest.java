@@ -147,7 +147,12 @@ public class ConfigurationManagerTest {
                 URI.create("/cassandra/location"),
                 "unlimited",
                 "100000",
-                "32768");
+                "32768",
+                "mapped",
+                "",
+                "",
+                4,
+                "");
         int updatedServers = original.getServers() + 10;
         int updatedSeeds = original.getSeeds() + 5;
 
@@ -141,4 +141,22 @@ public class BackupSnapshotBlockTest {
                 backupContext);
         Assert.assertNull(backupSnapshotBlock.start());
     }
+
+    @Test
+    public void testBarrierTimedOut() {
+        Mockito.when(cassandraTasks.get("snapshot-node-0")).thenReturn(Optional.empty());
+        final BackupContext backupContext = BackupContext.create("", "", "", "", "", "");
+        final BackupSnapshotBlock backupSnapshotBlock = BackupSnapshotBlock.create(
+                "node-0",
+                cassandraTasks,
+                provider,
+                backupContext);
+        Assert.assertFalse(backupSnapshotBlock.isBarrierTimedOut());
+
+        backupSnapshotBlock.setBarrierTimedOut("Snapshot barrier timed out");
+        Assert.assertTrue(backupSnapshotBlock.isBarrierTimedOut());
+        Assert.assertTrue(backupSnapshotBlock.getMessage()
+                .endsWith("Snapshot barrier timed out"));
+        Assert.assertEquals(Status.Pending, Block.getStatus(backupSnapshotBlock));
+    }
 }
@@ -0,0 +1,183 @@
+package com.mesosphere.dcos.cassandra.scheduler.plan.backup;
+
+import com.mesosphere.dcos.cassandra.common.tasks.CassandraDaemonTask;
+import com.mesosphere.dcos.cassandra.common.tasks.CassandraTask;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupVerifyTask;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreContext;
+import com.mesosphere.dcos.cassandra.scheduler.offer.ClusterTaskOfferRequirementProvider;
+import com.mesosphere.dcos.cassandra.scheduler.tasks.CassandraTasks;
+import org.apache.mesos.Protos;
+import org.apache.mesos.offer.OfferRequirement;
+import org.apache.mesos.scheduler.plan.Block;
+import org.apache.mesos.scheduler.plan.Status;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.HashMap;
+import java.util.Optional;
+
+public class BackupVerifyBlockTest {
+    public static final String VERIFY_NODE_0 = "verify-node-0";
+    public static final String NODE_0 = "node-0";
+    public static final String TASK_ID = "verify-node-0__1234";
+    @Mock
+    private ClusterTaskOfferRequirementProvider provider;
+    @Mock
+    private CassandraTasks cassandraTasks;
+    @Mock
+    private VerifyManager manager;
+
+    @Before
+    public void beforeEach() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    private static Protos.TaskStatus status(Protos.TaskState state,
+                                            String message) {
+        return Protos.TaskStatus.newBuilder()
+                .setTaskId(Protos.TaskID.newBuilder().setValue(TASK_ID))
+                .setState(state)
+                .setMessage(message)
+                .build();
+    }
+
+    private CassandraTask launched(Protos.TaskState state) {
+        final CassandraTask task = Mockito.mock(CassandraTask.class);
+        Mockito.when(task.getId()).thenReturn(TASK_ID);
+        Mockito.when(task.getState()).thenReturn(state);
+        return task;
+    }
+
+    private BackupVerifyBlock block(RestoreContext context) {
+        final BackupVerifyBlock block = BackupVerifyBlock.create(
+                NODE_0,
+                cassandraTasks,
+                provider,
+                context);
+        block.setManager(manager);
+        return block;
+    }
+
+    @Test
+    public void testInitial() {
+        Mockito.when(cassandraTasks.get(VERIFY_NODE_0)).thenReturn(Optional.empty());
+        final RestoreContext context = RestoreContext.create("", "", "", "", "", "");
+        final BackupVerifyBlock block = block(context);
+        Assert.assertEquals(VERIFY_NODE_0, block.getName());
+        Assert.assertEquals(NODE_0, block.getDaemon());
+        Assert.assertEquals(Status.Pending, Block.getStatus(block));
+    }
+
+    @Test
+    public void testComplete() {
+        final CassandraTask task = launched(Protos.TaskState.TASK_FINISHED);
+        Mockito.when(cassandraTasks.get(VERIFY_NODE_0)).thenReturn(Optional.of(task));
+        final RestoreContext context = RestoreContext.create("", "", "", "", "", "");
+        final BackupVerifyBlock block = block(context);
+        Assert.assertEquals(Status.Complete, Block.getStatus(block));
+    }
+
+    @Test
+    public void testTaskStart() throws Exception {
+        final CassandraDaemonTask daemonTask = Mockito.mock(CassandraDaemonTask.class);
+        Mockito.when(cassandraTasks.get(VERIFY_NODE_0)).thenReturn(Optional.empty());
+        final HashMap<String, CassandraDaemonTask> map = new HashMap<>();
+        map.put(NODE_0, daemonTask);
+        Mockito.when(cassandraTasks.getDaemons()).thenReturn(map);
+        final RestoreContext context = RestoreContext.create("", "", "", "", "", "");
+
+        final BackupVerifyTask verifyTask = Mockito.mock(BackupVerifyTask.class);
+        Mockito.when(verifyTask.getSlaveId()).thenReturn("1234");
+        Mockito.when(cassandraTasks.getOrCreateBackupVerify(daemonTask, context))
+                .thenReturn(verifyTask);
+
+        final BackupVerifyBlock block = block(context);
+        final OfferRequirement requirement = Mockito.mock(OfferRequirement.class);
+        Mockito.when(provider.getUpdateOfferRequirement(Mockito.any())).thenReturn(requirement);
+        Assert.assertNotNull(block.start());
+        Assert.assertEquals(Status.InProgress, Block.getStatus(block));
+    }
+
+    @Test
+    public void testTaskStartWithoutDaemon() throws Exception {
+        Mockito.when(cassandraTasks.get(VERIFY_NODE_0)).thenReturn(Optional.empty());
+        final HashMap<String, CassandraDaemonTask> map = new HashMap<>();
+        map.put(NODE_0, null);
+        Mockito.when(cassandraTasks.getDaemons()).thenReturn(map);
+        final RestoreContext context = RestoreContext.create("", "", "", "", "", "");
+
+        final BackupVerifyBlock block = block(context);
+        Assert.assertNull(block.start());
+        Assert.assertEquals(Status.Complete, Block.getStatus(block));
+        Mockito.verify(manager, Mockito.never()).record(Mockito.any());
+    }
+
+    @Test
+    public void testTaskFinishedIsVerified() throws Exception {
+        Mockito.when(cassandraTasks.get(VERIFY_NODE_0)).thenReturn(Optional.empty());
+        final RestoreContext context = RestoreContext.create("", "backup-0", "", "", "", "");
+        final BackupVerifyBlock block = block(context);
+
+        final CassandraTask task = launched(Protos.TaskState.TASK_FINISHED);
+        Mockito.when(cassandraTasks.get(VERIFY_NODE_0)).thenReturn(Optional.of(task));
+        block.update(status(Protos.TaskState.TASK_FINISHED, "Verified"));
+
+        Assert.assertEquals(Status.Complete, Block.getStatus(block));
+        Mockito.verify(manager).record(BackupVerifyResult.create(
+                "backup-0", NODE_0, true, "Verified"));
+    }
+
+    @Test
+    public void testTaskFailedIsNotVerified() throws Exception {
+        Mockito.when(cassandraTasks.get(VERIFY_NODE_0)).thenReturn(Optional.empty());
+        final RestoreContext context = RestoreContext.create("", "backup-0", "", "", "", "");
+        final BackupVerifyBlock block = block(context);
+
+        final CassandraTask task = launched(Protos.TaskState.TASK_FAILED);
+        Mockito.when(cassandraTasks.get(VERIFY_NODE_0)).thenReturn(Optional.of(task));
+        block.update(status(Protos.TaskState.TASK_FAILED, "2 objects failed"));
+
+        // A failed verification completes the block instead of relaunching
+        // the task.
+        Assert.assertEquals(Status.Complete, Block.getStatus(block));
+        Mockito.verify(cassandraTasks, Mockito.never()).remove(VERIFY_NODE_0);
+        Mockito.verify(manager).record(BackupVerifyResult.create(
+                "backup-0", NODE_0, false, "2 objects failed"));
+    }
+
+    @Test
+    public void testTaskLostIsRelaunched() throws Exception {
+        Mockito.when(cassandraTasks.get(VERIFY_NODE_0)).thenReturn(Optional.empty());
+        final RestoreContext context = RestoreContext.create("", "backup-0", "", "", "", "");
+        final BackupVerifyBlock block = block(context);
+
+        final CassandraTask task = launched(Protos.TaskState.TASK_LOST);
+        Mockito.when(task.isTerminated()).thenReturn(true);
+        Mockito.when(cassandraTasks.get(VERIFY_NODE_0)).thenReturn(Optional.of(task));
+        block.update(status(Protos.TaskState.TASK_LOST, "Agent lost"));
+
+        Assert.assertEquals(Status.Pending, Block.getStatus(block));
+        Mockito.verify(cassandraTasks).remove(VERIFY_NODE_0);
+        Mockito.verify(manager, Mockito.never()).record(Mockito.any());
+    }
+
+    @Test
+    public void testOtherTaskIsIgnored() throws Exception {
+        Mockito.when(cassandraTasks.get(VERIFY_NODE_0)).thenReturn(Optional.empty());
+        final RestoreContext context = RestoreContext.create("", "backup-0", "", "", "", "");
+        final BackupVerifyBlock block = block(context);
+
+        final CassandraTask task = Mockito.mock(CassandraTask.class);
+        Mockito.when(task.getId()).thenReturn("verify-node-0__5678");
+        Mockito.when(task.getState()).thenReturn(Protos.TaskState.TASK_STAGING);
+        Mockito.when(cassandraTasks.get(VERIFY_NODE_0)).thenReturn(Optional.of(task));
+        block.update(status(Protos.TaskState.TASK_FAILED, "Stale"));
+
+        Assert.assertEquals(Status.Pending, Block.getStatus(block));
+        Mockito.verify(manager, Mockito.never()).record(Mockito.any());
+    }
+}
@@ -0,0 +1,96 @@
+package com.mesosphere.dcos.cassandra.scheduler.plan.backup;
+
+import com.mesosphere.dcos.cassandra.common.tasks.CassandraDaemonTask;
+import com.mesosphere.dcos.cassandra.common.tasks.CassandraTask;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreContext;
+import com.mesosphere.dcos.cassandra.scheduler.offer.ClusterTaskOfferRequirementProvider;
+import com.mesosphere.dcos.cassandra.scheduler.tasks.CassandraTasks;
+import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.collections.MapUtils;
+import org.apache.mesos.Protos;
+import org.apache.mesos.scheduler.plan.Block;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.Mockito.when;
+
+public class BackupVerifyPhaseTest {
+    public static final String VERIFY_NODE_0 = "verify-node-0";
+    public static final String NODE_0 = "node-0";
+    public static final String NODE_1 = "node-1";
+    @Mock
+    private ClusterTaskOfferRequirementProvider provider;
+    @Mock
+    private CassandraTasks cassandraTasks;
+    @Mock
+    private VerifyManager manager;
+
+    @Before
+    public void beforeEach() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void testCreateBlocksEmpty() {
+        final RestoreContext context = RestoreContext.create("", "", "", "", "", "");
+
+        when(cassandraTasks.getDaemons()).thenReturn(MapUtils.EMPTY_MAP);
+        final BackupVerifyPhase phase = new BackupVerifyPhase(context, cassandraTasks, provider, manager);
+        final List<BackupVerifyBlock> blocks = phase.createBlocks();
+
+        Assert.assertNotNull(blocks);
+        Assert.assertTrue(CollectionUtils.isEmpty(blocks));
+        Assert.assertEquals("Verify", phase.getName());
+    }
+
+    @Test
+    public void testCreateBlocksSorted() {
+        final RestoreContext context = RestoreContext.create("", "", "", "", "", "");
+
+        final HashMap<String, CassandraDaemonTask> map = new HashMap<>();
+        map.put(NODE_1, Mockito.mock(CassandraDaemonTask.class));
+        map.put(NODE_0, Mockito.mock(CassandraDaemonTask.class));
+        when(cassandraTasks.getDaemons()).thenReturn(map);
+        when(cassandraTasks.get(Mockito.anyString())).thenReturn(Optional.empty());
+        final BackupVerifyPhase phase = new BackupVerifyPhase(context, cassandraTasks, provider, manager);
+        final List<? extends Block> blocks = phase.getBlocks();
+
+        Assert.assertEquals(2, blocks.size());
+        Assert.assertEquals("verify-node-0", blocks.get(0).getName());
+        Assert.assertEquals("verify-node-1", blocks.get(1).getName());
+        Assert.assertEquals(blocks.get(0), phase.getBlock(blocks.get(0).getId()));
+    }
+
+    @Test
+    public void testBlocksRecordToManager() {
+        final RestoreContext context = RestoreContext.create("", "backup-0", "", "", "", "");
+
+        final HashMap<String, CassandraDaemonTask> map = new HashMap<>();
+        map.put(NODE_0, Mockito.mock(CassandraDaemonTask.class));
+        when(cassandraTasks.getDaemons()).thenReturn(map);
+        when(cassandraTasks.get(VERIFY_NODE_0)).thenReturn(Optional.empty());
+        final BackupVerifyPhase phase = new BackupVerifyPhase(context, cassandraTasks, provider, manager);
+
+        final CassandraTask task = Mockito.mock(CassandraTask.class);
+        when(task.getId()).thenReturn("verify-node-0__1234");
+        when(cassandraTasks.get(VERIFY_NODE_0)).thenReturn(Optional.of(task));
+        final BackupVerifyBlock block = (BackupVerifyBlock) phase.getBlocks().get(0);
+        block.update(Protos.TaskStatus.newBuilder()
+                .setTaskId(Protos.TaskID.newBuilder().setValue("verify-node-0__1234"))
+                .setState(Protos.TaskState.TASK_FAILED)
+                .setMessage("1 objects failed")
+                .build());
+
+        Assert.assertTrue(phase.isComplete());
+        Mockito.verify(manager).record(BackupVerifyResult.create(
+                "backup-0", NODE_0, false, "1 objects failed"));
+    }
+}
@@ -1,4 +1,51 @@
 package com.mesosphere.dcos.cassandra.scheduler.plan.backup;
 
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupContext;
+import org.junit.Assert;
+import org.junit.Test;
+
 public class UploadBackupPhaseTest {
+
+    private static BackupContext context(int bandwidthLimitMb) {
+        return BackupContext.create("", "", "", "", "", "")
+                .withBandwidthLimitMb(bandwidthLimitMb);
+    }
+
+    @Test
+    public void testAllocateWithoutBudget() {
+        final BackupContext context = context(0);
+        Assert.assertSame(context, UploadBackupPhase.allocate(context, 0, 3));
+    }
+
+    @Test
+    public void testAllocateUnlimitedNodeToBudget() {
+        final BackupContext allocated =
+                UploadBackupPhase.allocate(context(0), 100, 3);
+        Assert.assertEquals(100, allocated.getBandwidthLimitMb());
+    }
+
+    @Test
+    public void testAllocateCapsNodeLimitAtBudget() {
+        final BackupContext context = context(30);
+        Assert.assertSame(context, UploadBackupPhase.allocate(context, 100, 3));
+
+        final BackupContext capped =
+                UploadBackupPhase.allocate(context(200), 100, 3);
+        Assert.assertEquals(100, capped.getBandwidthLimitMb());
+    }
+
+    @Test
+    public void testAllocateSplitsBudgetWithBackgroundUploads() {
+        final BackupContext context = context(0).mutable()
+                .setShipIncremental(true)
+                .setArchiveCommitLog(true)
+                .build();
+        final BackupContext allocated =
+                UploadBackupPhase.allocate(context, 100, 5);
+        Assert.assertEquals(50, allocated.getBandwidthLimitMb());
+        // 50 MB/s for the two background uploads of each of 5 nodes.
+        Assert.assertEquals(5, allocated.getBackgroundBandwidthLimitMb());
+        Assert.assertEquals(5,
+                allocated.forBackground().getBandwidthLimitMb());
+    }
 }
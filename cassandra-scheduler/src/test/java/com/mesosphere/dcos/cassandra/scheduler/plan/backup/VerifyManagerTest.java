@@ -0,0 +1,147 @@
+package com.mesosphere.dcos.cassandra.scheduler.plan.backup;
+
+import com.mesosphere.dcos.cassandra.common.tasks.CassandraDaemonTask;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.BackupVerifyTask;
+import com.mesosphere.dcos.cassandra.common.tasks.backup.RestoreContext;
+import com.mesosphere.dcos.cassandra.common.util.JsonUtils;
+import com.mesosphere.dcos.cassandra.scheduler.offer.ClusterTaskOfferRequirementProvider;
+import com.mesosphere.dcos.cassandra.scheduler.tasks.CassandraTasks;
+import org.apache.mesos.state.StateStore;
+import org.apache.mesos.state.StateStoreException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import static org.mockito.Mockito.when;
+
+public class VerifyManagerTest {
+    public static final String NODE_0 = "node-0";
+    public static final String NODE_1 = "node-1";
+    @Mock
+    private ClusterTaskOfferRequirementProvider provider;
+    @Mock
+    private CassandraTasks cassandraTasks;
+    @Mock
+    private StateStore stateStore;
+
+    @Before
+    public void beforeEach() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(stateStore.fetchProperty(Mockito.anyString()))
+                .thenThrow(StateStoreException.class);
+        final HashMap<String, CassandraDaemonTask> map = new HashMap<>();
+        map.put(NODE_0, Mockito.mock(CassandraDaemonTask.class));
+        when(cassandraTasks.getDaemons()).thenReturn(map);
+        when(cassandraTasks.get(Mockito.anyString())).thenReturn(Optional.empty());
+        when(cassandraTasks.getBackupVerifyTasks())
+                .thenReturn(Collections.emptyMap());
+    }
+
+    @Test
+    public void testInitial() {
+        final VerifyManager manager = new VerifyManager(cassandraTasks, provider, stateStore);
+
+        Assert.assertTrue(manager.canStartVerify());
+        Assert.assertFalse(manager.inProgress());
+        Assert.assertFalse(manager.isComplete());
+        Assert.assertTrue(manager.getPhases().isEmpty());
+        Assert.assertTrue(manager.getResults().isEmpty());
+    }
+
+    @Test
+    public void testStartVerify() throws Exception {
+        final VerifyManager manager = new VerifyManager(cassandraTasks, provider, stateStore);
+        final RestoreContext context = RestoreContext.create("", "backup-0", "", "", "", "");
+        manager.startVerify(context);
+
+        Assert.assertFalse(manager.canStartVerify());
+        Assert.assertTrue(manager.inProgress());
+        Assert.assertEquals(1, manager.getPhases().size());
+        Assert.assertTrue(manager.getPhases().get(0) instanceof BackupVerifyPhase);
+        Mockito.verify(stateStore).storeProperty(VerifyManager.VERIFY_KEY,
+                RestoreContext.JSON_SERIALIZER.serialize(context));
+    }
+
+    @Test
+    public void testStartVerifyRemovesPreviousTasks() throws Exception {
+        final HashMap<String, BackupVerifyTask> previous = new HashMap<>();
+        previous.put("verify-node-0", Mockito.mock(BackupVerifyTask.class));
+        when(cassandraTasks.getBackupVerifyTasks()).thenReturn(previous);
+        final VerifyManager manager = new VerifyManager(cassandraTasks, provider, stateStore);
+        manager.record(BackupVerifyResult.create("backup-0", NODE_0, false, "Failed"));
+
+        manager.startVerify(RestoreContext.create("", "backup-1", "", "", "", ""));
+
+        Mockito.verify(cassandraTasks).remove("verify-node-0");
+        Assert.assertTrue(manager.getResults().isEmpty());
+    }
+
+    @Test
+    public void testStopVerify() throws Exception {
+        final VerifyManager manager = new VerifyManager(cassandraTasks, provider, stateStore);
+        manager.startVerify(RestoreContext.create("", "backup-0", "", "", "", ""));
+        manager.stopVerify();
+
+        Assert.assertTrue(manager.canStartVerify());
+        Assert.assertFalse(manager.inProgress());
+        Assert.assertTrue(manager.getPhases().isEmpty());
+        Mockito.verify(stateStore).clearProperty(VerifyManager.VERIFY_KEY);
+    }
+
+    @Test
+    public void testRecordResults() throws Exception {
+        final VerifyManager manager = new VerifyManager(cassandraTasks, provider, stateStore);
+        final BackupVerifyResult first =
+                BackupVerifyResult.create("backup-0", NODE_1, true, "Verified");
+        final BackupVerifyResult second =
+                BackupVerifyResult.create("backup-0", NODE_0, false, "Failed");
+        manager.record(first);
+        manager.record(second);
+
+        Assert.assertEquals(Arrays.asList(second, first), manager.getResults());
+        Mockito.verify(stateStore, Mockito.times(2)).storeProperty(
+                Mockito.eq(VerifyManager.VERIFY_RESULTS_KEY), Mockito.any());
+    }
+
+    @Test
+    public void testRecoverResults() throws Exception {
+        final TreeMap<String, BackupVerifyResult> stored = new TreeMap<>();
+        final BackupVerifyResult result =
+                BackupVerifyResult.create("backup-0", NODE_0, true, "Verified");
+        stored.put(NODE_0, result);
+        Mockito.reset(stateStore);
+        when(stateStore.fetchProperty(VerifyManager.VERIFY_RESULTS_KEY))
+                .thenReturn(JsonUtils.MAPPER.writeValueAsBytes(stored));
+        when(stateStore.fetchProperty(VerifyManager.VERIFY_KEY))
+                .thenThrow(StateStoreException.class);
+
+        final VerifyManager manager = new VerifyManager(cassandraTasks, provider, stateStore);
+
+        Assert.assertEquals(Collections.singletonList(result), manager.getResults());
+        Assert.assertTrue(manager.canStartVerify());
+    }
+
+    @Test
+    public void testRecoverVerify() throws Exception {
+        final RestoreContext context = RestoreContext.create("", "backup-0", "", "", "", "");
+        Mockito.reset(stateStore);
+        when(stateStore.fetchProperty(VerifyManager.VERIFY_RESULTS_KEY))
+                .thenThrow(StateStoreException.class);
+        when(stateStore.fetchProperty(VerifyManager.VERIFY_KEY))
+                .thenReturn(RestoreContext.JSON_SERIALIZER.serialize(context));
+
+        final VerifyManager manager = new VerifyManager(cassandraTasks, provider, stateStore);
+
+        Assert.assertTrue(manager.inProgress());
+        Assert.assertEquals(1, manager.getPhases().size());
+    }
+}